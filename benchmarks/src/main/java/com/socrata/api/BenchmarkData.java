@@ -0,0 +1,78 @@
+package com.socrata.api;
+
+/**
+ * Synthetic payloads shared by the benchmarks.
+ */
+public final class BenchmarkData
+{
+    /**
+     * Builds an upsert response in the streaming format, with one error every {@code errorEvery} rows.
+     *
+     * @param rows number of rows in the response
+     * @param errorEvery how often a row is an error.  {@code 0} means there are no errors.
+     * @return the response body
+     */
+    public static String upsertResponse(int rows, int errorEvery)
+    {
+        final StringBuilder sb = new StringBuilder(rows * 64);
+        sb.append('[');
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sb.append(",\n");
+            }
+            if (errorEvery > 0 && i % errorEvery == 0) {
+                sb.append("{\"typ\":\"error\",\"id\":\"row-").append(i).append("\",\"err\":\"no such column: bogus\"}");
+            } else {
+                sb.append("{\"typ\":\"").append(i % 3 == 0 ? "update" : "insert").append("\",\"id\":\"row-").append(i)
+                  .append("\",\"ver\":\"rv-").append(Integer.toHexString(i * 7919)).append("\"}");
+            }
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+
+    /**
+     * Builds a JSON array of rows, as returned by a query.
+     *
+     * @param rows number of rows
+     * @return the rows as a JSON array
+     */
+    public static String queryRows(int rows)
+    {
+        final StringBuilder sb = new StringBuilder(rows * 128);
+        sb.append('[');
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"id\":\"row-").append(i)
+              .append("\",\"name\":\"Name ").append(i)
+              .append("\",\"amount\":\"").append(i * 31 % 10000).append(".25\"")
+              .append(",\"created\":\"2012-06-20T07:00:").append(String.format("%02d", i % 60)).append(".000\"}");
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+
+    /**
+     * Builds a CSV body to upsert.
+     *
+     * @param rows number of rows, not counting the header
+     * @return the CSV
+     */
+    public static String csvRows(int rows)
+    {
+        final StringBuilder sb = new StringBuilder(rows * 48);
+        sb.append("id,name,amount,created\n");
+        for (int i = 0; i < rows; i++) {
+            sb.append("row-").append(i).append(",\"Name ").append(i).append("\",").append(i * 31 % 10000)
+              .append(".25,2012-06-20T07:00:").append(String.format("%02d", i % 60)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * static members only
+     */
+    private BenchmarkData() { }
+}
@@ -0,0 +1,79 @@
+package com.socrata.api;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A minimal SODA2 endpoint that runs in the benchmark's process, so end to end benchmarks measure the client
+ * rather than a remote server.  Every {@code GET /resource/*} returns the same canned rows, and every
+ * {@code POST /resource/*} drains the request body and returns the same canned upsert result.
+ */
+public class BenchmarkServer implements AutoCloseable
+{
+    private final HttpServer      server;
+    private final ExecutorService executor;
+    private final byte[]          queryResponse;
+    private final byte[]          upsertResponse;
+
+    public BenchmarkServer(int rows) throws IOException
+    {
+        this.queryResponse = BenchmarkData.queryRows(rows).getBytes(StandardCharsets.UTF_8);
+        this.upsertResponse = BenchmarkData.upsertResponse(rows, 0).getBytes(StandardCharsets.UTF_8);
+        this.executor = Executors.newFixedThreadPool(8);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.setExecutor(executor);
+        this.server.createContext("/resource/", new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                try {
+                    drain(exchange.getRequestBody());
+                    final byte[] body = "POST".equals(exchange.getRequestMethod()) ? upsertResponse : queryResponse;
+                    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                    exchange.getResponseHeaders().set("X-SODA2-Truth-Version", "1");
+                    exchange.getResponseHeaders().set("X-SODA2-Truth-Shape-Version", "1");
+                    exchange.sendResponseHeaders(200, body.length);
+                    final OutputStream os = exchange.getResponseBody();
+                    os.write(body);
+                    os.close();
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        this.server.start();
+    }
+
+    /**
+     * @return the base URL to hand to {@code HttpLowLevel.instantiate}
+     */
+    public String getUrl()
+    {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close()
+    {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private static void drain(InputStream is) throws IOException
+    {
+        final byte[] buf = new byte[8192];
+        while (is.read(buf) != -1) { }
+        is.close();
+    }
+}
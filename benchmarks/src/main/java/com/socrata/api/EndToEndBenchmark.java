@@ -0,0 +1,68 @@
+package com.socrata.api;
+
+import com.socrata.exceptions.SodaError;
+import com.socrata.model.UpsertResult;
+import com.socrata.model.soql.SoqlQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import javax.ws.rs.core.GenericType;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures a whole upsert or query, from the public API down through Jersey, against a {@link BenchmarkServer}.
+ */
+@State(Scope.Benchmark)
+public class EndToEndBenchmark
+{
+    private static final GenericType<List<Map<String, Object>>> ROWS_TYPE = new GenericType<List<Map<String, Object>>>() {};
+
+    @Param({"100", "10000"})
+    public int rows;
+
+    @Param({"IDENTITY", "GZIP"})
+    public ContentEncoding contentEncoding;
+
+    private BenchmarkServer server;
+    private HttpLowLevel    httpLowLevel;
+    private Soda2Producer   producer;
+    private byte[]          csv;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        server = new BenchmarkServer(rows);
+        httpLowLevel = HttpLowLevel.instantiate(server.getUrl());
+        httpLowLevel.setContentEncodingForUpserts(contentEncoding);
+        producer = new Soda2Producer(httpLowLevel);
+        csv = BenchmarkData.csvRows(rows).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        httpLowLevel.close();
+        server.close();
+    }
+
+    @Benchmark
+    public UpsertResult upsertStream() throws SodaError, InterruptedException
+    {
+        return producer.upsertStream("abcd-1234", HttpLowLevel.CSV_TYPE, new ByteArrayInputStream(csv));
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> query() throws SodaError, InterruptedException
+    {
+        return producer.query("abcd-1234", SoqlQuery.SELECT_ALL, ROWS_TYPE);
+    }
+}
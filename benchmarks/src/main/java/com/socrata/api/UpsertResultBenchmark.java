@@ -0,0 +1,52 @@
+package com.socrata.api;
+
+import com.socrata.model.UpsertResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Measures parsing of the streaming upsert response through {@code Soda2Producer.deserializeUpsertResult}.
+ */
+@State(Scope.Benchmark)
+public class UpsertResultBenchmark
+{
+    @Param({"100", "10000", "100000"})
+    public int rows;
+
+    @Param({"0", "100"})
+    public int errorEvery;
+
+    private HttpLowLevel  httpLowLevel;
+    private Soda2Producer producer;
+    private byte[]        response;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        httpLowLevel = HttpLowLevel.instantiate("http://localhost");
+        producer = new Soda2Producer(httpLowLevel);
+        response = BenchmarkData.upsertResponse(rows, errorEvery).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        httpLowLevel.close();
+    }
+
+    @Benchmark
+    public UpsertResult deserializeUpsertResult() throws IOException
+    {
+        return producer.deserializeUpsertResult(new ByteArrayInputStream(response),
+                                                StandardResultAccumulator.FACTORY.createAccumulator(1L, 1));
+    }
+}
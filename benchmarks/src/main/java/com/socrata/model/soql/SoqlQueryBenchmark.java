@@ -0,0 +1,52 @@
+package com.socrata.model.soql;
+
+import com.socrata.builders.SoqlQueryBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import javax.ws.rs.core.UriBuilder;
+import java.net.URI;
+import java.util.Arrays;
+
+/**
+ * Measures turning a {@link SoqlQuery} into the URI of a SODA2 request.
+ */
+@State(Scope.Thread)
+public class SoqlQueryBenchmark
+{
+    private static final URI BASE_URI = URI.create("https://data.example.com/resource/abcd-1234.json");
+
+    private SoqlQuery simple;
+    private SoqlQuery complex;
+
+    @Setup
+    public void setUp()
+    {
+        simple = new SoqlQueryBuilder().setLimit(1000).build();
+        complex = new SoqlQueryBuilder()
+                .addSelectPhrase("name")
+                .addSelectPhrase("sum(amount) as total")
+                .setWhereClause(new CompositeExpression(CompositeOperations.AND, Arrays.<Expression>asList(
+                        new ConditionalExpression("created > '2012-01-01T00:00:00'"),
+                        new ConditionalExpression("name like '%Name 1%'"))))
+                .addGroupByPhrase("name")
+                .addOrderByPhrase(new OrderByClause(SortOrder.Descending, "total"))
+                .setOffset(5000)
+                .setLimit(1000)
+                .build();
+    }
+
+    @Benchmark
+    public URI simpleQuery()
+    {
+        return simple.toSodaUri(UriBuilder.fromUri(BASE_URI)).build();
+    }
+
+    @Benchmark
+    public URI complexQuery()
+    {
+        return complex.toSodaUri(UriBuilder.fromUri(BASE_URI)).build();
+    }
+}
@@ -0,0 +1,71 @@
+package com.socrata.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Date;
+
+/**
+ * Measures the date handling in {@link ObjectMapperFactory.SocrataDateFormat}, both directly and through an
+ * ObjectMapper, which clones the format for each use.
+ */
+@State(Scope.Thread)
+public class DateFormatBenchmark
+{
+    private static final String FLOATING = "2012-06-20T07:00:00";
+    private static final String FLOATING_MILLIS = "2012-06-20T07:00:00.123";
+    private static final String ZULU = "2012-06-20T07:00:00.123Z";
+
+    private ObjectMapperFactory.SocrataDateFormat format;
+    private ObjectMapper mapper;
+    private Date         date;
+
+    @Setup
+    public void setUp() throws ParseException
+    {
+        format = new ObjectMapperFactory.SocrataDateFormat();
+        mapper = ObjectMapperFactory.create();
+        date = format.parse(FLOATING_MILLIS);
+    }
+
+    @Benchmark
+    public Date parseFloating() throws ParseException
+    {
+        return format.parse(FLOATING);
+    }
+
+    @Benchmark
+    public Date parseFloatingMillis() throws ParseException
+    {
+        return format.parse(FLOATING_MILLIS);
+    }
+
+    @Benchmark
+    public Date parseZulu() throws ParseException
+    {
+        return format.parse(ZULU);
+    }
+
+    @Benchmark
+    public String format()
+    {
+        return format.format(date);
+    }
+
+    @Benchmark
+    public Date mapperParseFloating() throws IOException
+    {
+        return mapper.readValue("\"" + FLOATING_MILLIS + "\"", Date.class);
+    }
+
+    @Benchmark
+    public String mapperFormat() throws IOException
+    {
+        return mapper.writeValueAsString(date);
+    }
+}
@@ -0,0 +1,60 @@
+package com.socrata.utils.streams;
+
+import com.socrata.api.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Measures the throughput of the {@link TransformativeStream}s used to send upserts, at different internal
+ * buffer sizes and read sizes.
+ */
+@State(Scope.Thread)
+public class TransformativeStreamBenchmark
+{
+    @Param({"1024", "4096", "65536"})
+    public int bufferSize;
+
+    @Param({"1024", "16384"})
+    public int readSize;
+
+    private byte[] payload;
+    private byte[] readBuffer;
+
+    @Setup
+    public void setUp()
+    {
+        payload = BenchmarkData.csvRows(50000).getBytes(StandardCharsets.UTF_8);
+        readBuffer = new byte[readSize];
+    }
+
+    @Benchmark
+    public long identityStream() throws IOException
+    {
+        return drain(new IdentityStream(bufferSize, new ByteArrayInputStream(payload)));
+    }
+
+    @Benchmark
+    public long compressingGzipInputStream() throws IOException
+    {
+        return drain(new CompressingGzipInputStream(bufferSize, new ByteArrayInputStream(payload)));
+    }
+
+    private long drain(InputStream is) throws IOException
+    {
+        long total = 0;
+        int read;
+        while ((read = is.read(readBuffer)) != -1) {
+            total += read;
+        }
+        is.close();
+        return total;
+    }
+}
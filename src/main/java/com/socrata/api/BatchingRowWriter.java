@@ -0,0 +1,266 @@
+package com.socrata.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.socrata.exceptions.SodaError;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers rows added one at a time, and upserts them to a dataset in batches.  A batch is sent when it hits the
+ * row count, size or linger time limit in its {@link BatchingRowWriterConfig}, or when the writer is flushed.
+ * This turns many small upserts into a few larger ones, which saves a round trip to the server for every row.
+ *
+ * The writer is thread safe.  Once {@code maxInFlightBatches} batches are being sent, {@code add} blocks until one
+ * of them completes.  Batches are sent in the order they were filled, but batches in flight at the same time may
+ * be applied in any order, so use a {@code maxInFlightBatches} of 1 if later rows must overwrite earlier ones.
+ *
+ * Each row gets a future, which completes with the row's result from the upsert, or fails with the
+ * {@link SodaError} that failed its batch.
+ *
+ * @param <T> the type of rows written
+ */
+public class BatchingRowWriter<T> implements AutoCloseable
+{
+    private final Soda2Producer             producer;
+    private final String                    resourceId;
+    private final ObjectWriter              writer;
+    private final BatchingRowWriterConfig   config;
+    private final ScheduledExecutorService  executor;
+    private final Semaphore                 inFlight;
+
+    private Batch   current;
+    private boolean closed = false;
+
+    BatchingRowWriter(Soda2Producer producer, String resourceId, ObjectWriter writer, BatchingRowWriterConfig config)
+    {
+        this.producer = producer;
+        this.resourceId = resourceId;
+        this.writer = writer;
+        this.config = config;
+        this.inFlight = new Semaphore(config.getMaxInFlightBatches());
+        this.executor = Executors.newScheduledThreadPool(config.getMaxInFlightBatches() + 1, new ThreadFactoryBuilder()
+                .setNameFormat("soda-batch-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    /**
+     * Adds a row to the current batch.  The row is serialized right away, so later changes to the object are
+     * not sent.
+     *
+     * @param row the row to upsert
+     * @return future for the result of upserting this row
+     * @throws SodaError  thrown if the row cannot be serialized.
+     * @throws InterruptedException throws is the thread is interrupted while waiting for a batch to complete.
+     */
+    public CompletableFuture<Soda2Producer.NewUpsertRow> add(T row) throws SodaError, InterruptedException
+    {
+        final byte[] json;
+        try {
+            json = writer.writeValueAsBytes(row);
+        } catch (JsonProcessingException e) {
+            throw new SodaError("Unable to serialize the row.  Error message: " + e.getLocalizedMessage(), e);
+        }
+
+        final CompletableFuture<Soda2Producer.NewUpsertRow> result = new CompletableFuture<Soda2Producer.NewUpsertRow>();
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("This writer has been closed");
+            }
+
+            if (current == null) {
+                current = new Batch();
+                scheduleLinger(current);
+            }
+
+            current.add(json, result);
+            if (current.size() >= config.getMaxBatchRows() || current.bytes() >= config.getMaxBatchBytes()) {
+                final Batch full = current;
+                current = null;
+                send(full);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sends the current batch, and waits for every batch in flight to complete.
+     *
+     * @throws InterruptedException throws is the thread is interrupted.
+     */
+    public void flush() throws InterruptedException
+    {
+        synchronized (this) {
+            if (current != null) {
+                final Batch batch = current;
+                current = null;
+                send(batch);
+            }
+        }
+
+        inFlight.acquire(config.getMaxInFlightBatches());
+        inFlight.release(config.getMaxInFlightBatches());
+    }
+
+    /**
+     * Flushes any buffered rows, and stops the writer's threads.  Rows can not be added after this.
+     *
+     * @throws InterruptedException throws is the thread is interrupted.
+     */
+    @Override
+    public void close() throws InterruptedException
+    {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+
+        try {
+            flush();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Sends a batch of rows to the server.  Split out so the batching logic can be tested without a server.
+     */
+    ParallelUpserter.ChunkResult sendBatch(byte[] body) throws SodaError, InterruptedException
+    {
+        return producer.upsertStream(resourceId, HttpLowLevel.JSON_TYPE, new ByteArrayInputStream(body),
+                                     config.getRowUpdateOption(), ParallelUpserter.ChunkResult.FACTORY);
+    }
+
+    private void scheduleLinger(final Batch batch)
+    {
+        if (config.getLingerTime() > 0) {
+            batch.linger = executor.schedule(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    lingerExpired(batch);
+                }
+            }, config.getLingerTime(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void lingerExpired(Batch batch)
+    {
+        if (current == batch) {
+            current = null;
+            try {
+                send(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Must be called holding the writer's lock, which keeps batches going out in the order they were filled.  The
+     * batch has already been detached from the writer, so if the wait for a free slot is interrupted its rows are
+     * failed, rather than being left with futures that never complete.
+     */
+    private void send(final Batch batch) throws InterruptedException
+    {
+        if (batch.linger != null) {
+            batch.linger.cancel(false);
+        }
+
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            batch.fail(e);
+            throw e;
+        }
+        try {
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try {
+                        batch.complete(sendBatch(batch.body()));
+                    } catch (Throwable t) {
+                        batch.fail(t);
+                    } finally {
+                        inFlight.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            batch.fail(e);
+        }
+    }
+
+    private static final class Batch
+    {
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private final List<CompletableFuture<Soda2Producer.NewUpsertRow>> results = new ArrayList<CompletableFuture<Soda2Producer.NewUpsertRow>>();
+        private ScheduledFuture<?> linger;
+
+        Batch()
+        {
+            body.write('[');
+        }
+
+        void add(byte[] json, CompletableFuture<Soda2Producer.NewUpsertRow> result)
+        {
+            if (!results.isEmpty()) {
+                body.write(',');
+            }
+            body.write(json, 0, json.length);
+            results.add(result);
+        }
+
+        int size()
+        {
+            return results.size();
+        }
+
+        int bytes()
+        {
+            return body.size();
+        }
+
+        byte[] body()
+        {
+            body.write(']');
+            return body.toByteArray();
+        }
+
+        void complete(ParallelUpserter.ChunkResult result)
+        {
+            final List<Soda2Producer.NewUpsertRow> rows = result.rows();
+            for (int i = 0; i < results.size(); i++) {
+                if (i < rows.size()) {
+                    results.get(i).complete(rows.get(i));
+                } else {
+                    results.get(i).completeExceptionally(new SodaError("The server did not return a result for this row"));
+                }
+            }
+        }
+
+        void fail(Throwable t)
+        {
+            for (CompletableFuture<Soda2Producer.NewUpsertRow> result : results) {
+                result.completeExceptionally(t);
+            }
+        }
+    }
+}
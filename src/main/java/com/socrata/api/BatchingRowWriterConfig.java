@@ -0,0 +1,132 @@
+package com.socrata.api;
+
+import com.socrata.utils.RowUpdateOption;
+
+/**
+ * Configuration for a {@link BatchingRowWriter}.  A batch is sent as soon as it hits any one of the row, byte
+ * or linger time limits.
+ */
+public class BatchingRowWriterConfig
+{
+    public static final int  DEFAULT_MAX_BATCH_ROWS = 1000;
+    public static final int  DEFAULT_MAX_BATCH_BYTES = 1024 * 1024;
+    public static final long DEFAULT_LINGER_TIME = 100;
+    public static final int  DEFAULT_MAX_IN_FLIGHT_BATCHES = 4;
+
+    private int             maxBatchRows = DEFAULT_MAX_BATCH_ROWS;
+    private int             maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+    private long            lingerTime = DEFAULT_LINGER_TIME;
+    private int             maxInFlightBatches = DEFAULT_MAX_IN_FLIGHT_BATCHES;
+    private RowUpdateOption rowUpdateOption = new RowUpdateOption();
+
+    /**
+     * Gets the max number of rows sent in a single upsert.
+     * @return the max number of rows in a batch
+     */
+    public int getMaxBatchRows()
+    {
+        return maxBatchRows;
+    }
+
+    /**
+     * Sets the max number of rows sent in a single upsert.
+     * @param maxBatchRows the max number of rows in a batch
+     * @return this config
+     */
+    public BatchingRowWriterConfig setMaxBatchRows(int maxBatchRows)
+    {
+        if (maxBatchRows <= 0) {
+            throw new IllegalArgumentException("maxBatchRows must be greater than 0");
+        }
+        this.maxBatchRows = maxBatchRows;
+        return this;
+    }
+
+    /**
+     * Gets the size of serialized rows a batch may grow to before it is sent.
+     * @return the max size of a batch in bytes
+     */
+    public int getMaxBatchBytes()
+    {
+        return maxBatchBytes;
+    }
+
+    /**
+     * Sets the size of serialized rows a batch may grow to before it is sent.
+     * @param maxBatchBytes the max size of a batch in bytes
+     * @return this config
+     */
+    public BatchingRowWriterConfig setMaxBatchBytes(int maxBatchBytes)
+    {
+        if (maxBatchBytes <= 0) {
+            throw new IllegalArgumentException("maxBatchBytes must be greater than 0");
+        }
+        this.maxBatchBytes = maxBatchBytes;
+        return this;
+    }
+
+    /**
+     * Gets how long the first row of a batch may wait for more rows before the batch is sent.
+     * @return the linger time in milliseconds
+     */
+    public long getLingerTime()
+    {
+        return lingerTime;
+    }
+
+    /**
+     * Sets how long the first row of a batch may wait for more rows before the batch is sent.
+     * @param lingerTime the linger time in milliseconds.  {@code 0} or less means a batch is only sent when it
+     *                   is full, or when the writer is flushed.
+     * @return this config
+     */
+    public BatchingRowWriterConfig setLingerTime(long lingerTime)
+    {
+        this.lingerTime = lingerTime;
+        return this;
+    }
+
+    /**
+     * Gets the max number of batches that may be sent to the server at the same time.
+     * @return the max number of batches in flight
+     */
+    public int getMaxInFlightBatches()
+    {
+        return maxInFlightBatches;
+    }
+
+    /**
+     * Sets the max number of batches that may be sent to the server at the same time.  Once this is hit,
+     * {@code add} blocks until a batch completes.
+     * @param maxInFlightBatches the max number of batches in flight
+     * @return this config
+     */
+    public BatchingRowWriterConfig setMaxInFlightBatches(int maxInFlightBatches)
+    {
+        if (maxInFlightBatches <= 0) {
+            throw new IllegalArgumentException("maxInFlightBatches must be greater than 0");
+        }
+        this.maxInFlightBatches = maxInFlightBatches;
+        return this;
+    }
+
+    /**
+     * Gets the options sent with each batch.
+     * @return the options sent with each batch
+     */
+    public RowUpdateOption getRowUpdateOption()
+    {
+        return rowUpdateOption;
+    }
+
+    /**
+     * Sets the options sent with each batch.
+     * @param rowUpdateOption the options sent with each batch
+     * @return this config
+     */
+    public BatchingRowWriterConfig setRowUpdateOption(RowUpdateOption rowUpdateOption)
+    {
+        this.rowUpdateOption = rowUpdateOption;
+        return this;
+    }
+}
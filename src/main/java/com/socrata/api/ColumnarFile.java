@@ -0,0 +1,361 @@
+package com.socrata.api;
+
+import com.socrata.utils.streams.BufferPool;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compact columnar file format for query results, written a batch of rows at a time so a whole dataset can be
+ * exported with memory bounded by the batch size.  Each batch holds the columns of one {@link ColumnarResult}, in
+ * the same primitive form, so no values are converted to text on the way out or parsed on the way back in.
+ *
+ * The layout, with every number big-endian:
+ * <pre>
+ * file    := "SODACOL1" batch* end
+ * batch   := int rowCount (greater than 0), int columnCount, column*
+ * column  := string name, string dataTypeName, byte kind, long[words] nulls, values
+ * values  := LONG:    long[rowCount]
+ *          | DOUBLE:  double[rowCount]
+ *          | BOOLEAN: long[words]
+ *          | STRING:  int dictionarySize, string[dictionarySize], int[rowCount] codes
+ * string  := int byteLength (-1 for null), UTF-8 bytes
+ * end     := int 0
+ * </pre>
+ * where {@code words} is {@code (rowCount + 63) / 64}, and kind is the ordinal of {@link ColumnarResult.Kind}.
+ * Bitmaps hold row {@code r} in bit {@code r % 64} of word {@code r / 64}.
+ *
+ * Every batch describes its own columns.  A batch can have columns the ones before it didn't, and a number column
+ * can be LONG in one batch and DOUBLE in a later one, if the later batch has a fractional value.
+ */
+public final class ColumnarFile
+{
+    static final byte[] MAGIC = "SODACOL1".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int SCRATCH_SIZE = 65536;
+
+    /**
+     * Writes batches to a stream.
+     */
+    public static final class Writer implements Closeable
+    {
+        private final DataOutputStream out;
+        private byte[]                 scratch = BufferPool.getDefault().acquire(SCRATCH_SIZE);
+        private long                   rowCount = 0;
+
+        /**
+         * Constructor.  This writes the start of the file.
+         *
+         * @param out the stream to write to.  This should be buffered.
+         * @throws IOException if the stream can not be written.
+         */
+        public Writer(OutputStream out) throws IOException
+        {
+            this.out = new DataOutputStream(out);
+            this.out.write(MAGIC);
+        }
+
+        /**
+         * Writes a batch.  Empty results are skipped, since a batch of 0 rows marks the end of the file.
+         *
+         * @param result the rows to write
+         * @throws IOException if the stream can not be written.
+         */
+        public void writeBatch(ColumnarResult result) throws IOException
+        {
+            checkOpen();
+            final int rows = result.getRowCount();
+            if (rows == 0) {
+                return;
+            }
+
+            out.writeInt(rows);
+            out.writeInt(result.getColumns().size());
+            for (ColumnarResult.Column column : result.getColumns()) {
+                writeString(column.getName());
+                writeString(column.getDataTypeName());
+                out.writeByte(column.getKind().ordinal());
+                writeLongs(column.getNulls(), words(rows));
+
+                switch (column.getKind()) {
+                case LONG:
+                    writeLongs(((ColumnarResult.LongColumn) column).getValues(), rows);
+                    break;
+                case DOUBLE:
+                    writeDoubles(((ColumnarResult.DoubleColumn) column).getValues(), rows);
+                    break;
+                case BOOLEAN:
+                    writeLongs(((ColumnarResult.BooleanColumn) column).getValues(), words(rows));
+                    break;
+                case STRING:
+                    final ColumnarResult.StringColumn strings = (ColumnarResult.StringColumn) column;
+                    out.writeInt(strings.getDictionary().length);
+                    for (String value : strings.getDictionary()) {
+                        writeString(value);
+                    }
+                    writeInts(strings.getCodes(), rows);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown column kind " + column.getKind());
+                }
+            }
+            rowCount += rows;
+        }
+
+        /**
+         * @return the number of rows written so far
+         */
+        public long getRowCount()
+        {
+            return rowCount;
+        }
+
+        /**
+         * Writes the end of the file and flushes it, without closing the underlying stream.
+         *
+         * @throws IOException if the stream can not be written.
+         */
+        public void finish() throws IOException
+        {
+            if (scratch == null) {
+                return;
+            }
+
+            try {
+                out.writeInt(0);
+                out.flush();
+            } finally {
+                BufferPool.getDefault().release(scratch);
+                scratch = null;
+            }
+        }
+
+        /**
+         * Finishes the file, and closes the underlying stream.
+         */
+        @Override
+        public void close() throws IOException
+        {
+            try {
+                finish();
+            } finally {
+                out.close();
+            }
+        }
+
+        private void checkOpen()
+        {
+            if (scratch == null) {
+                throw new IllegalStateException("This writer is already finished");
+            }
+        }
+
+        private void writeString(String value) throws IOException
+        {
+            if (value == null) {
+                out.writeInt(-1);
+                return;
+            }
+
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeLongs(long[] values, int count) throws IOException
+        {
+            final ByteBuffer buffer = ByteBuffer.wrap(scratch);
+            for (int i = 0; i < count; ) {
+                final int chunk = Math.min(count - i, scratch.length / 8);
+                buffer.asLongBuffer().put(values, i, chunk);
+                out.write(scratch, 0, chunk * 8);
+                i += chunk;
+            }
+        }
+
+        private void writeDoubles(double[] values, int count) throws IOException
+        {
+            final ByteBuffer buffer = ByteBuffer.wrap(scratch);
+            for (int i = 0; i < count; ) {
+                final int chunk = Math.min(count - i, scratch.length / 8);
+                buffer.asDoubleBuffer().put(values, i, chunk);
+                out.write(scratch, 0, chunk * 8);
+                i += chunk;
+            }
+        }
+
+        private void writeInts(int[] values, int count) throws IOException
+        {
+            final ByteBuffer buffer = ByteBuffer.wrap(scratch);
+            for (int i = 0; i < count; ) {
+                final int chunk = Math.min(count - i, scratch.length / 4);
+                buffer.asIntBuffer().put(values, i, chunk);
+                out.write(scratch, 0, chunk * 4);
+                i += chunk;
+            }
+        }
+    }
+
+    /**
+     * Reads the batches back from a stream.
+     */
+    public static final class Reader implements Closeable
+    {
+        private final DataInputStream in;
+        private byte[]                scratch = BufferPool.getDefault().acquire(SCRATCH_SIZE);
+        private boolean               done = false;
+
+        /**
+         * Constructor.  This reads the start of the file.
+         *
+         * @param in the stream to read from.  This should be buffered.
+         * @throws IOException if the stream can not be read, or isn't a columnar file.
+         */
+        public Reader(InputStream in) throws IOException
+        {
+            this.in = new DataInputStream(in);
+            final byte[] magic = new byte[MAGIC.length];
+            try {
+                this.in.readFully(magic);
+            } catch (EOFException e) {
+                throw new IOException("This is not a columnar file");
+            }
+            if (!Arrays.equals(MAGIC, magic)) {
+                throw new IOException("This is not a columnar file");
+            }
+        }
+
+        /**
+         * @return the next batch, or {@code null} once the end of the file is reached.
+         * @throws IOException if the stream can not be read, or is not a valid file.
+         */
+        public ColumnarResult readBatch() throws IOException
+        {
+            if (done) {
+                return null;
+            }
+
+            final int rows = in.readInt();
+            if (rows == 0) {
+                done = true;
+                return null;
+            }
+            if (rows < 0) {
+                throw new IOException("Invalid batch size " + rows);
+            }
+
+            final int columnCount = in.readInt();
+            final List<ColumnarResult.Column> columns = new ArrayList<ColumnarResult.Column>(columnCount);
+            for (int c = 0; c < columnCount; c++) {
+                final String name = readString();
+                final String dataTypeName = readString();
+                final int kind = in.readUnsignedByte();
+                if (kind >= ColumnarResult.Kind.values().length) {
+                    throw new IOException("Unknown column kind " + kind + " for column " + name);
+                }
+                final long[] nulls = readLongs(words(rows));
+
+                switch (ColumnarResult.Kind.values()[kind]) {
+                case LONG:
+                    columns.add(new ColumnarResult.LongColumn(name, dataTypeName, rows, nulls, readLongs(rows)));
+                    break;
+                case DOUBLE:
+                    columns.add(new ColumnarResult.DoubleColumn(name, dataTypeName, rows, nulls, readDoubles(rows)));
+                    break;
+                case BOOLEAN:
+                    columns.add(new ColumnarResult.BooleanColumn(name, dataTypeName, rows, nulls, readLongs(words(rows))));
+                    break;
+                default:
+                    final String[] dictionary = new String[in.readInt()];
+                    for (int i = 0; i < dictionary.length; i++) {
+                        dictionary[i] = readString();
+                    }
+                    columns.add(new ColumnarResult.StringColumn(name, dataTypeName, rows, nulls, readInts(rows), dictionary));
+                    break;
+                }
+            }
+            return new ColumnarResult(rows, columns);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (scratch != null) {
+                BufferPool.getDefault().release(scratch);
+                scratch = null;
+            }
+            in.close();
+        }
+
+        private String readString() throws IOException
+        {
+            final int length = in.readInt();
+            if (length < 0) {
+                return null;
+            }
+
+            final byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+            in.readFully(bytes, 0, length);
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private long[] readLongs(int count) throws IOException
+        {
+            final long[] values = new long[count];
+            final ByteBuffer buffer = ByteBuffer.wrap(scratch);
+            for (int i = 0; i < count; ) {
+                final int chunk = Math.min(count - i, scratch.length / 8);
+                in.readFully(scratch, 0, chunk * 8);
+                buffer.asLongBuffer().get(values, i, chunk);
+                i += chunk;
+            }
+            return values;
+        }
+
+        private double[] readDoubles(int count) throws IOException
+        {
+            final double[] values = new double[count];
+            final ByteBuffer buffer = ByteBuffer.wrap(scratch);
+            for (int i = 0; i < count; ) {
+                final int chunk = Math.min(count - i, scratch.length / 8);
+                in.readFully(scratch, 0, chunk * 8);
+                buffer.asDoubleBuffer().get(values, i, chunk);
+                i += chunk;
+            }
+            return values;
+        }
+
+        private int[] readInts(int count) throws IOException
+        {
+            final int[] values = new int[count];
+            final ByteBuffer buffer = ByteBuffer.wrap(scratch);
+            for (int i = 0; i < count; ) {
+                final int chunk = Math.min(count - i, scratch.length / 4);
+                in.readFully(scratch, 0, chunk * 4);
+                buffer.asIntBuffer().get(values, i, chunk);
+                i += chunk;
+            }
+            return values;
+        }
+    }
+
+    static int words(int rows)
+    {
+        return (rows + 63) >>> 6;
+    }
+
+    /**
+     * static members only
+     */
+    private ColumnarFile() { }
+}
@@ -0,0 +1,745 @@
+package com.socrata.api;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.collect.ImmutableSet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The rows of a query result, decoded column by column into primitive arrays instead of a map per row.  Numbers are
+ * held as {@code long[]} or {@code double[]}, checkboxes as bits, and everything else as strings, dictionary encoded
+ * so each distinct value is only held once.  Each column has a bitmap of which rows are null.
+ *
+ * This takes a fraction of the memory of a {@code List<Map>}, and nothing is boxed, so it is the better way to pull
+ * large pages of results into analytics code.
+ *
+ * The type of each column comes from the dataset schema.  {@code number}, {@code money} and {@code percent}
+ * columns are held as longs while every value is a whole number that fits, and switch to doubles once one isn't.
+ * {@code double} columns are always doubles.  Columns that aren't in the schema are decoded as strings.
+ */
+public class ColumnarResult
+{
+    private static final Set<String> NUMERIC_TYPES = ImmutableSet.of("number", "money", "percent");
+    private static final Set<String> DOUBLE_TYPES = ImmutableSet.of("double");
+    private static final Set<String> BOOLEAN_TYPES = ImmutableSet.of("checkbox", "boolean");
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int MAX_INITIAL_CAPACITY = 65536;
+
+    /**
+     * How the values of a column are held.
+     */
+    public enum Kind { LONG, DOUBLE, BOOLEAN, STRING }
+
+    private final int                     rowCount;
+    private final List<Column>            columns;
+    private final Map<String, Column>     columnsByName;
+
+    ColumnarResult(int rowCount, List<Column> columns)
+    {
+        this.rowCount = rowCount;
+        this.columns = Collections.unmodifiableList(columns);
+
+        final Map<String, Column> byName = new LinkedHashMap<String, Column>();
+        for (Column column : columns) {
+            byName.put(column.getName(), column);
+        }
+        this.columnsByName = Collections.unmodifiableMap(byName);
+    }
+
+    /**
+     * @return the number of rows in the result
+     */
+    public int getRowCount()
+    {
+        return rowCount;
+    }
+
+    /**
+     * @return the columns, in the order of the schema, followed by any columns that weren't in it.
+     */
+    public List<Column> getColumns()
+    {
+        return columns;
+    }
+
+    /**
+     * @return the names of the columns, in the same order as {@link #getColumns()}.
+     */
+    public List<String> getColumnNames()
+    {
+        return new ArrayList<String>(columnsByName.keySet());
+    }
+
+    /**
+     * @param name the field name of the column
+     * @return the column, or {@code null} if the result doesn't have it.
+     */
+    public Column getColumn(String name)
+    {
+        return columnsByName.get(name);
+    }
+
+    /**
+     * A single column of the result.  The subclass depends on the {@link Kind} of the column.
+     */
+    public abstract static class Column
+    {
+        private final String name;
+        private final String dataTypeName;
+        private final int    size;
+        private final long[] nulls;
+
+        Column(String name, String dataTypeName, int size, long[] nulls)
+        {
+            this.name = name;
+            this.dataTypeName = dataTypeName;
+            this.size = size;
+            this.nulls = nulls;
+        }
+
+        /**
+         * @return the field name of the column
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * @return the SODA type of the column, such as {@code text} or {@code number}, or {@code null} if the column
+         * wasn't in the schema.
+         */
+        public String getDataTypeName()
+        {
+            return dataTypeName;
+        }
+
+        /**
+         * @return how the values of this column are held
+         */
+        public abstract Kind getKind();
+
+        /**
+         * @param row the index of the row
+         * @return {@code true} if the value in this row is null, or missing.
+         */
+        public boolean isNull(int row)
+        {
+            checkRow(row);
+            return (nulls[row >>> 6] & (1L << row)) != 0;
+        }
+
+        /**
+         * @return the number of null values in the column
+         */
+        public int getNullCount()
+        {
+            int count = 0;
+            for (long word : nulls) {
+                count += Long.bitCount(word);
+            }
+            return count;
+        }
+
+        /**
+         * @param row the index of the row
+         * @return the value in the row as an object, or {@code null}.  This boxes the value, so it is only meant for
+         * convenience.
+         */
+        public abstract Object getObject(int row);
+
+        /**
+         * @return the null bitmap.  Bit {@code row % 64} of word {@code row / 64} is set if the row is null.  This is
+         * the array backing the column, and must not be changed.
+         */
+        public long[] getNulls()
+        {
+            return nulls;
+        }
+
+        void checkRow(int row)
+        {
+            if (row < 0 || row >= size) {
+                throw new IndexOutOfBoundsException("Row " + row + " is not in a column of " + size + " rows");
+            }
+        }
+    }
+
+    /**
+     * A column of whole numbers.  Null rows hold 0.
+     */
+    public static final class LongColumn extends Column
+    {
+        private final long[] values;
+
+        LongColumn(String name, String dataTypeName, int size, long[] nulls, long[] values)
+        {
+            super(name, dataTypeName, size, nulls);
+            this.values = values;
+        }
+
+        @Override
+        public Kind getKind()
+        {
+            return Kind.LONG;
+        }
+
+        public long get(int row)
+        {
+            checkRow(row);
+            return values[row];
+        }
+
+        @Override
+        public Object getObject(int row)
+        {
+            return isNull(row) ? null : values[row];
+        }
+
+        /**
+         * @return the values, one per row.  This is the array backing the column, and must not be changed.
+         */
+        public long[] getValues()
+        {
+            return values;
+        }
+    }
+
+    /**
+     * A column of floating point numbers.  Null rows hold 0.
+     */
+    public static final class DoubleColumn extends Column
+    {
+        private final double[] values;
+
+        DoubleColumn(String name, String dataTypeName, int size, long[] nulls, double[] values)
+        {
+            super(name, dataTypeName, size, nulls);
+            this.values = values;
+        }
+
+        @Override
+        public Kind getKind()
+        {
+            return Kind.DOUBLE;
+        }
+
+        public double get(int row)
+        {
+            checkRow(row);
+            return values[row];
+        }
+
+        @Override
+        public Object getObject(int row)
+        {
+            return isNull(row) ? null : values[row];
+        }
+
+        /**
+         * @return the values, one per row.  This is the array backing the column, and must not be changed.
+         */
+        public double[] getValues()
+        {
+            return values;
+        }
+    }
+
+    /**
+     * A column of booleans, held as a bitmap.  Null rows hold false.
+     */
+    public static final class BooleanColumn extends Column
+    {
+        private final long[] values;
+
+        BooleanColumn(String name, String dataTypeName, int size, long[] nulls, long[] values)
+        {
+            super(name, dataTypeName, size, nulls);
+            this.values = values;
+        }
+
+        @Override
+        public Kind getKind()
+        {
+            return Kind.BOOLEAN;
+        }
+
+        public boolean get(int row)
+        {
+            checkRow(row);
+            return (values[row >>> 6] & (1L << row)) != 0;
+        }
+
+        @Override
+        public Object getObject(int row)
+        {
+            return isNull(row) ? null : get(row);
+        }
+
+        /**
+         * @return the values as a bitmap, laid out the same way as {@link #getNulls()}.  This is the array backing
+         * the column, and must not be changed.
+         */
+        public long[] getValues()
+        {
+            return values;
+        }
+    }
+
+    /**
+     * A column of strings, dictionary encoded.  Each row holds the index of its value in the dictionary.  Null rows
+     * hold -1.  Values that aren't strings, such as locations, are held as their JSON.
+     */
+    public static final class StringColumn extends Column
+    {
+        private final int[]    codes;
+        private final String[] dictionary;
+
+        StringColumn(String name, String dataTypeName, int size, long[] nulls, int[] codes, String[] dictionary)
+        {
+            super(name, dataTypeName, size, nulls);
+            this.codes = codes;
+            this.dictionary = dictionary;
+        }
+
+        @Override
+        public Kind getKind()
+        {
+            return Kind.STRING;
+        }
+
+        public String get(int row)
+        {
+            checkRow(row);
+            final int code = codes[row];
+            return code < 0 ? null : dictionary[code];
+        }
+
+        @Override
+        public Object getObject(int row)
+        {
+            return get(row);
+        }
+
+        /**
+         * @param row the index of the row
+         * @return the index of the row's value in the dictionary, or -1 if it is null.
+         */
+        public int getCode(int row)
+        {
+            checkRow(row);
+            return codes[row];
+        }
+
+        /**
+         * @return the codes, one per row.  This is the array backing the column, and must not be changed.
+         */
+        public int[] getCodes()
+        {
+            return codes;
+        }
+
+        /**
+         * @return the distinct values of the column, in the order they were first seen.  This is the array backing
+         * the column, and must not be changed.
+         */
+        public String[] getDictionary()
+        {
+            return dictionary;
+        }
+    }
+
+    /**
+     * Decodes a JSON array of rows into columns.
+     *
+     * @param is the stream containing the JSON array of rows
+     * @param factory the factory to create the parser with
+     * @param fields the field names of the schema, or {@code null} if there isn't one.
+     * @param types the SODA type of each field, in the same order
+     * @param expectedRows the number of rows expected, or {@code null} if it isn't known.  This is only used to
+     *                     size the arrays.
+     * @return the decoded result
+     * @throws IOException if the stream can not be read, or a value doesn't match the type of its column.
+     */
+    static ColumnarResult decode(InputStream is, JsonFactory factory, List<String> fields, List<String> types, Integer expectedRows) throws IOException
+    {
+        final int capacity = expectedRows == null || expectedRows <= 0 ? DEFAULT_CAPACITY : Math.min(expectedRows, MAX_INITIAL_CAPACITY);
+        final Map<String, ColumnBuilder> builders = new LinkedHashMap<String, ColumnBuilder>();
+        if (fields != null && types != null && fields.size() == types.size()) {
+            for (int i = 0; i < fields.size(); i++) {
+                builders.put(fields.get(i), ColumnBuilder.create(fields.get(i), types.get(i), capacity));
+            }
+        }
+
+        try (JsonParser parser = factory.createParser(is)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Expected a JSON array of rows, but got " + parser.getCurrentToken());
+            }
+
+            int row = 0;
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new JsonParseException(parser, "Expected a row object, but got " + token);
+                }
+
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String name = parser.getCurrentName();
+                    parser.nextToken();
+
+                    ColumnBuilder builder = builders.get(name);
+                    if (builder == null) {
+                        builder = ColumnBuilder.create(name, null, capacity);
+                        builders.put(name, builder);
+                    }
+                    builder.append(row, parser);
+                }
+                row++;
+            }
+
+            final List<Column> columns = new ArrayList<Column>(builders.size());
+            for (ColumnBuilder builder : builders.values()) {
+                columns.add(builder.build(row));
+            }
+            return new ColumnarResult(row, columns);
+        }
+    }
+
+    /**
+     * Builds up a column while a result is decoded.  Rows that aren't given a value are null.
+     */
+    private abstract static class ColumnBuilder
+    {
+        final String name;
+        final String dataTypeName;
+        long[] nulls;
+        int    size = 0;
+
+        ColumnBuilder(String name, String dataTypeName, int capacity)
+        {
+            this.name = name;
+            this.dataTypeName = dataTypeName;
+            this.nulls = new long[words(capacity)];
+        }
+
+        static ColumnBuilder create(String name, String dataTypeName, int capacity)
+        {
+            if (NUMERIC_TYPES.contains(dataTypeName)) {
+                return new NumberColumnBuilder(name, dataTypeName, capacity, false);
+            } else if (DOUBLE_TYPES.contains(dataTypeName)) {
+                return new NumberColumnBuilder(name, dataTypeName, capacity, true);
+            } else if (BOOLEAN_TYPES.contains(dataTypeName)) {
+                return new BooleanColumnBuilder(name, dataTypeName, capacity);
+            }
+            return new StringColumnBuilder(name, dataTypeName, capacity);
+        }
+
+        /**
+         * Sets the value of a row from the current token of the parser.  Any rows skipped since the last value
+         * are made null.
+         */
+        final void append(int row, JsonParser parser) throws IOException
+        {
+            if (row >= capacity()) {
+                grow(Math.max(row + 1, capacity() * 2));
+            }
+            if (words(row + 1) > nulls.length) {
+                nulls = Arrays.copyOf(nulls, Math.max(words(row + 1), nulls.length * 2));
+            }
+            markNulls(size, row);
+
+            if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+                nulls[row >>> 6] |= 1L << row;
+                setNull(row);
+            } else {
+                set(row, parser);
+            }
+            size = row + 1;
+        }
+
+        final Column build(int rowCount)
+        {
+            if (rowCount > capacity()) {
+                grow(rowCount);
+            }
+            if (words(rowCount) > nulls.length) {
+                nulls = Arrays.copyOf(nulls, words(rowCount));
+            }
+            markNulls(size, rowCount);
+            size = rowCount;
+            return finish(rowCount, nulls.length == words(rowCount) ? nulls : Arrays.copyOf(nulls, words(rowCount)));
+        }
+
+        private void markNulls(int from, int to)
+        {
+            for (int i = from; i < to; i++) {
+                nulls[i >>> 6] |= 1L << i;
+                setNull(i);
+            }
+        }
+
+        abstract int capacity();
+
+        abstract void grow(int capacity);
+
+        abstract void set(int row, JsonParser parser) throws IOException;
+
+        abstract void setNull(int row);
+
+        abstract Column finish(int rowCount, long[] nulls);
+
+        JsonParseException unexpected(JsonParser parser, String expected) throws IOException
+        {
+            return new JsonParseException(parser, "Expected " + expected + " in column " + name + ", but got " + parser.getCurrentToken());
+        }
+
+        static int words(int bits)
+        {
+            return (bits + 63) >>> 6;
+        }
+    }
+
+    /**
+     * Numbers are held as longs until one comes along that doesn't fit, and then they are all moved to doubles.
+     */
+    private static final class NumberColumnBuilder extends ColumnBuilder
+    {
+        long[]   longs;
+        double[] doubles;
+
+        NumberColumnBuilder(String name, String dataTypeName, int capacity, boolean alwaysDouble)
+        {
+            super(name, dataTypeName, capacity);
+            if (alwaysDouble) {
+                doubles = new double[capacity];
+            } else {
+                longs = new long[capacity];
+            }
+        }
+
+        @Override
+        int capacity()
+        {
+            return longs != null ? longs.length : doubles.length;
+        }
+
+        @Override
+        void grow(int capacity)
+        {
+            if (longs != null) {
+                longs = Arrays.copyOf(longs, capacity);
+            } else {
+                doubles = Arrays.copyOf(doubles, capacity);
+            }
+        }
+
+        @Override
+        void set(int row, JsonParser parser) throws IOException
+        {
+            switch (parser.getCurrentToken()) {
+            case VALUE_NUMBER_INT:
+                if (longs != null && parser.getNumberType() != JsonParser.NumberType.BIG_INTEGER) {
+                    longs[row] = parser.getLongValue();
+                } else {
+                    setDouble(row, parser.getDoubleValue());
+                }
+                break;
+            case VALUE_NUMBER_FLOAT:
+                setDouble(row, parser.getDoubleValue());
+                break;
+            case VALUE_STRING:
+                //SODA2 sends numbers as strings, to keep their precision.
+                if (longs == null || !parseLong(row, parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength())) {
+                    try {
+                        setDouble(row, Double.parseDouble(parser.getText()));
+                    } catch (NumberFormatException e) {
+                        throw unexpected(parser, "a number");
+                    }
+                }
+                break;
+            default:
+                throw unexpected(parser, "a number");
+            }
+        }
+
+        @Override
+        void setNull(int row)
+        {
+            //The arrays start zeroed, and rows are only written once.
+        }
+
+        private boolean parseLong(int row, char[] chars, int offset, int length)
+        {
+            //18 digits always fit in a long, so there is no need to check for overflow.
+            final boolean negative = length > 0 && chars[offset] == '-';
+            final int start = negative ? 1 : 0;
+            if (length - start < 1 || length - start > 18) {
+                return false;
+            }
+
+            long value = 0;
+            for (int i = start; i < length; i++) {
+                final char c = chars[offset + i];
+                if (c < '0' || c > '9') {
+                    return false;
+                }
+                value = value * 10 + (c - '0');
+            }
+            longs[row] = negative ? -value : value;
+            return true;
+        }
+
+        private void setDouble(int row, double value)
+        {
+            if (longs != null) {
+                doubles = new double[longs.length];
+                for (int i = 0; i < size; i++) {
+                    doubles[i] = longs[i];
+                }
+                longs = null;
+            }
+            doubles[row] = value;
+        }
+
+        @Override
+        Column finish(int rowCount, long[] nulls)
+        {
+            if (longs != null) {
+                return new LongColumn(name, dataTypeName, rowCount, nulls, longs.length == rowCount ? longs : Arrays.copyOf(longs, rowCount));
+            }
+            return new DoubleColumn(name, dataTypeName, rowCount, nulls, doubles.length == rowCount ? doubles : Arrays.copyOf(doubles, rowCount));
+        }
+    }
+
+    private static final class BooleanColumnBuilder extends ColumnBuilder
+    {
+        long[] values;
+
+        BooleanColumnBuilder(String name, String dataTypeName, int capacity)
+        {
+            super(name, dataTypeName, capacity);
+            values = new long[words(capacity)];
+        }
+
+        @Override
+        int capacity()
+        {
+            return values.length << 6;
+        }
+
+        @Override
+        void grow(int capacity)
+        {
+            values = Arrays.copyOf(values, words(capacity));
+        }
+
+        @Override
+        void set(int row, JsonParser parser) throws IOException
+        {
+            final boolean value;
+            switch (parser.getCurrentToken()) {
+            case VALUE_TRUE:
+                value = true;
+                break;
+            case VALUE_FALSE:
+                value = false;
+                break;
+            case VALUE_STRING:
+                value = Boolean.parseBoolean(parser.getText());
+                break;
+            default:
+                throw unexpected(parser, "a boolean");
+            }
+
+            if (value) {
+                values[row >>> 6] |= 1L << row;
+            }
+        }
+
+        @Override
+        void setNull(int row)
+        {
+            //Null rows are left false.
+        }
+
+        @Override
+        Column finish(int rowCount, long[] nulls)
+        {
+            return new BooleanColumn(name, dataTypeName, rowCount, nulls, values.length == words(rowCount) ? values : Arrays.copyOf(values, words(rowCount)));
+        }
+    }
+
+    private static final class StringColumnBuilder extends ColumnBuilder
+    {
+        final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+        final List<String>         values = new ArrayList<String>();
+        int[] codes;
+
+        StringColumnBuilder(String name, String dataTypeName, int capacity)
+        {
+            super(name, dataTypeName, capacity);
+            codes = new int[capacity];
+        }
+
+        @Override
+        int capacity()
+        {
+            return codes.length;
+        }
+
+        @Override
+        void grow(int capacity)
+        {
+            codes = Arrays.copyOf(codes, capacity);
+        }
+
+        @Override
+        void set(int row, JsonParser parser) throws IOException
+        {
+            final String value;
+            switch (parser.getCurrentToken()) {
+            case START_OBJECT:
+            case START_ARRAY:
+                value = parser.readValueAsTree().toString();
+                break;
+            default:
+                value = parser.getText();
+                break;
+            }
+
+            Integer code = dictionary.get(value);
+            if (code == null) {
+                code = values.size();
+                dictionary.put(value, code);
+                values.add(value);
+            }
+            codes[row] = code;
+        }
+
+        @Override
+        void setNull(int row)
+        {
+            codes[row] = -1;
+        }
+
+        @Override
+        Column finish(int rowCount, long[] nulls)
+        {
+            return new StringColumn(name, dataTypeName, rowCount, nulls, codes.length == rowCount ? codes : Arrays.copyOf(codes, rowCount),
+                                    values.toArray(new String[values.size()]));
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.socrata.api;
+
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.glassfish.jersey.SslConfigurator;
+import org.glassfish.jersey.apache.connector.ApacheHttpClientBuilderConfigurator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration for the pool of connections the Apache based client in {@code HttpLowLevel} keeps to
+ * the SODA2 domain.  The default Apache pool only allows 2 connections per route, so callers that share
+ * a single HttpLowLevel across many threads will want to increase {@code maxPerRoute}.
+ *
+ * All times are in milliseconds.  A value of {@code 0} or less disables the corresponding behaviour.
+ */
+public class ConnectionPoolConfig
+{
+    public static final int  DEFAULT_MAX_TOTAL = 64;
+    public static final int  DEFAULT_MAX_PER_ROUTE = 32;
+    public static final long DEFAULT_IDLE_EVICTION_TIME = 60000;
+    public static final int  DEFAULT_VALIDATE_AFTER_INACTIVITY = 2000;
+    public static final long DEFAULT_TIME_TO_LIVE = -1;
+    public static final int  DEFAULT_MAX_ASYNC_THREADS = DEFAULT_MAX_PER_ROUTE;
+
+    private int  maxTotal = DEFAULT_MAX_TOTAL;
+    private int  maxPerRoute = DEFAULT_MAX_PER_ROUTE;
+    private long idleEvictionTime = DEFAULT_IDLE_EVICTION_TIME;
+    private int  validateAfterInactivity = DEFAULT_VALIDATE_AFTER_INACTIVITY;
+    private long timeToLive = DEFAULT_TIME_TO_LIVE;
+    private int  maxAsyncThreads = DEFAULT_MAX_ASYNC_THREADS;
+
+    /**
+     * Gets the max number of connections the pool will hold open across all routes.
+     * @return max number of connections the pool will hold open across all routes
+     */
+    public int getMaxTotal()
+    {
+        return maxTotal;
+    }
+
+    /**
+     * Sets the max number of connections the pool will hold open across all routes.
+     * @param maxTotal max number of connections the pool will hold open across all routes
+     * @return this config
+     */
+    public ConnectionPoolConfig setMaxTotal(int maxTotal)
+    {
+        if (maxTotal <= 0) {
+            throw new IllegalArgumentException("maxTotal must be greater than 0");
+        }
+        this.maxTotal = maxTotal;
+        return this;
+    }
+
+    /**
+     * Gets the max number of connections the pool will hold open to a single host.
+     * @return max number of connections the pool will hold open to a single host
+     */
+    public int getMaxPerRoute()
+    {
+        return maxPerRoute;
+    }
+
+    /**
+     * Sets the max number of connections the pool will hold open to a single host.
+     * @param maxPerRoute max number of connections the pool will hold open to a single host
+     * @return this config
+     */
+    public ConnectionPoolConfig setMaxPerRoute(int maxPerRoute)
+    {
+        if (maxPerRoute <= 0) {
+            throw new IllegalArgumentException("maxPerRoute must be greater than 0");
+        }
+        this.maxPerRoute = maxPerRoute;
+        return this;
+    }
+
+    /**
+     * Gets how long a connection may sit idle in the pool before a background thread closes it.
+     * @return idle time in milliseconds before a connection is evicted
+     */
+    public long getIdleEvictionTime()
+    {
+        return idleEvictionTime;
+    }
+
+    /**
+     * Sets how long a connection may sit idle in the pool before a background thread closes it.
+     * @param idleEvictionTime idle time in milliseconds before a connection is evicted.  {@code 0} disables eviction.
+     * @return this config
+     */
+    public ConnectionPoolConfig setIdleEvictionTime(long idleEvictionTime)
+    {
+        this.idleEvictionTime = idleEvictionTime;
+        return this;
+    }
+
+    /**
+     * Gets how long a pooled connection may be inactive before it is re-validated on lease.
+     * @return inactivity in milliseconds before a connection is re-validated
+     */
+    public int getValidateAfterInactivity()
+    {
+        return validateAfterInactivity;
+    }
+
+    /**
+     * Sets how long a pooled connection may be inactive before it is re-validated on lease.
+     * @param validateAfterInactivity inactivity in milliseconds before a connection is re-validated.  {@code 0} disables validation.
+     * @return this config
+     */
+    public ConnectionPoolConfig setValidateAfterInactivity(int validateAfterInactivity)
+    {
+        this.validateAfterInactivity = validateAfterInactivity;
+        return this;
+    }
+
+    /**
+     * Gets the total time a connection may live, regardless of activity.
+     * @return time to live in milliseconds
+     */
+    public long getTimeToLive()
+    {
+        return timeToLive;
+    }
+
+    /**
+     * Sets the total time a connection may live, regardless of activity.  This is useful when the domain
+     * sits behind a load balancer, so new connections get spread over the new set of backends.
+     * @param timeToLive time to live in milliseconds.  {@code 0} or less means connections live forever.
+     * @return this config
+     */
+    public ConnectionPoolConfig setTimeToLive(long timeToLive)
+    {
+        this.timeToLive = timeToLive;
+        return this;
+    }
+
+    /**
+     * Gets the max number of threads that run requests made through the async API of {@code HttpLowLevel}.
+     * @return max number of threads running async requests
+     */
+    public int getMaxAsyncThreads()
+    {
+        return maxAsyncThreads;
+    }
+
+    /**
+     * Sets the max number of threads that run requests made through the async API of {@code HttpLowLevel}.  The
+     * connectors are blocking, so each async request holds one of these threads until its response arrives, and
+     * requests past this many wait in a queue for a thread.  There is little point in this being larger than
+     * {@code maxPerRoute}, since a request also needs a connection.
+     * @param maxAsyncThreads max number of threads running async requests
+     * @return this config
+     */
+    public ConnectionPoolConfig setMaxAsyncThreads(int maxAsyncThreads)
+    {
+        if (maxAsyncThreads <= 0) {
+            throw new IllegalArgumentException("maxAsyncThreads must be greater than 0");
+        }
+        this.maxAsyncThreads = maxAsyncThreads;
+        return this;
+    }
+
+    /**
+     * Creates the connection manager described by this config.  The SSL set-up mirrors the one the Jersey
+     * ApacheConnector uses when it creates its own manager.
+     */
+    PoolingHttpClientConnectionManager createConnectionManager()
+    {
+        final Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", new SSLConnectionSocketFactory(SslConfigurator.getDefaultContext()))
+                .build();
+
+        final PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager(registry, null, null, null,
+                                                                                                  timeToLive, TimeUnit.MILLISECONDS);
+        manager.setMaxTotal(maxTotal);
+        manager.setDefaultMaxPerRoute(maxPerRoute);
+        manager.setValidateAfterInactivity(validateAfterInactivity);
+        return manager;
+    }
+
+    /**
+     * Creates the hook that lets the Apache client builder run the idle and expired connection evictor.
+     */
+    ApacheHttpClientBuilderConfigurator createBuilderConfigurator()
+    {
+        return new ApacheHttpClientBuilderConfigurator()
+        {
+            @Override
+            public HttpClientBuilder configure(HttpClientBuilder httpClientBuilder)
+            {
+                if (idleEvictionTime > 0) {
+                    httpClientBuilder.evictIdleConnections(idleEvictionTime, TimeUnit.MILLISECONDS);
+                }
+                if (timeToLive > 0) {
+                    httpClientBuilder.evictExpiredConnections();
+                }
+                return httpClientBuilder;
+            }
+        };
+    }
+}
@@ -0,0 +1,58 @@
+package com.socrata.api;
+
+/**
+ * A snapshot of the connection pool used by {@code HttpLowLevel}.
+ */
+public class ConnectionPoolStats
+{
+    public final int leased;
+    public final int pending;
+    public final int available;
+    public final int max;
+
+    public ConnectionPoolStats(int leased, int pending, int available, int max)
+    {
+        this.leased = leased;
+        this.pending = pending;
+        this.available = available;
+        this.max = max;
+    }
+
+    /**
+     * @return the number of connections currently in use by a request
+     */
+    public int getLeased()
+    {
+        return leased;
+    }
+
+    /**
+     * @return the number of requests waiting for a connection to become available
+     */
+    public int getPending()
+    {
+        return pending;
+    }
+
+    /**
+     * @return the number of idle connections ready to be leased
+     */
+    public int getAvailable()
+    {
+        return available;
+    }
+
+    /**
+     * @return the max number of connections the pool will hold
+     */
+    public int getMax()
+    {
+        return max;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ConnectionPoolStats{leased=" + leased + ", pending=" + pending + ", available=" + available + ", max=" + max + "}";
+    }
+}
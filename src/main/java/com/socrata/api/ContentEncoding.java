@@ -6,7 +6,8 @@ package com.socrata.api;
 public enum ContentEncoding
 {
     IDENTITY("identity"),   //Don't compress
-    GZIP("gzip");           //Use GZIP compression
+    GZIP("gzip"),           //Use GZIP compression
+    PARALLEL_GZIP("gzip");  //Use GZIP compression, compressing blocks on every core
 
 
     final String header;
@@ -0,0 +1,108 @@
+package com.socrata.api;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A PollingPolicy that honors the server's Retry-After time when one is sent, and otherwise backs
+ * off exponentially with jitter, up to a maximum delay.  Polling gives up once the overall deadline passes, and a
+ * Retry-After is only ever cut short by that deadline.
+ *
+ * All times are in milliseconds.
+ */
+public class ExponentialBackoffPollingPolicy implements PollingPolicy
+{
+    public static final long   DEFAULT_INITIAL_DELAY = 1000;
+    public static final long   DEFAULT_MAX_DELAY = 16000;
+    public static final double DEFAULT_MULTIPLIER = 2.0;
+    public static final double DEFAULT_JITTER = 0.25;
+    public static final long   DEFAULT_DEADLINE = 0;
+
+    private final long   initialDelay;
+    private final long   maxDelay;
+    private final double multiplier;
+    private final double jitter;
+    private final long   deadline;
+
+    /**
+     * Creates a policy with the default settings, and no overall deadline.
+     */
+    public ExponentialBackoffPollingPolicy()
+    {
+        this(DEFAULT_INITIAL_DELAY, DEFAULT_MAX_DELAY, DEFAULT_MULTIPLIER, DEFAULT_JITTER, DEFAULT_DEADLINE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param initialDelay the delay before the second poll, when the server does not send a Retry-After.
+     * @param maxDelay the cap on any single computed delay.  Delays requested by the server with a Retry-After are not capped.
+     * @param multiplier the factor each successive delay grows by.
+     * @param jitter the fraction (between 0 and 1) of each computed delay that is randomized, so concurrent pollers spread out.
+     * @param deadline the total time to keep polling for before giving up.  {@code 0} or less means no deadline.
+     */
+    public ExponentialBackoffPollingPolicy(long initialDelay, long maxDelay, double multiplier, double jitter, long deadline)
+    {
+        if (initialDelay < 0 || maxDelay < initialDelay) {
+            throw new IllegalArgumentException("Delays must satisfy 0 <= initialDelay <= maxDelay");
+        }
+        if (multiplier < 1.0) {
+            throw new IllegalArgumentException("multiplier must be at least 1");
+        }
+        if (jitter < 0.0 || jitter > 1.0) {
+            throw new IllegalArgumentException("jitter must be between 0 and 1");
+        }
+
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+        this.multiplier = multiplier;
+        this.jitter = jitter;
+        this.deadline = deadline;
+    }
+
+    @Override
+    public long nextPollDelay(long attempt, long retryAfter, long elapsed)
+    {
+        long delay;
+        if (retryAfter > 0) {
+            delay = Math.max(retryAfter - System.currentTimeMillis(), 0);
+        } else {
+            final double backoff = Math.min(initialDelay * Math.pow(multiplier, Math.max(attempt - 1, 0)), maxDelay);
+            delay = (long) (backoff * (1.0 - jitter) + backoff * jitter * ThreadLocalRandom.current().nextDouble());
+        }
+
+        if (deadline > 0) {
+            final long remaining = deadline - elapsed;
+            if (remaining <= 0) {
+                return -1;
+            }
+            delay = Math.min(delay, remaining);
+        }
+
+        return delay;
+    }
+
+    public long getInitialDelay()
+    {
+        return initialDelay;
+    }
+
+    public long getMaxDelay()
+    {
+        return maxDelay;
+    }
+
+    public double getMultiplier()
+    {
+        return multiplier;
+    }
+
+    public double getJitter()
+    {
+        return jitter;
+    }
+
+    public long getDeadline()
+    {
+        return deadline;
+    }
+}
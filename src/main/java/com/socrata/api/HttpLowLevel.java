@@ -1,16 +1,24 @@
 package com.socrata.api;
 
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.socrata.exceptions.*;
 import com.socrata.model.SodaErrorResponse;
 import com.socrata.model.requests.SodaRequest;
 import com.socrata.utils.JacksonObjectMapperProvider;
 import com.socrata.utils.ObjectMapperFactory;
+import com.socrata.utils.SingleFlight;
+import com.socrata.utils.streams.BufferPool;
 import com.socrata.utils.streams.CompressingGzipInputStream;
+import com.socrata.utils.streams.MappedFileInputStream;
+import com.socrata.utils.streams.ParallelGzipOutputStream;
 import org.glassfish.jersey.client.JerseyClient;
+import javax.ws.rs.ProcessingException;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.GenericType;
 import javax.ws.rs.client.Entity;
@@ -19,14 +27,19 @@ import org.glassfish.jersey.client.JerseyClientBuilder;
 import org.glassfish.jersey.client.JerseyInvocation;
 import org.glassfish.jersey.client.ClientConfig;
 import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.RequestEntityProcessing;
 import org.glassfish.jersey.client.authentication.HttpAuthenticationFeature;
 import org.glassfish.jersey.client.HttpUrlConnectorProvider;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
 import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.media.multipart.FormDataBodyPart;
+import org.glassfish.jersey.media.multipart.FormDataContentDisposition;
 import org.glassfish.jersey.media.multipart.FormDataMultiPart;
 import org.glassfish.jersey.media.multipart.MultiPartFeature;
-import org.glassfish.jersey.media.multipart.file.FileDataBodyPart;
 import org.glassfish.jersey.jackson.JacksonFeature;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.format.DateTimeFormat;
@@ -39,14 +52,28 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.StreamingOutput;
 import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.reflect.Type;
 import java.net.*;
+import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
 
 
 /**
@@ -73,6 +100,16 @@ public final class HttpLowLevel
     protected static final int DEFAULT_STATUS_CHECK_ERROR_RETRIES = 5;
     protected static final long DEFAULT_STATUS_CHECK_ERROR_TIME = 4000;
 
+    protected static final int DEFAULT_ASYNC_SCHEDULER_THREADS = 2;
+
+    private static final int GZIP_BUFFER_SIZE = 65536;
+    private static final int STREAM_BUFFER_SIZE = 16384;
+
+    /**
+     * Files are copied out of their mapping in larger slices, so a large upload makes fewer, larger writes.
+     */
+    private static final int FILE_BUFFER_SIZE = 256 * 1024;
+
     public static final String SODA_VERSION = "$$version";
     public static final String NBE_FLAG = "nbe";
     public static final String SOCRATA_TOKEN_HEADER = "X-App-Token";
@@ -98,21 +135,33 @@ public final class HttpLowLevel
     private long retryTime = DEFAULT_RETRY_TIME;
     private long maxRetries = DEFAULT_MAX_RETRIES;
     private ContentEncoding contentEncodingForUpserts = ContentEncoding.IDENTITY;
+    private PollingPolicy pollingPolicy = new ExponentialBackoffPollingPolicy();
+    private boolean customPollingPolicy = false;
+    private volatile SodaMetricsListener metricsListener = SodaMetricsListener.NONE;
+    private volatile ResponseCache responseCache;
+    private volatile boolean coalesceQueries = true;
+    private final SingleFlight<String, byte[]> queriesInFlight = new SingleFlight<String, byte[]>();
 
     private final ConcurrentHashMap<String, String> additionalParams = new ConcurrentHashMap<String, String>();
 
     private int statusCheckErrorRetries = DEFAULT_STATUS_CHECK_ERROR_RETRIES;
     private long statusCheckErrorTime = DEFAULT_STATUS_CHECK_ERROR_TIME;
 
+    private ScheduledExecutorService asyncScheduler;
+    private boolean ownsAsyncScheduler;
+    private ExecutorService asyncRequestExecutor;
+    private final int asyncThreads;
+
     /**
      * Creates a client with the appropriate mappers and features turned on to
      * most easily map from SODA2 data types to Java data types.
      *
      * This call will honor {@code https.proxyHost} and {@code https.proxyPort} for setting a proxy.
      *
+     * @param poolConfig the connection pool to use for the Apache client.  This is ignored if {@code apache} is false.
      * @return the Client that was created.
      */
-    private static JerseyClient createClient(boolean apache) {
+    private static JerseyClient createClient(boolean apache, @Nonnull ConnectionPoolConfig poolConfig) {
         String  proxyHost = System.getProperty("https.proxyHost");
         Integer proxyPort = null;
         if (StringUtils.isNotEmpty(proxyHost)) {
@@ -122,7 +171,7 @@ public final class HttpLowLevel
             }
         }
 
-        return createClient(proxyHost, proxyPort, apache);
+        return createClient(proxyHost, proxyPort, apache, poolConfig);
     }
 
     /**
@@ -131,10 +180,11 @@ public final class HttpLowLevel
      *
      * @param proxyHost the host to use a proxy.  If {@code null}, this will not use a proxy.
      * @param proxyPort the port to use for the proxy host.  If {@code null}, this will use the default HTTP port.
+     * @param poolConfig the connection pool to use for the Apache client.  This is ignored if {@code apache} is false.
      *
      * @return the Client that was created.
      */
-    private static JerseyClient createClient(@Nullable final String proxyHost, @Nullable final Integer proxyPort, boolean apache) {
+    private static JerseyClient createClient(@Nullable final String proxyHost, @Nullable final Integer proxyPort, boolean apache, @Nonnull final ConnectionPoolConfig poolConfig) {
         final ClientConfig clientConfig = new ClientConfig();
         clientConfig.register(JacksonObjectMapperProvider.class);
         clientConfig.register(JacksonFeature.class);
@@ -147,6 +197,9 @@ public final class HttpLowLevel
                 System.out.println("SETTING PROXY URI to " + proxyUri);
                 clientConfig.property(ClientProperties.PROXY_URI, proxyUri);
             }
+            clientConfig.property(ApacheClientProperties.CONNECTION_MANAGER, poolConfig.createConnectionManager());
+            clientConfig.property(ClientProperties.ASYNC_THREADPOOL_SIZE, poolConfig.getMaxAsyncThreads());
+            clientConfig.register(poolConfig.createBuilderConfigurator());
             clientConfig.connectorProvider(cp);
         } else {
             HttpUrlConnectorProvider cp = new HttpUrlConnectorProvider();
@@ -168,7 +221,19 @@ public final class HttpLowLevel
      */
     public static final HttpLowLevel instantiate(@Nonnull final String url)
     {
-        return new HttpLowLevel(createClient(false), createClient(true), url);
+        return instantiate(url, new ConnectionPoolConfig());
+    }
+
+    /**
+     * Create an anonymous connection to a SODA2 domain rooted at {@code url}, using a custom connection pool.
+     *
+     * @param url the base URL for the SODA2 domain to access.
+     * @param poolConfig the configuration for the pool of connections kept to the domain.
+     * @return HttpLowLevel object that is completely configured to use.
+     */
+    public static final HttpLowLevel instantiate(@Nonnull final String url, @Nonnull final ConnectionPoolConfig poolConfig)
+    {
+        return new HttpLowLevel(createClient(false, poolConfig), createClient(true, poolConfig), url);
     }
 
     /**
@@ -182,13 +247,30 @@ public final class HttpLowLevel
      */
     public static final HttpLowLevel instantiateBasic(@Nonnull final String url, @Nonnull final String userName, @Nonnull final String password, @Nullable final String token, @Nullable final String requestId)
     {
-        return new HttpLowLevel(createClientBasic(false, userName, password, token, requestId),
-                                createClientBasic(true, userName, password, token, requestId),
+        return instantiateBasic(url, userName, password, token, requestId, new ConnectionPoolConfig());
+    }
+
+    /**
+     * Create an HttpLowLevel object that is set-up with the appropriate authentication credentials, using a custom
+     * connection pool.
+     *
+     * @param url the base URL for the SODA2 domain to access.
+     * @param userName user name to log in as
+     * @param password password to log in with
+     * @param token the App Token to use for authorization and usage tracking.  If this is {@code null}, no value will be sent.
+     * @param requestId a 32 character id unique to a single SODA 2 publish operation.  If this is {@code null}, no value will be sent.
+     * @param poolConfig the configuration for the pool of connections kept to the domain.
+     * @return HttpLowLevel object that is completely configured to use.
+     */
+    public static final HttpLowLevel instantiateBasic(@Nonnull final String url, @Nonnull final String userName, @Nonnull final String password, @Nullable final String token, @Nullable final String requestId, @Nonnull final ConnectionPoolConfig poolConfig)
+    {
+        return new HttpLowLevel(createClientBasic(false, userName, password, token, requestId, poolConfig),
+                                createClientBasic(true, userName, password, token, requestId, poolConfig),
                                 url);
     }
 
-    private static JerseyClient createClientBasic(boolean apache, @Nonnull String userName, @Nonnull String password, @Nullable String token, @Nullable String requestId) {
-        final JerseyClient client = createClient(apache);
+    private static JerseyClient createClientBasic(boolean apache, @Nonnull String userName, @Nonnull String password, @Nullable String token, @Nullable String requestId, @Nonnull ConnectionPoolConfig poolConfig) {
+        final JerseyClient client = createClient(apache, poolConfig);
         client.register(HttpAuthenticationFeature.basic(userName, password));
         if (token != null) {
             client.register(new SodaTokenFilter(token));
@@ -208,9 +290,16 @@ public final class HttpLowLevel
         return client;
     }
 
+    /**
+     * Constructor.  The connection adds its own filters to a copy of the client's configuration, so the client
+     * passed in is left as it is, and can be shared.
+     *
+     * @param client the Jersey Client class whose configuration will be used for actually issuing requests
+     * @param url the base URL for the SODA2 domain to access.
+     */
     @Deprecated
     public HttpLowLevel(final JerseyClient client, final String url) {
-        this(client, client, url, ObjectMapperFactory.create());
+        this(copyOf(client), null, url, ObjectMapperFactory.create());
     }
 
     private HttpLowLevel(final JerseyClient httpClient, final JerseyClient apacheClient, final String url) {
@@ -219,22 +308,73 @@ public final class HttpLowLevel
 
 
     /**
-     * Constructor
+     * Constructor.  The connection adds its own filters to a copy of the client's configuration, so the client
+     * passed in is left as it is, and can be shared.
      *
-     * @param client the Jersey Client class that will be used for actually issuing requests
+     * @param client the Jersey Client class whose configuration will be used for actually issuing requests
      * @param url the base URL for the SODA2 domain to access.
      */
     @Deprecated
     public HttpLowLevel(final JerseyClient client, final String url, final ObjectMapper mapper)
     {
-        this(client, client, url, mapper);
+        this(copyOf(client), null, url, mapper);
     }
 
-    private HttpLowLevel(final JerseyClient httpClient, final JerseyClient apacheClient, final String url, final ObjectMapper mapper) {
+    /**
+     * @param httpClient a client only this connection uses, so its filters can be registered on it
+     * @param apacheClient a second such client for the requests that need the Apache connector, or {@code null}
+     *                     to use {@code httpClient} for everything
+     */
+    private HttpLowLevel(final JerseyClient httpClient, @Nullable final JerseyClient apacheClient, final String url, final ObjectMapper mapper) {
         this.httpClient = httpClient;
-        this.apacheClient = apacheClient;
+        this.apacheClient = (apacheClient != null) ? apacheClient : httpClient;
+        this.asyncThreads = asyncThreadPoolSize(this.apacheClient);
         this.url = url;
         this.mapper = mapper;
+
+        //The metrics filter sits alongside the UserAgentFilter and friends, but needs this instance to find
+        //the current listener, so it is registered here rather than when the clients are created.
+        final SodaMetricsFilter metricsFilter = new SodaMetricsFilter(this);
+        this.apacheClient.register(metricsFilter);
+        this.apacheClient.register(new ResponseCacheFilter(this));
+        if (httpClient != this.apacheClient) {
+            httpClient.register(metricsFilter);
+        }
+    }
+
+    /**
+     * @return a new client with the same configuration, SSL context and hostname verifier as the one given.  If
+     *         the client doesn't bound the threads its async requests run on, the copy uses
+     *         {@link ConnectionPoolConfig#DEFAULT_MAX_ASYNC_THREADS}.
+     */
+    private static JerseyClient copyOf(final JerseyClient client)
+    {
+        final JerseyClientBuilder builder = new JerseyClientBuilder()
+                .withConfig(client.getConfiguration())
+                .sslContext(client.getSslContext());
+        if (client.getHostnameVerifier() != null) {
+            builder.hostnameVerifier(client.getHostnameVerifier());
+        }
+        if (asyncThreadPoolSize(client) <= 0) {
+            builder.property(ClientProperties.ASYNC_THREADPOOL_SIZE, ConnectionPoolConfig.DEFAULT_MAX_ASYNC_THREADS);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return the number of threads the client runs async requests on, or 0 if it isn't bounded.
+     */
+    private static int asyncThreadPoolSize(final JerseyClient client)
+    {
+        final Object size = client.getConfiguration().getProperty(ClientProperties.ASYNC_THREADPOOL_SIZE);
+        if (size instanceof Number) {
+            return ((Number) size).intValue();
+        }
+        try {
+            return (size != null) ? Integer.parseInt(size.toString()) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
     }
 
     /**
@@ -257,12 +397,110 @@ public final class HttpLowLevel
     }
 
     /**
-     * Sets the number of milliseconds to wait before following a 202
+     * Sets the number of milliseconds to wait before following a 202.  Unless a policy has been set with
+     * {@link #setPollingPolicy(PollingPolicy)}, this also becomes the initial delay of the default
+     * {@link ExponentialBackoffPollingPolicy}, so later polls back off from it rather than from one second.
      * @param retryTime number of milliseconds to wait before following a 202
      */
     public void setRetryTime(long retryTime)
     {
         this.retryTime = retryTime;
+        if (!customPollingPolicy) {
+            final long initialDelay = Math.max(retryTime, 0);
+            pollingPolicy = new ExponentialBackoffPollingPolicy(initialDelay,
+                                                                Math.max(initialDelay, ExponentialBackoffPollingPolicy.DEFAULT_MAX_DELAY),
+                                                                ExponentialBackoffPollingPolicy.DEFAULT_MULTIPLIER,
+                                                                ExponentialBackoffPollingPolicy.DEFAULT_JITTER,
+                                                                ExponentialBackoffPollingPolicy.DEFAULT_DEADLINE);
+        }
+    }
+
+    /**
+     * Gets the policy that decides how long to wait between polls of a long running request.
+     * @return the policy used for polling 202 responses
+     */
+    public PollingPolicy getPollingPolicy()
+    {
+        return pollingPolicy;
+    }
+
+    /**
+     * Sets the policy that decides how long to wait between polls of a long running request.  The
+     * first poll always waits the time the original 202 asked for; this policy decides every wait after that.
+     * @param pollingPolicy the policy to use for polling 202 responses
+     */
+    public void setPollingPolicy(@Nonnull PollingPolicy pollingPolicy)
+    {
+        this.pollingPolicy = pollingPolicy;
+        this.customPollingPolicy = true;
+    }
+
+    /**
+     * Gets the listener that is told about the requests this connection makes.
+     * @return the metrics listener.  This is {@link SodaMetricsListener#NONE} unless one has been set.
+     */
+    public SodaMetricsListener getMetricsListener()
+    {
+        return metricsListener;
+    }
+
+    /**
+     * Sets the listener that is told about the requests this connection makes, such as their latency, size and
+     * status, time spent polling long running requests, errors and upsert row counts.
+     * @param metricsListener the listener to use, or {@link SodaMetricsListener#NONE} to stop reporting
+     */
+    public void setMetricsListener(@Nonnull SodaMetricsListener metricsListener)
+    {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * Gets the cache query results are kept in.
+     * @return the response cache, or {@code null} if queries are not cached.
+     */
+    @Nullable
+    public ResponseCache getResponseCache()
+    {
+        return responseCache;
+    }
+
+    /**
+     * Sets the cache to keep query results in, so repeated queries are answered from it or revalidated with the
+     * server instead of being downloaded again.  Queries are not cached unless this is set.
+     * @param responseCache the cache to use, or {@code null} to stop caching
+     */
+    public void setResponseCache(@Nullable ResponseCache responseCache)
+    {
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * Gets whether identical queries made at the same time on different threads share a single request.
+     * @return true if identical concurrent queries are coalesced
+     */
+    public boolean isCoalesceQueries()
+    {
+        return coalesceQueries;
+    }
+
+    /**
+     * Sets whether identical queries made at the same time on different threads share a single request.  When they
+     * do, the first thread makes the request and the others wait for its response, which each decodes for itself.
+     * This is on by default.
+     * @param coalesceQueries true to coalesce identical concurrent queries
+     */
+    public void setCoalesceQueries(boolean coalesceQueries)
+    {
+        this.coalesceQueries = coalesceQueries;
+    }
+
+    /**
+     * Gets the number of queries that were answered by joining an identical query already in flight.
+     * @return the number of coalesced queries
+     */
+    public long getCoalescedQueryCount()
+    {
+        return queriesInFlight.getSharedCount();
     }
 
     /**
@@ -335,6 +573,9 @@ public final class HttpLowLevel
      * Sets the content encoding for upserts.  This defaults to GZIP, which basically
      * means uncompressed streams will be gzipped before being sent up to the Socrata Service
      *
+     * This applies to upserts and replaces of both streams and collections of objects.  PARALLEL_GZIP
+     * compresses on every core, which helps when a single core can not compress as fast as the network sends.
+     *
      * @param contentEncodingForUpserts content encoding of the upserts.  If this is Identity, no encodings will be added.
      */
     public void setContentEncodingForUpserts(ContentEncoding contentEncodingForUpserts)
@@ -342,6 +583,63 @@ public final class HttpLowLevel
         this.contentEncodingForUpserts = contentEncodingForUpserts;
     }
 
+    /**
+     * Sets the scheduler used for polling long running requests issued through the async API.  By default,
+     * a small pool of daemon threads is created the first time it is needed, and shut down when this
+     * HttpLowLevel is closed.  A scheduler set through this method is owned by the caller, and will NOT be
+     * shut down on close.
+     *
+     * @param asyncScheduler the scheduler to use for polling 202 responses.
+     */
+    public synchronized void setAsyncScheduler(@Nonnull ScheduledExecutorService asyncScheduler)
+    {
+        if (this.asyncScheduler != null && ownsAsyncScheduler) {
+            this.asyncScheduler.shutdown();
+        }
+        this.asyncScheduler = asyncScheduler;
+        this.ownsAsyncScheduler = false;
+    }
+
+    /**
+     * Gets the scheduler used for polling long running requests issued through the async API, creating
+     * it if needed.
+     *
+     * @return the scheduler used for polling 202 responses.
+     */
+    public synchronized ScheduledExecutorService getAsyncScheduler()
+    {
+        if (asyncScheduler == null) {
+            asyncScheduler = Executors.newScheduledThreadPool(DEFAULT_ASYNC_SCHEDULER_THREADS, new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("soda-async-%d")
+                    .build());
+            ownsAsyncScheduler = true;
+        }
+        return asyncScheduler;
+    }
+
+    /**
+     * Gets the executor that long running requests polled through the async API are re-run on, when they are
+     * re-run by re-issuing the original request.  Those requests block, so they are kept off the async scheduler,
+     * which only does the timing.
+     *
+     * @return the executor used for re-running long running requests.
+     */
+    private synchronized ExecutorService getAsyncRequestExecutor()
+    {
+        if (asyncRequestExecutor == null) {
+            final int threads = (asyncThreads > 0) ? asyncThreads : ConnectionPoolConfig.DEFAULT_MAX_ASYNC_THREADS;
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactoryBuilder()
+                            .setDaemon(true)
+                            .setNameFormat("soda-async-request-%d")
+                            .build());
+            executor.allowCoreThreadTimeOut(true);
+            asyncRequestExecutor = executor;
+        }
+        return asyncRequestExecutor;
+    }
+
     /**
      * Get the map of additional parameters for this HttpLowLevel.  These parameters
      * will be added to every request.  The map returned will be thread safe for modifications.
@@ -352,6 +650,23 @@ public final class HttpLowLevel
         return this.additionalParams;
     }
 
+    /**
+     * Gets a snapshot of the pool of connections used for SODA2 requests.
+     *
+     * @return the current pool statistics, or {@code null} if this HttpLowLevel was created with a client
+     * that does not use a pooled Apache connection manager.
+     */
+    @Nullable
+    public ConnectionPoolStats getConnectionPoolStats() {
+        final Object manager = apacheClient.getConfiguration().getProperty(ApacheClientProperties.CONNECTION_MANAGER);
+        if (!(manager instanceof PoolingHttpClientConnectionManager)) {
+            return null;
+        }
+
+        final PoolStats stats = ((PoolingHttpClientConnectionManager) manager).getTotalStats();
+        return new ConnectionPoolStats(stats.getLeased(), stats.getPending(), stats.getAvailable(), stats.getMax());
+    }
+
     public UriBuilder uriBuilder() {
         return UriBuilder.fromUri(url);
     }
@@ -371,9 +686,7 @@ public final class HttpLowLevel
     public Response follow202(final URI uri, final MediaType mediaType, final long retryTime, final SodaRequest request2Rerun) throws InterruptedException, LongRunningQueryException, SodaError
     {
         if (retryTime > 0) {
-            synchronized (this) {
-                this.wait(retryTime);
-            }
+            Thread.sleep(retryTime);
         }
 
         if (uri != null) {
@@ -428,7 +741,66 @@ public final class HttpLowLevel
     }
 
     /**
-     * Method to check the async callbacks for new responses.
+     * Runs a read only request, sharing it with any identical request already in flight on another thread.  If
+     * other callers have joined the request by the time its response arrives, the response body is read in full and
+     * shared, and each caller decodes its own copy of the result.  Otherwise, the result is decoded straight from
+     * the response as it is read.
+     *
+     * @param uri the URI the request is for, which identifies identical requests
+     * @param mediaType the MIME Type accepted by this client
+     * @param type the type to decode the response as
+     * @param requester issues the request, and re-runs it if it is long running
+     * @return the decoded response
+     *
+     * @throws SodaError  thrown if there is an error.  Investigate the structure for more information.
+     * @throws InterruptedException throws is the thread is interrupted.
+     */
+    <T> T queryShared(final URI uri, final MediaType mediaType, final Type type, final SodaRequest requester) throws SodaError, InterruptedException
+    {
+        final JavaType javaType = mapper.getTypeFactory().constructType(type);
+        final AtomicReference<T> decoded = new AtomicReference<T>();
+        final SingleFlight.DetachableCall<byte[]> call = flight -> {
+            Response response;
+            try {
+                response = requester.issueRequest();
+            } catch (LongRunningQueryException e) {
+                response = getAsyncResults(e.location, mediaType, e.timeToRetry, getMaxRetries(), requester);
+            }
+
+            try {
+                if (flight.detach()) {
+                    try {
+                        decoded.set(mapper.<T>readValue(response.readEntity(InputStream.class), javaType));
+                    } catch (IOException e) {
+                        throw new ProcessingException("Unable to decode the response from " + uri, e);
+                    }
+                    return null;
+                }
+                return response.readEntity(byte[].class);
+            } finally {
+                response.close();
+            }
+        };
+
+        final byte[] body = coalesceQueries ?
+                queriesInFlight.execute(mediaType + " " + uri.toASCIIString(), call) :
+                call.call(SingleFlight.UNSHARED);
+        if (body == null) {
+            //This caller's request wasn't shared, so it has already been decoded.
+            return decoded.get();
+        }
+
+        try {
+            return mapper.readValue(body, javaType);
+        } catch (IOException e) {
+            throw new ProcessingException("Unable to decode the response from " + uri, e);
+        }
+    }
+
+    /**
+     * Method to check the async callbacks for new responses.  After the first poll, the time to wait
+     * between polls is decided by the {@link PollingPolicy}, which may also give up before {@code numRetries}
+     * is reached.
      *
      * @param uri the URI to go to for responses.
      * @param waitTime the time to wait until the first response
@@ -441,19 +813,137 @@ public final class HttpLowLevel
      */
     final public Response getAsyncResults(URI uri, MediaType mediaType, long waitTime, long numRetries, SodaRequest request2Rerun) throws SodaError, InterruptedException
     {
+        final PollingPolicy policy = pollingPolicy;
+        final SodaMetricsListener listener = metricsListener;
+        final long startTime = System.currentTimeMillis();
+        long polls = 0;
+        boolean completed = false;
 
-        for (int i=0; i<numRetries; i++) {
+        try {
+            for (long i=0; i<numRetries; i++) {
 
+                listener.longRunningRequestPolled(i + 1, waitTime);
+                polls = i + 1;
+                try {
+                    final Response response = follow202(uri, mediaType, waitTime, request2Rerun);
+                    completed = true;
+                    return response;
+                } catch (LongRunningQueryException e) {
+                    if (e.location != null) {
+                        uri = e.location;
+                    }
+                    waitTime = policy.nextPollDelay(i + 1, e.retryAfter, System.currentTimeMillis() - startTime);
+                    if (waitTime < 0) {
+                        break;
+                    }
+                }
+            }
+
+            throw new SodaError("Long running result did not complete within the allotted time.");
+        } finally {
+            listener.longRunningRequestCompleted(polls, System.currentTimeMillis() - startTime, completed);
+        }
+    }
+
+    /**
+     * Async version of {@link #getAsyncResults(URI, MediaType, long, long, GenericType, SodaRequest)}.  The polling
+     * is timed on the async scheduler, so no thread is parked between polls.  Each poll itself still holds a
+     * thread while it is in flight, as described in {@link #queryRawAsync(URI, MediaType)}; polls that re-issue the
+     * original request run on a separate pool of the same size, rather than on the scheduler.
+     *
+     * @param uri the URI to go to for responses.
+     * @param waitTime the time to wait until the first response
+     * @param numRetries the total number of times to retry before failing.
+     * @param cls the GenericType describing the class of the object to return.
+     * @param request2Rerun the object to use to re-run the request.
+     * @return a future holding the object returned for a successful response.  If there is an error, the future
+     * will complete exceptionally with a {@link SodaError}.
+     */
+    final public <T> CompletableFuture<T> getAsyncResultsAsync(URI uri, MediaType mediaType, long waitTime, long numRetries, final GenericType<T> cls, SodaRequest request2Rerun)
+    {
+        return getAsyncResultsAsync(uri, mediaType, waitTime, numRetries, request2Rerun).thenApply(response -> {
             try {
-                return follow202(uri, mediaType, waitTime, request2Rerun);
-            } catch (LongRunningQueryException e) {
-                if (e.location != null) {
-                    uri = e.location;
+                return response.readEntity(cls);
+            } finally {
+                response.close();
+            }
+        });
+    }
+
+    /**
+     * Async version of {@link #getAsyncResults(URI, MediaType, long, long, SodaRequest)}.  The polling
+     * is timed on the async scheduler, so no thread is parked between polls.  Each poll itself still holds a
+     * thread while it is in flight, as described in {@link #queryRawAsync(URI, MediaType)}; polls that re-issue the
+     * original request run on a separate pool of the same size, rather than on the scheduler.
+     *
+     * @param uri the URI to go to for responses.
+     * @param waitTime the time to wait until the first response
+     * @param numRetries the total number of times to retry before failing.
+     * @param request2Rerun the object to use to re-run the request.
+     * @return a future holding the Response for a successful response.  If there is an error, the future
+     * will complete exceptionally with a {@link SodaError}.
+     */
+    final public CompletableFuture<Response> getAsyncResultsAsync(URI uri, MediaType mediaType, long waitTime, long numRetries, SodaRequest request2Rerun)
+    {
+        final CompletableFuture<Response> result = new CompletableFuture<Response>();
+        scheduleFollow202(result, uri, mediaType, Math.max(waitTime, 0), numRetries, 0, pollingPolicy, System.currentTimeMillis(), request2Rerun);
+        return result;
+    }
+
+    private void scheduleFollow202(final CompletableFuture<Response> result, final URI uri, final MediaType mediaType,
+                                   final long waitTime, final long numRetries, final long attempt,
+                                   final PollingPolicy policy, final long startTime, final SodaRequest request2Rerun)
+    {
+        if (result.isDone()) {
+            return;
+        }
+
+        final SodaMetricsListener listener = metricsListener;
+        if (attempt >= numRetries || waitTime < 0) {
+            listener.longRunningRequestCompleted(attempt, System.currentTimeMillis() - startTime, false);
+            result.completeExceptionally(new SodaError("Long running result did not complete within the allotted time."));
+            return;
+        }
+
+        listener.longRunningRequestPolled(attempt + 1, waitTime);
+        getAsyncScheduler().schedule(() -> follow202Async(uri, mediaType, request2Rerun).whenComplete((response, t) -> {
+            if (t == null) {
+                listener.longRunningRequestCompleted(attempt + 1, System.currentTimeMillis() - startTime, true);
+                if (!result.complete(response)) {
+                    response.close();
                 }
+                return;
             }
+
+            final Throwable cause = unwrapCompletionException(t);
+            if (cause instanceof LongRunningQueryException) {
+                final LongRunningQueryException e = (LongRunningQueryException) cause;
+                final long nextWait = policy.nextPollDelay(attempt + 1, e.retryAfter, System.currentTimeMillis() - startTime);
+                scheduleFollow202(result, e.location != null ? e.location : uri, mediaType, nextWait, numRetries, attempt + 1, policy, startTime, request2Rerun);
+            } else {
+                listener.longRunningRequestCompleted(attempt + 1, System.currentTimeMillis() - startTime, false);
+                result.completeExceptionally(cause);
+            }
+        }), waitTime, TimeUnit.MILLISECONDS);
+    }
+
+    private CompletableFuture<Response> follow202Async(final URI uri, final MediaType mediaType, final SodaRequest request2Rerun)
+    {
+        if (uri != null) {
+            return queryRawAsync(uri, mediaType);
         }
 
-        throw new SodaError("Long running result did not complete within the allotted time.");
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return request2Rerun.issueRequest();
+                } catch (LongRunningQueryException | SodaError e) {
+                    throw new CompletionException(e);
+                }
+            }, getAsyncRequestExecutor());
+        } catch (RuntimeException e) {
+            return failedFuture(e);
+        }
     }
 
 
@@ -477,6 +967,21 @@ public final class HttpLowLevel
         return processErrors(response);
     }
 
+    /**
+     * Async version of {@link #deleteRaw(URI)}.
+     *
+     * @param uri URI to issue a request to.  Any id information should have already been added.
+     * @return a future holding the raw Response to the request.  If there is an error, the future will complete
+     * exceptionally with the same exceptions {@link #deleteRaw(URI)} throws.
+     */
+    public CompletableFuture<Response> deleteRawAsync(final URI uri)
+    {
+        return processErrorsAsync(apacheClient.target(soda2ifyUri(uri)).request().
+            accept("application/json").
+            rx().
+            delete());
+    }
+
     /**
      * Issues a raw GET to a URI.  The URI should be properly formed, and the response will process the errors
      * and throw if there are any.
@@ -498,6 +1003,49 @@ public final class HttpLowLevel
         return processErrors(response);
     }
 
+    /**
+     * Issues a raw GET to a URI like {@link #queryRaw(URI, MediaType)}, but answers it from the
+     * {@link ResponseCache} if one is set.
+     *
+     * @param uri URI to issue a request to.  Any id information should have already been added.
+     * @param acceptType the MIME Type accepted by this client
+     * @param resourceId the dataset being queried, which decides how long the result is cached for
+     * @return the raw ClientReponse to the request.  Any errors will have already been processed, and have thrown
+     * and exception.
+     * @throws LongRunningQueryException thrown if this query is long running and a 202 is returned.  In this case,
+     * the caller likely wants to call follow202.
+     * @throws SodaError  thrown if there is an error.  Investigate the structure for more information.
+     */
+    Response queryRawCached(final URI uri, final MediaType acceptType, final String resourceId) throws LongRunningQueryException, SodaError
+    {
+        final Response response = apacheClient.target(soda2ifyUri(uri)).request().
+            accept(acceptType).
+            property(ResponseCacheFilter.RESOURCE_ID_PROPERTY, resourceId).
+            get(Response.class);
+
+        return processErrors(response);
+    }
+
+    /**
+     * Async version of {@link #queryRaw(URI, MediaType)}.
+     *
+     * The connectors are blocking, so like every async request, this holds one of the client's async threads until
+     * the response arrives.  There are {@link ConnectionPoolConfig#getMaxAsyncThreads()} of them, and requests past
+     * that many wait for a thread before they are sent.
+     *
+     * @param uri URI to issue a request to.  Any id information should have already been added.
+     * @param acceptType the MIME Type accepted by this client
+     * @return a future holding the raw Response to the request.  If there is an error, the future will complete
+     * exceptionally with the same exceptions {@link #queryRaw(URI, MediaType)} throws.
+     */
+    public CompletableFuture<Response> queryRawAsync(final URI uri, final MediaType acceptType)
+    {
+        return processErrorsAsync(apacheClient.target(soda2ifyUri(uri)).request().
+            accept(acceptType).
+            rx().
+            get());
+    }
+
     /**
      * Issues a raw POST to a URI.  The URI should be properly formed, and the response will process the errors
      * and throw if there are any.
@@ -535,6 +1083,35 @@ public final class HttpLowLevel
         return processErrors(response);
     }
 
+    /**
+     * Async version of {@link #postRaw(URI, MediaType, ContentEncoding, Object)}.
+     *
+     * @param uri URI to issue a request to.  Any id information should have already been added.
+     * @param mediaType the MIME type the object is to be sent to the server as.
+     * @param object the object to send down to the server.  This can be a Jackson serializable object or a raw
+     *               InputStream.
+     * @return a future holding the raw Response to the request.  If there is an error, the future will complete
+     * exceptionally with the same exceptions the synchronous version throws.
+     */
+    public CompletableFuture<Response> postRawAsync(final URI uri, final MediaType mediaType, final ContentEncoding contentEncoding, Object object)
+    {
+        return postRawAsync(uri, mediaType, MediaType.APPLICATION_JSON_TYPE, contentEncoding, object, null);
+    }
+
+    public CompletableFuture<Response> postRawAsync(final URI uri, final MediaType mediaType, final MediaType acceptType, final ContentEncoding contentEncoding, Object object, String filename)
+    {
+        JerseyInvocation.Builder builder = apacheClient.target(soda2ifyUri(uri)).request().
+            accept(acceptType);
+        if(filename != null) builder = builder.header("X-File-Name", filename);
+
+        try {
+            final Object encodedObject = streamContents(encodeContents(contentEncoding, builder, object));
+            return processErrorsAsync(builder.rx().post(Entity.entity(encodedObject, mediaType)));
+        } catch (BadCompressionException e) {
+            return failedFuture(e);
+        }
+    }
+
     /**
      * If true adds ?nbe=true flag to all URIs (to enable creating datasets on New Backend)
      *
@@ -565,11 +1142,14 @@ public final class HttpLowLevel
 
                 @Override
                 public void write(OutputStream outputStream) throws IOException {
-                    byte[] buf = new byte[10240];
-                    int count;
-
-                    while((count = stream.read(buf)) > 0) {
-                        outputStream.write(buf, 0, count);
+                    final byte[] buf = BufferPool.getDefault().acquire(stream instanceof MappedFileInputStream ? FILE_BUFFER_SIZE : STREAM_BUFFER_SIZE);
+                    try {
+                        int count;
+                        while((count = stream.read(buf)) > 0) {
+                            outputStream.write(buf, 0, count);
+                        }
+                    } finally {
+                        BufferPool.getDefault().release(buf);
                     }
                 }
             };
@@ -588,7 +1168,7 @@ public final class HttpLowLevel
                 builder.header(HttpHeaders.CONTENT_ENCODING, contentEncoding.header);
 
                 if (!(object instanceof InputStream)) {
-                    throw new IllegalArgumentException("Can only compress puts that use an InputStream");
+                    return gzipJson(mapper, object);
                 }
 
                 try {
@@ -598,6 +1178,11 @@ public final class HttpLowLevel
                 }
             }
 
+            case PARALLEL_GZIP: {
+                builder.header(HttpHeaders.CONTENT_ENCODING, contentEncoding.header);
+                return parallelGzip(mapper, object);
+            }
+
             case IDENTITY: {
                 return object;
             }
@@ -609,6 +1194,82 @@ public final class HttpLowLevel
     }
 
 
+    /**
+     * Serializes an object straight into a gzipped request body as Jersey writes it out, so a large collection
+     * of rows is never held in memory as a whole, serialized or compressed.
+     */
+    static StreamingOutput gzipJson(final ObjectMapper objectMapper, final Object object) {
+        return new StreamingOutput() {
+            @Override
+            public void write(OutputStream outputStream) throws IOException {
+                //Closing the gzip stream releases its Deflater, but the entity stream belongs to Jersey.
+                final GZIPOutputStream gzipStream = new GZIPOutputStream(new UnclosableOutputStream(outputStream), GZIP_BUFFER_SIZE);
+                try {
+                    final JsonGenerator generator = objectMapper.getFactory().createGenerator(gzipStream);
+                    generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                    objectMapper.writeValue(generator, object);
+                    generator.close();
+                } finally {
+                    gzipStream.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Passes writes through to another stream, but only flushes it on close.
+     */
+    private static final class UnclosableOutputStream extends FilterOutputStream
+    {
+        UnclosableOutputStream(OutputStream out)
+        {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            out.flush();
+        }
+    }
+
+    /**
+     * Compresses a stream, or serializes and compresses an object, into the request body as Jersey writes it out,
+     * deflating blocks of it on every core.
+     */
+    static StreamingOutput parallelGzip(final ObjectMapper objectMapper, final Object object) {
+        return new StreamingOutput() {
+            @Override
+            public void write(OutputStream outputStream) throws IOException {
+                final ParallelGzipOutputStream gzipStream = new ParallelGzipOutputStream(outputStream);
+                if (object instanceof InputStream) {
+                    final InputStream stream = (InputStream) object;
+                    final byte[] buf = BufferPool.getDefault().acquire(GZIP_BUFFER_SIZE);
+                    try {
+                        int count;
+                        while ((count = stream.read(buf)) != -1) {
+                            gzipStream.write(buf, 0, count);
+                        }
+                    } finally {
+                        BufferPool.getDefault().release(buf);
+                    }
+                } else {
+                    final JsonGenerator generator = objectMapper.getFactory().createGenerator(gzipStream);
+                    generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                    objectMapper.writeValue(generator, object);
+                    generator.close();
+                }
+                gzipStream.finish();
+            }
+        };
+    }
+
     public Response postFileRaw(final URI uri, final MediaType mediaType, final File file) throws LongRunningQueryException, SodaError {
         return postFileRaw(uri, mediaType, MediaType.APPLICATION_JSON_TYPE, file);
     }
@@ -617,10 +1278,10 @@ public final class HttpLowLevel
     {
         final Response response;
 
-        try(FormDataMultiPart form = new FormDataMultiPart()) {
-            form.bodyPart(new FileDataBodyPart(file.getName(), file, mediaType));
-            response = httpClient.target(soda2ifyUri(uri)).request().
-                accept(acceptType).
+        try(MappedFileInputStream stream = new MappedFileInputStream(file);
+            FormDataMultiPart form = new FormDataMultiPart()) {
+            form.bodyPart(fileBodyPart(file, stream, mediaType));
+            response = fileRequest(uri, acceptType).
                 post(Entity.entity(form, MediaType.MULTIPART_FORM_DATA_TYPE), Response.class);
         } catch (IOException e) {
             throw new SodaError("IO error", e);
@@ -653,6 +1314,29 @@ public final class HttpLowLevel
         return processErrors(response);
     }
 
+    /**
+     * Async version of {@link #putRaw(URI, MediaType, ContentEncoding, Object)}.
+     *
+     * @param uri URI to issue a request to.  Any id information should have already been added.
+     * @param mediaType the MIME type the object is to be sent to the server as.
+     * @param object the object to send down to the server.  This can be a Jackson serializable object or a raw
+     *               InputStream.
+     * @return a future holding the raw Response to the request.  If there is an error, the future will complete
+     * exceptionally with the same exceptions the synchronous version throws.
+     */
+    public CompletableFuture<Response> putRawAsync(final URI uri, final MediaType mediaType, final ContentEncoding contentEncoding, final Object object)
+    {
+        final JerseyInvocation.Builder builder = apacheClient.target(soda2ifyUri(uri)).request().
+            accept("application/json");
+
+        try {
+            final Object encodedObject = streamContents(encodeContents(contentEncoding, builder, object));
+            return processErrorsAsync(builder.rx().put(Entity.entity(encodedObject, mediaType)));
+        } catch (BadCompressionException e) {
+            return failedFuture(e);
+        }
+    }
+
 
     public Response putFileRaw(final URI uri, final MediaType mediaType, final File file) throws LongRunningQueryException, SodaError {
         return putFileRaw(uri, mediaType, MediaType.APPLICATION_JSON_TYPE, file);
@@ -662,10 +1346,10 @@ public final class HttpLowLevel
     {
         final Response response;
 
-        try(FormDataMultiPart form = new FormDataMultiPart()) {
-            form.bodyPart(new FileDataBodyPart(file.getName(), file, mediaType));
-            response = httpClient.target(soda2ifyUri(uri)).request().
-                accept(acceptType).
+        try(MappedFileInputStream stream = new MappedFileInputStream(file);
+            FormDataMultiPart form = new FormDataMultiPart()) {
+            form.bodyPart(fileBodyPart(file, stream, mediaType));
+            response = fileRequest(uri, acceptType).
                 put(Entity.entity(form, MediaType.MULTIPART_FORM_DATA_TYPE), Response.class);
         } catch (IOException e) {
             throw new SodaError("IO error", e);
@@ -674,7 +1358,43 @@ public final class HttpLowLevel
         return processErrors(response);
     }
 
+    /**
+     * The file part of a multipart upload, with the same disposition a {@link org.glassfish.jersey.media.multipart.file.FileDataBodyPart}
+     * has, but written from a mapping of the file.
+     */
+    private FormDataBodyPart fileBodyPart(final File file, final MappedFileInputStream stream, final MediaType mediaType)
+    {
+        final FormDataContentDisposition disposition = FormDataContentDisposition.name(file.getName())
+                                                                                 .fileName(file.getName())
+                                                                                 .modificationDate(new Date(file.lastModified()))
+                                                                                 .size(file.length())
+                                                                                 .build();
+        return new FormDataBodyPart(disposition, streamContents(stream), mediaType);
+    }
+
+    /**
+     * Multipart file uploads go through the HttpURLConnection client, which holds the whole request body in memory
+     * unless it is told to stream it, so these requests are sent chunked.
+     */
+    private JerseyInvocation.Builder fileRequest(final URI uri, final MediaType acceptType)
+    {
+        return httpClient.target(soda2ifyUri(uri)).request().
+            accept(acceptType).
+            property(ClientProperties.REQUEST_ENTITY_PROCESSING, RequestEntityProcessing.CHUNKED).
+            property(ClientProperties.CHUNKED_ENCODING_SIZE, FILE_BUFFER_SIZE);
+    }
+
     public void close() {
+        synchronized (this) {
+            if (asyncScheduler != null && ownsAsyncScheduler) {
+                asyncScheduler.shutdownNow();
+                asyncScheduler = null;
+            }
+            if (asyncRequestExecutor != null) {
+                asyncRequestExecutor.shutdownNow();
+                asyncRequestExecutor = null;
+            }
+        }
         if (httpClient != null) {
             httpClient.close();
         }
@@ -721,12 +1441,27 @@ public final class HttpLowLevel
      * @throws SodaError  thrown if there is an error.  Investigate the structure for more information.
      */
     private Response processErrors(final Response response) throws SodaError, LongRunningQueryException
+    {
+        try {
+            return checkErrors(response);
+        } catch (SodaError e) {
+            metricsListener.requestFailed(response.getStatus(), e);
+            throw e;
+        }
+    }
+
+    private Response checkErrors(final Response response) throws SodaError, LongRunningQueryException
     {
         int status = response.getStatus();
         if (status == 200 || status == 201 || status == 204) {
             return response;
         }
 
+        //A 304 only comes back to a conditional request, and the caller that made it knows what to do with it.
+        if (status == 304) {
+            return response;
+        }
+
         try {
             final String body = response.readEntity(String.class);
 
@@ -768,7 +1503,9 @@ public final class HttpLowLevel
                     }
                 }
 
-                throw new LongRunningQueryException(locationUri, parseRetryAfter(retryAfter), ticket);
+                final long retryAfterTime = parseRetryAfter(retryAfter);
+                final long timeToRetry = retryAfterTime > 0 ? Math.max(retryAfterTime - System.currentTimeMillis(), 0) : getRetryTime();
+                throw new LongRunningQueryException(locationUri, timeToRetry, ticket, retryAfterTime);
             }
 
             if (response.getMediaType() != null && !response.getMediaType().isCompatible(MediaType.APPLICATION_JSON_TYPE)) {
@@ -814,16 +1551,51 @@ public final class HttpLowLevel
     }
 
 
+    /**
+     * Runs {@link #processErrors(Response)} once an async request completes.  Any exceptions thrown will
+     * complete the returned future exceptionally.
+     */
+    private CompletableFuture<Response> processErrorsAsync(final CompletionStage<Response> stage)
+    {
+        final CompletableFuture<Response> result = new CompletableFuture<Response>();
+        stage.whenComplete((response, t) -> {
+            if (t != null) {
+                result.completeExceptionally(unwrapCompletionException(t));
+                return;
+            }
+
+            try {
+                result.complete(processErrors(response));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private static Throwable unwrapCompletionException(final Throwable t)
+    {
+        return (t instanceof CompletionException && t.getCause() != null) ? t.getCause() : t;
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(final Throwable t)
+    {
+        final CompletableFuture<T> result = new CompletableFuture<T>();
+        result.completeExceptionally(t);
+        return result;
+    }
+
     /**
      * Parses the RetryAfter dates to determine when to respond to a 202
      *
      * @param retryAfter the string returned from a 202 RetryAfter header
      * @return The time in milliseconds the caller should retry.  This is the time in milliseconds since the epoch,
-     * NOT the number of milliseconds to wait.  To get milliseconds to wait, subtract current time.
+     * NOT the number of milliseconds to wait.  To get milliseconds to wait, subtract current time.  If there is
+     * no usable header, this returns {@code 0}.
      */
     private long parseRetryAfter(final String retryAfter) {
         if (retryAfter == null) {
-            return getRetryTime();
+            return 0;
         }
 
         if (StringUtils.isNumeric(retryAfter)) {
@@ -832,11 +1604,11 @@ public final class HttpLowLevel
             try {
                 final DateTime date = RFC1123_DATE_FORMAT.parseDateTime(retryAfter);
                 if (date == null) {
-                    return getRetryTime();
+                    return 0;
                 }
                 return date.getMillis();
             } catch (Exception e) {
-                return getRetryTime();
+                return 0;
             }
 
         }
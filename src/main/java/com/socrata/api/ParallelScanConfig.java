@@ -0,0 +1,159 @@
+package com.socrata.api;
+
+import javax.annotation.Nullable;
+
+/**
+ * Configuration for a parallel scan of a dataset through {@code Soda2Consumer.parallelScan}.
+ */
+public class ParallelScanConfig
+{
+    public static final int DEFAULT_PARTITIONS = 8;
+    public static final int DEFAULT_PARALLELISM = 4;
+    public static final int DEFAULT_MAX_ROWS_IN_FLIGHT = 10000;
+
+    private int     partitions = DEFAULT_PARTITIONS;
+    private int     parallelism = DEFAULT_PARALLELISM;
+    private int     maxRowsInFlight = DEFAULT_MAX_ROWS_IN_FLIGHT;
+    private int     pageSize = QueryPager.DEFAULT_PAGE_SIZE;
+    private boolean ordered = false;
+    private String  partitionColumn = null;
+
+    /**
+     * Gets the number of disjoint partitions the query is split into.
+     * @return the number of partitions
+     */
+    public int getPartitions()
+    {
+        return partitions;
+    }
+
+    /**
+     * Sets the number of disjoint partitions the query is split into.
+     * @param partitions the number of partitions
+     * @return this config
+     */
+    public ParallelScanConfig setPartitions(int partitions)
+    {
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("partitions must be greater than 0");
+        }
+        this.partitions = partitions;
+        return this;
+    }
+
+    /**
+     * Gets the number of partitions that are fetched at the same time.
+     * @return the number of partitions fetched concurrently
+     */
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of partitions that are fetched at the same time.  This should not be more than the
+     * number of connections per route the HttpLowLevel's connection pool allows.
+     * @param parallelism the number of partitions fetched concurrently
+     * @return this config
+     */
+    public ParallelScanConfig setParallelism(int parallelism)
+    {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be greater than 0");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Gets the max number of rows that have been fetched, but not yet consumed by the caller.
+     * @return the max number of rows buffered
+     */
+    public int getMaxRowsInFlight()
+    {
+        return maxRowsInFlight;
+    }
+
+    /**
+     * Sets the max number of rows that have been fetched, but not yet consumed by the caller.  Partitions
+     * stop fetching when this is reached, which bounds the memory the scan uses.
+     * @param maxRowsInFlight the max number of rows buffered
+     * @return this config
+     */
+    public ParallelScanConfig setMaxRowsInFlight(int maxRowsInFlight)
+    {
+        if (maxRowsInFlight <= 0) {
+            throw new IllegalArgumentException("maxRowsInFlight must be greater than 0");
+        }
+        this.maxRowsInFlight = maxRowsInFlight;
+        return this;
+    }
+
+    /**
+     * Gets the number of rows requested in each page of a partition.
+     * @return the page size
+     */
+    public int getPageSize()
+    {
+        return pageSize;
+    }
+
+    /**
+     * Sets the number of rows requested in each page of a partition.
+     * @param pageSize the page size
+     * @return this config
+     */
+    public ParallelScanConfig setPageSize(int pageSize)
+    {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be greater than 0");
+        }
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    /**
+     * Gets whether rows are returned in partition order.
+     * @return true if the rows of each partition are returned before the rows of the next one
+     */
+    public boolean isOrdered()
+    {
+        return ordered;
+    }
+
+    /**
+     * Sets whether rows are returned in partition order.  If false, rows are returned as soon as any
+     * partition fetches them, which is faster but interleaves the partitions.
+     * @param ordered true if the rows of each partition should be returned before the rows of the next one
+     * @return this config
+     */
+    public ParallelScanConfig setOrdered(boolean ordered)
+    {
+        this.ordered = ordered;
+        return this;
+    }
+
+    /**
+     * Gets the column used for splitting the query into partitions.
+     * @return the partition column, or {@code null} if the query is split into ranges of rows ordered by {@code :id}
+     */
+    @Nullable
+    public String getPartitionColumn()
+    {
+        return partitionColumn;
+    }
+
+    /**
+     * Sets the column used for splitting the query into partitions.  This must be a numeric column; a
+     * {@code min/max} probe query finds its range, which is split into equal sized value ranges.  If this is
+     * {@code null}, a {@code count(*)} probe is used, and the query is split into equal sized ranges of rows
+     * ordered by {@code :id}.
+     * @param partitionColumn the numeric column to partition on, or {@code null} to partition on {@code :id}
+     * @return this config
+     */
+    public ParallelScanConfig setPartitionColumn(@Nullable String partitionColumn)
+    {
+        this.partitionColumn = partitionColumn;
+        return this;
+    }
+}
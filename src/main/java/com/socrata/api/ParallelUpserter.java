@@ -0,0 +1,407 @@
+package com.socrata.api;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.socrata.exceptions.SodaError;
+import com.socrata.model.UpsertError;
+import com.socrata.model.UpsertResult;
+import com.socrata.utils.RowUpdateOption;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Upserts a large CSV or JSON stream by splitting it into row-aligned chunks and sending several chunks to the
+ * server at once.  Each chunk is a complete upsert request on its own, so a chunk that fails because of a
+ * server or network error can be retried without resending the rest of the stream.
+ *
+ * The results of the chunks are fed, in input order, through a single {@link UpsertResultAccumulator}, so the
+ * index of each {@link UpsertError} refers to the row's position in the whole stream, not in its chunk.
+ *
+ * There is no transaction across chunks.  If a chunk fails for good, the chunks before it have already been
+ * applied.  Retrying a chunk is only safe for datasets with a row identifier, since a retried chunk of inserts
+ * to a dataset without one may create duplicate rows.
+ */
+public class ParallelUpserter
+{
+    public static final int  DEFAULT_CHUNK_ROWS = 10000;
+    public static final int  DEFAULT_CHUNK_BYTES = 8 * 1024 * 1024;
+    public static final int  DEFAULT_PARALLELISM = 4;
+    public static final int  DEFAULT_MAX_RETRIES = 3;
+    public static final long DEFAULT_RETRY_DELAY = 1000;
+
+    private final Soda2Producer producer;
+
+    private int             chunkRows = DEFAULT_CHUNK_ROWS;
+    private int             chunkBytes = DEFAULT_CHUNK_BYTES;
+    private int             parallelism = DEFAULT_PARALLELISM;
+    private int             maxRetries = DEFAULT_MAX_RETRIES;
+    private long            retryDelay = DEFAULT_RETRY_DELAY;
+    private RowUpdateOption rowUpdateOption = new RowUpdateOption();
+
+    public ParallelUpserter(Soda2Producer producer)
+    {
+        this.producer = producer;
+    }
+
+    /**
+     * Sets the max number of rows to send in a single request.
+     * @param chunkRows max number of rows in a chunk
+     * @return this upserter
+     */
+    public ParallelUpserter setChunkRows(int chunkRows)
+    {
+        if (chunkRows <= 0) {
+            throw new IllegalArgumentException("chunkRows must be greater than 0");
+        }
+        this.chunkRows = chunkRows;
+        return this;
+    }
+
+    /**
+     * Sets the size a chunk may grow to before it is sent.  A chunk always holds whole rows, so it may go over
+     * this size by up to one row.
+     * @param chunkBytes size in bytes a chunk may grow to
+     * @return this upserter
+     */
+    public ParallelUpserter setChunkBytes(int chunkBytes)
+    {
+        if (chunkBytes <= 0) {
+            throw new IllegalArgumentException("chunkBytes must be greater than 0");
+        }
+        this.chunkBytes = chunkBytes;
+        return this;
+    }
+
+    /**
+     * Sets the number of chunks that may be sent to the server at the same time.
+     * @param parallelism number of concurrent requests
+     * @return this upserter
+     */
+    public ParallelUpserter setParallelism(int parallelism)
+    {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be greater than 0");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Sets how many times a chunk is retried after a server or network error.  Errors in the request itself
+     * (a 4xx status) are never retried.
+     * @param maxRetries number of retries per chunk
+     * @return this upserter
+     */
+    public ParallelUpserter setMaxRetries(int maxRetries)
+    {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries must not be negative");
+        }
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    /**
+     * Sets the delay before the first retry of a chunk.  The delay doubles with each further retry.
+     * @param retryDelay delay in milliseconds
+     * @return this upserter
+     */
+    public ParallelUpserter setRetryDelay(long retryDelay)
+    {
+        if (retryDelay < 0) {
+            throw new IllegalArgumentException("retryDelay must not be negative");
+        }
+        this.retryDelay = retryDelay;
+        return this;
+    }
+
+    /**
+     * Sets the options sent with each chunk.
+     * @param rowUpdateOption options for each upsert request
+     * @return this upserter
+     */
+    public ParallelUpserter setRowUpdateOption(RowUpdateOption rowUpdateOption)
+    {
+        this.rowUpdateOption = rowUpdateOption;
+        return this;
+    }
+
+    /**
+     * Upserts a CSV stream.  The first row of the stream is the header, and is sent at the start of every chunk.
+     *
+     * @param resourceId unique id or resource name of the dataset
+     * @param csv stream of CSV rows, starting with the header row
+     * @param accFactory creates the accumulator the results of every chunk are fed through.  It is called once,
+     *                   with the truth versions the server reported for the first chunk.
+     *
+     * @return the accumulated result of all the chunks.
+     * @throws SodaError  thrown if there is an error.  Investigate the structure for more information.
+     * @throws InterruptedException throws is the thread is interrupted.
+     */
+    public <R> R upsertCsv(String resourceId, InputStream csv, UpsertResultAccumulatorFactory<R> accFactory) throws SodaError, InterruptedException
+    {
+        return upsertChunks(resourceId, HttpLowLevel.CSV_TYPE, new RowChunker.Csv(csv, chunkRows, chunkBytes), accFactory);
+    }
+
+    /**
+     * Upserts a CSV stream.  The first row of the stream is the header, and is sent at the start of every chunk.
+     *
+     * @param resourceId unique id or resource name of the dataset
+     * @param csv stream of CSV rows, starting with the header row
+     *
+     * @return result of objects added, removed and modified, across all the chunks.
+     * @throws SodaError  thrown if there is an error.  Investigate the structure for more information.
+     * @throws InterruptedException throws is the thread is interrupted.
+     */
+    public UpsertResult upsertCsv(String resourceId, InputStream csv) throws SodaError, InterruptedException
+    {
+        return upsertCsv(resourceId, csv, StandardResultAccumulator.FACTORY);
+    }
+
+    /**
+     * Upserts a stream holding a JSON array of rows.
+     *
+     * @param resourceId unique id or resource name of the dataset
+     * @param json stream holding a JSON array of rows
+     * @param accFactory creates the accumulator the results of every chunk are fed through.  It is called once,
+     *                   with the truth versions the server reported for the first chunk.
+     *
+     * @return the accumulated result of all the chunks.
+     * @throws SodaError  thrown if there is an error.  Investigate the structure for more information.
+     * @throws InterruptedException throws is the thread is interrupted.
+     */
+    public <R> R upsertJson(String resourceId, InputStream json, UpsertResultAccumulatorFactory<R> accFactory) throws SodaError, InterruptedException
+    {
+        final RowChunker chunker;
+        try {
+            chunker = new RowChunker.Json(producer.getHttpLowLevel().getObjectMapper().getFactory(), json, chunkRows, chunkBytes);
+        } catch (IOException ioe) {
+            throw new SodaError("Error reading the rows to upsert.  Error message: " + ioe.getLocalizedMessage());
+        }
+        return upsertChunks(resourceId, HttpLowLevel.JSON_TYPE, chunker, accFactory);
+    }
+
+    /**
+     * Upserts a stream holding a JSON array of rows.
+     *
+     * @param resourceId unique id or resource name of the dataset
+     * @param json stream holding a JSON array of rows
+     *
+     * @return result of objects added, removed and modified, across all the chunks.
+     * @throws SodaError  thrown if there is an error.  Investigate the structure for more information.
+     * @throws InterruptedException throws is the thread is interrupted.
+     */
+    public UpsertResult upsertJson(String resourceId, InputStream json) throws SodaError, InterruptedException
+    {
+        return upsertJson(resourceId, json, StandardResultAccumulator.FACTORY);
+    }
+
+    /**
+     * Reads chunks and hands them to a pool of uploaders.  At most {@code parallelism} chunks are held in memory
+     * at once; results are replayed into the accumulator in input order as the oldest chunk completes.
+     */
+    <R> R upsertChunks(final String resourceId, final MediaType mediaType, RowChunker chunker,
+                       UpsertResultAccumulatorFactory<R> accFactory) throws SodaError, InterruptedException
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder()
+                .setNameFormat("soda-upsert-%d")
+                .setDaemon(true)
+                .build());
+        final Deque<Future<ChunkResult>> pending = new ArrayDeque<Future<ChunkResult>>();
+        UpsertResultAccumulator<R> acc = null;
+
+        try {
+            RowChunker.Chunk chunk;
+            while ((chunk = nextChunk(chunker)) != null) {
+                if (pending.size() >= parallelism) {
+                    acc = replay(await(pending.removeFirst()), acc, accFactory);
+                }
+
+                final RowChunker.Chunk toSend = chunk;
+                pending.addLast(executor.submit(new Callable<ChunkResult>()
+                {
+                    @Override
+                    public ChunkResult call() throws Exception
+                    {
+                        return sendWithRetries(resourceId, mediaType, toSend);
+                    }
+                }));
+            }
+
+            while (!pending.isEmpty()) {
+                acc = replay(await(pending.removeFirst()), acc, accFactory);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (acc == null) {
+            acc = accFactory.createAccumulator(null, 0);
+        }
+        return acc.result();
+    }
+
+    /**
+     * Sends a single chunk to the server.  Split out so the chunking and retry logic can be tested without a server.
+     */
+    ChunkResult sendChunk(String resourceId, MediaType mediaType, RowChunker.Chunk chunk) throws SodaError, InterruptedException
+    {
+        return producer.upsertStream(resourceId, mediaType, chunk.stream(), rowUpdateOption, ChunkResult.FACTORY);
+    }
+
+    private ChunkResult sendWithRetries(String resourceId, MediaType mediaType, RowChunker.Chunk chunk) throws SodaError, InterruptedException
+    {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return sendChunk(resourceId, mediaType, chunk);
+            } catch (SodaError e) {
+                if (attempt >= maxRetries || !isRetryable(e)) {
+                    throw e;
+                }
+            } catch (ProcessingException e) {
+                if (attempt >= maxRetries) {
+                    throw new SodaError("Error upserting rows " + chunk.firstRow + " to " + (chunk.firstRow + chunk.rowCount - 1) +
+                                        ".  Error message: " + e.getLocalizedMessage(), e);
+                }
+            }
+            Thread.sleep(retryDelay << Math.min(attempt, 16));
+        }
+    }
+
+    static boolean isRetryable(SodaError e)
+    {
+        return e.status >= 500 || e.status == 429;
+    }
+
+    private static RowChunker.Chunk nextChunk(RowChunker chunker) throws SodaError
+    {
+        try {
+            return chunker.next();
+        } catch (IOException ioe) {
+            throw new SodaError("Error reading the rows to upsert.  Error message: " + ioe.getLocalizedMessage());
+        }
+    }
+
+    private static ChunkResult await(Future<ChunkResult> future) throws SodaError, InterruptedException
+    {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof SodaError) {
+                throw (SodaError) cause;
+            } else if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SodaError(cause);
+        }
+    }
+
+    private static <R> UpsertResultAccumulator<R> replay(ChunkResult result, UpsertResultAccumulator<R> acc,
+                                                         UpsertResultAccumulatorFactory<R> accFactory)
+    {
+        if (acc == null) {
+            acc = accFactory.createAccumulator(result.truthDataVersion, result.truthDataShapeVersion);
+        }
+        for (Soda2Producer.NewUpsertRow row : result.rows()) {
+            if ("insert".equals(row.typ)) {
+                acc.insert(row);
+            } else if ("update".equals(row.typ)) {
+                acc.update(row);
+            } else if ("delete".equals(row.typ)) {
+                acc.delete(row);
+            } else if ("error".equals(row.typ)) {
+                acc.error(row);
+            }
+        }
+        return acc;
+    }
+
+    /**
+     * The rows the server returned for a single chunk, kept until they can be replayed in order.
+     */
+    static final class ChunkResult implements UpsertResultAccumulator<ChunkResult>
+    {
+        static final UpsertResultAccumulatorFactory<ChunkResult> FACTORY = new UpsertResultAccumulatorFactory<ChunkResult>()
+        {
+            public UpsertResultAccumulator<ChunkResult> createAccumulator(Long truthDataVersion, long truthDataShapeVersion)
+            {
+                return new ChunkResult(truthDataVersion, truthDataShapeVersion);
+            }
+        };
+
+        final Long truthDataVersion;
+        final long truthDataShapeVersion;
+        private final List<Soda2Producer.NewUpsertRow> rows = new ArrayList<Soda2Producer.NewUpsertRow>();
+        private UpsertResult simple;
+
+        ChunkResult(Long truthDataVersion, long truthDataShapeVersion)
+        {
+            this.truthDataVersion = truthDataVersion;
+            this.truthDataShapeVersion = truthDataShapeVersion;
+        }
+
+        public void insert(Soda2Producer.NewUpsertRow row) { rows.add(row); }
+        public void update(Soda2Producer.NewUpsertRow row) { rows.add(row); }
+        public void delete(Soda2Producer.NewUpsertRow row) { rows.add(row); }
+        public void error(Soda2Producer.NewUpsertRow row)  { rows.add(row); }
+
+        public ChunkResult deserializeSimple(JsonParser parser) throws IOException
+        {
+            simple = parser.readValueAs(UpsertResult.class);
+            return this;
+        }
+
+        public ChunkResult result()
+        {
+            return this;
+        }
+
+        /**
+         * @return the rows for this chunk in input order.  Old servers only send back counts, so in that case the
+         * rows are rebuilt from the counts, with each error placed at the index the server reported.
+         */
+        List<Soda2Producer.NewUpsertRow> rows()
+        {
+            if (simple == null) {
+                return rows;
+            }
+
+            final List<UpsertError> errors = simple.errors != null ? simple.errors : new ArrayList<UpsertError>();
+            final long total = simple.rowsCreated + simple.rowsUpdated + simple.rowsDeleted + errors.size();
+            final List<Soda2Producer.NewUpsertRow> rebuilt = new ArrayList<Soda2Producer.NewUpsertRow>();
+            long inserts = simple.rowsCreated;
+            long updates = simple.rowsUpdated;
+            int  nextError = 0;
+            for (long i = 0; i < total; i++) {
+                if (nextError < errors.size() && errors.get(nextError).getIndex() <= i) {
+                    final UpsertError error = errors.get(nextError++);
+                    rebuilt.add(new Soda2Producer.NewUpsertRow("error", error.getPrimaryKey(), null, error.getError()));
+                } else if (inserts > 0) {
+                    inserts--;
+                    rebuilt.add(new Soda2Producer.NewUpsertRow("insert", null, null, null));
+                } else if (updates > 0) {
+                    updates--;
+                    rebuilt.add(new Soda2Producer.NewUpsertRow("update", null, null, null));
+                } else {
+                    rebuilt.add(new Soda2Producer.NewUpsertRow("delete", null, null, null));
+                }
+            }
+            return rebuilt;
+        }
+    }
+}
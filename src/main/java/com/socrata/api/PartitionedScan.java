@@ -0,0 +1,279 @@
+package com.socrata.api;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.socrata.builders.SoqlQueryBuilder;
+import com.socrata.model.soql.ConditionalExpression;
+import com.socrata.model.soql.Expression;
+import com.socrata.model.soql.SoqlQuery;
+
+import java.io.Closeable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Scans a query as a set of disjoint partitions that are fetched concurrently, and merges their rows
+ * back into a single iterator.  Each partition is paged through with a {@link QueryPager}.
+ *
+ * Rows are either returned partition by partition (ordered), or as soon as any partition fetches them
+ * (unordered).  Either way, the number of rows buffered but not yet consumed is bounded by
+ * {@link ParallelScanConfig#getMaxRowsInFlight()}, or one row per partition when there are more partitions than that.
+ *
+ * Errors fetching a partition are thrown as an {@link UncheckedExecutionException} wrapping the {@code SodaError}.
+ * Scans hold threads and connections, so they MUST be closed if the caller stops before the end.
+ */
+public class PartitionedScan<T> implements Iterator<T>, Closeable
+{
+    private static final Object END_OF_PARTITION = new Object();
+
+    private final List<BlockingQueue<Object>> queues;
+    private final ExecutorService executor;
+    private final int partitionCount;
+
+    private int     currentQueue = 0;
+    private int     partitionsDone = 0;
+    private Object  next;
+    private boolean closed = false;
+
+    /**
+     * Constructor.  This starts fetching the partitions right away.
+     *
+     * @param fetcher the object that issues the request for each page
+     * @param partitionQueries the disjoint queries that together make up the scan
+     * @param config the configuration of the scan
+     */
+    PartitionedScan(final QueryPager.PageFetcher<T> fetcher, final List<SoqlQuery> partitionQueries, final ParallelScanConfig config)
+    {
+        this.partitionCount = partitionQueries.size();
+        this.queues = new ArrayList<BlockingQueue<Object>>();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, Math.min(config.getParallelism(), partitionCount)), new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("soda-scan-%d")
+                .build());
+
+        if (config.isOrdered()) {
+            //Partitions that finish ahead of the one being consumed keep their rows until it is their turn, so
+            //the budget is split across every partition, not just the ones being fetched.
+            final int capacity = Math.max(1, config.getMaxRowsInFlight() / Math.max(1, partitionCount));
+            for (int i=0; i<partitionCount; i++) {
+                queues.add(new ArrayBlockingQueue<Object>(capacity));
+            }
+        } else {
+            queues.add(new ArrayBlockingQueue<Object>(config.getMaxRowsInFlight()));
+        }
+
+        for (int i=0; i<partitionCount; i++) {
+            final SoqlQuery partitionQuery = partitionQueries.get(i);
+            final BlockingQueue<Object> queue = queues.get(config.isOrdered() ? i : 0);
+            executor.submit(() -> {
+                final QueryPager<T> pager = new QueryPager<T>(fetcher, partitionQuery, config.getPageSize(), 0);
+                try {
+                    List<T> page;
+                    while ((page = pager.nextPage()) != null) {
+                        for (T row : page) {
+                            queue.put(row);
+                        }
+                    }
+                    queue.put(END_OF_PARTITION);
+                } catch (InterruptedException e) {
+                    //The scan was closed
+                } catch (Exception e) {
+                    try {
+                        queue.put(new PartitionFailure(e));
+                    } catch (InterruptedException ie) {
+                        //The scan was closed
+                    }
+                } finally {
+                    pager.close();
+                }
+                return null;
+            });
+        }
+        executor.shutdown();
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        while (next == null && !closed && partitionsDone < partitionCount) {
+            final Object item;
+            try {
+                item = queues.get(currentQueue).take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new UncheckedExecutionException(e);
+            }
+
+            if (item == END_OF_PARTITION) {
+                partitionsDone++;
+                if (queues.size() > 1) {
+                    currentQueue++;
+                }
+            } else if (item instanceof PartitionFailure) {
+                close();
+                throw new UncheckedExecutionException(((PartitionFailure) item).cause);
+            } else {
+                next = item;
+            }
+        }
+
+        if (next == null) {
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next()
+    {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        final T retVal = (T) next;
+        next = null;
+        return retVal;
+    }
+
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException("Rows cannot be removed from a query result");
+    }
+
+    /**
+     * Exposes the remaining rows as a sequential Stream.  Closing the stream closes this scan.
+     *
+     * @return a Stream over the remaining rows.
+     */
+    public Stream<T> asStream()
+    {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.NONNULL), false)
+                            .onClose(this::close);
+    }
+
+    @Override
+    public void close()
+    {
+        if (!closed) {
+            closed = true;
+            executor.shutdownNow();
+            for (BlockingQueue<Object> queue : queues) {
+                queue.clear();
+            }
+        }
+    }
+
+    /**
+     * Splits a query into {@code partitions} ranges of rows, ordered by {@code :id}.  The last partition runs
+     * to the query's own $limit, or is left open-ended if it has none, so rows added after {@code rowCount}
+     * was taken are still returned.
+     *
+     * @param query the query to split
+     * @param rowCount the number of rows the query returns, ignoring its $offset and $limit
+     * @param partitions the number of partitions to create
+     * @return the partition queries
+     */
+    static List<SoqlQuery> partitionByRows(SoqlQuery query, long rowCount, int partitions)
+    {
+        final long start = (query.offset != null) ? query.offset : 0;
+        long total = Math.max(rowCount - start, 0);
+        if (query.limit != null) {
+            total = Math.min(total, query.limit);
+        }
+
+        final long chunk = Math.max(1, (total + partitions - 1) / partitions);
+        final ImmutableList.Builder<SoqlQuery> retVal = ImmutableList.builder();
+        long offset = start;
+        for (; offset + chunk < start + total; offset += chunk) {
+            retVal.add(new SoqlQueryBuilder(query)
+                               .setOffset((int) offset)
+                               .setLimit((int) chunk)
+                               .build());
+        }
+
+        if (query.limit == null) {
+            retVal.add(new SoqlQueryBuilder(query)
+                               .setOffset((int) offset)
+                               .build());
+        } else if (offset < start + query.limit) {
+            retVal.add(new SoqlQueryBuilder(query)
+                               .setOffset((int) offset)
+                               .setLimit((int) (start + query.limit - offset))
+                               .build());
+        }
+        return retVal.build();
+    }
+
+    /**
+     * Splits a query into {@code partitions} equal sized value ranges of a numeric column, plus one partition
+     * for the rows where the column is null.
+     *
+     * @param query the query to split
+     * @param column the numeric column to partition on
+     * @param min the smallest value of the column in the query results
+     * @param max the largest value of the column in the query results
+     * @param partitions the number of partitions to create
+     * @return the partition queries
+     */
+    static List<SoqlQuery> partitionByColumn(SoqlQuery query, String column, BigDecimal min, BigDecimal max, int partitions)
+    {
+        final ImmutableList.Builder<SoqlQuery> retVal = ImmutableList.builder();
+        final BigDecimal step = max.subtract(min).divide(BigDecimal.valueOf(partitions), 10, RoundingMode.CEILING);
+
+        if (step.signum() == 0) {
+            retVal.add(withCondition(query, column + " = " + min.toPlainString()));
+        } else {
+            BigDecimal lower = min;
+            for (int i=0; i<partitions && lower.compareTo(max) <= 0; i++) {
+                final BigDecimal upper = lower.add(step);
+                if (i == partitions - 1 || upper.compareTo(max) > 0) {
+                    retVal.add(withCondition(query, column + " >= " + lower.toPlainString() + " AND " + column + " <= " + max.toPlainString()));
+                    break;
+                }
+                retVal.add(withCondition(query, column + " >= " + lower.toPlainString() + " AND " + column + " < " + upper.toPlainString()));
+                lower = upper;
+            }
+        }
+
+        retVal.add(withCondition(query, column + " IS NULL"));
+        return retVal.build();
+    }
+
+    private static SoqlQuery withCondition(SoqlQuery query, String condition)
+    {
+        final Expression where = (query.whereClause == null) ?
+                new ConditionalExpression(condition) :
+                new ConditionalExpression("(" + query.whereClause + ") AND (" + condition + ")");
+        return new SoqlQueryBuilder(query).setWhereClause(where).build();
+    }
+
+    /**
+     * Wraps an exception thrown while fetching a partition, so it can be passed to the consuming thread.
+     */
+    private static final class PartitionFailure
+    {
+        final Exception cause;
+
+        PartitionFailure(Exception cause)
+        {
+            this.cause = cause;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.socrata.api;
+
+/**
+ * Decides how long to wait between polls of a long running request (one that returned a 202).
+ *
+ * Implementations must be thread safe, since a single policy is shared by every request an
+ * {@code HttpLowLevel} follows.
+ */
+public interface PollingPolicy
+{
+    /**
+     * Computes how long to wait before the next poll.
+     *
+     * @param attempt the number of polls that have already been made for this request (starting at 1).
+     * @param retryAfter the time in milliseconds since the epoch the server asked to be polled again at, taken from
+     *                   the Retry-After header of the last 202.  This is {@code 0} if the server did not send one.
+     * @param elapsed the number of milliseconds since polling for this request started.
+     * @return the number of milliseconds to wait before the next poll, or a negative number if polling should
+     * give up.
+     */
+    long nextPollDelay(long attempt, long retryAfter, long elapsed);
+}
@@ -0,0 +1,245 @@
+package com.socrata.api;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.socrata.builders.SoqlQueryBuilder;
+import com.socrata.exceptions.SodaError;
+import com.socrata.model.soql.OrderByClause;
+import com.socrata.model.soql.SoqlQuery;
+import com.socrata.model.soql.SortOrder;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Walks through all the results of a query a page at a time, using $offset and $limit.  While the caller
+ * works on the current page, the next {@code prefetchDepth} pages are fetched in the background, so the
+ * latency of each request is hidden.
+ *
+ * If the query is not grouped, {@code :id} is added to the $order so the paging is stable.  Grouped queries
+ * need to supply an $order that is stable themselves.
+ *
+ * Pagers hold threads and possibly connections, so they MUST be closed when the caller is done with them.
+ */
+public class QueryPager<T> implements Closeable
+{
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+    public static final int DEFAULT_PREFETCH_DEPTH = 2;
+
+    static final String ID_COLUMN = ":id";
+
+    /**
+     * Fetches a single page of results.
+     */
+    interface PageFetcher<T>
+    {
+        List<T> fetch(SoqlQuery pageQuery) throws SodaError, InterruptedException;
+    }
+
+    private final PageFetcher<T> fetcher;
+    private final SoqlQuery baseQuery;
+    private final int pageSize;
+    private final int prefetchDepth;
+    private final ExecutorService executor;
+    private final Deque<Future<List<T>>> inFlight = new ArrayDeque<Future<List<T>>>();
+
+    private long nextOffset;
+    private final Long endOffset;
+    private boolean exhausted = false;
+    private boolean closed = false;
+
+    /**
+     * Constructor
+     *
+     * @param fetcher the object that issues the request for each page
+     * @param query the query to page through.  Its $offset and $limit, if set, bound the rows returned.
+     * @param pageSize the number of rows to request in each page
+     * @param prefetchDepth the number of pages to fetch ahead of the one being consumed
+     */
+    QueryPager(PageFetcher<T> fetcher, SoqlQuery query, int pageSize, int prefetchDepth)
+    {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be greater than 0");
+        }
+        if (prefetchDepth < 0) {
+            throw new IllegalArgumentException("prefetchDepth cannot be negative");
+        }
+
+        this.fetcher = fetcher;
+        this.baseQuery = withStableOrder(query);
+        this.pageSize = pageSize;
+        this.prefetchDepth = prefetchDepth;
+        this.nextOffset = (query.offset != null) ? query.offset : 0;
+        this.endOffset = (query.limit != null) ? nextOffset + query.limit : null;
+        this.executor = Executors.newFixedThreadPool(prefetchDepth + 1, new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("soda-pager-%d")
+                .build());
+    }
+
+    /**
+     * Gets the next page of results, waiting for it if it has not been fetched yet.
+     *
+     * @return the next page of results, or {@code null} if there are no more results.
+     * @throws SodaError  thrown if there is an error.  Investigate the structure for more information.
+     * @throws InterruptedException throws is the thread is interrupted.
+     */
+    public List<T> nextPage() throws SodaError, InterruptedException
+    {
+        if (closed) {
+            throw new IllegalStateException("This pager is already closed");
+        }
+
+        fillPipeline();
+        final Future<List<T>> next = inFlight.pollFirst();
+        if (next == null) {
+            return null;
+        }
+
+        final List<T> page;
+        try {
+            page = next.get();
+        } catch (ExecutionException e) {
+            close();
+            if (e.getCause() instanceof SodaError) {
+                throw (SodaError) e.getCause();
+            }
+            throw new SodaError("Error fetching a page of results", e.getCause());
+        }
+
+        if (page.size() < pageSize) {
+            //This was the last page, so anything fetched after it is empty.
+            exhausted = true;
+            cancelInFlight();
+        } else {
+            fillPipeline();
+        }
+
+        return page.isEmpty() && exhausted ? null : page;
+    }
+
+    /**
+     * Iterates over the rows across all the pages.  Errors fetching a page are thrown as an
+     * {@link UncheckedExecutionException} wrapping the {@link SodaError}.
+     *
+     * @return an iterator over every row in the result
+     */
+    public Iterator<T> rows()
+    {
+        return new Iterator<T>()
+        {
+            Iterator<T> current = Collections.<T>emptyList().iterator();
+
+            @Override
+            public boolean hasNext()
+            {
+                while (!current.hasNext()) {
+                    final List<T> page;
+                    try {
+                        page = nextPage();
+                    } catch (SodaError e) {
+                        throw new UncheckedExecutionException(e);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new UncheckedExecutionException(e);
+                    }
+
+                    if (page == null) {
+                        return false;
+                    }
+                    current = page.iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public T next()
+            {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException("Rows cannot be removed from a query result");
+            }
+        };
+    }
+
+    @Override
+    public void close()
+    {
+        closed = true;
+        exhausted = true;
+        cancelInFlight();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Makes sure the current page plus {@code prefetchDepth} pages are being fetched.
+     */
+    private void fillPipeline()
+    {
+        while (!exhausted && inFlight.size() <= prefetchDepth) {
+            long limit = pageSize;
+            if (endOffset != null) {
+                limit = Math.min(limit, endOffset - nextOffset);
+                if (limit <= 0) {
+                    exhausted = true;
+                    return;
+                }
+            }
+
+            final SoqlQuery pageQuery = new SoqlQueryBuilder(baseQuery)
+                    .setOffset((int) nextOffset)
+                    .setLimit((int) limit)
+                    .build();
+            nextOffset += limit;
+
+            inFlight.addLast(executor.submit(() -> fetcher.fetch(pageQuery)));
+        }
+    }
+
+    private void cancelInFlight()
+    {
+        for (Future<List<T>> future : inFlight) {
+            future.cancel(true);
+        }
+        inFlight.clear();
+    }
+
+    /**
+     * Adds {@code :id} as the final sort column, so pages are stable between requests.  Grouped queries
+     * are left as they are, since they cannot be ordered by {@code :id}.
+     */
+    static SoqlQuery withStableOrder(SoqlQuery query)
+    {
+        if (query.groupByClause != null) {
+            return query;
+        }
+
+        if (query.orderByClause != null) {
+            for (OrderByClause clause : query.orderByClause) {
+                if (ID_COLUMN.equals(clause.columnName)) {
+                    return query;
+                }
+            }
+        }
+
+        return new SoqlQueryBuilder(query)
+                .addOrderByPhrase(new OrderByClause(SortOrder.Ascending, ID_COLUMN))
+                .build();
+    }
+}
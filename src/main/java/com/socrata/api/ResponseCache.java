@@ -0,0 +1,366 @@
+package com.socrata.api;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache of query results, for clients that run the same query against the same dataset over and over, such as
+ * dashboards.  It is turned on for a connection with {@link HttpLowLevel#setResponseCache(ResponseCache)}, and
+ * used by {@link Soda2Base#query(String, javax.ws.rs.core.MediaType, com.socrata.model.soql.SoqlQuery)}.
+ *
+ * A result is served from the cache without contacting the server until its time to live runs out.  After that,
+ * the next query sends the result's ETag and Last-Modified back to the server, and if the server answers with a
+ * 304 the cached result is used again, so an unchanged result costs a request but not a download.  The default
+ * time to live is 0, which means every query is revalidated this way, and only changes made since the last query
+ * are ever downloaded.  A longer time to live can be set for datasets that are known to change slowly.
+ *
+ * The cache holds at most {@code maxEntries} results and {@code maxBytes} bytes, and evicts the least recently
+ * used results past that.  Results larger than {@code maxEntryBytes} are not cached.  Writes made through
+ * {@link Soda2Base} drop the cached results for that dataset, but changes made by anyone else are only seen once
+ * a result is revalidated.
+ *
+ * This is thread safe, and can be shared by several connections.  Results are cached under the credentials and
+ * app token they were fetched with, so connections logged in as different users never see each other's results.
+ */
+public class ResponseCache
+{
+    public static final int  DEFAULT_MAX_ENTRIES = 256;
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+    public static final int  DEFAULT_MAX_ENTRY_BYTES = 4 * 1024 * 1024;
+    public static final long DEFAULT_TIME_TO_LIVE = 0;
+
+    private final int  maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private final ConcurrentHashMap<String, Long> timesToLive = new ConcurrentHashMap<String, Long>();
+    private final HashMap<String, Long> invalidatedAt = new HashMap<String, Long>();
+
+    private volatile int  maxEntryBytes = DEFAULT_MAX_ENTRY_BYTES;
+    private volatile long defaultTimeToLive = DEFAULT_TIME_TO_LIVE;
+    private long bytes = 0;
+    private long generation = 0;
+    private long clearedAt = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ResponseCache()
+    {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param maxEntries the most results to keep
+     * @param maxBytes the most bytes of results to keep
+     */
+    public ResponseCache(int maxEntries, long maxBytes)
+    {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive, was " + maxEntries);
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive, was " + maxBytes);
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param maxEntryBytes the largest result to cache, in bytes
+     * @return this cache
+     */
+    public ResponseCache setMaxEntryBytes(int maxEntryBytes)
+    {
+        if (maxEntryBytes <= 0) {
+            throw new IllegalArgumentException("maxEntryBytes must be positive, was " + maxEntryBytes);
+        }
+        this.maxEntryBytes = maxEntryBytes;
+        return this;
+    }
+
+    /**
+     * @param millis how long results are used without revalidating them, for datasets that don't have their own
+     *               time to live
+     * @return this cache
+     */
+    public ResponseCache setDefaultTimeToLive(long millis)
+    {
+        if (millis < 0) {
+            throw new IllegalArgumentException("millis must not be negative, was " + millis);
+        }
+        this.defaultTimeToLive = millis;
+        return this;
+    }
+
+    /**
+     * Sets how long the results of queries against one dataset are used without revalidating them.
+     *
+     * @param resourceId the id of the dataset, as passed to the query
+     * @param millis the time to live, or {@code null} to go back to the default
+     * @return this cache
+     */
+    public ResponseCache setTimeToLive(@Nonnull String resourceId, @Nullable Long millis)
+    {
+        if (millis == null) {
+            timesToLive.remove(resourceId);
+        } else if (millis < 0) {
+            throw new IllegalArgumentException("millis must not be negative, was " + millis);
+        } else {
+            timesToLive.put(resourceId, millis);
+        }
+        return this;
+    }
+
+    /**
+     * @param resourceId the id of the dataset, as passed to the query
+     * @return how long the results of queries against the dataset are used without revalidating them
+     */
+    public long getTimeToLive(@Nonnull String resourceId)
+    {
+        final Long millis = timesToLive.get(resourceId);
+        return millis == null ? defaultTimeToLive : millis;
+    }
+
+    /**
+     * Drops all the cached results for a dataset.
+     *
+     * @param resourceId the id of the dataset, as passed to the query
+     */
+    public synchronized void invalidate(@Nonnull String resourceId)
+    {
+        invalidatedAt.put(resourceId, ++generation);
+        final Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            final Entry entry = it.next();
+            if (entry.resourceId.equals(resourceId)) {
+                bytes -= entry.body.length;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops all the cached results.
+     */
+    public synchronized void clear()
+    {
+        clearedAt = ++generation;
+        invalidatedAt.clear();
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return a snapshot of how the cache has been used
+     */
+    public Stats getStats()
+    {
+        final int size;
+        final long currentBytes;
+        synchronized (this) {
+            size = entries.size();
+            currentBytes = bytes;
+        }
+        return new Stats(hits.sum(), revalidations.sum(), misses.sum(), evictions.sum(), size, currentBytes);
+    }
+
+    /**
+     * @return the key a request is cached under, made from its URI, the type it accepts, and who it was made as.
+     *         The credentials are hashed, so they are not kept in the cache.
+     */
+    static String key(URI uri, String acceptType, @Nullable String authorization, @Nullable String appToken)
+    {
+        final String identity = (authorization == null && appToken == null) ?
+                "anonymous" :
+                Hashing.sha256().hashString(authorization + "\n" + appToken, Charsets.UTF_8).toString();
+        return identity + " " + acceptType + " " + uri.toASCIIString();
+    }
+
+    synchronized Entry get(String key)
+    {
+        return entries.get(key);
+    }
+
+    int getMaxEntryBytes()
+    {
+        return maxEntryBytes;
+    }
+
+    /**
+     * @return the current generation of the cache, which moves on every time results are dropped.  A result fetched
+     *         before a dataset's results were dropped may be stale, so it is only put in the cache along with the
+     *         generation taken when its request was made.
+     */
+    synchronized long generation()
+    {
+        return generation;
+    }
+
+    /**
+     * Caches a result, unless the results for its dataset have been dropped since {@code requestGeneration}.
+     */
+    synchronized void put(String key, Entry entry, long requestGeneration)
+    {
+        if (entry.body.length > maxEntryBytes) {
+            return;
+        }
+
+        final Long invalidated = invalidatedAt.get(entry.resourceId);
+        if (clearedAt > requestGeneration || (invalidated != null && invalidated > requestGeneration)) {
+            return;
+        }
+
+        final Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            bytes -= previous.body.length;
+        }
+        bytes += entry.body.length;
+
+        final Iterator<Entry> it = entries.values().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+            final Entry eldest = it.next();
+            bytes -= eldest.body.length;
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    void recordHit()
+    {
+        hits.increment();
+    }
+
+    void recordRevalidation()
+    {
+        revalidations.increment();
+    }
+
+    void recordMiss()
+    {
+        misses.increment();
+    }
+
+    /**
+     * A cached result, with what is needed to serve it again and to revalidate it.
+     */
+    static final class Entry
+    {
+        final String resourceId;
+        final byte[] body;
+        final String contentType;
+        final String etag;
+        final String lastModified;
+        volatile long expiresAt;
+
+        Entry(String resourceId, byte[] body, String contentType, String etag, String lastModified, long expiresAt)
+        {
+            this.resourceId = resourceId;
+            this.body = body;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isFresh(long now)
+        {
+            return now < expiresAt;
+        }
+    }
+
+    /**
+     * A snapshot of the counters for a cache.
+     */
+    public static final class Stats
+    {
+        private final long hits;
+        private final long revalidations;
+        private final long misses;
+        private final long evictions;
+        private final int  entries;
+        private final long bytes;
+
+        Stats(long hits, long revalidations, long misses, long evictions, int entries, long bytes)
+        {
+            this.hits = hits;
+            this.revalidations = revalidations;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.entries = entries;
+            this.bytes = bytes;
+        }
+
+        /**
+         * @return the number of queries answered from the cache without contacting the server
+         */
+        public long getHits()
+        {
+            return hits;
+        }
+
+        /**
+         * @return the number of queries answered from the cache after the server said the result had not changed
+         */
+        public long getRevalidations()
+        {
+            return revalidations;
+        }
+
+        /**
+         * @return the number of queries whose result had to be downloaded
+         */
+        public long getMisses()
+        {
+            return misses;
+        }
+
+        /**
+         * @return the number of results dropped to make room for newer ones
+         */
+        public long getEvictions()
+        {
+            return evictions;
+        }
+
+        /**
+         * @return the number of results in the cache
+         */
+        public int getEntries()
+        {
+            return entries;
+        }
+
+        /**
+         * @return the total size of the results in the cache
+         */
+        public long getBytes()
+        {
+            return bytes;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "ResponseCache.Stats{" +
+                    "hits=" + hits +
+                    ", revalidations=" + revalidations +
+                    ", misses=" + misses +
+                    ", evictions=" + evictions +
+                    ", entries=" + entries +
+                    ", bytes=" + bytes +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.socrata.api;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A client filter for Jersey that answers queries from the {@link ResponseCache} of an {@link HttpLowLevel}.
+ * Only requests made with {@link HttpLowLevel#queryRawCached} are looked at; everything else passes through.
+ *
+ * A fresh result is returned without making the request at all.  A stale one is revalidated by adding
+ * If-None-Match and If-Modified-Since to the request, and a 304 answer is turned back into a 200 carrying the
+ * cached body, so callers never see the 304.  A new result is copied into the cache as the caller reads it, unless
+ * the dataset's results were dropped while it was in flight, since it may have been read from before the change.
+ *
+ * It runs after the other request filters, so the credentials and app token they add are part of the cache key.
+ */
+@Priority(Priorities.USER + 1000)
+public class ResponseCacheFilter implements ClientRequestFilter, ClientResponseFilter
+{
+    static final String RESOURCE_ID_PROPERTY = ResponseCacheFilter.class.getName() + ".resourceId";
+
+    private static final String LOOKUP_PROPERTY = ResponseCacheFilter.class.getName() + ".lookup";
+
+    private final HttpLowLevel httpLowLevel;
+
+    ResponseCacheFilter(HttpLowLevel httpLowLevel)
+    {
+        this.httpLowLevel = httpLowLevel;
+    }
+
+    @Override
+    public void filter(ClientRequestContext cr) throws IOException
+    {
+        final ResponseCache cache = httpLowLevel.getResponseCache();
+        final Object resourceId = cr.getProperty(RESOURCE_ID_PROPERTY);
+        if (cache == null || !(resourceId instanceof String) || !"GET".equals(cr.getMethod())) {
+            return;
+        }
+
+        final String key = ResponseCache.key(cr.getUri(), cr.getHeaderString(HttpHeaders.ACCEPT),
+                                             cr.getHeaderString(HttpHeaders.AUTHORIZATION),
+                                             cr.getHeaderString(HttpLowLevel.SOCRATA_TOKEN_HEADER));
+        final ResponseCache.Entry entry = cache.get(key);
+        if (entry != null && entry.isFresh(System.currentTimeMillis())) {
+            cache.recordHit();
+            cr.abortWith(Response.ok(new ByteArrayInputStream(entry.body))
+                                 .header(HttpHeaders.CONTENT_TYPE, entry.contentType)
+                                 .header(HttpHeaders.ETAG, entry.etag)
+                                 .header(HttpHeaders.LAST_MODIFIED, entry.lastModified)
+                                 .build());
+            return;
+        }
+
+        cr.setProperty(LOOKUP_PROPERTY, new Lookup(cache, key, (String) resourceId, entry, cache.generation()));
+        if (entry != null) {
+            if (entry.etag != null) {
+                cr.getHeaders().putSingle(HttpHeaders.IF_NONE_MATCH, entry.etag);
+            }
+            if (entry.lastModified != null) {
+                cr.getHeaders().putSingle(HttpHeaders.IF_MODIFIED_SINCE, entry.lastModified);
+            }
+        }
+    }
+
+    @Override
+    public void filter(ClientRequestContext cr, ClientResponseContext response) throws IOException
+    {
+        final Object property = cr.getProperty(LOOKUP_PROPERTY);
+        if (!(property instanceof Lookup)) {
+            return;
+        }
+
+        final Lookup lookup = (Lookup) property;
+        final ResponseCache.Entry cached = lookup.entry;
+        if (response.getStatus() == 304 && cached != null) {
+            lookup.cache.recordRevalidation();
+            cached.expiresAt = System.currentTimeMillis() + lookup.cache.getTimeToLive(lookup.resourceId);
+
+            final MultivaluedMap<String, String> headers = response.getHeaders();
+            headers.remove(HttpHeaders.CONTENT_ENCODING);
+            headers.putSingle(HttpHeaders.CONTENT_TYPE, cached.contentType);
+            headers.putSingle(HttpHeaders.CONTENT_LENGTH, Integer.toString(cached.body.length));
+            response.setStatus(200);
+            response.setEntityStream(new ByteArrayInputStream(cached.body));
+            return;
+        }
+
+        lookup.cache.recordMiss();
+        if (response.getStatus() == 200 && response.hasEntity() && isCacheable(lookup, response)) {
+            response.setEntityStream(new CachingInputStream(response.getEntityStream(), lookup, response));
+        }
+    }
+
+    private static boolean isCacheable(Lookup lookup, ClientResponseContext response)
+    {
+        final String cacheControl = response.getHeaderString(HttpHeaders.CACHE_CONTROL);
+        if (cacheControl != null && cacheControl.contains("no-store")) {
+            return false;
+        }
+
+        //Without a validator, a result can only be reused while it is fresh.
+        return response.getHeaderString(HttpHeaders.ETAG) != null ||
+               response.getHeaderString(HttpHeaders.LAST_MODIFIED) != null ||
+               lookup.cache.getTimeToLive(lookup.resourceId) > 0;
+    }
+
+    private static final class Lookup
+    {
+        final ResponseCache       cache;
+        final String              key;
+        final String              resourceId;
+        final ResponseCache.Entry entry;
+        final long                generation;
+
+        Lookup(ResponseCache cache, String key, String resourceId, ResponseCache.Entry entry, long generation)
+        {
+            this.cache = cache;
+            this.key = key;
+            this.resourceId = resourceId;
+            this.entry = entry;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * Copies the body into the cache as it is read.  The result is only cached if it is read to the end, and is
+     * given up on once it grows past the largest size the cache takes.
+     */
+    private static final class CachingInputStream extends FilterInputStream
+    {
+        private final Lookup lookup;
+        private final String contentType;
+        private final String etag;
+        private final String lastModified;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        CachingInputStream(InputStream in, Lookup lookup, ClientResponseContext response)
+        {
+            super(in);
+            this.lookup = lookup;
+            this.contentType = response.getHeaderString(HttpHeaders.CONTENT_TYPE);
+            this.etag = response.getHeaderString(HttpHeaders.ETAG);
+            this.lastModified = response.getHeaderString(HttpHeaders.LAST_MODIFIED);
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            final int b = in.read();
+            if (b == -1) {
+                store();
+            } else if (copy != null) {
+                copy.write(b);
+                checkSize();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            final int read = in.read(b, off, len);
+            if (read == -1) {
+                store();
+            } else if (copy != null) {
+                copy.write(b, off, read);
+                checkSize();
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            //Skipped bytes can't be copied, so the result can't be cached.
+            copy = null;
+            return in.skip(n);
+        }
+
+        @Override
+        public boolean markSupported()
+        {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            try {
+                //JSON readers stop at the end of the value and close the stream without seeing EOF, so whatever is
+                //left (normally nothing, and never more than the largest cacheable result) is read here.
+                final byte[] rest = new byte[4096];
+                while (copy != null && read(rest, 0, rest.length) != -1) {
+                    //Keep reading
+                }
+            } finally {
+                in.close();
+            }
+        }
+
+        private void checkSize()
+        {
+            if (copy.size() > lookup.cache.getMaxEntryBytes()) {
+                copy = null;
+            }
+        }
+
+        private void store()
+        {
+            if (copy != null) {
+                final long expiresAt = System.currentTimeMillis() + lookup.cache.getTimeToLive(lookup.resourceId);
+                lookup.cache.put(lookup.key, new ResponseCache.Entry(lookup.resourceId, copy.toByteArray(), contentType,
+                                                                     etag, lastModified, expiresAt),
+                                lookup.generation);
+                copy = null;
+            }
+        }
+    }
+}
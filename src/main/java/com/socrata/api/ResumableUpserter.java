@@ -0,0 +1,313 @@
+package com.socrata.api;
+
+import com.socrata.exceptions.SodaError;
+import com.socrata.model.UpsertError;
+import com.socrata.model.UpsertResult;
+import com.socrata.utils.RowUpdateOption;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.core.MediaType;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Upserts a large CSV or JSON stream in row-aligned chunks, one at a time, recording every chunk the server
+ * acknowledges in a local journal file.  If the upsert fails part way, or the process dies, running it again with
+ * the same journal and the same input skips the chunks that were already applied and carries on from the first
+ * one that wasn't.
+ *
+ * Each chunk is sent with {@link RowUpdateOption#expectedDataVersion} set to the data version the server reported
+ * for the chunk before it, so a chunk is only applied if nothing, including an earlier attempt at the same chunk,
+ * has changed the dataset since.  If the server answers with a version mismatch, the upsert stops with a
+ * {@link SodaError}, rather than risk applying the chunk twice.  For datasets with a row identifier, applying a
+ * chunk twice does no harm, and the check can be turned off to resend the chunk instead.
+ *
+ * The journal holds the chunk size, and must be resumed with the same settings, dataset and input.  CSV input is
+ * skipped by byte offset, so a resumed CSV stream can skip the applied rows without reading them.  Running a
+ * finished upsert again sends nothing and returns its result, so the journal should be deleted once it is no
+ * longer needed.
+ */
+public class ResumableUpserter
+{
+    private final Soda2Producer producer;
+    private final File          journal;
+
+    private int             chunkRows = ParallelUpserter.DEFAULT_CHUNK_ROWS;
+    private int             chunkBytes = ParallelUpserter.DEFAULT_CHUNK_BYTES;
+    private int             maxRetries = ParallelUpserter.DEFAULT_MAX_RETRIES;
+    private long            retryDelay = ParallelUpserter.DEFAULT_RETRY_DELAY;
+    private boolean         checkDataVersion = true;
+    private RowUpdateOption rowUpdateOption = new RowUpdateOption();
+
+    /**
+     * Constructor.
+     *
+     * @param producer the producer used to send the chunks
+     * @param journal the journal file.  It is created if it doesn't exist, and resumed from if it does.
+     */
+    public ResumableUpserter(Soda2Producer producer, File journal)
+    {
+        this.producer = producer;
+        this.journal = journal;
+    }
+
+    /**
+     * Sets the max number of rows to send in a single request.
+     * @param chunkRows max number of rows in a chunk
+     * @return this upserter
+     */
+    public ResumableUpserter setChunkRows(int chunkRows)
+    {
+        if (chunkRows <= 0) {
+            throw new IllegalArgumentException("chunkRows must be greater than 0");
+        }
+        this.chunkRows = chunkRows;
+        return this;
+    }
+
+    /**
+     * Sets the size a chunk may grow to before it is sent.  A chunk always holds whole rows, so it may go over
+     * this size by up to one row.
+     * @param chunkBytes size in bytes a chunk may grow to
+     * @return this upserter
+     */
+    public ResumableUpserter setChunkBytes(int chunkBytes)
+    {
+        if (chunkBytes <= 0) {
+            throw new IllegalArgumentException("chunkBytes must be greater than 0");
+        }
+        this.chunkBytes = chunkBytes;
+        return this;
+    }
+
+    /**
+     * Sets how many times a chunk is retried after a server or network error.  Errors in the request itself
+     * (a 4xx status) are never retried.
+     * @param maxRetries number of retries per chunk
+     * @return this upserter
+     */
+    public ResumableUpserter setMaxRetries(int maxRetries)
+    {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries must not be negative");
+        }
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    /**
+     * Sets the delay before the first retry of a chunk.  The delay doubles with each further retry.
+     * @param retryDelay delay in milliseconds
+     * @return this upserter
+     */
+    public ResumableUpserter setRetryDelay(long retryDelay)
+    {
+        if (retryDelay < 0) {
+            throw new IllegalArgumentException("retryDelay must not be negative");
+        }
+        this.retryDelay = retryDelay;
+        return this;
+    }
+
+    /**
+     * Sets whether each chunk is sent with the data version of the chunk before it, so it is only applied if the
+     * dataset hasn't changed since.  This is on by default.
+     * @param checkDataVersion false to send chunks without an expected data version
+     * @return this upserter
+     */
+    public ResumableUpserter setCheckDataVersion(boolean checkDataVersion)
+    {
+        this.checkDataVersion = checkDataVersion;
+        return this;
+    }
+
+    /**
+     * Sets the options sent with each chunk.  If the options have an expected data version, it is used for the
+     * first chunk; later chunks expect the version the chunk before them produced.
+     * @param rowUpdateOption options for each upsert request
+     * @return this upserter
+     */
+    public ResumableUpserter setRowUpdateOption(RowUpdateOption rowUpdateOption)
+    {
+        this.rowUpdateOption = rowUpdateOption;
+        return this;
+    }
+
+    /**
+     * Upserts a CSV stream, or resumes upserting it.  The first row of the stream is the header, and is sent at
+     * the start of every chunk.
+     *
+     * @param resourceId unique id or resource name of the dataset
+     * @param csv stream of CSV rows, starting with the header row.  When resuming, this must be the same stream
+     *            as the first time, from the start.
+     *
+     * @return result of objects added, removed and modified, across all the chunks, including the ones
+     * applied before a resume.
+     * @throws SodaError  thrown if there is an error.  Investigate the structure for more information.
+     * @throws InterruptedException throws is the thread is interrupted.
+     */
+    public UpsertResult upsertCsv(String resourceId, InputStream csv) throws SodaError, InterruptedException
+    {
+        return upsertChunks(resourceId, HttpLowLevel.CSV_TYPE, new RowChunker.Csv(csv, chunkRows, chunkBytes));
+    }
+
+    /**
+     * Upserts a stream holding a JSON array of rows, or resumes upserting it.
+     *
+     * @param resourceId unique id or resource name of the dataset
+     * @param json stream holding a JSON array of rows.  When resuming, this must be the same stream as the
+     *             first time, from the start.
+     *
+     * @return result of objects added, removed and modified, across all the chunks, including the ones
+     * applied before a resume.
+     * @throws SodaError  thrown if there is an error.  Investigate the structure for more information.
+     * @throws InterruptedException throws is the thread is interrupted.
+     */
+    public UpsertResult upsertJson(String resourceId, InputStream json) throws SodaError, InterruptedException
+    {
+        final RowChunker chunker;
+        try {
+            chunker = new RowChunker.Json(producer.getHttpLowLevel().getObjectMapper().getFactory(), json, chunkRows, chunkBytes);
+        } catch (IOException ioe) {
+            throw new SodaError("Error reading the rows to upsert.  Error message: " + ioe.getLocalizedMessage());
+        }
+        return upsertChunks(resourceId, HttpLowLevel.JSON_TYPE, chunker);
+    }
+
+    UpsertResult upsertChunks(String resourceId, MediaType mediaType, RowChunker chunker) throws SodaError, InterruptedException
+    {
+        final UpsertJournal.Header header = new UpsertJournal.Header(resourceId, mediaType.toString(), chunkRows, chunkBytes);
+        final UpsertJournal log;
+        try {
+            log = UpsertJournal.open(journal, producer.getHttpLowLevel().getObjectMapper(), header);
+        } catch (IOException ioe) {
+            throw new SodaError("Error opening the upsert journal " + journal + ".  Error message: " + ioe.getLocalizedMessage());
+        }
+
+        try {
+            final UpsertJournal.Entry last = log.lastEntry();
+            Long expectedVersion = rowUpdateOption.expectedDataVersion;
+            if (last != null) {
+                try {
+                    chunker.skip(last.firstRow + last.rowCount, last.endOffset);
+                } catch (IOException ioe) {
+                    throw new SodaError("Error skipping the " + (last.firstRow + last.rowCount) + " rows already upserted.  Error message: " + ioe.getLocalizedMessage());
+                }
+                expectedVersion = last.truthDataVersion;
+            }
+
+            RowChunker.Chunk chunk;
+            while ((chunk = nextChunk(chunker)) != null) {
+                final UpsertResult result = sendWithRetries(resourceId, mediaType, chunk, checkDataVersion ? expectedVersion : null);
+                try {
+                    log.append(toEntry(chunk, result));
+                } catch (IOException ioe) {
+                    throw new SodaError("Rows " + chunk.firstRow + " to " + (chunk.firstRow + chunk.rowCount - 1) + " were upserted, but could not be " +
+                                        "recorded in the upsert journal " + journal + ".  Error message: " + ioe.getLocalizedMessage());
+                }
+                expectedVersion = result.truthDataVersion;
+            }
+
+            return total(log.entries());
+        } finally {
+            try {
+                log.close();
+            } catch (IOException ignored) {
+                //The entries were all forced to disk as they were written.
+            }
+        }
+    }
+
+    /**
+     * Sends a single chunk to the server.  Split out so failures part way through an upsert can be tested.
+     */
+    UpsertResult sendChunk(String resourceId, MediaType mediaType, RowChunker.Chunk chunk, RowUpdateOption option) throws SodaError, InterruptedException
+    {
+        return producer.upsertStream(resourceId, mediaType, chunk.stream(), option);
+    }
+
+    private UpsertResult sendWithRetries(String resourceId, MediaType mediaType, RowChunker.Chunk chunk, Long expectedVersion) throws SodaError, InterruptedException
+    {
+        final RowUpdateOption option = withExpectedVersion(rowUpdateOption, expectedVersion);
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return sendChunk(resourceId, mediaType, chunk, option);
+            } catch (SodaError e) {
+                if (e.status == 412 && expectedVersion != null) {
+                    final SodaError conflict = new SodaError("Rows " + chunk.firstRow + " to " + (chunk.firstRow + chunk.rowCount - 1) + " were not upserted, " +
+                            "because the dataset is no longer at data version " + expectedVersion + ".  It was changed by someone else, or " +
+                            (attempt > 0 ? "by an earlier attempt at this chunk that failed after being applied" : "after the journal was written") +
+                            ".  Error message: " + e.getLocalizedMessage(), e);
+                    conflict.setStatus(e.status);
+                    throw conflict;
+                }
+                if (attempt >= maxRetries || !ParallelUpserter.isRetryable(e)) {
+                    throw e;
+                }
+            } catch (ProcessingException e) {
+                if (attempt >= maxRetries) {
+                    throw new SodaError("Error upserting rows " + chunk.firstRow + " to " + (chunk.firstRow + chunk.rowCount - 1) +
+                                        ".  Error message: " + e.getLocalizedMessage(), e);
+                }
+            }
+            Thread.sleep(retryDelay << Math.min(attempt, 16));
+        }
+    }
+
+    private static RowUpdateOption withExpectedVersion(RowUpdateOption options, Long expectedVersion)
+    {
+        final RowUpdateOption copy = new RowUpdateOption();
+        copy.truncate = options.truncate;
+        copy.mergeInsteadOfReplace = options.mergeInsteadOfReplace;
+        copy.errorsAreFatal = options.errorsAreFatal;
+        copy.nonFatalRowErrors = options.nonFatalRowErrors;
+        copy.expectedDataVersion = expectedVersion;
+        return copy;
+    }
+
+    private static RowChunker.Chunk nextChunk(RowChunker chunker) throws SodaError
+    {
+        try {
+            return chunker.next();
+        } catch (IOException ioe) {
+            throw new SodaError("Error reading the rows to upsert.  Error message: " + ioe.getLocalizedMessage());
+        }
+    }
+
+    private static UpsertJournal.Entry toEntry(RowChunker.Chunk chunk, UpsertResult result)
+    {
+        List<UpsertError> errors = null;
+        if (result.errors != null && !result.errors.isEmpty()) {
+            errors = new ArrayList<UpsertError>(result.errors.size());
+            for (UpsertError error : result.errors) {
+                errors.add(new UpsertError(error.getError(), (int) (error.getIndex() + chunk.firstRow), error.getPrimaryKey()));
+            }
+        }
+        return new UpsertJournal.Entry(chunk.firstRow, chunk.rowCount, chunk.startOffset, chunk.endOffset,
+                                       result.truthDataVersion, result.truthDataShapeVersion,
+                                       result.rowsCreated, result.rowsUpdated, result.rowsDeleted, errors);
+    }
+
+    private static UpsertResult total(List<UpsertJournal.Entry> entries)
+    {
+        long created = 0;
+        long updated = 0;
+        long deleted = 0;
+        final List<UpsertError> errors = new ArrayList<UpsertError>();
+        for (UpsertJournal.Entry entry : entries) {
+            created += entry.rowsCreated;
+            updated += entry.rowsUpdated;
+            deleted += entry.rowsDeleted;
+            if (entry.errors != null) {
+                errors.addAll(entry.errors);
+            }
+        }
+
+        final UpsertJournal.Entry last = entries.isEmpty() ? null : entries.get(entries.size() - 1);
+        return new UpsertResult(created, updated, deleted, errors.isEmpty() ? null : errors,
+                                last != null ? last.truthDataVersion : null, last != null ? last.truthDataShapeVersion : null);
+    }
+}
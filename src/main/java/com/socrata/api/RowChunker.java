@@ -0,0 +1,291 @@
+package com.socrata.api;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Splits a stream of rows into chunks that each hold whole rows, and can be sent to the server as a
+ * request on their own.  A chunk is closed once it has {@code maxRows} rows, or at least {@code maxBytes} bytes.
+ */
+abstract class RowChunker
+{
+    /**
+     * A chunk of rows, ready to be sent up as a request body.  The offsets are the positions in the input just
+     * before the chunk's first row and just after its last row.
+     */
+    static final class Chunk
+    {
+        final byte[] bytes;
+        final long   firstRow;
+        final int    rowCount;
+        final long   startOffset;
+        final long   endOffset;
+
+        Chunk(byte[] bytes, long firstRow, int rowCount, long startOffset, long endOffset)
+        {
+            this.bytes = bytes;
+            this.firstRow = firstRow;
+            this.rowCount = rowCount;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+        }
+
+        InputStream stream()
+        {
+            return new ByteArrayInputStream(bytes);
+        }
+    }
+
+    protected final int maxRows;
+    protected final int maxBytes;
+    protected long rowsRead = 0;
+
+    RowChunker(int maxRows, int maxBytes)
+    {
+        this.maxRows = maxRows;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the next chunk of rows, or {@code null} if there are no more rows.
+     */
+    abstract Chunk next() throws IOException;
+
+    /**
+     * Skips over rows that have already been sent, so the next chunk starts with row {@code rows}.  This must be
+     * called before the first call to {@link #next()}.
+     *
+     * @param rows the number of rows to skip
+     * @param offset the end offset of the last chunk skipped, as reported by {@link Chunk#endOffset}
+     */
+    abstract void skip(long rows, long offset) throws IOException;
+
+    /**
+     * Splits CSV input, repeating the header row at the start of each chunk.  Quoted fields may contain newlines.
+     */
+    static final class Csv extends RowChunker
+    {
+        private final InputStream is;
+        private final byte[] buffer = new byte[65536];
+        private int     pos = 0;
+        private int     limit = 0;
+        private boolean inQuotes = false;
+        private boolean eof = false;
+        private long    bytesRead = 0;
+        private byte[]  header;
+
+        Csv(InputStream is, int maxRows, int maxBytes)
+        {
+            super(maxRows, maxBytes);
+            this.is = is;
+        }
+
+        @Override
+        Chunk next() throws IOException
+        {
+            readHeader();
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(maxBytes, 1 << 20) + header.length);
+            out.write(header);
+            final long start = offset();
+            final int rows = readRows(out, maxRows, (long) maxBytes + header.length);
+            if (rows == 0) {
+                return null;
+            }
+
+            final Chunk chunk = new Chunk(out.toByteArray(), rowsRead, rows, start, offset());
+            rowsRead += rows;
+            return chunk;
+        }
+
+        /**
+         * Skips straight to the byte offset, since the rows before it don't need to be looked at.  Row boundaries
+         * are never inside quotes, so the quoting state is the same as at the start of a row.
+         */
+        @Override
+        void skip(long rows, long offset) throws IOException
+        {
+            readHeader();
+
+            long toSkip = offset - offset();
+            if (toSkip < 0) {
+                throw new IOException("Can not skip back to offset " + offset + ", the header ends at " + offset());
+            }
+
+            final int buffered = (int) Math.min(toSkip, limit - pos);
+            pos += buffered;
+            toSkip -= buffered;
+            while (toSkip > 0) {
+                long skipped = is.skip(toSkip);
+                if (skipped <= 0) {
+                    if (is.read() < 0) {
+                        throw new IOException("The input ended before offset " + offset);
+                    }
+                    skipped = 1;
+                }
+                toSkip -= skipped;
+                bytesRead += skipped;
+            }
+            rowsRead = rows;
+        }
+
+        private void readHeader() throws IOException
+        {
+            if (header == null) {
+                final ByteArrayOutputStream headerOut = new ByteArrayOutputStream();
+                readRows(headerOut, 1, Long.MAX_VALUE);
+                header = headerOut.toByteArray();
+            }
+        }
+
+        /**
+         * @return the number of bytes of the input that have been copied or skipped
+         */
+        private long offset()
+        {
+            return bytesRead - (limit - pos);
+        }
+
+        /**
+         * Copies whole rows to {@code out}, until the row or byte limit is hit.  The byte limit is only checked
+         * between rows, so a row that crosses the end of the read buffer is never split across chunks.
+         *
+         * @return the number of rows copied
+         */
+        private int readRows(ByteArrayOutputStream out, int rowLimit, long byteLimit) throws IOException
+        {
+            int  rows = 0;
+            boolean partialRow = false;
+
+            while (rows < rowLimit && (partialRow || out.size() < byteLimit)) {
+                if (pos == limit) {
+                    if (eof || !fill()) {
+                        break;
+                    }
+                }
+
+                int i = pos;
+                boolean endOfRow = false;
+                for (; i < limit; i++) {
+                    final byte b = buffer[i];
+                    if (b == '"') {
+                        inQuotes = !inQuotes;
+                    } else if (b == '\n' && !inQuotes) {
+                        endOfRow = true;
+                        i++;
+                        break;
+                    }
+                }
+
+                out.write(buffer, pos, i - pos);
+                pos = i;
+                if (endOfRow) {
+                    rows++;
+                    partialRow = false;
+                } else {
+                    partialRow = true;
+                }
+            }
+
+            //The last row in a file may not end in a newline.
+            if (partialRow && eof && pos == limit) {
+                rows++;
+            }
+            return rows;
+        }
+
+        private boolean fill() throws IOException
+        {
+            final int read = is.read(buffer);
+            if (read < 0) {
+                eof = true;
+                return false;
+            }
+            pos = 0;
+            limit = read;
+            bytesRead += read;
+            return true;
+        }
+    }
+
+    /**
+     * Splits a JSON array of rows into smaller JSON arrays.
+     */
+    static final class Json extends RowChunker
+    {
+        private final JsonFactory factory;
+        private final JsonParser  parser;
+        private boolean done = false;
+
+        Json(JsonFactory factory, InputStream is, int maxRows, int maxBytes) throws IOException
+        {
+            super(maxRows, maxBytes);
+            this.factory = factory;
+            this.parser = factory.createParser(is);
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array of rows, but got " + parser.getCurrentToken());
+            }
+        }
+
+        @Override
+        Chunk next() throws IOException
+        {
+            if (done) {
+                return null;
+            }
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(maxBytes, 1 << 20));
+            final JsonGenerator generator = factory.createGenerator(out);
+            generator.writeStartArray();
+
+            final long start = parser.getCurrentLocation().getByteOffset();
+            long end = start;
+            int rows = 0;
+            while (rows < maxRows && out.size() < maxBytes) {
+                final JsonToken token = parser.nextToken();
+                if (token == null || token == JsonToken.END_ARRAY) {
+                    done = true;
+                    break;
+                }
+                generator.copyCurrentStructure(parser);
+                generator.flush();
+                end = parser.getCurrentLocation().getByteOffset();
+                rows++;
+            }
+
+            generator.writeEndArray();
+            generator.close();
+
+            if (rows == 0) {
+                return null;
+            }
+
+            final Chunk chunk = new Chunk(out.toByteArray(), rowsRead, rows, start, end);
+            rowsRead += rows;
+            return chunk;
+        }
+
+        /**
+         * A JSON parser can't seek, so the rows are skipped one at a time, though without copying them.
+         */
+        @Override
+        void skip(long rows, long offset) throws IOException
+        {
+            for (long i = rowsRead; i < rows; i++) {
+                final JsonToken token = parser.nextToken();
+                if (token == null || token == JsonToken.END_ARRAY) {
+                    throw new IOException("The input ended after " + i + " rows, before row " + rows);
+                }
+                parser.skipChildren();
+            }
+            rowsRead = rows;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.socrata.api;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterates over the rows of a SODA2 JSON query response, decoding one row at a time from the response stream.
+ * This means memory use does not grow with the size of the result set.
+ *
+ * The underlying response is closed once the last row is read, but callers that stop early MUST call {@link #close()}
+ * so the connection is returned to the pool.  Errors reading the stream are thrown as {@link UncheckedIOException}.
+ */
+public class RowIterator<T> implements Iterator<T>, Closeable
+{
+    private final JsonParser parser;
+    private final ObjectReader reader;
+    private final AutoCloseable resource;
+
+    private T       next;
+    private boolean done = false;
+
+    /**
+     * Constructor
+     *
+     * @param is the stream containing a JSON array of rows.
+     * @param resource the resource to close once the rows have been read, or the iterator is closed.  Normally
+     *                 the Response the stream came from.
+     * @param reader the reader to use for decoding each row.
+     * @throws IOException if the stream does not start with a JSON array.
+     */
+    RowIterator(InputStream is, AutoCloseable resource, ObjectReader reader) throws IOException
+    {
+        this.reader = reader;
+        this.resource = resource;
+        this.parser = reader.getFactory().createParser(is);
+
+        try {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array of rows, but got " + parser.getCurrentToken());
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        if (next != null) {
+            return true;
+        }
+
+        if (done) {
+            return false;
+        }
+
+        try {
+            final JsonToken token = parser.nextToken();
+            if (token == null || token == JsonToken.END_ARRAY) {
+                close();
+                return false;
+            }
+            next = reader.readValue(parser);
+            return true;
+        } catch (IOException e) {
+            try {
+                close();
+            } catch (UncheckedIOException ignored) {
+                //Report the original error
+            }
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public T next()
+    {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        final T retVal = next;
+        next = null;
+        return retVal;
+    }
+
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException("Rows cannot be removed from a query result");
+    }
+
+    /**
+     * Exposes the remaining rows as a sequential Stream.  Closing the stream closes this iterator.
+     *
+     * @return a Stream over the remaining rows.
+     */
+    public Stream<T> asStream()
+    {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                            .onClose(this::close);
+    }
+
+    @Override
+    public void close()
+    {
+        if (done) {
+            return;
+        }
+
+        done = true;
+        next = null;
+        try {
+            parser.close();
+            resource.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to close the query results", e);
+        }
+    }
+}
@@ -43,7 +43,8 @@ public class Soda2Base
 
 
     /**
-     * Runs a query against a SODA2 resource.
+     * Runs a query against a SODA2 resource.  If the HttpLowLevel has a {@link ResponseCache}, the result may come
+     * from it.
      *
      * @param resourceId  The id of the resource to query.  This can either be the resource endpoint name
      *                    set in the metadata, or the unique ID given to the resource.
@@ -56,11 +57,7 @@ public class Soda2Base
      */
     public Response query(String resourceId, MediaType mediaType, SoqlQuery query) throws LongRunningQueryException, SodaError
     {
-        final UriBuilder builder = httpLowLevel.uriBuilder()
-                                             .path(SODA_BASE_PATH)
-                                             .path(resourceId);
-
-        return httpLowLevel.queryRaw(query.toSodaUri(builder).build(), mediaType);
+        return httpLowLevel.queryRawCached(queryUri(resourceId, query), mediaType, resourceId);
     }
 
     /**
@@ -77,13 +74,32 @@ public class Soda2Base
      */
     public Response query(String resourceId, MediaType mediaType, String query) throws LongRunningQueryException, SodaError
     {
+        return httpLowLevel.queryRaw(queryUri(resourceId, query), mediaType);
+    }
+
+    /**
+     * @return the URI {@link #query(String, MediaType, SoqlQuery)} requests
+     */
+    URI queryUri(String resourceId, SoqlQuery query)
+    {
+        final UriBuilder builder = httpLowLevel.uriBuilder()
+                                             .path(SODA_BASE_PATH)
+                                             .path(resourceId);
 
+        return query.toSodaUri(builder).build();
+    }
+
+    /**
+     * @return the URI {@link #query(String, MediaType, String)} requests
+     */
+    URI queryUri(String resourceId, String query)
+    {
         final UriBuilder builder = httpLowLevel.uriBuilder()
                                              .path(SODA_BASE_PATH)
                                              .path(resourceId)
                                              .queryParam(SODA_QUERY, query);
 
-        return httpLowLevel.queryRaw(builder.build(), mediaType);
+        return builder.build();
     }
 
     /**
@@ -127,6 +143,7 @@ public class Soda2Base
         try {
             return httpLowLevel.putRaw(builder.build(), MediaType.APPLICATION_JSON_TYPE, httpLowLevel.getContentEncodingForUpserts(), inputStream);
         } finally {
+            invalidateCache(resourceId);
             try {
                 inputStream.close();
             } catch (IOException ex) { /* ByteArrayInputStream does nothing and should never throw IOException */ }
@@ -150,7 +167,11 @@ public class Soda2Base
                                              .path(SODA_BASE_PATH)
                                              .path(resourceId)
                                              .path(uniqueId);
-        return httpLowLevel.deleteRaw(builder.build());
+        try {
+            return httpLowLevel.deleteRaw(builder.build());
+        } finally {
+            invalidateCache(resourceId);
+        }
     }
 
 
@@ -174,7 +195,11 @@ public class Soda2Base
                                              .path(SODA_BASE_PATH)
                                              .path(resourceId);
 
-        return httpLowLevel.postRaw(builder.build(), httpLowLevel.JSON_TYPE, ContentEncoding.IDENTITY, object);
+        try {
+            return httpLowLevel.postRaw(builder.build(), httpLowLevel.JSON_TYPE, ContentEncoding.IDENTITY, object);
+        } finally {
+            invalidateCache(resourceId);
+        }
     }
 
     /**
@@ -183,7 +208,8 @@ public class Soda2Base
      * @param resourceId  The id of the resource to query.  This can either be the resource endpoint name
      *                    set in the metadata, or the unique ID given to the resource.
      * @param objects The objects that should be serialized to JSON and added to the dataset.  Jackson is used for serialization
-     *               and deserialization.
+     *               and deserialization.  The objects are serialized as the request is written, and gzipped on the way
+     *               if the HttpLowLevel's content encoding for upserts is GZIP.
      *
      * @return The results from the operation
      * @throws LongRunningQueryException thrown if this query is long running and a 202 is returned.  In this case,
@@ -197,7 +223,11 @@ public class Soda2Base
                                              .path(SODA_BASE_PATH)
                                              .path(resourceId);
 
-        return httpLowLevel.postRaw(builder.build(), httpLowLevel.JSON_TYPE, ContentEncoding.IDENTITY, objects);
+        try {
+            return httpLowLevel.postRaw(builder.build(), httpLowLevel.JSON_TYPE, httpLowLevel.getContentEncodingForUpserts(), objects);
+        } finally {
+            invalidateCache(resourceId);
+        }
     }
 
     /**
@@ -221,8 +251,11 @@ public class Soda2Base
                                              .path(SODA_BASE_PATH)
                                              .path(resourceId);
 
-        return httpLowLevel.postRaw(builder.build(), mediaType, httpLowLevel.getContentEncodingForUpserts(), stream);
-
+        try {
+            return httpLowLevel.postRaw(builder.build(), mediaType, httpLowLevel.getContentEncodingForUpserts(), stream);
+        } finally {
+            invalidateCache(resourceId);
+        }
     }
 
     /**
@@ -247,8 +280,11 @@ public class Soda2Base
                                              .path(SODA_BASE_PATH)
                                              .path(resourceId));
 
-        return httpLowLevel.postRaw(builder.build(), mediaType, httpLowLevel.getContentEncodingForUpserts(), stream);
-
+        try {
+            return httpLowLevel.postRaw(builder.build(), mediaType, httpLowLevel.getContentEncodingForUpserts(), stream);
+        } finally {
+            invalidateCache(resourceId);
+        }
     }
 
 
@@ -275,8 +311,11 @@ public class Soda2Base
                                              .path(resourceId)
                                              .path(uniqueId.toString());
 
-        return httpLowLevel.postRaw(builder.build(), httpLowLevel.JSON_TYPE, ContentEncoding.IDENTITY, object);
-
+        try {
+            return httpLowLevel.postRaw(builder.build(), httpLowLevel.JSON_TYPE, ContentEncoding.IDENTITY, object);
+        } finally {
+            invalidateCache(resourceId);
+        }
     }
 
 
@@ -287,7 +326,11 @@ public class Soda2Base
                                                .path(SODA_BASE_PATH)
                                                .path(resourceId);
 
-        return httpLowLevel.putRaw(builder.build(), httpLowLevel.JSON_TYPE, ContentEncoding.IDENTITY, objects);
+        try {
+            return httpLowLevel.putRaw(builder.build(), httpLowLevel.JSON_TYPE, httpLowLevel.getContentEncodingForUpserts(), objects);
+        } finally {
+            invalidateCache(resourceId);
+        }
     }
 
     public Response doReplaceStream(String resourceId, MediaType mediaType, InputStream stream) throws LongRunningQueryException, SodaError
@@ -297,8 +340,24 @@ public class Soda2Base
                                                .path(SODA_BASE_PATH)
                                                .path(resourceId);
 
-        return httpLowLevel.putRaw(builder.build(), mediaType, httpLowLevel.getContentEncodingForUpserts(), stream);
+        try {
+            return httpLowLevel.putRaw(builder.build(), mediaType, httpLowLevel.getContentEncodingForUpserts(), stream);
+        } finally {
+            invalidateCache(resourceId);
+        }
+    }
 
+    /**
+     * Drops any cached query results for a resource that has been changed.  This is called once the write has
+     * returned, whether or not it succeeded, so a query made while the write was in flight can't leave a result
+     * from before the write in the cache.
+     */
+    private void invalidateCache(String resourceId)
+    {
+        final ResponseCache cache = httpLowLevel.getResponseCache();
+        if (cache != null) {
+            cache.invalidate(resourceId);
+        }
     }
 
     /**
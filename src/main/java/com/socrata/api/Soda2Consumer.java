@@ -1,13 +1,34 @@
 package com.socrata.api;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.socrata.builders.SoqlQueryBuilder;
 import com.socrata.exceptions.LongRunningQueryException;
 import com.socrata.exceptions.SodaError;
+import com.socrata.model.importer.Column;
+import com.socrata.model.importer.Dataset;
+import com.socrata.model.importer.DatasetInfo;
 import com.socrata.model.requests.SodaRequest;
 import com.socrata.model.soql.SoqlQuery;
+import com.socrata.utils.streams.BufferPool;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.GenericType;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Class to issue SODA2 queries against a service.  All the methods on this class are READ-ONLY, and are only for consumption.
@@ -17,6 +38,12 @@ import java.util.List;
 public class Soda2Consumer extends Soda2Base
 {
     public static final GenericType<List<Object>> HASH_RETURN_TYPE = new GenericType<List<Object>>() {};
+    public static final String SODA2_FIELDS_HEADER = "X-SODA2-Fields";
+    public static final String SODA2_TYPES_HEADER = "X-SODA2-Types";
+
+    private static final TypeReference<List<String>> STRING_LIST_TYPE = new TypeReference<List<String>>() {};
+    private static final int  EXPORT_BUFFER_SIZE = 65536;
+    private static final long EXPORT_TRANSFER_SIZE = 8L * 1024 * 1024;
 
     /**
      * Creates a new Soda2Consumer that had no authentication associated with it.  All requests
@@ -111,18 +138,7 @@ public class Soda2Consumer extends Soda2Base
             { return query(resourceId, HttpLowLevel.JSON_TYPE, payload); }
         };
 
-        try {
-            final Response response = query(resourceId, HttpLowLevel.JSON_TYPE, query);
-            try {
-                return response.readEntity(genericType);
-            } finally {
-                response.close();
-            }
-        } catch (LongRunningQueryException e) {
-            return getHttpLowLevel().getAsyncResults(e.location, HttpLowLevel.JSON_TYPE, e.timeToRetry, getHttpLowLevel().getMaxRetries(), genericType, requester);
-        }
-
-
+        return getHttpLowLevel().queryShared(queryUri(resourceId, query), HttpLowLevel.JSON_TYPE, genericType.getType(), requester);
     }
 
     /**
@@ -146,17 +162,537 @@ public class Soda2Consumer extends Soda2Base
             { return query(resourceId, HttpLowLevel.JSON_TYPE, payload); }
         };
 
+        return getHttpLowLevel().queryShared(queryUri(resourceId, query), HttpLowLevel.JSON_TYPE, genericType.getType(), requester);
+    }
+
+    /**
+     * Runs a query, but rather than loading all the results into memory, returns an iterator that decodes
+     * the rows one at a time as they are read off the response.  Use this for exports of large result sets.
+     *
+     * The iterator holds a connection open until it is exhausted or closed, so callers should close it in a
+     * finally block or try-with-resources.
+     *
+     * @param resourceId  The id of the resource to query.  This can either be the resource endpoint name
+     *                    set in the metadata, or the unique ID given to the resource.
+     * @param query The query to be executed against the resource.
+     * @param cls the class each row should be deserialized as
+     * @param <T> the type of each row
+     *
+     * @return an iterator over the rows of the result.
+     * @throws SodaError  thrown if there is an error.  Investigate the structure for more information.
+     * @throws InterruptedException throws is the thread is interrupted.
+     */
+    public <T> RowIterator<T> stream(String resourceId, SoqlQuery query, Class<T> cls) throws SodaError, InterruptedException
+    {
+        return stream(resourceId, query, new GenericType<T>(cls));
+    }
+
+    /**
+     * Runs a query, but rather than loading all the results into memory, returns an iterator that decodes
+     * the rows one at a time as they are read off the response.  Use this for exports of large result sets.
+     *
+     * The iterator holds a connection open until it is exhausted or closed, so callers should close it in a
+     * finally block or try-with-resources.
+     *
+     * @param resourceId  The id of the resource to query.  This can either be the resource endpoint name
+     *                    set in the metadata, or the unique ID given to the resource.
+     * @param query The query to be executed against the resource.
+     * @param rowType the type each row should be deserialized as
+     * @param <T> the type of each row
+     *
+     * @return an iterator over the rows of the result.
+     * @throws SodaError  thrown if there is an error.  Investigate the structure for more information.
+     * @throws InterruptedException throws is the thread is interrupted.
+     */
+    public <T> RowIterator<T> stream(String resourceId, SoqlQuery query, GenericType<T> rowType) throws SodaError, InterruptedException
+    {
+
+        SodaRequest requester = new SodaRequest<SoqlQuery>(resourceId, query)
+        {
+            public Response issueRequest() throws LongRunningQueryException, SodaError
+            { return query(resourceId, HttpLowLevel.JSON_TYPE, payload); }
+        };
+
+        Response response;
         try {
-            final Response response = requester.issueRequest();
-            try {
-                return response.readEntity(genericType);
-            } finally {
-                response.close();
+            response = requester.issueRequest();
+        } catch (LongRunningQueryException e) {
+            response = getHttpLowLevel().getAsyncResults(e.location, HttpLowLevel.JSON_TYPE, e.timeToRetry, getHttpLowLevel().getMaxRetries(), requester);
+        }
+
+        return streamRows(response, rowType);
+    }
+
+    /**
+     * Wraps a RowIterator around a successful JSON query response.  The response is closed if the iterator
+     * cannot be created.
+     */
+    <T> RowIterator<T> streamRows(Response response, GenericType<T> rowType) throws SodaError
+    {
+        try {
+            final ObjectReader reader = getHttpLowLevel().getObjectMapper().readerFor(
+                    getHttpLowLevel().getObjectMapper().getTypeFactory().constructType(rowType.getType()));
+            return new RowIterator<T>(response.readEntity(InputStream.class), response, reader);
+        } catch (IOException ioe) {
+            response.close();
+            throw new SodaError("Error reading the query results.  Error message: " + ioe.getLocalizedMessage());
+        } catch (RuntimeException e) {
+            response.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Runs a query for CSV results, and returns an iterator over the raw values of each row, parsed one row at a
+     * time as they are read off the response.  CSV is smaller and quicker for the server to produce than JSON, so
+     * this is the cheapest way to read very large result sets.
+     *
+     * The iterator holds a connection open until it is exhausted or closed, so callers should close it in a
+     * finally block or try-with-resources.
+     *
+     * @param resourceId  The id of the resource to query.  This can either be the resource endpoint name
+     *                    set in the metadata, or the unique ID given to the resource.
+     * @param query The query to be executed against the resource.
+     *
+     * @return an iterator over the values of each row.  The column names are available from the iterator.
+     * @throws SodaError  thrown if there is an error.  Investigate the structure for more information.
+     * @throws InterruptedException throws is the thread is interrupted.
+     */
+    public CsvRowIterator<String[]> streamCsv(String resourceId, SoqlQuery query) throws SodaError, InterruptedException
+    {
+        return streamCsvRows(queryCsv(resourceId, query), CsvRowIterator.rawDecoder());
+    }
+
+    /**
+     * Runs a query for CSV results, and returns an iterator that decodes the rows one at a time as they are read
+     * off the response.  Each row is decoded the same way as a row of a JSON result, using the column types the
+     * server sends, so this can be used in place of {@link #stream(String, SoqlQuery, Class)} for large results.
+     *
+     * The iterator holds a connection open until it is exhausted or closed, so callers should close it in a
+     * finally block or try-with-resources.
+     *
+     * @param resourceId  The id of the resource to query.  This can either be the resource endpoint name
+     *                    set in the metadata, or the unique ID given to the resource.
+     * @param query The query to be executed against the resource.
+     * @param cls the class each row should be deserialized as
+     * @param <T> the type of each row
+     *
+     * @return an iterator over the rows of the result.
+     * @throws SodaError  thrown if there is an error.  Investigate the structure for more information.
+     * @throws InterruptedException throws is the thread is interrupted.
+     */
+    public <T> CsvRowIterator<T> streamCsv(String resourceId, SoqlQuery query, Class<T> cls) throws SodaError, InterruptedException
+    {
+        final ObjectReader reader = getHttpLowLevel().getObjectMapper().readerFor(cls);
+        return streamCsvRows(queryCsv(resourceId, query), CsvRowIterator.<T>objectDecoder(reader));
+    }
+
+    /**
+     * Runs a query for CSV results, and copies the results as they arrive to a stream, without parsing them.
+     *
+     * @param resourceId  The id of the resource to query.  This can either be the resource endpoint name
+     *                    set in the metadata, or the unique ID given to the resource.
+     * @param query The query to be executed against the resource.
+     * @param out the stream to write the CSV to.  This is not closed.
+     *
+     * @return the number of bytes written.
+     * @throws SodaError  thrown if there is an error.  Investigate the structure for more information.
+     * @throws InterruptedException throws is the thread is interrupted.
+     * @throws IOException if the results can not be written to the stream.
+     */
+    public long exportCsv(String resourceId, SoqlQuery query, OutputStream out) throws SodaError, InterruptedException, IOException
+    {
+        final Response response = queryCsv(resourceId, query);
+        final byte[] buffer = BufferPool.getDefault().acquire(EXPORT_BUFFER_SIZE);
+        try (InputStream in = response.readEntity(InputStream.class)) {
+            long total = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                total += read;
+            }
+            return total;
+        } finally {
+            BufferPool.getDefault().release(buffer);
+            response.close();
+        }
+    }
+
+    /**
+     * Runs a query for CSV results, and writes them as they arrive to a file, without parsing them.  The results
+     * are handed straight to the file's channel, rather than copied through a buffer here.
+     *
+     * @param resourceId  The id of the resource to query.  This can either be the resource endpoint name
+     *                    set in the metadata, or the unique ID given to the resource.
+     * @param query The query to be executed against the resource.
+     * @param file the file to write the CSV to.  Any existing file is replaced.
+     *
+     * @return the number of bytes written.
+     * @throws SodaError  thrown if there is an error.  Investigate the structure for more information.
+     * @throws InterruptedException throws is the thread is interrupted.
+     * @throws IOException if the results can not be written to the file.
+     */
+    public long exportCsv(String resourceId, SoqlQuery query, File file) throws SodaError, InterruptedException, IOException
+    {
+        final Response response = queryCsv(resourceId, query);
+        try (ReadableByteChannel in = Channels.newChannel(response.readEntity(InputStream.class));
+             FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long total = 0;
+            long transferred;
+            while ((transferred = out.transferFrom(in, total, EXPORT_TRANSFER_SIZE)) > 0) {
+                total += transferred;
             }
+            return total;
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Runs a query for CSV results, following it if it is long running.
+     */
+    private Response queryCsv(String resourceId, SoqlQuery query) throws SodaError, InterruptedException
+    {
+        SodaRequest requester = new SodaRequest<SoqlQuery>(resourceId, query)
+        {
+            public Response issueRequest() throws LongRunningQueryException, SodaError
+            { return query(resourceId, HttpLowLevel.CSV_TYPE, payload); }
+        };
+
+        try {
+            return requester.issueRequest();
+        } catch (LongRunningQueryException e) {
+            return getHttpLowLevel().getAsyncResults(e.location, HttpLowLevel.CSV_TYPE, e.timeToRetry, getHttpLowLevel().getMaxRetries(), requester);
+        }
+    }
+
+    /**
+     * Wraps a CsvRowIterator around a successful CSV query response.  The response is closed if the iterator
+     * cannot be created.
+     */
+    <T> CsvRowIterator<T> streamCsvRows(Response response, CsvRowIterator.RowDecoder<T> decoder) throws SodaError
+    {
+        try {
+            return new CsvRowIterator<T>(response.readEntity(InputStream.class), response, columnTypes(response), decoder);
+        } catch (IOException ioe) {
+            response.close();
+            throw new SodaError("Error reading the query results.  Error message: " + ioe.getLocalizedMessage());
+        } catch (RuntimeException e) {
+            response.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the column types from the X-SODA2-Types header of a query response, or {@code null} if there are none.
+     */
+    private List<String> columnTypes(Response response)
+    {
+        return headerList(response, SODA2_TYPES_HEADER);
+    }
+
+    /**
+     * @return the JSON list of strings in a header of a response, or {@code null} if it isn't there.
+     */
+    private List<String> headerList(Response response, String header)
+    {
+        final String value = response.getHeaderString(header);
+        if (value == null) {
+            return null;
+        }
+
+        try {
+            return getHttpLowLevel().getObjectMapper().readValue(value, STRING_LIST_TYPE);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Runs a query, and decodes the result into columns of primitive arrays, rather than an object per row.  See
+     * {@link ColumnarResult} for how each column is held.
+     *
+     * The type of each column comes from the X-SODA2-Fields and X-SODA2-Types headers of the response.  If the
+     * server doesn't send them, the columns of the dataset are loaded with {@link SodaDdl#loadDatasetInfo(String)}.
+     *
+     * @param resourceId  The id of the resource to query.  This can either be the resource endpoint name
+     *                    set in the metadata, or the unique ID given to the resource.
+     * @param query The query to be executed against the resource.
+     *
+     * @return the result, decoded into columns.
+     * @throws SodaError  thrown if there is an error.  Investigate the structure for more information.
+     * @throws InterruptedException throws is the thread is interrupted.
+     */
+    public ColumnarResult queryColumnar(String resourceId, SoqlQuery query) throws SodaError, InterruptedException
+    {
+        return queryColumnar(resourceId, query, null);
+    }
+
+    /**
+     * Runs a query, and decodes the result into columns of primitive arrays, using the given schema for the
+     * column types.  When reading many pages of a dataset, load its columns once with
+     * {@link SodaDdl#loadDatasetInfo(String)} and pass them to each call.
+     *
+     * @param resourceId  The id of the resource to query.  This can either be the resource endpoint name
+     *                    set in the metadata, or the unique ID given to the resource.
+     * @param query The query to be executed against the resource.
+     * @param columns the columns of the dataset, which give the type of each field.  If this is {@code null}, the
+     *                types come from the response headers, as in {@link #queryColumnar(String, SoqlQuery)}.
+     *
+     * @return the result, decoded into columns.
+     * @throws SodaError  thrown if there is an error.  Investigate the structure for more information.
+     * @throws InterruptedException throws is the thread is interrupted.
+     */
+    public ColumnarResult queryColumnar(String resourceId, SoqlQuery query, List<Column> columns) throws SodaError, InterruptedException
+    {
+        return queryColumnar(resourceId, query, columns, new DatasetColumns(resourceId));
+    }
+
+    private ColumnarResult queryColumnar(String resourceId, SoqlQuery query, List<Column> columns, DatasetColumns datasetColumns) throws SodaError, InterruptedException
+    {
+        SodaRequest requester = new SodaRequest<SoqlQuery>(resourceId, query)
+        {
+            public Response issueRequest() throws LongRunningQueryException, SodaError
+            { return query(resourceId, HttpLowLevel.JSON_TYPE, payload); }
+        };
+
+        Response response;
+        try {
+            response = requester.issueRequest();
         } catch (LongRunningQueryException e) {
-            return getHttpLowLevel().getAsyncResults(e.location, HttpLowLevel.JSON_TYPE, e.timeToRetry, getHttpLowLevel().getMaxRetries(), genericType, requester);
+            response = getHttpLowLevel().getAsyncResults(e.location, HttpLowLevel.JSON_TYPE, e.timeToRetry, getHttpLowLevel().getMaxRetries(), requester);
+        }
+
+        try {
+            List<Column> schema = columns;
+            List<String> fields = headerList(response, SODA2_FIELDS_HEADER);
+            List<String> types = columnTypes(response);
+            if (schema == null && (fields == null || types == null)) {
+                schema = datasetColumns.get();
+            }
+
+            if (schema != null) {
+                fields = new ArrayList<String>(schema.size());
+                types = new ArrayList<String>(schema.size());
+                for (Column column : schema) {
+                    fields.add(column.getFieldName());
+                    types.add(column.getDataTypeName());
+                }
+            }
+
+            return ColumnarResult.decode(response.readEntity(InputStream.class), getHttpLowLevel().getObjectMapper().getFactory(),
+                                         fields, types, query.limit);
+        } catch (IOException ioe) {
+            throw new SodaError("Error reading the query results.  Error message: " + ioe.getLocalizedMessage());
+        } finally {
+            response.close();
         }
     }
 
+    /**
+     * Runs a query, and writes the results to a stream in the {@link ColumnarFile} format, one batch at a time.
+     * Each batch is fetched as its own page, with {@code :id} added to the $order so the pages are stable, and
+     * decoded with {@link #queryColumnar(String, SoqlQuery)}.  Only one batch is held in memory at a time, and if the
+     * server doesn't send the column headers, the columns of the dataset are only loaded once for the whole export.
+     *
+     * @param resourceId  The id of the resource to query.  This can either be the resource endpoint name
+     *                    set in the metadata, or the unique ID given to the resource.
+     * @param query The query to be executed against the resource.  Its $offset and $limit, if set, bound the rows
+     *              exported.
+     * @param out the stream to write the file to.  This is not closed.
+     * @param batchSize the number of rows in each batch
+     *
+     * @return the number of rows written.
+     * @throws SodaError  thrown if there is an error.  Investigate the structure for more information.
+     * @throws InterruptedException throws is the thread is interrupted.
+     * @throws IOException if the results can not be written to the stream.
+     */
+    public long exportColumnar(String resourceId, SoqlQuery query, OutputStream out, int batchSize) throws SodaError, InterruptedException, IOException
+    {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be greater than 0");
+        }
+
+        final SoqlQuery baseQuery = QueryPager.withStableOrder(query);
+        final ColumnarFile.Writer writer = new ColumnarFile.Writer(new BufferedOutputStream(out, EXPORT_BUFFER_SIZE));
+        final DatasetColumns datasetColumns = new DatasetColumns(resourceId);
+        long offset = (query.offset != null) ? query.offset : 0;
+        final Long end = (query.limit != null) ? offset + query.limit : null;
+        while (end == null || offset < end) {
+            final int limit = (int) (end == null ? batchSize : Math.min(batchSize, end - offset));
+            final ColumnarResult batch = queryColumnar(resourceId, new SoqlQueryBuilder(baseQuery)
+                    .setOffset((int) offset)
+                    .setLimit(limit)
+                    .build(), null, datasetColumns);
 
+            writer.writeBatch(batch);
+            offset += batch.getRowCount();
+            if (batch.getRowCount() < limit) {
+                break;
+            }
+        }
+        writer.finish();
+        return writer.getRowCount();
+    }
+
+    /**
+     * Runs a query, and writes the results to a file in the {@link ColumnarFile} format, one batch at a time.
+     * See {@link #exportColumnar(String, SoqlQuery, OutputStream, int)}.
+     *
+     * @param resourceId  The id of the resource to query.  This can either be the resource endpoint name
+     *                    set in the metadata, or the unique ID given to the resource.
+     * @param query The query to be executed against the resource.
+     * @param file the file to write.  Any existing file is replaced.
+     * @param batchSize the number of rows in each batch
+     *
+     * @return the number of rows written.
+     * @throws SodaError  thrown if there is an error.  Investigate the structure for more information.
+     * @throws InterruptedException throws is the thread is interrupted.
+     * @throws IOException if the results can not be written to the file.
+     */
+    public long exportColumnar(String resourceId, SoqlQuery query, File file, int batchSize) throws SodaError, InterruptedException, IOException
+    {
+        try (OutputStream out = new FileOutputStream(file)) {
+            return exportColumnar(resourceId, query, out, batchSize);
+        }
+    }
+
+    /**
+     * Creates a pager that walks through all the results of a query, a page at a time, fetching the next
+     * pages in the background.  This uses {@link QueryPager#DEFAULT_PAGE_SIZE} and {@link QueryPager#DEFAULT_PREFETCH_DEPTH}.
+     *
+     * @param resourceId  The id of the resource to query.  This can either be the resource endpoint name
+     *                    set in the metadata, or the unique ID given to the resource.
+     * @param query The query to be executed against the resource.
+     * @param genericType the type of objects that should be returned as a result from this query
+     * @param <T> the type of object that should be returned in each page
+     *
+     * @return the pager, which must be closed when the caller is done with it.
+     */
+    public <T> QueryPager<T> pageThrough(String resourceId, SoqlQuery query, GenericType<List<T>> genericType)
+    {
+        return pageThrough(resourceId, query, genericType, QueryPager.DEFAULT_PAGE_SIZE, QueryPager.DEFAULT_PREFETCH_DEPTH);
+    }
+
+    /**
+     * Creates a pager that walks through all the results of a query, a page at a time, fetching the next
+     * pages in the background.
+     *
+     * @param resourceId  The id of the resource to query.  This can either be the resource endpoint name
+     *                    set in the metadata, or the unique ID given to the resource.
+     * @param query The query to be executed against the resource.
+     * @param genericType the type of objects that should be returned as a result from this query
+     * @param pageSize the number of rows to request in each page
+     * @param prefetchDepth the number of pages to fetch ahead of the one being consumed
+     * @param <T> the type of object that should be returned in each page
+     *
+     * @return the pager, which must be closed when the caller is done with it.
+     */
+    public <T> QueryPager<T> pageThrough(final String resourceId, SoqlQuery query, final GenericType<List<T>> genericType, int pageSize, int prefetchDepth)
+    {
+        return new QueryPager<T>(new QueryPager.PageFetcher<T>()
+        {
+            public List<T> fetch(SoqlQuery pageQuery) throws SodaError, InterruptedException
+            { return query(resourceId, pageQuery, genericType); }
+        }, query, pageSize, prefetchDepth);
+    }
+
+    /**
+     * Scans all the results of a query by splitting it into disjoint partitions that are fetched concurrently,
+     * and merging their rows back into a single iterator.  This issues a probe query first, to find how to split
+     * the query up.  See {@link ParallelScanConfig} for how partitions are chosen.
+     *
+     * @param resourceId  The id of the resource to query.  This can either be the resource endpoint name
+     *                    set in the metadata, or the unique ID given to the resource.
+     * @param query The query to be executed against the resource.  This cannot be a grouped query.
+     * @param genericType the type of objects that should be returned as a result from this query
+     * @param config the configuration of the scan
+     * @param <T> the type of object that should be returned for each row
+     *
+     * @return the scan, which must be closed if the caller stops before the end of the results.
+     * @throws SodaError  thrown if there is an error.  Investigate the structure for more information.
+     * @throws InterruptedException throws is the thread is interrupted.
+     */
+    public <T> PartitionedScan<T> parallelScan(final String resourceId, SoqlQuery query, final GenericType<List<T>> genericType, ParallelScanConfig config) throws SodaError, InterruptedException
+    {
+        if (query.groupByClause != null) {
+            throw new IllegalArgumentException("Grouped queries cannot be partitioned");
+        }
+
+        final List<SoqlQuery> partitions;
+        if (config.getPartitionColumn() == null) {
+            final SoqlQuery probe = new SoqlQueryBuilder()
+                    .addSelectPhrase("count(*) as row_count")
+                    .setWhereClause(query.whereClause)
+                    .setFullTextSearchClause(query.fullTextSearchClause)
+                    .build();
+            final Object count = probeRow(resourceId, probe).get("row_count");
+            partitions = PartitionedScan.partitionByRows(query, count == null ? 0 : Long.parseLong(count.toString()), config.getPartitions());
+        } else {
+            if (query.offset != null || query.limit != null) {
+                throw new IllegalArgumentException("Queries partitioned by a column cannot have an $offset or $limit");
+            }
+
+            final String column = config.getPartitionColumn();
+            final SoqlQuery probe = new SoqlQueryBuilder()
+                    .addSelectPhrase("min(" + column + ") as min_value")
+                    .addSelectPhrase("max(" + column + ") as max_value")
+                    .setWhereClause(query.whereClause)
+                    .setFullTextSearchClause(query.fullTextSearchClause)
+                    .build();
+            final Map probed = probeRow(resourceId, probe);
+            final Object min = probed.get("min_value");
+            final Object max = probed.get("max_value");
+
+            //With no non-null values there are no ranges to split on, but there may still be rows where the
+            //column is null, so the query is scanned as a single partition.
+            partitions = (min == null || max == null) ?
+                    Collections.singletonList(query) :
+                    PartitionedScan.partitionByColumn(query, column, new BigDecimal(min.toString()), new BigDecimal(max.toString()), config.getPartitions());
+        }
+
+        return new PartitionedScan<T>(new QueryPager.PageFetcher<T>()
+        {
+            public List<T> fetch(SoqlQuery pageQuery) throws SodaError, InterruptedException
+            { return query(resourceId, pageQuery, genericType); }
+        }, partitions, config);
+    }
+
+    /**
+     * @return the first row of a probe query, or an empty map if it returned no rows.
+     */
+    private Map probeRow(String resourceId, SoqlQuery probe) throws SodaError, InterruptedException
+    {
+        final List<Object> rows = query(resourceId, probe, HASH_RETURN_TYPE);
+        if (rows.isEmpty() || !(rows.get(0) instanceof Map)) {
+            return Collections.emptyMap();
+        }
+        return (Map) rows.get(0);
+    }
+
+    /**
+     * The columns of a dataset, loaded the first time a query result doesn't say what its columns are, and then
+     * reused for the rest of the queries that share this.
+     */
+    private final class DatasetColumns
+    {
+        private final String resourceId;
+        private boolean      loaded = false;
+        private List<Column> columns;
+
+        DatasetColumns(String resourceId)
+        {
+            this.resourceId = resourceId;
+        }
+
+        List<Column> get() throws SodaError, InterruptedException
+        {
+            if (!loaded) {
+                final DatasetInfo datasetInfo = new SodaDdl(getHttpLowLevel()).loadDatasetInfo(resourceId);
+                columns = (datasetInfo instanceof Dataset) ? ((Dataset) datasetInfo).getColumns() : null;
+                loaded = true;
+            }
+            return columns;
+        }
+    }
 }
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -17,16 +18,17 @@ import com.socrata.model.requests.SodaRequest;
 import com.socrata.model.requests.SodaTypedRequest;
 import com.socrata.utils.GeneralUtils;
 import com.socrata.utils.RowUpdateOption;
+import com.socrata.utils.streams.MappedFileInputStream;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.GenericType;
 
 import javax.ws.rs.core.MediaType;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 /**
  * API for sending requests to the SODA server for adding/removing/modifying objects in the datasets.
@@ -336,6 +338,20 @@ public class Soda2Producer extends Soda2Consumer
         return upsertStream(resourceId, mediaType, stream, rowUpdateOption, StandardResultAccumulator.FACTORY);
     }
 
+    /**
+     * Creates a writer that buffers rows added one at a time, and upserts them to the dataset in batches.  The
+     * writer should be closed when it is no longer needed, to send any buffered rows and stop its threads.
+     *
+     * @param resourceId unique id or resource name of the dataset
+     * @param config when batches are sent, and how many may be in flight at once
+     *
+     * @return a new writer for the dataset
+     */
+    public <T> BatchingRowWriter<T> batchingRowWriter(String resourceId, BatchingRowWriterConfig config)
+    {
+        return new BatchingRowWriter<T>(this, resourceId, getHttpLowLevel().getObjectMapper().writer(), config);
+    }
+
     /**
      * Replaces a dataset with a the objects serialized in an input stream.  This is the same as doing a truncate, followed by an upsert, except
      * that it will happen atomically (so you cannot have a failure that puts the dataset in a half state)
@@ -397,7 +413,7 @@ public class Soda2Producer extends Soda2Consumer
     public <R> R upsertCsv(String resourceId, File csvFile, UpsertResultAccumulatorFactory<R> accFactory) throws SodaError, InterruptedException
     {
         try {
-            InputStream is = new FileInputStream(csvFile);
+            InputStream is = new MappedFileInputStream(csvFile);
 
             SodaRequest requester = new SodaTypedRequest<InputStream>(resourceId, is, HttpLowLevel.CSV_TYPE)
             {
@@ -440,7 +456,7 @@ public class Soda2Producer extends Soda2Consumer
     public <R> R replaceCsv(String resourceId, File csvFile, UpsertResultAccumulatorFactory<R> accFactory) throws SodaError, InterruptedException
     {
         try {
-            InputStream is = new FileInputStream(csvFile);
+            InputStream is = new MappedFileInputStream(csvFile);
             try {
                 SodaRequest requester = new SodaTypedRequest<InputStream>(resourceId, is, HttpLowLevel.CSV_TYPE)
                 {
@@ -505,6 +521,9 @@ public class Soda2Producer extends Soda2Consumer
      * This will return an upsert result, regardless of whether it is
      * using the original response, or the new return from SODA Server
      *
+     * The rows of the new response are read token by token rather than bound to objects, since large upserts
+     * return millions of them.  Fields the accumulator doesn't ask for are skipped without being decoded, and rows
+     * with no fields to hand over share a single instance per type.
      *
      * @param is
      * @return
@@ -522,26 +541,75 @@ public class Soda2Producer extends Soda2Consumer
                 currToken = parser.nextToken();
             }
 
+            final Set<UpsertRowField> fields = acc.fields();
+            final boolean readIds = fields.contains(UpsertRowField.ID);
+            final boolean readVersions = fields.contains(UpsertRowField.VERSION);
+
+            long inserted = 0, updated = 0, deleted = 0, errors = 0;
             while (currToken != JsonToken.END_ARRAY) {
+                if (currToken != JsonToken.START_OBJECT) {
+                    throw new JsonParseException(parser, "Expected an upsert result row, but got " + currToken);
+                }
+
+                int type = NewUpsertRow.UNKNOWN;
+                JsonNode id = null;
+                String ver = null;
+                String err = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String name = parser.getCurrentName();
+                    parser.nextToken();
+                    if ("typ".equals(name)) {
+                        type = NewUpsertRow.rowType(parser);
+                    } else if ("id".equals(name) && (readIds || type == NewUpsertRow.UNKNOWN || type == NewUpsertRow.ERROR)) {
+                        id = parser.readValueAsTree();
+                    } else if ("ver".equals(name) && readVersions) {
+                        ver = parser.getValueAsString();
+                    } else if ("err".equals(name)) {
+                        err = parser.getValueAsString();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
 
-                NewUpsertRow row = parser.readValueAs(NewUpsertRow.class);
-                if ("insert".equals(row.typ)) {
-                    acc.insert(row);
-                } else if ("update".equals(row.typ)) {
-                    acc.update(row);
-                } else if ("delete".equals(row.typ)) {
-                    acc.delete(row);
-                } else if ("error".equals(row.typ)) {
-                    acc.error(row);
+                if (type != NewUpsertRow.ERROR && !readIds) {
+                    id = null;
+                }
+
+                switch (type) {
+                case NewUpsertRow.INSERT:
+                    acc.insert(NewUpsertRow.of(type, id, ver, err));
+                    inserted++;
+                    break;
+                case NewUpsertRow.UPDATE:
+                    acc.update(NewUpsertRow.of(type, id, ver, err));
+                    updated++;
+                    break;
+                case NewUpsertRow.DELETE:
+                    acc.delete(NewUpsertRow.of(type, id, ver, err));
+                    deleted++;
+                    break;
+                case NewUpsertRow.ERROR:
+                    acc.error(NewUpsertRow.of(type, id, ver, err));
+                    errors++;
+                    break;
+                default:
+                    break;
                 }
 
                 currToken = parser.nextToken();
             }
 
+            getHttpLowLevel().getMetricsListener().upsertCompleted(inserted, updated, deleted, errors);
             return acc.result();
         }
 
-        return acc.deserializeSimple(parser);
+        final R result = acc.deserializeSimple(parser);
+        if (result instanceof UpsertResult) {
+            final UpsertResult upsertResult = (UpsertResult) result;
+            getHttpLowLevel().getMetricsListener().upsertCompleted(upsertResult.getRowsCreated(), upsertResult.getRowsUpdated(),
+                                                                   upsertResult.getRowsDeleted(), upsertResult.errorCount());
+        }
+        return result;
     }
 
     <R> R deserializeUpsertResult(Response response, UpsertResultAccumulatorFactory<R> accFactory) throws IOException {
@@ -575,6 +643,20 @@ public class Soda2Producer extends Soda2Consumer
      */
     @JsonIgnoreProperties(ignoreUnknown=true)
     static public class NewUpsertRow {
+        static final int UNKNOWN = -1;
+        static final int INSERT = 0;
+        static final int UPDATE = 1;
+        static final int DELETE = 2;
+        static final int ERROR = 3;
+
+        private static final String[] TYPES = { "insert", "update", "delete", "error" };
+        private static final NewUpsertRow[] BARE_ROWS = {
+                new NewUpsertRow(TYPES[INSERT], null, null, null),
+                new NewUpsertRow(TYPES[UPDATE], null, null, null),
+                new NewUpsertRow(TYPES[DELETE], null, null, null),
+                new NewUpsertRow(TYPES[ERROR], null, null, null)
+        };
+
         public final String typ;
         public final JsonNode id;
         public final String ver;
@@ -591,6 +673,48 @@ public class Soda2Producer extends Soda2Consumer
             this.ver = ver;
             this.err = err;
         }
+
+        /**
+         * @return a row of a known type, which is a shared instance if it has no fields.
+         */
+        static NewUpsertRow of(int type, JsonNode id, String ver, String err)
+        {
+            if (id == null && ver == null && err == null) {
+                return BARE_ROWS[type];
+            }
+            return new NewUpsertRow(TYPES[type], id, ver, err);
+        }
+
+        /**
+         * Matches the current string token against the row types, without making a String of it.
+         *
+         * @return the type, or {@link #UNKNOWN} if it is not one of the known types.
+         */
+        static int rowType(JsonParser parser) throws IOException
+        {
+            if (parser.getCurrentToken() != JsonToken.VALUE_STRING) {
+                return UNKNOWN;
+            }
+
+            final char[] chars = parser.getTextCharacters();
+            final int    offset = parser.getTextOffset();
+            final int    length = parser.getTextLength();
+            for (int type = 0; type < TYPES.length; type++) {
+                final String candidate = TYPES[type];
+                if (candidate.length() != length) {
+                    continue;
+                }
+
+                int i = 0;
+                while (i < length && candidate.charAt(i) == chars[offset + i]) {
+                    i++;
+                }
+                if (i == length) {
+                    return type;
+                }
+            }
+            return UNKNOWN;
+        }
     }
 
 }
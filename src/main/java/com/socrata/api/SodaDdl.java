@@ -206,17 +206,7 @@ public class SodaDdl extends SodaWorkflow
             { return httpLowLevel.queryRaw(payload, HttpLowLevel.JSON_TYPE); }
         };
 
-        try {
-
-            final Response response = httpLowLevel.queryRaw(uri, HttpLowLevel.JSON_TYPE);
-            try {
-                return response.readEntity(DatasetInfo.class);
-            } finally {
-                response.close();
-            }
-        } catch (LongRunningQueryException e) {
-            return getHttpLowLevel().getAsyncResults(e.location, e.timeToRetry, getHttpLowLevel().getMaxRetries(), DatasetInfo.class, requester);
-        }
+        return httpLowLevel.queryShared(uri, HttpLowLevel.JSON_TYPE, DatasetInfo.class, requester);
     }
 
 
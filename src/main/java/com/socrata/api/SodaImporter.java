@@ -5,6 +5,7 @@ import com.socrata.exceptions.LongRunningQueryException;
 import com.socrata.exceptions.SodaError;
 import com.socrata.model.importer.*;
 import com.socrata.model.requests.SodaRequest;
+import com.socrata.utils.streams.MappedFileInputStream;
 import javax.ws.rs.core.Response;
 import org.apache.commons.lang3.StringUtils;
 
@@ -12,7 +13,6 @@ import javax.annotation.Nullable;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.UriBuilder;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
@@ -183,7 +183,7 @@ public class SodaImporter extends SodaDdl
                                               .queryParam("method", method)
                                               .build();
 
-                try(InputStream is = new FileInputStream(payload)) {
+                try(InputStream is = new MappedFileInputStream(payload)) {
                     return httpLowLevel.postRaw(scanUri, MediaType.APPLICATION_OCTET_STREAM_TYPE, ContentEncoding.IDENTITY, is, file.getName());
                 } catch(IOException e) {
                     throw new SodaError("Unable to load file: " + file.getAbsolutePath(), e);
@@ -499,7 +499,7 @@ public class SodaImporter extends SodaDdl
             }
         } catch (LongRunningQueryException e) {
             LongRunningQueryException lrqe = e.location != null ? e :
-                new LongRunningQueryException(UriBuilder.fromUri(importUri).queryParam("ticket", e.ticket).build(), e.timeToRetry, e.ticket);
+                new LongRunningQueryException(UriBuilder.fromUri(importUri).queryParam("ticket", e.ticket).build(), e.timeToRetry, e.ticket, e.retryAfter);
             LongRunningRequest<String, DatasetInfo> longRunningRequest = new LongRunningRequest<>(lrqe, DatasetInfo.class, requester);
             HttpLowLevel http = getHttpLowLevel();
             return longRunningRequest.checkStatus(http, http.getStatusCheckErrorRetries(), http.getStatusCheckErrorTime());
@@ -579,7 +579,7 @@ public class SodaImporter extends SodaDdl
                                               .queryParam("fileUploaderfile", file.getName())
                                               .build();
 
-                try(final InputStream is = new FileInputStream(file)) {
+                try(final InputStream is = new MappedFileInputStream(file)) {
                     // Funny issue with service, currently only returns MediaType.TEXT_PLAIN_TYPE, but the
                     // response needs to be processed as JSON.  So, do the JSON decoding ourselves. There
                     // is a bug on the core server side to fix this.
@@ -631,7 +631,7 @@ public class SodaImporter extends SodaDdl
                                               .queryParam("fileUploaderfile", file.getName())
                                               .build();
 
-                try(final InputStream is = new FileInputStream(file)) {
+                try(final InputStream is = new MappedFileInputStream(file)) {
                     // Funny issue with service, currently only returns MediaType.TEXT_PLAIN_TYPE, but the
                     // response needs to be processed as JSON.  So, do the JSON decoding ourselves. There
                     // is a bug on the core server side to fix this.
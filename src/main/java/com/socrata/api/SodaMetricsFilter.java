@@ -0,0 +1,228 @@
+package com.socrata.api;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+/**
+ * A client filter for Jersey that reports each request to the {@link SodaMetricsListener} of an
+ * {@link HttpLowLevel}.  Request bodies are counted as they are written, and response bodies as they are read,
+ * so the request is reported as completed once its response has been consumed.
+ */
+public class SodaMetricsFilter implements ClientRequestFilter, ClientResponseFilter, WriterInterceptor
+{
+    private static final String  METRICS_PROPERTY = SodaMetricsFilter.class.getName();
+    private static final Pattern FOUR_BY_FOUR = Pattern.compile("[a-z0-9]{4}-[a-z0-9]{4}");
+    private static final Pattern NUMBER = Pattern.compile("[0-9]+");
+
+    private final HttpLowLevel httpLowLevel;
+
+    SodaMetricsFilter(HttpLowLevel httpLowLevel)
+    {
+        this.httpLowLevel = httpLowLevel;
+    }
+
+    @Override
+    public void filter(ClientRequestContext cr) throws IOException
+    {
+        final SodaMetricsListener listener = httpLowLevel.getMetricsListener();
+        if (listener == SodaMetricsListener.NONE) {
+            return;
+        }
+
+        final RequestMetrics metrics = new RequestMetrics(listener, cr.getMethod(), pathTemplate(cr.getUri().getRawPath()));
+        cr.setProperty(METRICS_PROPERTY, metrics);
+        listener.requestStarted(metrics.method, metrics.pathTemplate);
+        metrics.start = System.nanoTime();
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException
+    {
+        final Object metrics = context.getProperty(METRICS_PROPERTY);
+        if (metrics instanceof RequestMetrics) {
+            context.setOutputStream(new CountingOutputStream(context.getOutputStream(), (RequestMetrics) metrics));
+        }
+        context.proceed();
+    }
+
+    @Override
+    public void filter(ClientRequestContext cr, ClientResponseContext response) throws IOException
+    {
+        final Object property = cr.getProperty(METRICS_PROPERTY);
+        if (!(property instanceof RequestMetrics)) {
+            return;
+        }
+
+        final RequestMetrics metrics = (RequestMetrics) property;
+        metrics.status = response.getStatus();
+        if (response.hasEntity()) {
+            response.setEntityStream(new CountingInputStream(response.getEntityStream(), metrics));
+        } else {
+            metrics.complete();
+        }
+    }
+
+    /**
+     * Turns a request path into a template for grouping requests by endpoint, by replacing the dataset ids, row ids
+     * and numeric ids in it with placeholders.  Any extension on an id is kept, so {@code /resource/abcd-1234.json}
+     * becomes {@code /resource/{id}.json}.
+     *
+     * @param path the raw path of the request
+     * @return the path with ids replaced
+     */
+    static String pathTemplate(String path)
+    {
+        if (path == null) {
+            return "";
+        }
+
+        final String[] segments = path.split("/", -1);
+        final StringBuilder template = new StringBuilder(path.length());
+        boolean inResource = false;
+        int resourceDepth = 0;
+        for (int i = 0; i < segments.length; i++) {
+            if (i > 0) {
+                template.append('/');
+            }
+
+            final String segment = segments[i];
+            final int dot = segment.indexOf('.');
+            final String name = dot < 0 ? segment : segment.substring(0, dot);
+            final String extension = dot < 0 ? "" : segment.substring(dot);
+
+            if (inResource) {
+                resourceDepth++;
+            }
+
+            if (FOUR_BY_FOUR.matcher(name).matches()) {
+                template.append("{id}").append(extension);
+            } else if (inResource && resourceDepth > 1 && !name.isEmpty()) {
+                template.append("{row}").append(extension);
+            } else if (NUMBER.matcher(name).matches()) {
+                template.append("{n}").append(extension);
+            } else {
+                template.append(segment);
+            }
+
+            if (Soda2Base.SODA_BASE_PATH.equals(segment)) {
+                inResource = true;
+            }
+        }
+        return template.toString();
+    }
+
+    private static final class RequestMetrics
+    {
+        final SodaMetricsListener listener;
+        final String              method;
+        final String              pathTemplate;
+        final AtomicBoolean       completed = new AtomicBoolean();
+        volatile long start;
+        volatile int  status;
+        volatile long bytesOut;
+        volatile long bytesIn;
+
+        RequestMetrics(SodaMetricsListener listener, String method, String pathTemplate)
+        {
+            this.listener = listener;
+            this.method = method;
+            this.pathTemplate = pathTemplate;
+        }
+
+        void complete()
+        {
+            if (completed.compareAndSet(false, true)) {
+                listener.requestCompleted(method, pathTemplate, status, bytesOut, bytesIn, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream
+    {
+        private final RequestMetrics metrics;
+
+        CountingOutputStream(OutputStream out, RequestMetrics metrics)
+        {
+            super(out);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            out.write(b);
+            metrics.bytesOut++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            out.write(b, off, len);
+            metrics.bytesOut += len;
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream
+    {
+        private final RequestMetrics metrics;
+
+        CountingInputStream(InputStream in, RequestMetrics metrics)
+        {
+            super(in);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            final int b = in.read();
+            if (b == -1) {
+                metrics.complete();
+            } else {
+                metrics.bytesIn++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            final int read = in.read(b, off, len);
+            if (read == -1) {
+                metrics.complete();
+            } else {
+                metrics.bytesIn += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            final long skipped = in.skip(n);
+            metrics.bytesIn += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            try {
+                in.close();
+            } finally {
+                metrics.complete();
+            }
+        }
+    }
+}
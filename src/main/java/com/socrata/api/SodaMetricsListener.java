@@ -0,0 +1,77 @@
+package com.socrata.api;
+
+import com.socrata.exceptions.SodaError;
+
+/**
+ * Receives timing and size information about the requests an {@link HttpLowLevel} makes, so it can be exported
+ * to a metrics registry.  Every method has an empty default, so implementations only override what they need.
+ *
+ * Implementations must be thread safe and fast, since they are called inline on the threads issuing requests.
+ * They should not throw, as an exception from a listener fails the request it was reporting on.
+ */
+public interface SodaMetricsListener
+{
+    /**
+     * A listener that ignores everything.  This is the default for a new {@code HttpLowLevel}.
+     */
+    SodaMetricsListener NONE = new SodaMetricsListener() {};
+
+    /**
+     * Called just before a request is sent.
+     *
+     * @param method the HTTP method, e.g. {@code GET}
+     * @param pathTemplate the request path with dataset, row and column ids replaced by placeholders, e.g.
+     *                     {@code /resource/{id}.json}, so requests to the same endpoint can be grouped.
+     */
+    default void requestStarted(String method, String pathTemplate) {}
+
+    /**
+     * Called once the response body has been read to the end or closed, or right away if the response has no body.
+     * This is not called for requests that fail before a response is received.
+     *
+     * @param method the HTTP method, e.g. {@code GET}
+     * @param pathTemplate the request path with ids replaced by placeholders
+     * @param status the HTTP status of the response
+     * @param bytesOut the number of bytes of request body sent, after any content encoding
+     * @param bytesIn the number of bytes of response body read
+     * @param latencyNanos nanoseconds from sending the request to finishing with the response
+     */
+    default void requestCompleted(String method, String pathTemplate, int status, long bytesOut, long bytesIn, long latencyNanos) {}
+
+    /**
+     * Called for each poll of a long running request (one that returned a 202), before waiting for it.
+     *
+     * @param attempt the number of this poll, starting at 1
+     * @param waitMillis the number of milliseconds that will be waited before this poll
+     */
+    default void longRunningRequestPolled(long attempt, long waitMillis) {}
+
+    /**
+     * Called when polling a long running request stops, either because it completed or because it failed or
+     * ran out of retries.
+     *
+     * @param polls the number of polls that were made
+     * @param elapsedMillis the number of milliseconds spent polling, including the waits
+     * @param completed {@code true} if the request completed successfully
+     */
+    default void longRunningRequestCompleted(long polls, long elapsedMillis, boolean completed) {}
+
+    /**
+     * Called when a response is turned into a {@link SodaError}.  The type of the error tells what kind of
+     * failure it was, e.g. a {@link com.socrata.exceptions.DoesNotExistException}.
+     *
+     * @param status the HTTP status of the response
+     * @param error the error that will be thrown to the caller
+     */
+    default void requestFailed(int status, SodaError error) {}
+
+    /**
+     * Called when the result of an upsert or replace has been read.
+     *
+     * @param inserted number of rows created
+     * @param updated number of rows updated
+     * @param deleted number of rows deleted
+     * @param errors number of rows that failed
+     */
+    default void upsertCompleted(long inserted, long updated, long deleted, long errors) {}
+}
@@ -279,30 +279,18 @@ public class SodaWorkflow
      */
     public GeocodingResults findPendingGeocodingResults(final String datasetId) throws SodaError, InterruptedException
     {
-        SodaRequest<String> requester = new SodaRequest<String>(datasetId, null)
+        final URI uri = UriBuilder.fromUri(geocodingUri)
+                                  .path(datasetId)
+                                  .queryParam("method", "pending")
+                                  .build();
+
+        SodaRequest<URI> requester = new SodaRequest<URI>(datasetId, uri)
         {
             public Response issueRequest() throws LongRunningQueryException, SodaError
-            {
-                final URI uri = UriBuilder.fromUri(geocodingUri)
-                                          .path(datasetId)
-                                          .queryParam("method", "pending")
-                                          .build();
-
-                return httpLowLevel.queryRaw(uri, HttpLowLevel.JSON_TYPE);
-            }
+            { return httpLowLevel.queryRaw(payload, HttpLowLevel.JSON_TYPE); }
         };
 
-
-        try {
-            final Response response = requester.issueRequest();
-            try {
-                return response.readEntity(GeocodingResults.class);
-            } finally {
-                response.close();
-            }
-        } catch (LongRunningQueryException e) {
-            return getHttpLowLevel().getAsyncResults(e.location, e.timeToRetry, getHttpLowLevel().getMaxRetries(), GeocodingResults.class, requester);
-        }
+        return httpLowLevel.queryShared(uri, HttpLowLevel.JSON_TYPE, GeocodingResults.class, requester);
     }
 
     public Comment addComment(final String datasetId, final Comment comment) throws SodaError, InterruptedException
@@ -1,8 +1,10 @@
 package com.socrata.api;
 
 import java.io.IOException;
+import java.util.EnumSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 import com.fasterxml.jackson.core.JsonParser;
 
@@ -43,6 +45,11 @@ public class StandardResultAccumulator implements UpsertResultAccumulator<Upsert
         count += 1;
     }
 
+    public Set<UpsertRowField> fields() {
+        //Only the counts and errors are kept, and error rows always have their ids.
+        return EnumSet.noneOf(UpsertRowField.class);
+    }
+
     public UpsertResult result() {
         return new UpsertResult(inserts, updates, deletes, errors.size() > 0 ? errors : null, truthDataVersion, truthDataShapeVersion);
     }
@@ -0,0 +1,231 @@
+package com.socrata.api;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.socrata.model.UpsertError;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The local journal a {@link ResumableUpserter} keeps of the chunks the server has acknowledged.  It is a file of
+ * JSON lines: a header describing the upsert, then one entry per chunk, each forced to disk before the next chunk
+ * is sent.
+ *
+ * A crash while an entry is being written leaves a last line without a newline.  That line is dropped when the
+ * journal is reopened, so the chunk is sent again.
+ */
+final class UpsertJournal implements Closeable
+{
+    /**
+     * Describes the upsert, so a journal is never resumed against a different dataset, format or chunking.
+     */
+    @JsonIgnoreProperties(ignoreUnknown=true)
+    static final class Header
+    {
+        @JsonProperty("resource_id") final String resourceId;
+        @JsonProperty("media_type")  final String mediaType;
+        @JsonProperty("chunk_rows")  final int    chunkRows;
+        @JsonProperty("chunk_bytes") final int    chunkBytes;
+
+        @JsonCreator
+        Header(@JsonProperty("resource_id") String resourceId,
+               @JsonProperty("media_type") String mediaType,
+               @JsonProperty("chunk_rows") int chunkRows,
+               @JsonProperty("chunk_bytes") int chunkBytes)
+        {
+            this.resourceId = resourceId;
+            this.mediaType = mediaType;
+            this.chunkRows = chunkRows;
+            this.chunkBytes = chunkBytes;
+        }
+
+        boolean matches(Header other)
+        {
+            return resourceId.equals(other.resourceId) && mediaType.equals(other.mediaType) &&
+                   chunkRows == other.chunkRows && chunkBytes == other.chunkBytes;
+        }
+
+        @Override
+        public String toString()
+        {
+            return resourceId + " (" + mediaType + ", " + chunkRows + " rows or " + chunkBytes + " bytes per chunk)";
+        }
+    }
+
+    /**
+     * A chunk the server has acknowledged.  The error indexes are positions in the whole input, not in the chunk.
+     */
+    @JsonIgnoreProperties(ignoreUnknown=true)
+    static final class Entry
+    {
+        @JsonProperty("first_row")                final long              firstRow;
+        @JsonProperty("row_count")                final int               rowCount;
+        @JsonProperty("start_offset")             final long              startOffset;
+        @JsonProperty("end_offset")               final long              endOffset;
+        @JsonProperty("truth_data_version")       final Long              truthDataVersion;
+        @JsonProperty("truth_data_shape_version") final Long              truthDataShapeVersion;
+        @JsonProperty("rows_created")             final long              rowsCreated;
+        @JsonProperty("rows_updated")             final long              rowsUpdated;
+        @JsonProperty("rows_deleted")             final long              rowsDeleted;
+        @JsonProperty("errors")                   final List<UpsertError> errors;
+
+        @JsonCreator
+        Entry(@JsonProperty("first_row") long firstRow,
+              @JsonProperty("row_count") int rowCount,
+              @JsonProperty("start_offset") long startOffset,
+              @JsonProperty("end_offset") long endOffset,
+              @JsonProperty("truth_data_version") Long truthDataVersion,
+              @JsonProperty("truth_data_shape_version") Long truthDataShapeVersion,
+              @JsonProperty("rows_created") long rowsCreated,
+              @JsonProperty("rows_updated") long rowsUpdated,
+              @JsonProperty("rows_deleted") long rowsDeleted,
+              @JsonProperty("errors") List<UpsertError> errors)
+        {
+            this.firstRow = firstRow;
+            this.rowCount = rowCount;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.truthDataVersion = truthDataVersion;
+            this.truthDataShapeVersion = truthDataShapeVersion;
+            this.rowsCreated = rowsCreated;
+            this.rowsUpdated = rowsUpdated;
+            this.rowsDeleted = rowsDeleted;
+            this.errors = errors;
+        }
+    }
+
+    private final ObjectMapper mapper;
+    private final FileChannel  channel;
+    private final List<Entry>  entries;
+
+    private UpsertJournal(ObjectMapper mapper, FileChannel channel, List<Entry> entries)
+    {
+        this.mapper = mapper;
+        this.channel = channel;
+        this.entries = entries;
+    }
+
+    /**
+     * Opens a journal, creating it if it doesn't exist yet.
+     *
+     * @param file the journal file
+     * @param mapper mapper used to read and write the lines
+     * @param header describes the upsert being journaled
+     * @return the journal, holding the entries already written to it.
+     * @throws IOException if the journal can not be read or written, or belongs to a different upsert.
+     */
+    static UpsertJournal open(File file, ObjectMapper mapper, Header header) throws IOException
+    {
+        final byte[] contents = file.exists() ? Files.readAllBytes(file.toPath()) : new byte[0];
+        final List<Entry> entries = new ArrayList<Entry>();
+
+        int start = 0;
+        int end;
+        boolean sawHeader = false;
+        while ((end = indexOf(contents, (byte) '\n', start)) >= 0) {
+            final byte[] line = Arrays.copyOfRange(contents, start, end);
+            if (!sawHeader) {
+                final Header existing = mapper.readValue(line, Header.class);
+                if (!existing.matches(header)) {
+                    throw new IOException("The journal " + file + " is for an upsert to " + existing + ", not " + header);
+                }
+                sawHeader = true;
+            } else {
+                final Entry entry = mapper.readValue(line, Entry.class);
+                final long nextRow = entries.isEmpty() ? 0 : last(entries).firstRow + last(entries).rowCount;
+                if (entry.firstRow != nextRow) {
+                    throw new IOException("The journal " + file + " skips from row " + nextRow + " to row " + entry.firstRow);
+                }
+                entries.add(entry);
+            }
+            start = end + 1;
+        }
+
+        final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            //Drop a line left half written by a crash.
+            channel.truncate(start);
+            channel.position(start);
+            final UpsertJournal journal = new UpsertJournal(mapper, channel, entries);
+            if (!sawHeader) {
+                journal.writeLine(header);
+            }
+            return journal;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the chunks already acknowledged, in input order
+     */
+    List<Entry> entries()
+    {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * @return the last chunk acknowledged, or {@code null} if there are none yet.
+     */
+    Entry lastEntry()
+    {
+        return entries.isEmpty() ? null : last(entries);
+    }
+
+    /**
+     * Records a chunk, and forces it to disk.
+     *
+     * @param entry the acknowledged chunk
+     * @throws IOException if the journal can not be written.
+     */
+    void append(Entry entry) throws IOException
+    {
+        writeLine(entry);
+        entries.add(entry);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    private void writeLine(Object value) throws IOException
+    {
+        final byte[] json = mapper.writeValueAsBytes(value);
+        final ByteBuffer buffer = ByteBuffer.allocate(json.length + 1);
+        buffer.put(json).put((byte) '\n').flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    private static int indexOf(byte[] bytes, byte b, int from)
+    {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Entry last(List<Entry> entries)
+    {
+        return entries.get(entries.size() - 1);
+    }
+}
@@ -1,6 +1,8 @@
 package com.socrata.api;
 
 import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
 
 import com.fasterxml.jackson.core.JsonParser;
 
@@ -13,4 +15,15 @@ public interface UpsertResultAccumulator<Result> {
     Result deserializeSimple(JsonParser parser) throws IOException;
 
     Result result();
+
+    /**
+     * Says which optional fields of insert, update and delete rows this uses.  Rows are handed to it with the
+     * other fields left null, which saves decoding them for every row of a large upsert.  Error rows always have
+     * their id and error message.
+     *
+     * @return the fields this uses.  By default, this is all of them.
+     */
+    default Set<UpsertRowField> fields() {
+        return EnumSet.allOf(UpsertRowField.class);
+    }
 }
@@ -0,0 +1,18 @@
+package com.socrata.api;
+
+/**
+ * The optional fields of a row in a streaming upsert response.  An {@link UpsertResultAccumulator} says which of
+ * these it uses, and the others are skipped while parsing the response rather than decoded.
+ */
+public enum UpsertRowField
+{
+    /**
+     * The row identifier of the row, in {@link Soda2Producer.NewUpsertRow#id}.  Error rows always have this.
+     */
+    ID,
+
+    /**
+     * The new version of the row, in {@link Soda2Producer.NewUpsertRow#ver}.
+     */
+    VERSION
+}
@@ -20,5 +20,11 @@
  * object that allows these asynchronous checks in an error tolerant manner.  This should mostly be invisible to the caller, although,
  * the amount of errors to tolerate can be set with the {@code HttpLowLevel.setStatusCheckErrorRetries} method.
  *
+ * {@code HttpLowLevel} also has async versions of the raw request methods (e.g. {@code queryRawAsync}) that return a
+ * {@code CompletableFuture}.  Long running requests issued this way are polled on a shared scheduler through
+ * {@code getAsyncResultsAsync}, rather than by parking the calling thread.  The connectors underneath are blocking,
+ * though, so each request in flight still holds a thread from a pool bounded by
+ * {@code ConnectionPoolConfig.setMaxAsyncThreads}; requests past that many queue until a thread is free.
+ *
  **/
 package com.socrata.api;
\ No newline at end of file
@@ -22,6 +22,7 @@ public class LongRunningQueryException extends Exception
     public final URI location;
     public final long   timeToRetry;
     public final String ticket;
+    public final long   retryAfter;
 
     /**
      * @param location The URL to go to for getting the future result.  If this is {@code null}, use the ticket parameter to construct
@@ -30,9 +31,23 @@ public class LongRunningQueryException extends Exception
      * @param ticket the ticket to use for polling for the future results.  This should ONLY be used in location is {@code null}.
      */
     public LongRunningQueryException(@Nullable final URI location, final long timeToRetry, @Nullable final String ticket)
+    {
+        this(location, timeToRetry, ticket, 0);
+    }
+
+    /**
+     * @param location The URL to go to for getting the future result.  If this is {@code null}, use the ticket parameter to construct
+     *                 a URL.
+     * @param timeToRetry The time in milliseconds to wait until retrying.
+     * @param ticket the ticket to use for polling for the future results.  This should ONLY be used in location is {@code null}.
+     * @param retryAfter The time in milliseconds since the epoch the server asked to be retried at, or {@code 0} if
+     *                   the server did not say.
+     */
+    public LongRunningQueryException(@Nullable final URI location, final long timeToRetry, @Nullable final String ticket, final long retryAfter)
     {
         this.location = location;
         this.timeToRetry = timeToRetry;
         this.ticket = ticket;
+        this.retryAfter = retryAfter;
     }
 }
@@ -5,7 +5,10 @@ import com.fasterxml.jackson.databind.util.StdDateFormat;
 import com.fasterxml.jackson.datatype.joda.JodaModule;
 import com.fasterxml.jackson.datatype.jaxrs.Jaxrs2TypesModule;
 
-import java.text.*;
+import java.text.FieldPosition;
+import java.text.ParseException;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.TimeZone;
 
@@ -19,10 +22,9 @@ import java.util.TimeZone;
  */
 public final class ObjectMapperFactory {
 
-    protected static final SimpleDateFormat SOCRATA_WRITING_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
-    protected static final SimpleDateFormat SOCRATA_FLOATING_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
-    protected static final SimpleDateFormat SOCRATA_FLOATING_FORMAT_MILLIS = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
-    protected static final DateFormat[] SPECIAL_DATE_LIST = new DateFormat[] {SOCRATA_FLOATING_FORMAT_MILLIS, SOCRATA_FLOATING_FORMAT} ;
+    protected static final String SOCRATA_WRITING_PATTERN = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
+    protected static final String SOCRATA_FLOATING_PATTERN = "yyyy-MM-dd'T'HH:mm:ss";
+    protected static final String SOCRATA_FLOATING_MILLIS_PATTERN = "yyyy-MM-dd'T'HH:mm:ss.SSS";
 
     public static ObjectMapper create() {
         return new ObjectMapper()
@@ -36,22 +38,31 @@ public final class ObjectMapperFactory {
      * the end means that it should be translated as local time instead of Zulu time.
      *
      * This makes the Socrata floating date types work.
+     *
+     * The common forms, <code>yyyy-MM-dd'T'HH:mm:ss</code> with optional milliseconds and an optional "Z" or
+     * numeric offset, are parsed and written by hand without creating any formatters or calendars.  The only
+     * state they use is the timezone, which never changes, so formatting and parsing these forms is safe from any
+     * thread.  Anything the fast path doesn't recognize is handed to the lenient formats this has always used, so
+     * the results don't change; those go through StdDateFormat, which Jackson clones for each use.
      */
     protected static class SocrataDateFormat extends StdDateFormat
     {
+        private static final long MILLIS_PER_SECOND = 1000L;
+        private static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+        private static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+        private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
 
-        //Although, SimpleDateFormat is not thread safe, the entire SocrataDateFormat should be getting cloned by Jackson.
-        final SimpleDateFormat SOCRATA_WRITE_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
-        final SimpleDateFormat SOCRATA_FLOATING_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
-        final SimpleDateFormat SOCRATA_FLOATING_FORMAT_MILLIS = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
+        //Before this, GregorianCalendar switches to the Julian calendar, so those dates go through the slow path.
+        private static final int MIN_FAST_YEAR = 1600;
+        private static final int MAX_FAST_YEAR = 9999;
 
-        final DateFormat[] SPECIAL_DATE_LIST = new DateFormat[] {SOCRATA_FLOATING_FORMAT_MILLIS, SOCRATA_FLOATING_FORMAT} ;
+        private static final long NOT_PARSED = Long.MIN_VALUE;
 
+        private final TimeZone localTimezone;
 
         public SocrataDateFormat()
         {
-            final TimeZone localTimezone = TimeZone.getDefault();
-            SOCRATA_WRITE_FORMAT.setTimeZone(localTimezone);
+            localTimezone = TimeZone.getDefault();
         }
 
         /**
@@ -64,6 +75,12 @@ public final class ObjectMapperFactory {
          */
         @Override
         protected Date parseAsISO8601(String dateStr, ParsePosition pos) throws ParseException {
+            final long millis = parseFast(dateStr, pos.getIndex());
+            if (millis != NOT_PARSED) {
+                pos.setIndex(dateStr.length());
+                return new Date(millis);
+            }
+
             final Date retVal = parseAsFloatingISO8601(dateStr, pos);
             if (retVal != null) {
                 return retVal;
@@ -74,11 +91,131 @@ public final class ObjectMapperFactory {
         @Override
         public StringBuffer format(Date date, StringBuffer toAppendTo, FieldPosition fieldPosition)
         {
-            return SOCRATA_WRITING_FORMAT.format(date, toAppendTo, fieldPosition);
+            final long millis = date.getTime();
+            final int offset = localTimezone.getOffset(millis);
+            final long local = millis + offset;
+            final long days = Math.floorDiv(local, MILLIS_PER_DAY);
+            final long millisOfDay = local - days * MILLIS_PER_DAY;
+
+            //Civil date from days since the epoch, following Howard Hinnant's days_from_civil algorithm in reverse.
+            final long shifted = days + 719468;
+            final long era = Math.floorDiv(shifted, 146097);
+            final long dayOfEra = shifted - era * 146097;
+            final long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+            final long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+            final long shiftedMonth = (5 * dayOfYear + 2) / 153;
+            final int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+            final int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+            final long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+            if (year < MIN_FAST_YEAR || year > MAX_FAST_YEAR) {
+                final SimpleDateFormat slowFormat = new SimpleDateFormat(SOCRATA_WRITING_PATTERN);
+                slowFormat.setTimeZone(localTimezone);
+                return slowFormat.format(date, toAppendTo, fieldPosition);
+            }
+
+            appendDigits(toAppendTo, (int) year, 4);
+            toAppendTo.append('-');
+            appendDigits(toAppendTo, month, 2);
+            toAppendTo.append('-');
+            appendDigits(toAppendTo, day, 2);
+            toAppendTo.append('T');
+            appendDigits(toAppendTo, (int) (millisOfDay / MILLIS_PER_HOUR), 2);
+            toAppendTo.append(':');
+            appendDigits(toAppendTo, (int) (millisOfDay / MILLIS_PER_MINUTE % 60), 2);
+            toAppendTo.append(':');
+            appendDigits(toAppendTo, (int) (millisOfDay / MILLIS_PER_SECOND % 60), 2);
+            toAppendTo.append('.');
+            appendDigits(toAppendTo, (int) (millisOfDay % MILLIS_PER_SECOND), 3);
+
+            //Like SimpleDateFormat's "Z", whole minutes, truncated.
+            final int offsetMinutes = offset / (int) MILLIS_PER_MINUTE;
+            toAppendTo.append(offsetMinutes < 0 ? '-' : '+');
+            appendDigits(toAppendTo, Math.abs(offsetMinutes) / 60, 2);
+            appendDigits(toAppendTo, Math.abs(offsetMinutes) % 60, 2);
+            return toAppendTo;
+        }
+
+        /**
+         * Parses <code>yyyy-MM-dd'T'HH:mm:ss</code>, with optional <code>.SSS</code> milliseconds, followed by
+         * nothing (a floating time, in the local timezone), "Z", or an offset of the form <code>+HHmm</code> or
+         * <code>+HH:mm</code>.  The whole rest of the string must match.
+         *
+         * @param dateString the date string to parse
+         * @param start the position to start parsing at.
+         * @return the time in milliseconds, or {@link #NOT_PARSED} if it isn't one of these forms.
+         */
+        long parseFast(final String dateString, final int start)
+        {
+            final int len = dateString.length();
+            if (len - start < 19 ||
+                dateString.charAt(start + 4) != '-' || dateString.charAt(start + 7) != '-' || dateString.charAt(start + 10) != 'T' ||
+                dateString.charAt(start + 13) != ':' || dateString.charAt(start + 16) != ':') {
+                return NOT_PARSED;
+            }
+
+            final int year = digits(dateString, start, 4);
+            final int month = digits(dateString, start + 5, 2);
+            final int day = digits(dateString, start + 8, 2);
+            final int hour = digits(dateString, start + 11, 2);
+            final int minute = digits(dateString, start + 14, 2);
+            final int second = digits(dateString, start + 17, 2);
+            if (year < MIN_FAST_YEAR || year > MAX_FAST_YEAR || month < 1 || month > 12 ||
+                day < 0 || hour < 0 || minute < 0 || second < 0) {
+                return NOT_PARSED;
+            }
+
+            int i = start + 19;
+            int millis = 0;
+            if (i < len && dateString.charAt(i) == '.') {
+                millis = digits(dateString, i + 1, 3);
+                if (millis < 0) {
+                    return NOT_PARSED;
+                }
+                i += 4;
+            }
+
+            //Lenient, like the formats this replaces: a day or time past the end of its range rolls over.
+            final long local = daysFromCivil(year, month, day) * MILLIS_PER_DAY + hour * MILLIS_PER_HOUR +
+                               minute * MILLIS_PER_MINUTE + second * MILLIS_PER_SECOND + millis;
+
+            if (i == len) {
+                //Local times near a change of offset can be skipped or ambiguous, and are left to GregorianCalendar
+                //to resolve.  Everywhere else, the offset a day either side is the offset.
+                final int offset = localTimezone.getOffset(local - MILLIS_PER_DAY);
+                if (localTimezone.getOffset(local + MILLIS_PER_DAY) != offset || localTimezone.getOffset(local - offset) != offset) {
+                    return NOT_PARSED;
+                }
+                return local - offset;
+            }
+
+            //A fixed time has to be a real one, so anything out of range goes to the strict parsing.
+            if (day < 1 || day > 31 || hour > 23 || minute > 59 || second > 59) {
+                return NOT_PARSED;
+            }
+
+            final char c = dateString.charAt(i);
+            if (c == 'Z' && i + 1 == len) {
+                return local;
+            }
+            if (c != '+' && c != '-') {
+                return NOT_PARSED;
+            }
+
+            final int offsetHours = digits(dateString, i + 1, 2);
+            final int minutesAt = i + 3 < len && dateString.charAt(i + 3) == ':' ? i + 4 : i + 3;
+            final int offsetMinutes = digits(dateString, minutesAt, 2);
+            if (offsetHours < 0 || offsetMinutes < 0 || offsetMinutes > 59 || minutesAt + 2 != len) {
+                return NOT_PARSED;
+            }
+
+            final long offset = offsetHours * MILLIS_PER_HOUR + offsetMinutes * MILLIS_PER_MINUTE;
+            return c == '+' ? local - offset : local + offset;
         }
 
         /**
-         * Parses an ISO8601 that does not contain a Z as a floating type.
+         * Parses an ISO8601 that does not contain a Z as a floating type.  This is the slow path, for strings
+         * {@link #parseFast} doesn't recognize.
          *
          * @param dateString the date string to parse
          * @param pos the position to start parsin gat.
@@ -90,11 +227,12 @@ public final class ObjectMapperFactory {
             final char c = dateString.charAt(len-1);
             if (c != 'z' && c != 'Z') {
 
-                for (DateFormat format : SPECIAL_DATE_LIST)
+                for (String pattern : new String[] { SOCRATA_FLOATING_MILLIS_PATTERN, SOCRATA_FLOATING_PATTERN })
                 {
                     final ParsePosition testPos = new ParsePosition(pos.getIndex());
-                    final DateFormat safeFormat = (DateFormat) format.clone();
-                    final Date retVal = safeFormat.parse(dateString, testPos);
+                    final SimpleDateFormat format = new SimpleDateFormat(pattern);
+                    format.setTimeZone(localTimezone);
+                    final Date retVal = format.parse(dateString, testPos);
 
                     if (retVal != null && testPos.getIndex()==len) {
                         pos.setIndex(testPos.getIndex());
@@ -105,6 +243,46 @@ public final class ObjectMapperFactory {
             return null;
         }
 
+        /**
+         * @return the number of days from 1970-01-01 to the given date, from Howard Hinnant's days_from_civil.
+         */
+        private static long daysFromCivil(int year, int month, int day)
+        {
+            final int y = month <= 2 ? year - 1 : year;
+            final int era = y / 400;
+            final int yearOfEra = y - era * 400;
+            final int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+            final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+            return era * 146097L + dayOfEra - 719468;
+        }
+
+        /**
+         * @return the value of exactly {@code count} decimal digits at {@code at}, or -1 if they aren't all there.
+         */
+        private static int digits(String s, int at, int count)
+        {
+            if (at + count > s.length()) {
+                return -1;
+            }
+
+            int value = 0;
+            for (int i = at; i < at + count; i++) {
+                final char c = s.charAt(i);
+                if (c < '0' || c > '9') {
+                    return -1;
+                }
+                value = value * 10 + (c - '0');
+            }
+            return value;
+        }
+
+        private static void appendDigits(StringBuffer buffer, int value, int width)
+        {
+            for (int divisor = width == 4 ? 1000 : width == 3 ? 100 : 10; divisor > 0; divisor /= 10) {
+                buffer.append((char) ('0' + value / divisor % 10));
+            }
+        }
+
         /**
          * Need to override this, because StdDateFormat overrode this.
          *
@@ -0,0 +1,201 @@
+package com.socrata.utils;
+
+import com.socrata.exceptions.SodaError;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces identical calls that are in flight at the same time.  The first caller for a key makes the call, and
+ * any caller that asks for the same key before it finishes waits for it and gets the same result or error,
+ * instead of making its own call.  Once the call finishes, the next caller for the key makes a new one, so
+ * nothing is cached.
+ *
+ * The result is handed to every waiting caller, so it should be immutable, such as the raw bytes of a response
+ * that each caller decodes for itself.
+ *
+ * If the thread making the call is interrupted, the callers waiting on it don't fail, and one of them makes the
+ * call instead.
+ *
+ * A call that is cheaper to finish for one caller than to share, such as one that can decode a response as it is
+ * read rather than buffering it, can {@link Flight#detach() detach} part way through if no one has joined it yet.
+ * Callers that come along after that make their own call.
+ */
+@ThreadSafe
+public class SingleFlight<K, V>
+{
+    /**
+     * A call that can be shared.
+     */
+    public interface Call<V>
+    {
+        V call() throws SodaError, InterruptedException;
+    }
+
+    /**
+     * A call that can stop being shared, if no one has joined it by the time it asks.
+     */
+    public interface DetachableCall<V>
+    {
+        /**
+         * @param flight the call in flight, which can be detached from the callers that might join it
+         * @return the result of the call.  If the call detached, this is only returned to its own caller.
+         */
+        V call(Flight flight) throws SodaError, InterruptedException;
+    }
+
+    /**
+     * A call in flight, as seen by the caller making it.
+     */
+    public interface Flight
+    {
+        /**
+         * Stops other callers from joining the call, if none have joined it yet.
+         *
+         * @return true if the call is now only for the caller making it, and its result will not be shared
+         */
+        boolean detach();
+    }
+
+    /**
+     * A flight for calls made without a SingleFlight, which can always detach.
+     */
+    public static final Flight UNSHARED = () -> true;
+
+    private final ConcurrentHashMap<K, InFlight> inFlight = new ConcurrentHashMap<K, InFlight>();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+
+    /**
+     * Makes a call, or joins the identical call already in flight.
+     *
+     * @param key identifies the call.  Calls with equal keys must be interchangeable.
+     * @param call makes the call, if there isn't one in flight for the key
+     * @return the result of the call
+     * @throws SodaError  thrown if there is an error.  Investigate the structure for more information.
+     * @throws InterruptedException throws is the thread is interrupted.
+     */
+    public V execute(K key, Call<V> call) throws SodaError, InterruptedException
+    {
+        return execute(key, (DetachableCall<V>) flight -> call.call());
+    }
+
+    /**
+     * Makes a call that may detach, or joins the identical call already in flight.
+     *
+     * @param key identifies the call.  Calls with equal keys must be interchangeable.
+     * @param call makes the call, if there isn't one in flight for the key
+     * @return the result of the call
+     * @throws SodaError  thrown if there is an error.  Investigate the structure for more information.
+     * @throws InterruptedException throws is the thread is interrupted.
+     */
+    public V execute(K key, DetachableCall<V> call) throws SodaError, InterruptedException
+    {
+        while (true) {
+            final InFlight flight = new InFlight(key);
+            final InFlight existing = inFlight.putIfAbsent(key, flight);
+            if (existing == null) {
+                return lead(flight, call);
+            }
+            if (!existing.join()) {
+                //The call detached, and is no longer in the map.
+                continue;
+            }
+
+            try {
+                final V result = existing.result.get();
+                shared.increment();
+                return result;
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof InterruptedException) {
+                    //The leader was interrupted, not this thread, so try again.
+                    continue;
+                }
+                shared.increment();
+                if (cause instanceof SodaError) {
+                    throw (SodaError) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
+    /**
+     * @return the number of calls that were made
+     */
+    public long getCallCount()
+    {
+        return calls.sum();
+    }
+
+    /**
+     * @return the number of times a caller joined a call already in flight instead of making its own
+     */
+    public long getSharedCount()
+    {
+        return shared.sum();
+    }
+
+    private V lead(InFlight flight, DetachableCall<V> call) throws SodaError, InterruptedException
+    {
+        calls.increment();
+        try {
+            final V result = call.call(flight);
+            flight.result.complete(result);
+            return result;
+        } catch (Throwable t) {
+            flight.result.completeExceptionally(t);
+            throw t;
+        } finally {
+            inFlight.remove(flight.key, flight);
+        }
+    }
+
+    /**
+     * A call in flight, and the callers waiting on it.
+     */
+    private final class InFlight implements Flight
+    {
+        final K key;
+        final CompletableFuture<V> result = new CompletableFuture<V>();
+        private int     waiters = 0;
+        private boolean detached = false;
+
+        InFlight(K key)
+        {
+            this.key = key;
+        }
+
+        synchronized boolean join()
+        {
+            if (detached) {
+                return false;
+            }
+            waiters++;
+            return true;
+        }
+
+        @Override
+        public synchronized boolean detach()
+        {
+            if (waiters > 0) {
+                return false;
+            }
+            if (!detached) {
+                detached = true;
+                inFlight.remove(key, this);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.socrata.utils.streams;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of byte arrays shared by the stream transforms and request body writers, so sending many requests
+ * doesn't allocate a new set of buffers for each one.
+ *
+ * Buffers come in power of two sizes from 1KB to 16MB; a request is rounded up to the next size, and requests
+ * larger than that are allocated without pooling.  Each thread keeps a few small buffers of each size to itself,
+ * so most acquires and releases don't touch shared state, and the rest are kept on shared free lists.  The total
+ * size of the buffers on the shared lists is bounded, and buffers released past that bound are left for the
+ * garbage collector.
+ *
+ * A buffer must not be used after it has been released, and must only be released once.  A buffer that is never
+ * released is simply garbage collected, so it is always safe to not release one.
+ *
+ * This is thread safe.
+ */
+public final class BufferPool
+{
+    public static final long DEFAULT_MAX_POOLED_BYTES = 64L * 1024 * 1024;
+    public static final int  DEFAULT_THREAD_LOCAL_BUFFERS = 4;
+
+    private static final int MIN_SHIFT = 10;
+    private static final int MAX_SHIFT = 24;
+    private static final int SIZE_CLASSES = MAX_SHIFT - MIN_SHIFT + 1;
+
+    /**
+     * Only buffers up to this size are cached per thread, so idle threads don't pin large buffers.
+     */
+    private static final int MAX_THREAD_LOCAL_SIZE = 256 * 1024;
+
+    private static final BufferPool DEFAULT = new BufferPool(DEFAULT_MAX_POOLED_BYTES, DEFAULT_THREAD_LOCAL_BUFFERS);
+
+    private final long maxPooledBytes;
+    private final int  threadLocalBuffers;
+    private final List<ConcurrentLinkedQueue<byte[]>> freeLists = new ArrayList<ConcurrentLinkedQueue<byte[]>>(SIZE_CLASSES);
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final ThreadLocal<List<ArrayDeque<byte[]>>> localCaches = new ThreadLocal<List<ArrayDeque<byte[]>>>()
+    {
+        @Override
+        protected List<ArrayDeque<byte[]>> initialValue()
+        {
+            final List<ArrayDeque<byte[]>> caches = new ArrayList<ArrayDeque<byte[]>>(SIZE_CLASSES);
+            for (int i = 0; i < SIZE_CLASSES; i++) {
+                caches.add(new ArrayDeque<byte[]>(threadLocalBuffers));
+            }
+            return caches;
+        }
+    };
+
+    private final LongAdder acquires = new LongAdder();
+    private final LongAdder threadLocalHits = new LongAdder();
+    private final LongAdder sharedHits = new LongAdder();
+    private final LongAdder allocations = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder releases = new LongAdder();
+    private final LongAdder discards = new LongAdder();
+
+    /**
+     * @param maxPooledBytes the most bytes of buffers to keep on the shared free lists
+     * @param threadLocalBuffers the number of buffers of each size each thread keeps to itself
+     */
+    public BufferPool(long maxPooledBytes, int threadLocalBuffers)
+    {
+        if (maxPooledBytes < 0) {
+            throw new IllegalArgumentException("maxPooledBytes must not be negative, was " + maxPooledBytes);
+        }
+        if (threadLocalBuffers < 0) {
+            throw new IllegalArgumentException("threadLocalBuffers must not be negative, was " + threadLocalBuffers);
+        }
+
+        this.maxPooledBytes = maxPooledBytes;
+        this.threadLocalBuffers = threadLocalBuffers;
+        for (int i = 0; i < SIZE_CLASSES; i++) {
+            freeLists.add(new ConcurrentLinkedQueue<byte[]>());
+        }
+    }
+
+    /**
+     * @return the pool shared by this library's streams
+     */
+    public static BufferPool getDefault()
+    {
+        return DEFAULT;
+    }
+
+    /**
+     * Gets a buffer of at least {@code minSize} bytes.  Its contents are whatever its last user left in it.
+     *
+     * @param minSize the smallest buffer that will do
+     * @return a buffer, which may be larger than asked for
+     */
+    public byte[] acquire(int minSize)
+    {
+        acquires.increment();
+        final int sizeClass = sizeClass(minSize);
+        if (sizeClass < 0) {
+            return allocate(minSize);
+        }
+
+        final int size = 1 << (sizeClass + MIN_SHIFT);
+        if (size <= MAX_THREAD_LOCAL_SIZE) {
+            final byte[] local = localCaches.get().get(sizeClass).pollLast();
+            if (local != null) {
+                threadLocalHits.increment();
+                return local;
+            }
+        }
+
+        final byte[] shared = freeLists.get(sizeClass).poll();
+        if (shared != null) {
+            pooledBytes.addAndGet(-shared.length);
+            sharedHits.increment();
+            return shared;
+        }
+
+        return allocate(size);
+    }
+
+    /**
+     * Returns a buffer to the pool.  Buffers that did not come from a pool are accepted as long as their size is
+     * one the pool uses, and ignored otherwise.
+     *
+     * @param buffer the buffer to release, or {@code null} to do nothing
+     */
+    public void release(byte[] buffer)
+    {
+        if (buffer == null) {
+            return;
+        }
+
+        releases.increment();
+        final int sizeClass = sizeClass(buffer.length);
+        if (sizeClass < 0 || buffer.length != 1 << (sizeClass + MIN_SHIFT)) {
+            discards.increment();
+            return;
+        }
+
+        if (buffer.length <= MAX_THREAD_LOCAL_SIZE) {
+            final ArrayDeque<byte[]> local = localCaches.get().get(sizeClass);
+            if (local.size() < threadLocalBuffers) {
+                local.addLast(buffer);
+                return;
+            }
+        }
+
+        if (pooledBytes.addAndGet(buffer.length) > maxPooledBytes) {
+            pooledBytes.addAndGet(-buffer.length);
+            discards.increment();
+            return;
+        }
+        freeLists.get(sizeClass).offer(buffer);
+    }
+
+    /**
+     * @return a snapshot of how the pool has been used
+     */
+    public Stats getStats()
+    {
+        return new Stats(acquires.sum(), threadLocalHits.sum(), sharedHits.sum(), allocations.sum(), allocatedBytes.sum(),
+                         releases.sum(), discards.sum(), pooledBytes.get());
+    }
+
+    private byte[] allocate(int size)
+    {
+        allocations.increment();
+        allocatedBytes.add(size);
+        return new byte[size];
+    }
+
+    /**
+     * @return the index of the smallest size class that holds {@code size} bytes, or -1 if it is too large to pool.
+     */
+    private static int sizeClass(int size)
+    {
+        if (size <= 1 << MIN_SHIFT) {
+            return 0;
+        }
+
+        final int shift = 32 - Integer.numberOfLeadingZeros(size - 1);
+        return shift > MAX_SHIFT ? -1 : shift - MIN_SHIFT;
+    }
+
+    /**
+     * A snapshot of the counters for a pool.
+     */
+    public static final class Stats
+    {
+        private final long acquires;
+        private final long threadLocalHits;
+        private final long sharedHits;
+        private final long allocations;
+        private final long allocatedBytes;
+        private final long releases;
+        private final long discards;
+        private final long pooledBytes;
+
+        Stats(long acquires, long threadLocalHits, long sharedHits, long allocations, long allocatedBytes,
+              long releases, long discards, long pooledBytes)
+        {
+            this.acquires = acquires;
+            this.threadLocalHits = threadLocalHits;
+            this.sharedHits = sharedHits;
+            this.allocations = allocations;
+            this.allocatedBytes = allocatedBytes;
+            this.releases = releases;
+            this.discards = discards;
+            this.pooledBytes = pooledBytes;
+        }
+
+        /**
+         * @return the number of buffers asked for
+         */
+        public long getAcquires()
+        {
+            return acquires;
+        }
+
+        /**
+         * @return the number of buffers handed out from the asking thread's own cache
+         */
+        public long getThreadLocalHits()
+        {
+            return threadLocalHits;
+        }
+
+        /**
+         * @return the number of buffers handed out from the shared free lists
+         */
+        public long getSharedHits()
+        {
+            return sharedHits;
+        }
+
+        /**
+         * @return the number of buffers that had to be allocated
+         */
+        public long getAllocations()
+        {
+            return allocations;
+        }
+
+        /**
+         * @return the total size of the buffers that had to be allocated
+         */
+        public long getAllocatedBytes()
+        {
+            return allocatedBytes;
+        }
+
+        /**
+         * @return the number of buffers given back
+         */
+        public long getReleases()
+        {
+            return releases;
+        }
+
+        /**
+         * @return the number of buffers given back that were left for the garbage collector
+         */
+        public long getDiscards()
+        {
+            return discards;
+        }
+
+        /**
+         * @return the total size of the buffers currently on the shared free lists
+         */
+        public long getPooledBytes()
+        {
+            return pooledBytes;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "BufferPool.Stats{" +
+                    "acquires=" + acquires +
+                    ", threadLocalHits=" + threadLocalHits +
+                    ", sharedHits=" + sharedHits +
+                    ", allocations=" + allocations +
+                    ", allocatedBytes=" + allocatedBytes +
+                    ", releases=" + releases +
+                    ", discards=" + discards +
+                    ", pooledBytes=" + pooledBytes +
+                    '}';
+        }
+    }
+}
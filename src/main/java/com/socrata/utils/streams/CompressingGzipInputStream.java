@@ -2,20 +2,102 @@ package com.socrata.utils.streams;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 
 /**
+ * An InputStream that gzips another InputStream as it is read.
+ *
+ * The compressed data is deflated straight into the stream's fixed size pipe, and the source is only read when
+ * the deflater needs more input, so memory use is bounded by the buffer sizes no matter how large the source is.
  */
 public class CompressingGzipInputStream extends IdentityStream {
 
+    private static final byte[] GZIP_HEADER = {
+            0x1f, (byte) 0x8b,  //Magic number
+            Deflater.DEFLATED,  //Compression method
+            0,                  //Flags
+            0, 0, 0, 0,         //Modification time
+            0,                  //Extra flags
+            0                   //Operating system (FAT, the same as GZIPOutputStream)
+    };
+    private static final int TRAILER_SIZE = 8;
+
+    private final Deflater  deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final CRC32     crc = new CRC32();
+    private final byte[]    inputBuffer;
+    private final int       inputSize;
+    private boolean         sourceDone = false;
+    private boolean         trailerWritten = false;
+    private boolean         closed = false;
+
     public CompressingGzipInputStream(InputStream srcStream) throws IOException
     {
         this(4096, srcStream);
     }
 
+    /**
+     * @param bufferSize size of the pipe the compressed data is buffered in.  This must be at least 10 bytes, to
+     *                   hold the gzip header.
+     * @param srcStream the stream to compress
+     */
     public CompressingGzipInputStream(int bufferSize, InputStream srcStream) throws IOException
     {
         super(bufferSize, srcStream);
-        pipedOutputStream = new GZIPOutputStream(pipedOutputStream);
+        if (bufferSize < GZIP_HEADER.length) {
+            throw new IllegalArgumentException("bufferSize must be at least " + GZIP_HEADER.length + ", was " + bufferSize);
+        }
+        inputSize = bufferSize;
+        inputBuffer = BufferPool.getDefault().acquire(bufferSize);
+        pipedOutputStream.write(GZIP_HEADER);
+    }
+
+    @Override
+    protected boolean loadNext() throws IOException
+    {
+        if (trailerWritten) {
+            return false;
+        }
+
+        if (deflater.finished()) {
+            //The pipe is empty whenever this is called, so the trailer always fits.
+            final int crcValue = (int) crc.getValue();
+            final int size = (int) deflater.getBytesRead();
+            pipedOutputStream.write(new byte[] {
+                    (byte) crcValue, (byte) (crcValue >> 8), (byte) (crcValue >> 16), (byte) (crcValue >> 24),
+                    (byte) size, (byte) (size >> 8), (byte) (size >> 16), (byte) (size >> 24)
+            }, 0, TRAILER_SIZE);
+            trailerWritten = true;
+            return true;
+        }
+
+        if (deflater.needsInput() && !sourceDone) {
+            final int bytes = srcStream.read(inputBuffer, 0, inputSize);
+            if (bytes == -1) {
+                sourceDone = true;
+                deflater.finish();
+            } else if (bytes > 0) {
+                crc.update(inputBuffer, 0, bytes);
+                deflater.setInput(inputBuffer, 0, bytes);
+            }
+        }
+
+        pipedInputStream.recieveFrom(deflater);
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            super.close();
+        } finally {
+            deflater.end();
+            BufferPool.getDefault().release(inputBuffer);
+        }
     }
 }
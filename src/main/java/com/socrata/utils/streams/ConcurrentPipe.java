@@ -0,0 +1,256 @@
+package com.socrata.utils.streams;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A pipe between one writing thread and one reading thread, so data written to an OutputStream on one thread can
+ * be read from an InputStream on another without going through a file.  For example, a thread writing CSV rows
+ * can feed {@code Soda2Producer.upsertStream} running on another thread.
+ *
+ * This is like the Java PipedInputStream and PipedOutputStream, but does not lock or poll.  The two threads share
+ * a fixed size ring buffer, and only wait (by parking) when it is full or empty, at which point the other side
+ * wakes them as soon as it has made progress.
+ *
+ * There must be at most one thread writing and one thread reading at a time.  If the writer fails, it can
+ * {@link #abort} the pipe, so the reader gets an IOException rather than what looks like a complete stream.
+ */
+@ThreadSafe
+public class ConcurrentPipe
+{
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    private final int           capacity;
+    private final AtomicLong    written = new AtomicLong();
+    private final AtomicLong    read = new AtomicLong();
+    private final AtomicInteger openEnds = new AtomicInteger(2);
+    private final PipeInputStream  inputStream = new PipeInputStream();
+    private final PipeOutputStream outputStream = new PipeOutputStream();
+
+    private volatile byte[]    buffer;
+    private volatile Thread    waitingReader;
+    private volatile Thread    waitingWriter;
+    private volatile boolean   writerClosed = false;
+    private volatile boolean   readerClosed = false;
+    private volatile Throwable abortCause;
+
+    public ConcurrentPipe()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the number of bytes the pipe holds before the writer has to wait for the reader
+     */
+    public ConcurrentPipe(int capacity)
+    {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive, was " + capacity);
+        }
+        this.capacity = capacity;
+        this.buffer = BufferPool.getDefault().acquire(capacity);
+    }
+
+    /**
+     * @return the end of the pipe to read from.  Closing it makes further writes fail.
+     */
+    public InputStream getInputStream()
+    {
+        return inputStream;
+    }
+
+    /**
+     * @return the end of the pipe to write to.  Closing it lets the reader see the end of the stream once it has
+     * read everything written.
+     */
+    public OutputStream getOutputStream()
+    {
+        return outputStream;
+    }
+
+    /**
+     * Fails the pipe from the writing side.  Once the reader has read what was written before this, its reads
+     * throw an IOException caused by {@code cause}.
+     *
+     * @param cause the reason the writer failed
+     */
+    public void abort(Throwable cause)
+    {
+        abortCause = cause;
+        outputStream.close();
+    }
+
+    private void closeEnd()
+    {
+        if (openEnds.decrementAndGet() == 0) {
+            final byte[] released = buffer;
+            buffer = null;
+            BufferPool.getDefault().release(released);
+        }
+    }
+
+    private static void unpark(Thread thread)
+    {
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private final class PipeOutputStream extends OutputStream
+    {
+        private boolean closed = false;
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            if (closed) {
+                throw new IOException("The pipe has been closed for writing");
+            }
+            if (readerClosed) {
+                throw new IOException("The pipe has been closed by the reader");
+            }
+
+            while (len > 0) {
+                final long writePosition = written.get();
+                final int free = capacity - (int) (writePosition - read.get());
+                if (free == 0) {
+                    awaitSpace(writePosition);
+                    continue;
+                }
+
+                final int index = (int) (writePosition % capacity);
+                final int count = Math.min(Math.min(free, len), capacity - index);
+                System.arraycopy(b, off, buffer, index, count);
+                written.set(writePosition + count);
+                unpark(waitingReader);
+
+                off += count;
+                len -= count;
+            }
+        }
+
+        private void awaitSpace(long writePosition) throws IOException
+        {
+            waitingWriter = Thread.currentThread();
+            try {
+                while (!readerClosed && writePosition - read.get() == capacity) {
+                    LockSupport.park(this);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedIOException("Interrupted while waiting for the reader");
+                    }
+                }
+            } finally {
+                waitingWriter = null;
+            }
+
+            if (readerClosed) {
+                throw new IOException("The pipe has been closed by the reader");
+            }
+        }
+
+        @Override
+        public void close()
+        {
+            if (!closed) {
+                closed = true;
+                writerClosed = true;
+                unpark(waitingReader);
+                closeEnd();
+            }
+        }
+    }
+
+    private final class PipeInputStream extends InputStream
+    {
+        private boolean closed = false;
+
+        @Override
+        public int read() throws IOException
+        {
+            final byte[] single = new byte[1];
+            final int count = read(single, 0, 1);
+            return count == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (closed) {
+                throw new IOException("The pipe has been closed for reading");
+            }
+            if (len == 0) {
+                return 0;
+            }
+
+            final long readPosition = read.get();
+            long available = written.get() - readPosition;
+            if (available == 0) {
+                available = awaitData(readPosition);
+                if (available == 0) {
+                    if (abortCause != null) {
+                        throw new IOException("The writer failed", abortCause);
+                    }
+                    return -1;
+                }
+            }
+
+            final int index = (int) (readPosition % capacity);
+            final int count = (int) Math.min(Math.min(available, len), capacity - index);
+            System.arraycopy(buffer, index, b, off, count);
+            read.set(readPosition + count);
+            unpark(waitingWriter);
+            return count;
+        }
+
+        /**
+         * @return the number of bytes available, which is 0 only if the writer has closed the pipe.
+         */
+        private long awaitData(long readPosition) throws IOException
+        {
+            waitingReader = Thread.currentThread();
+            try {
+                long available;
+                while ((available = written.get() - readPosition) == 0 && !writerClosed) {
+                    LockSupport.park(this);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedIOException("Interrupted while waiting for the writer");
+                    }
+                }
+
+                //The writer may have written its last bytes just before closing.
+                return available == 0 ? written.get() - readPosition : available;
+            } finally {
+                waitingReader = null;
+            }
+        }
+
+        @Override
+        public int available()
+        {
+            return closed ? 0 : (int) (written.get() - read.get());
+        }
+
+        @Override
+        public void close()
+        {
+            if (!closed) {
+                closed = true;
+                readerClosed = true;
+                unpark(waitingWriter);
+                closeEnd();
+            }
+        }
+    }
+}
@@ -11,7 +11,6 @@ import java.io.InputStream;
  */
 public class IdentityStream extends TransformativeStream
 {
-    final private   byte[] intermediateBuffer = new byte[1024];
     final protected InputStream srcStream;
 
     public IdentityStream(int bufferSize, InputStream srcStream)
@@ -20,14 +19,12 @@ public class IdentityStream extends TransformativeStream
         this.srcStream = srcStream;
     }
 
+    /**
+     * Reads from the source straight into the pipe, so the bytes are only copied once more, when they are read.
+     */
     @Override
     protected boolean loadNext() throws IOException
     {
-        int bytes = srcStream.read(intermediateBuffer);
-        if (bytes > 0) {
-            pipedOutputStream.write(intermediateBuffer, 0, bytes);
-        }
-
-        return bytes != -1;
+        return pipedInputStream.recieveFrom(srcStream) != -1;
     }
 }
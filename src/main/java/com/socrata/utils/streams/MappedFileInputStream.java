@@ -0,0 +1,185 @@
+package com.socrata.utils.streams;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a file through a {@link FileChannel}, mapping it into memory a window at a time, so reading a large file
+ * is a copy straight out of the page cache with no read call per buffer.  Skipping moves past the bytes without
+ * touching them.
+ *
+ * Files that can't be mapped, such as pipes and devices, are read through a large direct buffer instead.
+ *
+ * The length of a regular file is taken when the stream is opened; bytes appended after that are not read.  The
+ * windows are unmapped when they are garbage collected, so the window size bounds how much of the file is mapped
+ * by a stream at once, not how much may be mapped in total.
+ *
+ * This is not thread safe.
+ */
+public class MappedFileInputStream extends InputStream
+{
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private static final int DIRECT_BUFFER_SIZE = 1024 * 1024;
+
+    private final FileChannel channel;
+    private final boolean     mapped;
+    private final long        length;
+    private final int         windowSize;
+
+    private ByteBuffer window;
+    private long       windowEnd = 0;
+
+    /**
+     * @param file the file to read
+     * @throws IOException if the file can not be opened.
+     */
+    public MappedFileInputStream(File file) throws IOException
+    {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param file the file to read
+     * @param windowSize the most bytes of the file to map at once
+     * @throws IOException if the file can not be opened.
+     */
+    public MappedFileInputStream(File file, int windowSize) throws IOException
+    {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("windowSize must be greater than 0, was " + windowSize);
+        }
+
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.mapped = file.isFile();
+        this.length = mapped ? channel.size() : -1;
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * @return the number of bytes in the file, or -1 if it isn't a regular file.
+     */
+    public long length()
+    {
+        return length;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        return window.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureAvailable()) {
+            return -1;
+        }
+
+        final int count = Math.min(len, window.remaining());
+        window.get(b, off, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+        if (n <= 0) {
+            return 0;
+        }
+        if (!mapped) {
+            return super.skip(n);
+        }
+        checkOpen();
+
+        final long skipped = Math.min(n, length - position());
+        if (window != null && skipped <= window.remaining()) {
+            window.position(window.position() + (int) skipped);
+        } else {
+            windowEnd = position() + skipped;
+            window = null;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+        checkOpen();
+        if (mapped) {
+            return (int) Math.min(Integer.MAX_VALUE, length - position());
+        }
+        return window != null ? window.remaining() : 0;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        window = null;
+        channel.close();
+    }
+
+    /**
+     * @return the position in the file of the next byte to read.  Only meaningful for mapped files.
+     */
+    private long position()
+    {
+        return window == null ? windowEnd : windowEnd - window.remaining();
+    }
+
+    /**
+     * Moves to the next window if the current one is used up.
+     *
+     * @return false at the end of the file
+     */
+    private boolean ensureAvailable() throws IOException
+    {
+        checkOpen();
+        if (window != null && window.hasRemaining()) {
+            return true;
+        }
+
+        if (mapped) {
+            final long start = position();
+            if (start >= length) {
+                return false;
+            }
+            final long size = Math.min(windowSize, length - start);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            windowEnd = start + size;
+            return true;
+        }
+
+        if (window == null) {
+            window = ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE);
+        }
+        window.clear();
+        int read;
+        do {
+            read = channel.read(window);
+        } while (read == 0);
+        window.flip();
+        return read > 0;
+    }
+
+    private void checkOpen() throws IOException
+    {
+        if (!channel.isOpen()) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
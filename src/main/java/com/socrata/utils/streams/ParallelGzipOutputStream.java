@@ -0,0 +1,310 @@
+package com.socrata.utils.streams;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A gzip output stream that compresses on several cores, the way pigz does.  The data is cut into fixed size
+ * blocks, each block is deflated on a worker pool, and the compressed blocks are written out in order as a single
+ * gzip member, so any gzip reader can decompress the result.
+ *
+ * Each block is deflated with the last 32KB of the block before it as a preset dictionary, and ended with a sync
+ * flush so the blocks can be joined.  This costs a little compression compared to {@link java.util.zip.GZIPOutputStream},
+ * but lets the blocks be compressed independently.  The CRC is computed on the writing thread, which is much
+ * cheaper than deflating.
+ *
+ * At most {@code maxBlocksInFlight} blocks are held at once, which bounds the memory used no matter how large the
+ * stream is.  When that many blocks are waiting to be compressed, {@code write} blocks until the oldest is done.
+ * Block buffers come from the {@link BufferPool}, and go back to it once they have been written out.
+ */
+public class ParallelGzipOutputStream extends FilterOutputStream
+{
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    private static final int   DICTIONARY_SIZE = 32 * 1024;
+    private static final byte[] GZIP_HEADER = {
+            0x1f, (byte) 0x8b,  //Magic number
+            Deflater.DEFLATED,  //Compression method
+            0,                  //Flags
+            0, 0, 0, 0,         //Modification time
+            0,                  //Extra flags
+            (byte) 0xff         //Operating system (unknown)
+    };
+
+    private static ExecutorService sharedExecutor;
+
+    private final ExecutorService executor;
+    private final int             blockSize;
+    private final int             level;
+    private final int             maxBlocksInFlight;
+    private final CRC32           crc = new CRC32();
+    private final ArrayDeque<Block> inFlight = new ArrayDeque<Block>();
+
+    private byte[]  block;
+    private int     blockLength = 0;
+    private byte[]  previousBlock;
+    private byte[]  lastWrittenBlock;
+    private long    totalIn = 0;
+    private boolean finished = false;
+
+    /**
+     * Creates a stream that compresses on a shared pool with a thread per core, using the default block size
+     * and compression level.
+     *
+     * @param out the stream to write the compressed data to
+     * @throws IOException if the gzip header can not be written
+     */
+    public ParallelGzipOutputStream(OutputStream out) throws IOException
+    {
+        this(out, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION, getSharedExecutor(), Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * @param out the stream to write the compressed data to
+     * @param blockSize the number of uncompressed bytes in each block.  This must be larger than 32KB.
+     * @param level the deflate compression level, from {@link Deflater}
+     * @param executor the pool the blocks are compressed on.  This is not shut down when the stream is closed.
+     * @param maxBlocksInFlight the most blocks that are buffered or being compressed at once
+     * @throws IOException if the gzip header can not be written
+     */
+    public ParallelGzipOutputStream(OutputStream out, int blockSize, int level, ExecutorService executor, int maxBlocksInFlight) throws IOException
+    {
+        super(out);
+        if (blockSize <= DICTIONARY_SIZE) {
+            throw new IllegalArgumentException("blockSize must be larger than " + DICTIONARY_SIZE + ", was " + blockSize);
+        }
+        if (maxBlocksInFlight <= 0) {
+            throw new IllegalArgumentException("maxBlocksInFlight must be positive, was " + maxBlocksInFlight);
+        }
+
+        this.executor = executor;
+        this.blockSize = blockSize;
+        this.level = level;
+        this.maxBlocksInFlight = maxBlocksInFlight;
+        this.block = BufferPool.getDefault().acquire(blockSize);
+        out.write(GZIP_HEADER);
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        ensureOpen();
+        block[blockLength++] = (byte) b;
+        crc.update(b);
+        totalIn++;
+        if (blockLength == blockSize) {
+            submitBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        ensureOpen();
+        crc.update(b, off, len);
+        totalIn += len;
+        while (len > 0) {
+            final int count = Math.min(len, blockSize - blockLength);
+            System.arraycopy(b, off, block, blockLength, count);
+            blockLength += count;
+            off += count;
+            len -= count;
+            if (blockLength == blockSize) {
+                submitBlock();
+            }
+        }
+    }
+
+    /**
+     * Compresses and writes out everything written so far, and flushes the underlying stream.  Each flush ends a
+     * block early, so flushing often hurts both compression and parallelism.
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        ensureOpen();
+        if (blockLength > 0) {
+            submitBlock();
+        }
+        drain(0);
+        out.flush();
+    }
+
+    /**
+     * Finishes writing the compressed data without closing the underlying stream.
+     *
+     * @throws IOException if there is an error compressing or writing the data
+     */
+    public void finish() throws IOException
+    {
+        if (finished) {
+            return;
+        }
+
+        if (blockLength > 0) {
+            submitBlock();
+        }
+        drain(0);
+        finished = true;
+        BufferPool.getDefault().release(lastWrittenBlock);
+        BufferPool.getDefault().release(block);
+        lastWrittenBlock = null;
+        previousBlock = null;
+        block = null;
+
+        //An empty final block ends the deflate stream, followed by the gzip trailer.
+        final Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.finish();
+            final byte[] buf = new byte[64];
+            while (!deflater.finished()) {
+                out.write(buf, 0, deflater.deflate(buf));
+            }
+        } finally {
+            deflater.end();
+        }
+
+        writeInt((int) crc.getValue());
+        writeInt((int) totalIn);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try {
+            finish();
+        } finally {
+            cancelInFlight();
+            out.close();
+        }
+    }
+
+    private void submitBlock() throws IOException
+    {
+        final byte[] input = block;
+        final int    length = blockLength;
+        final byte[] dictionary = previousBlock;
+
+        drain(maxBlocksInFlight - 1);
+        inFlight.add(new Block(input, executor.submit(new Callable<byte[]>()
+        {
+            @Override
+            public byte[] call()
+            {
+                return deflateBlock(input, length, dictionary, blockSize, level);
+            }
+        })));
+
+        //A full block is kept as the next block's dictionary, so the next block needs a new array.
+        previousBlock = length == blockSize ? input : null;
+        block = BufferPool.getDefault().acquire(blockSize);
+        blockLength = 0;
+    }
+
+    /**
+     * Writes out completed blocks, in order, until no more than {@code maxRemaining} are left in flight.
+     */
+    private void drain(int maxRemaining) throws IOException
+    {
+        while (inFlight.size() > maxRemaining) {
+            final Block next = inFlight.poll();
+            try {
+                out.write(next.compressed.get());
+
+                //The block before this one was only needed as this one's dictionary, so it can be reused now.
+                BufferPool.getDefault().release(lastWrittenBlock);
+                lastWrittenBlock = next.input;
+            } catch (InterruptedException e) {
+                cancelInFlight();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while compressing");
+            } catch (ExecutionException e) {
+                cancelInFlight();
+                throw new IOException("Unable to compress block", e.getCause());
+            }
+        }
+    }
+
+    private void cancelInFlight()
+    {
+        //The blocks may still be in use by the workers, so they are left for the garbage collector.
+        for (Block next : inFlight) {
+            next.compressed.cancel(true);
+        }
+        inFlight.clear();
+    }
+
+    static byte[] deflateBlock(byte[] input, int length, byte[] dictionary, int dictionaryEnd, int level)
+    {
+        final Deflater deflater = new Deflater(level, true);
+        final byte[] buf = BufferPool.getDefault().acquire(Math.max(length / 4, 1024));
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary, dictionaryEnd - DICTIONARY_SIZE, DICTIONARY_SIZE);
+            }
+            deflater.setInput(input, 0, length);
+
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+            int count;
+            do {
+                count = deflater.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+                compressed.write(buf, 0, count);
+            } while (count == buf.length || !deflater.needsInput());
+            return compressed.toByteArray();
+        } finally {
+            deflater.end();
+            BufferPool.getDefault().release(buf);
+        }
+    }
+
+    private void writeInt(int value) throws IOException
+    {
+        out.write(value & 0xff);
+        out.write((value >> 8) & 0xff);
+        out.write((value >> 16) & 0xff);
+        out.write((value >> 24) & 0xff);
+    }
+
+    private void ensureOpen() throws IOException
+    {
+        if (finished) {
+            throw new IOException("The stream has already been finished");
+        }
+    }
+
+    private static final class Block
+    {
+        final byte[]         input;
+        final Future<byte[]> compressed;
+
+        Block(byte[] input, Future<byte[]> compressed)
+        {
+            this.input = input;
+            this.compressed = compressed;
+        }
+    }
+
+    private static synchronized ExecutorService getSharedExecutor()
+    {
+        if (sharedExecutor == null) {
+            sharedExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("soda-gzip-%d")
+                    .build());
+        }
+        return sharedExecutor;
+    }
+}
@@ -6,7 +6,11 @@ import javax.annotation.concurrent.NotThreadSafe;
  * This is a byte buffer meant for buffering stream input, that is resizable.
  *
  * This will not ever block, but common usage will often assure there is data in the buffer before a read
+ *
+ * @deprecated resizing copies the whole buffer and lets it grow without bound.  Use the fixed capacity
+ * {@link RingBuffer} instead.
  */
+@Deprecated
 @NotThreadSafe
 public class ResizableCircularBuffer {
     final byte[]  buffer;
@@ -0,0 +1,173 @@
+package com.socrata.utils.streams;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+
+/**
+ * A fixed capacity circular byte buffer for buffering stream input.  Unlike {@link ResizableCircularBuffer}, this
+ * never grows and never allocates after it is created, so the memory it uses is known up front.
+ *
+ * Producers can fill the buffer straight from an {@link InputStream} or a {@link Deflater}, which writes into the
+ * backing array without going through an intermediate buffer.
+ *
+ * The backing array comes from the {@link BufferPool}, and goes back to it when the buffer is released.
+ *
+ * This will not ever block.  Writes that don't fit write as much as they can and say how much that was.
+ */
+@NotThreadSafe
+public class RingBuffer {
+    final int     capacity;
+    byte[]        buffer;
+
+    /**
+     * Number of total bytes read
+     */
+    long currRead = 0;
+
+    /**
+     * Number of total bytes written
+     */
+    long currWrite = 0;
+
+    public RingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive, was " + capacity);
+        }
+        this.capacity = capacity;
+        this.buffer = BufferPool.getDefault().acquire(capacity);
+    }
+
+    final public int getTotalCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gives the backing array back to the pool.  The buffer can not be used after this.
+     */
+    public void release() {
+        final byte[] released = buffer;
+        buffer = null;
+        currRead = currWrite;
+        BufferPool.getDefault().release(released);
+    }
+
+    final public boolean isEmpty() {
+        return currRead == currWrite;
+    }
+
+    final public boolean isFull() {
+        return (currWrite - currRead) == getTotalCapacity();
+    }
+
+    final public int bytesLeftToWrite() {
+        return getTotalCapacity() - bytesInBuffer();
+    }
+
+    final public int bytesInBuffer() {
+        return (int) (currWrite - currRead);
+    }
+
+    public boolean write(byte b) {
+        if (isFull()) {
+            return false;
+        }
+        buffer[toIndex(currWrite++)] = b;
+        return true;
+    }
+
+    /**
+     * Writes as many of the bytes as fit.
+     *
+     * @return the number of bytes written, which is less than {@code len} if the buffer filled up.
+     */
+    public int write(final byte[] bytes, final int off, final int len) {
+        int written = 0;
+        while (written < len && !isFull()) {
+            final int count = Math.min(writableToEnd(), len - written);
+            System.arraycopy(bytes, off + written, buffer, toIndex(currWrite), count);
+            currWrite += count;
+            written += count;
+        }
+        return written;
+    }
+
+    /**
+     * Reads from a stream straight into the free space in this buffer, with a single read call.
+     *
+     * @param in the stream to read from
+     * @return the number of bytes read, or {@code -1} if the stream is at its end.  This is {@code 0} if the buffer is full.
+     * @throws IOException if the stream can not be read
+     */
+    public int writeFrom(final InputStream in) throws IOException {
+        if (isFull()) {
+            return 0;
+        }
+
+        final int read = in.read(buffer, toIndex(currWrite), writableToEnd());
+        if (read > 0) {
+            currWrite += read;
+        }
+        return read;
+    }
+
+    /**
+     * Deflates straight into the free space in this buffer, until either the buffer is full or the deflater
+     * has nothing more to give without more input.
+     *
+     * @param deflater the deflater to take compressed data from
+     * @return the number of bytes written
+     */
+    public int writeFrom(final Deflater deflater) {
+        int written = 0;
+        while (!isFull()) {
+            final int count = deflater.deflate(buffer, toIndex(currWrite), writableToEnd());
+            if (count == 0) {
+                break;
+            }
+            currWrite += count;
+            written += count;
+        }
+        return written;
+    }
+
+    public byte read() {
+        if (isEmpty()) {
+            throw new IllegalArgumentException("Reading from an empty Circular Buffer");
+        }
+        return buffer[toIndex(currRead++)];
+    }
+
+    /**
+     * Reads as many bytes as are available, up to {@code len}.
+     *
+     * @return the number of bytes read, which is {@code 0} if the buffer is empty.
+     */
+    public int read(byte[] b, int off, int len) {
+        int read = 0;
+        while (read < len && !isEmpty()) {
+            final int count = Math.min(readableToEnd(), len - read);
+            System.arraycopy(buffer, toIndex(currRead), b, off + read, count);
+            currRead += count;
+            read += count;
+        }
+        return read;
+    }
+
+    /**
+     * @return the number of bytes that can be written before the write position wraps around or meets the read position.
+     */
+    final int writableToEnd() {
+        return Math.min(bytesLeftToWrite(), capacity - toIndex(currWrite));
+    }
+
+    /**
+     * @return the number of bytes that can be read before the read position wraps around or meets the write position.
+     */
+    final int readableToEnd() {
+        return Math.min(bytesInBuffer(), capacity - toIndex(currRead));
+    }
+
+    final private int toIndex(long totalOps) { return (int) (totalOps % capacity); }
+}
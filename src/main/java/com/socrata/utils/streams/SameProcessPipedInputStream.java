@@ -3,6 +3,7 @@ package com.socrata.utils.streams;
 import javax.annotation.concurrent.NotThreadSafe;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.zip.Deflater;
 
 /**
  * This is used in concert with SameProcessPipedOutputStream to be able to
@@ -10,6 +11,10 @@ import java.io.InputStream;
  *
  * This is similar to the Java PipedInputStream, except that this is ONLY safe in
  * a single threaded use, and  PipedInputStream is NOT safe in a single threaded use
+ *
+ * The pipe has a fixed capacity, so it never uses more memory than the size it was created with.  Since the
+ * reader and writer are on the same thread, a write can't wait for room, so writing more than there is room
+ * for fails with an IOException.
  */
 @NotThreadSafe
 public class SameProcessPipedInputStream extends InputStream {
@@ -17,10 +22,17 @@ public class SameProcessPipedInputStream extends InputStream {
     boolean             isClosedForWrite = false;
     boolean             isClosedForRead = false;
 
-    ResizableCircularBuffer currReadBuffer;
+    final RingBuffer    currReadBuffer;
 
     public SameProcessPipedInputStream(int bufferSize) {
-        currReadBuffer = new ResizableCircularBuffer(bufferSize);
+        currReadBuffer = new RingBuffer(bufferSize);
+    }
+
+    /**
+     * @return the number of bytes that can be written before the pipe is full
+     */
+    public int freeSpace() {
+        return currReadBuffer.bytesLeftToWrite();
     }
 
     @Override
@@ -58,39 +70,67 @@ public class SameProcessPipedInputStream extends InputStream {
     }
 
     public void recieveByte(int b) throws IOException {
-        if (isClosedForWrite) {
-            throw new IOException("Cannot add bytes to this stream, because it is already closed");
-        }
+        checkOpenForWrite();
 
-        if (currReadBuffer.isFull()) {
-            int newSize = (int) (currReadBuffer.getTotalCapacity() * 1.5);
-            currReadBuffer = currReadBuffer.resize(newSize);
+        if (!currReadBuffer.write((byte)b)) {
+            throw overflow(1);
         }
-
-        currReadBuffer.write((byte)b);
     }
 
     public void recieveBytes(byte[] b, int off, int len) throws IOException {
-
-        if (isClosedForWrite) {
-            throw new IOException("Cannot add bytes to this stream, because it is already closed") ;
-        }
+        checkOpenForWrite();
 
         if (currReadBuffer.bytesLeftToWrite() < len) {
-            int newSize = Math.max((int) (currReadBuffer.getTotalCapacity() * 1.5), len);
-            currReadBuffer = currReadBuffer.resize(newSize);
+            throw overflow(len);
         }
 
         currReadBuffer.write(b, off, len);
     }
 
+    /**
+     * Reads from a stream straight into the pipe's buffer, with a single read call.
+     *
+     * @return the number of bytes read, or {@code -1} if the stream is at its end.
+     */
+    public int recieveFrom(InputStream in) throws IOException {
+        checkOpenForWrite();
+        return currReadBuffer.writeFrom(in);
+    }
+
+    /**
+     * Deflates straight into the pipe's buffer, until either it is full or the deflater needs more input.
+     *
+     * @return the number of bytes written
+     */
+    public int recieveFrom(Deflater deflater) throws IOException {
+        checkOpenForWrite();
+        return currReadBuffer.writeFrom(deflater);
+    }
+
+    private void checkOpenForWrite() throws IOException {
+        if (isClosedForWrite || isClosedForRead) {
+            throw new IOException("Cannot add bytes to this stream, because it is already closed");
+        }
+    }
+
+    private IOException overflow(int len) {
+        return new IOException("Cannot add " + len + " bytes to this stream, only " + currReadBuffer.bytesLeftToWrite() +
+                               " of its " + currReadBuffer.getTotalCapacity() + " bytes are free");
+    }
+
     public void closeForWrite() {
         isClosedForWrite = true;
     }
 
+    /**
+     * Closes the stream, and gives its buffer back to the {@link BufferPool}.
+     */
     @Override
     public void close() throws IOException {
         super.close();
-        isClosedForRead = true;
+        if (!isClosedForRead) {
+            isClosedForRead = true;
+            currReadBuffer.release();
+        }
     }
 }
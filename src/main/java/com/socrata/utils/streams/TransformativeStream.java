@@ -7,6 +7,9 @@ import java.io.OutputStream;
 /**
  * This abstract class is a stream that implements an InputStream, but provides
  * a "loadNext" method subclasses can use for populating the inputstream
+ *
+ * The pipe between loadNext and the reader has a fixed size, and loadNext is only called once the
+ * pipe is empty, so each call can write at most {@code bufferSize} bytes.
  */
 abstract class TransformativeStream extends InputStream {
 
@@ -32,10 +35,18 @@ abstract class TransformativeStream extends InputStream {
         return (pipedInputStream.available() > 0) ? pipedInputStream.read() : -1;
     }
 
+    /**
+     * Reads whatever is in the pipe, up to {@code len} bytes, only loading more if the pipe is empty.  Like most
+     * streams, this may return fewer bytes than asked for before the end of the stream.
+     */
     @Override
     public int read(byte[] b, int off, int len) throws IOException
     {
-        while (hasMore && pipedInputStream.available() < len) {
+        if (len == 0) {
+            return 0;
+        }
+
+        while (hasMore && pipedInputStream.available() == 0) {
             hasMore = doLoad();
         }
 
@@ -46,7 +57,7 @@ abstract class TransformativeStream extends InputStream {
     public int available() throws IOException
     {
         while (hasMore && pipedInputStream.available() == 0) {
-            hasMore = loadNext();
+            hasMore = doLoad();
         }
 
         return pipedInputStream.available();
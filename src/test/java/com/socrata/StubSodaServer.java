@@ -0,0 +1,1239 @@
+package com.socrata;
+
+import au.com.bytecode.opencsv.CSVReader;
+import au.com.bytecode.opencsv.CSVWriter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.socrata.api.HttpLowLevel;
+import com.socrata.utils.ObjectMapperFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * An in-process stand-in for a Socrata domain, so producer and consumer behaviour can be tested, load tested
+ * and soak tested without a live domain or {@code TestConfig.properties}.
+ *
+ * It keeps datasets in memory and implements enough of SODA2 and the views API for the client to work against it:
+ * <ul>
+ *     <li>{@code /resource/{id}}: query ({@code $limit}, {@code $offset}, {@code count(*)}), JSON and CSV results with
+ *         ETags and 304s for If-None-Match, streaming upsert results, replace, truncate, row deletes and {@code expectedDataVersion} checks</li>
+ *     <li>{@code /api/views}: create, load, update and delete datasets, add columns, publish and working copies</li>
+ *     <li>{@code /api/imports2}: scan a CSV, then import, append or replace from the scanned file</li>
+ *     <li>{@code /api/geocoding}: always reports no pending geocoding</li>
+ * </ul>
+ *
+ * Long running operations can be made to answer with a 202 and a ticket, which is polled a configurable number
+ * of times before the result is returned.  Latency, random or scripted failures and a throughput limit can be
+ * injected to see how the client behaves under a slow or unreliable server.
+ */
+public class StubSodaServer implements AutoCloseable
+{
+    private static final ObjectMapper     MAPPER = ObjectMapperFactory.create();
+    private static final JsonNodeFactory  NODES = JsonNodeFactory.instance;
+    private static final Pattern          AGGREGATE = Pattern.compile("(?i)(min|max)\\((\\w+)\\)\\s+as\\s+(\\w+)");
+
+    private final HttpServer      server;
+    private final ExecutorService executor;
+    private final Random          random = new Random();
+
+    private final Map<String, Dataset>   datasets = new ConcurrentHashMap<String, Dataset>();
+    private final Map<String, byte[]>    scannedFiles = new ConcurrentHashMap<String, byte[]>();
+    private final Map<String, Ticket>    tickets = new ConcurrentHashMap<String, Ticket>();
+    private final AtomicInteger          nextId = new AtomicInteger(1);
+    private final AtomicLong             requestCount = new AtomicLong();
+    private final ConcurrentHashMap<String, AtomicLong> requestCounts = new ConcurrentHashMap<String, AtomicLong>();
+
+    private volatile long    latency = 0;
+    private volatile long    latencyJitter = 0;
+    private volatile double  errorRate = 0;
+    private volatile int     errorStatus = 500;
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private volatile int     failureStatus = 500;
+    private volatile int     asyncPolls = 0;
+    private volatile int     retryAfter = -1;
+    private volatile boolean asyncQueries = false;
+    private volatile boolean fieldHeaders = true;
+    private final Throttle   throttle = new Throttle();
+
+    /**
+     * Starts a server on a free port on the loopback interface.
+     */
+    public StubSodaServer() throws IOException
+    {
+        executor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                try {
+                    dispatch(exchange);
+                } catch (Exception e) {
+                    try {
+                        sendError(exchange, 500, "internal_error", String.valueOf(e));
+                    } catch (IOException ignored) {
+                        //The response was already started, nothing more we can do.
+                    }
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * @return the base URL of the server, to pass to {@code HttpLowLevel.instantiate}
+     */
+    public String getUrl()
+    {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return a new anonymous connection to this server
+     */
+    public HttpLowLevel connect()
+    {
+        return HttpLowLevel.instantiate(getUrl());
+    }
+
+    @Override
+    public void close()
+    {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    //
+    //  Behaviour
+    //
+
+    /**
+     * Delays every request before it is handled.
+     * @param latency milliseconds every request is delayed
+     * @param jitter a random extra delay of up to this many milliseconds
+     * @return this server
+     */
+    public StubSodaServer setLatency(long latency, long jitter)
+    {
+        this.latency = latency;
+        this.latencyJitter = jitter;
+        return this;
+    }
+
+    /**
+     * Fails a random fraction of requests.
+     * @param errorRate fraction of requests to fail, from 0 to 1
+     * @param status the status the failed requests get
+     * @return this server
+     */
+    public StubSodaServer setErrorRate(double errorRate, int status)
+    {
+        this.errorRate = errorRate;
+        this.errorStatus = status;
+        return this;
+    }
+
+    /**
+     * Fails the next requests.
+     * @param count number of requests to fail
+     * @param status the status the failed requests get
+     * @return this server
+     */
+    public StubSodaServer failNext(int count, int status)
+    {
+        this.failureStatus = status;
+        this.failuresLeft.set(count);
+        return this;
+    }
+
+    /**
+     * Limits the rate request bodies are read and response bodies are written, across all connections.
+     * @param bytesPerSecond the limit.  {@code 0} or less removes the limit.
+     * @return this server
+     */
+    public StubSodaServer setThroughputLimit(long bytesPerSecond)
+    {
+        throttle.setBytesPerSecond(bytesPerSecond);
+        return this;
+    }
+
+    /**
+     * Makes long running operations (imports, publishing and working copies) answer with a 202, which has to be
+     * polled this many times before the result is returned.
+     * @param asyncPolls number of polls that get another 202.  {@code 0} answers right away.
+     * @return this server
+     */
+    public StubSodaServer setAsyncPolls(int asyncPolls)
+    {
+        this.asyncPolls = asyncPolls;
+        return this;
+    }
+
+    /**
+     * Sets the Retry-After header sent with each 202.
+     * @param retryAfter seconds to ask the client to wait.  Less than 0 leaves the header off.
+     * @return this server
+     */
+    public StubSodaServer setRetryAfter(int retryAfter)
+    {
+        this.retryAfter = retryAfter;
+        return this;
+    }
+
+    /**
+     * Makes queries long running as well, so they answer with a 202 like imports do.
+     * @param asyncQueries whether queries answer with a 202
+     * @return this server
+     */
+    public StubSodaServer setAsyncQueries(boolean asyncQueries)
+    {
+        this.asyncQueries = asyncQueries;
+        return this;
+    }
+
+    /**
+     * Leaves the X-SODA2-Fields and X-SODA2-Types headers off query results, as some older servers do.
+     * @param fieldHeaders whether query results describe their columns in headers
+     * @return this server
+     */
+    public StubSodaServer setFieldHeaders(boolean fieldHeaders)
+    {
+        this.fieldHeaders = fieldHeaders;
+        return this;
+    }
+
+    //
+    //  State
+    //
+
+    /**
+     * Creates an empty tabular dataset.
+     * @param name name of the dataset
+     * @param rowIdentifier field name of the column used as the row identifier, or {@code null} to use {@code :id}
+     * @param columns field names of the columns in the dataset.  Columns are text unless the name is followed by
+     *                a type, as in {@code "count:number"}.
+     * @return the id of the new dataset
+     */
+    public String createDataset(String name, String rowIdentifier, String... columns)
+    {
+        final ObjectNode view = NODES.objectNode();
+        view.put("name", name);
+        view.put("viewType", "tabular");
+        final ArrayNode columnNodes = view.putArray("columns");
+        for (String column : columns) {
+            final int colon = column.indexOf(':');
+            final String fieldName = colon < 0 ? column : column.substring(0, colon);
+            final String type = colon < 0 ? "text" : column.substring(colon + 1);
+            columnNodes.add(NODES.objectNode().put("name", fieldName).put("fieldName", fieldName).put("dataTypeName", type));
+        }
+        if (rowIdentifier != null) {
+            view.putObject("metadata").put("rowIdentifier", rowIdentifier);
+        }
+        return createView(view).id;
+    }
+
+    /**
+     * @param datasetId id of the dataset
+     * @return a copy of the rows currently in the dataset, in insertion order
+     */
+    public List<ObjectNode> getRows(String datasetId)
+    {
+        final Dataset dataset = datasets.get(datasetId);
+        if (dataset == null) {
+            throw new IllegalArgumentException("No dataset " + datasetId);
+        }
+        synchronized (dataset) {
+            final List<ObjectNode> rows = new ArrayList<ObjectNode>();
+            for (ObjectNode row : dataset.rows.values()) {
+                rows.add(row.deepCopy());
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * @return the total number of requests received, including failed and polling requests
+     */
+    public long getRequestCount()
+    {
+        return requestCount.get();
+    }
+
+    /**
+     * @param method HTTP method, e.g. {@code POST}
+     * @param pathPrefix start of the request path, e.g. {@code /resource/}
+     * @return the number of requests received with that method and path prefix
+     */
+    public long getRequestCount(String method, String pathPrefix)
+    {
+        long total = 0;
+        for (Map.Entry<String, AtomicLong> entry : requestCounts.entrySet()) {
+            if (entry.getKey().startsWith(method + " " + pathPrefix)) {
+                total += entry.getValue().get();
+            }
+        }
+        return total;
+    }
+
+    //
+    //  Request handling
+    //
+
+    private void dispatch(HttpExchange exchange) throws IOException, InterruptedException
+    {
+        final String method = exchange.getRequestMethod();
+        final String path = exchange.getRequestURI().getPath();
+        requestCount.incrementAndGet();
+        countRequest(method + " " + path);
+
+        final long delay = latency + (latencyJitter > 0 ? (long) (random.nextDouble() * latencyJitter) : 0);
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+
+        if (takeFailure()) {
+            drain(requestBody(exchange));
+            sendError(exchange, failureStatus, "injected_failure", "Injected failure");
+            return;
+        }
+        if (errorRate > 0 && random.nextDouble() < errorRate) {
+            drain(requestBody(exchange));
+            sendError(exchange, errorStatus, "injected_failure", "Injected random failure");
+            return;
+        }
+
+        final List<String> segments = segments(path);
+        if (segments.size() >= 2 && "resource".equals(segments.get(0))) {
+            handleResource(exchange, method, segments);
+        } else if (segments.size() >= 2 && "api".equals(segments.get(0))) {
+            final String api = segments.get(1);
+            if ("views".equals(api)) {
+                handleViews(exchange, method, segments);
+            } else if ("imports2".equals(api)) {
+                handleImports(exchange, method);
+            } else if ("geocoding".equals(api)) {
+                sendJson(exchange, 200, NODES.objectNode().put("total", 0).put("view", 0));
+            } else if ("tickets".equals(api) && segments.size() == 3) {
+                handleTicket(exchange, segments.get(2));
+            } else {
+                sendError(exchange, 404, "not_found", "No such endpoint: " + path);
+            }
+        } else {
+            sendError(exchange, 404, "not_found", "No such endpoint: " + path);
+        }
+    }
+
+    private boolean takeFailure()
+    {
+        int left;
+        while ((left = failuresLeft.get()) > 0) {
+            if (failuresLeft.compareAndSet(left, left - 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void countRequest(String key)
+    {
+        requestCounts.putIfAbsent(key, new AtomicLong());
+        requestCounts.get(key).incrementAndGet();
+    }
+
+    private void handleResource(HttpExchange exchange, String method, List<String> segments) throws IOException
+    {
+        final String resource = segments.get(1);
+        final boolean csv = resource.endsWith(".csv") || accepts(exchange, "text/csv");
+        final Dataset dataset = datasets.get(stripExtension(resource));
+        if (dataset == null) {
+            drain(requestBody(exchange));
+            sendError(exchange, 404, "not_found", "No such dataset: " + resource);
+            return;
+        }
+
+        if (segments.size() == 3 && "DELETE".equals(method)) {
+            final boolean deleted;
+            synchronized (dataset) {
+                deleted = dataset.delete(stripExtension(segments.get(2)));
+                if (deleted) {
+                    dataset.dataVersion++;
+                }
+            }
+            if (deleted) {
+                sendJson(exchange, 200, NODES.objectNode());
+            } else {
+                sendError(exchange, 404, "not_found", "No such row: " + segments.get(2));
+            }
+        } else if ("GET".equals(method)) {
+            final Reply reply = query(dataset, queryParams(exchange), csv);
+            if (reply.headers.get("ETag").equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.getResponseHeaders().set("ETag", reply.headers.get("ETag"));
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+            } else if (asyncQueries) {
+                sendAsync(exchange, reply);
+            } else {
+                send(exchange, reply);
+            }
+        } else if ("POST".equals(method) || "PUT".equals(method)) {
+            final List<ObjectNode> rows = readRows(exchange);
+            final String expectedVersion = queryParams(exchange).get("expectedDataVersion");
+            upsert(exchange, dataset, rows, "PUT".equals(method), expectedVersion != null ? Long.valueOf(expectedVersion) : null);
+        } else {
+            sendError(exchange, 405, "method_not_allowed", method + " is not supported on " + resource);
+        }
+    }
+
+    private Reply query(Dataset dataset, Map<String, String> params, boolean csv) throws IOException
+    {
+        final List<ObjectNode> rows = new ArrayList<ObjectNode>();
+        final List<String> fields;
+        final String etag;
+        synchronized (dataset) {
+            fields = dataset.fieldNames();
+            rows.addAll(dataset.rows.values());
+            etag = "\"rv-" + dataset.dataVersion + "-" + dataset.shapeVersion + "\"";
+        }
+
+        final String select = params.get("$select");
+        if (select != null && select.toLowerCase().startsWith("count(*)")) {
+            final String[] parts = select.split("(?i)\\s+as\\s+");
+            final String alias = parts.length > 1 ? parts[1].trim() : "count";
+            final ArrayNode result = NODES.arrayNode();
+            result.add(NODES.objectNode().put(alias, Integer.toString(rows.size())));
+            final Reply reply = Reply.json(200, result);
+            reply.headers.put("ETag", etag);
+            return reply;
+        }
+
+        final Matcher aggregate = select == null ? null : AGGREGATE.matcher(select);
+        if (aggregate != null && aggregate.lookingAt()) {
+            //Only min and max are supported, and like SODA, a null result is left out of the row.
+            final ObjectNode result = NODES.objectNode();
+            aggregate.reset();
+            while (aggregate.find()) {
+                BigDecimal value = null;
+                for (ObjectNode row : rows) {
+                    final JsonNode field = row.get(aggregate.group(2));
+                    if (field != null && !field.isNull()) {
+                        final BigDecimal number = new BigDecimal(field.asText());
+                        if (value == null || ("min".equalsIgnoreCase(aggregate.group(1)) ? number.compareTo(value) < 0 : number.compareTo(value) > 0)) {
+                            value = number;
+                        }
+                    }
+                }
+                if (value != null) {
+                    result.put(aggregate.group(3), value.toPlainString());
+                }
+            }
+            final Reply reply = Reply.json(200, NODES.arrayNode().add(result));
+            reply.headers.put("ETag", etag);
+            return reply;
+        }
+
+        final int offset = params.containsKey("$offset") ? Integer.parseInt(params.get("$offset")) : 0;
+        final int limit = params.containsKey("$limit") ? Integer.parseInt(params.get("$limit")) : Integer.MAX_VALUE;
+        final boolean systemFields = select != null && (select.contains(":*") || select.contains(":id"));
+        final List<ObjectNode> page = rows.subList(Math.min(offset, rows.size()), (int) Math.min((long) offset + limit, rows.size()));
+
+        final Reply reply;
+        if (csv) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final CSVWriter writer = new CSVWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            writer.writeNext(fields.toArray(new String[fields.size()]));
+            for (ObjectNode row : page) {
+                final String[] values = new String[fields.size()];
+                for (int i = 0; i < values.length; i++) {
+                    final JsonNode value = row.get(fields.get(i));
+                    values[i] = value == null || value.isNull() ? "" : value.asText();
+                }
+                writer.writeNext(values);
+            }
+            writer.close();
+            reply = new Reply(200, "text/csv; charset=utf-8", out.toByteArray());
+        } else {
+            final ArrayNode result = NODES.arrayNode();
+            for (ObjectNode row : page) {
+                final ObjectNode copy = row.deepCopy();
+                if (!systemFields) {
+                    final Iterator<String> names = copy.fieldNames();
+                    while (names.hasNext()) {
+                        if (names.next().startsWith(":")) {
+                            names.remove();
+                        }
+                    }
+                }
+                result.add(copy);
+            }
+            reply = Reply.json(200, result);
+        }
+
+        if (fieldHeaders) {
+            reply.headers.put("X-SODA2-Fields", MAPPER.writeValueAsString(fields));
+            reply.headers.put("X-SODA2-Types", MAPPER.writeValueAsString(dataset.fieldTypes(fields)));
+        }
+        reply.headers.put("ETag", etag);
+        return reply;
+    }
+
+    /**
+     * Applies an upsert, streaming back a result row for every input row as it is applied.  If an expected data
+     * version is given and the dataset isn't at that version, nothing is applied and a 412 is returned.
+     */
+    private void upsert(HttpExchange exchange, Dataset dataset, List<ObjectNode> rows, boolean replace, Long expectedVersion) throws IOException
+    {
+        final long dataVersion;
+        synchronized (dataset) {
+            if (expectedVersion != null && expectedVersion != dataset.dataVersion) {
+                sendError(exchange, 412, "data_version_mismatch",
+                          "Expected data version " + expectedVersion + ", but the dataset is at " + dataset.dataVersion);
+                return;
+            }
+            if (replace) {
+                dataset.rows.clear();
+            }
+            dataVersion = ++dataset.dataVersion;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.getResponseHeaders().set("X-SODA2-Truth-Version", Long.toString(dataVersion));
+        exchange.getResponseHeaders().set("X-SODA2-Truth-Shape-Version", Long.toString(dataset.shapeVersion));
+        exchange.sendResponseHeaders(200, 0);
+
+        final JsonGenerator generator = MAPPER.getFactory().createGenerator(responseBody(exchange));
+        generator.writeStartArray();
+        for (ObjectNode row : rows) {
+            final ObjectNode result;
+            synchronized (dataset) {
+                result = dataset.apply(row, dataVersion);
+            }
+            generator.writeTree(result);
+        }
+        generator.writeEndArray();
+        generator.close();
+    }
+
+    private void handleViews(HttpExchange exchange, String method, List<String> segments) throws IOException
+    {
+        if (segments.size() == 2) {
+            if ("POST".equals(method)) {
+                final Dataset dataset = createView((ObjectNode) MAPPER.readTree(requestBody(exchange)));
+                sendJson(exchange, 200, dataset.view);
+            } else {
+                sendError(exchange, 405, "method_not_allowed", method + " is not supported on /api/views");
+            }
+            return;
+        }
+
+        final Dataset dataset = datasets.get(stripExtension(segments.get(2)));
+        if (dataset == null) {
+            drain(requestBody(exchange));
+            sendError(exchange, 404, "not_found", "No such view: " + segments.get(2));
+            return;
+        }
+
+        final String action = segments.size() > 3 ? stripExtension(segments.get(3)) : null;
+        if (action == null) {
+            if ("GET".equals(method)) {
+                sendJson(exchange, 200, dataset.view);
+            } else if ("PUT".equals(method)) {
+                final Map<String, String> params = queryParams(exchange);
+                final byte[] body = readFully(requestBody(exchange));
+                if (params.containsKey("method")) {
+                    //Permission changes and the like, which the stub does not model.
+                    sendJson(exchange, 200, NODES.objectNode());
+                    return;
+                }
+                synchronized (dataset) {
+                    final ObjectNode update = (ObjectNode) MAPPER.readTree(body);
+                    update.remove("id");
+                    dataset.view.setAll(update);
+                }
+                sendJson(exchange, 200, dataset.view);
+            } else if ("DELETE".equals(method)) {
+                datasets.remove(dataset.id);
+                sendJson(exchange, 200, NODES.objectNode());
+            } else {
+                sendError(exchange, 405, "method_not_allowed", method + " is not supported on a view");
+            }
+        } else if ("columns".equals(action)) {
+            handleColumns(exchange, method, dataset, segments);
+        } else if ("publication".equals(action) && "POST".equals(method)) {
+            final Map<String, String> params = queryParams(exchange);
+            drain(requestBody(exchange));
+            final Dataset result;
+            if ("copy".equals(params.get("method"))) {
+                result = workingCopy(dataset);
+            } else {
+                synchronized (dataset) {
+                    dataset.view.put("publicationStage", "published");
+                }
+                result = dataset;
+            }
+            sendAsync(exchange, Reply.json(200, result.view));
+        } else {
+            drain(requestBody(exchange));
+            sendError(exchange, 404, "not_found", "No such endpoint: " + exchange.getRequestURI().getPath());
+        }
+    }
+
+    private void handleColumns(HttpExchange exchange, String method, Dataset dataset, List<String> segments) throws IOException
+    {
+        if ("GET".equals(method)) {
+            sendJson(exchange, 200, dataset.view.get("columns"));
+        } else if ("POST".equals(method) && segments.size() == 4) {
+            final ObjectNode column = (ObjectNode) MAPPER.readTree(requestBody(exchange));
+            synchronized (dataset) {
+                dataset.addColumn(column);
+                dataset.shapeVersion++;
+            }
+            sendJson(exchange, 200, column);
+        } else if ("DELETE".equals(method) && segments.size() == 5) {
+            final int columnId = Integer.parseInt(stripExtension(segments.get(4)));
+            synchronized (dataset) {
+                final Iterator<JsonNode> columns = dataset.view.withArray("columns").elements();
+                while (columns.hasNext()) {
+                    if (columns.next().path("id").asInt() == columnId) {
+                        columns.remove();
+                    }
+                }
+                dataset.shapeVersion++;
+            }
+            sendJson(exchange, 200, NODES.objectNode());
+        } else {
+            drain(requestBody(exchange));
+            sendError(exchange, 405, "method_not_allowed", method + " is not supported on columns");
+        }
+    }
+
+    private void handleImports(HttpExchange exchange, String method) throws IOException
+    {
+        final Map<String, String> params = queryParams(exchange);
+        if ("GET".equals(method) && params.containsKey("ticket")) {
+            handleTicket(exchange, params.get("ticket"));
+            return;
+        }
+        if (!"POST".equals(method)) {
+            sendError(exchange, 405, "method_not_allowed", method + " is not supported on /api/imports2");
+            return;
+        }
+
+        if ("scan".equals(params.get("method"))) {
+            final byte[] file = readFully(requestBody(exchange));
+            final String fileId = "file-" + nextId.getAndIncrement();
+            scannedFiles.put(fileId, file);
+
+            final ObjectNode summary = NODES.objectNode();
+            summary.put("summary", "Scanned by the stub server");
+            summary.put("headers", 1);
+            summary.putArray("locations");
+            final ArrayNode columns = summary.putArray("columns");
+            final String[] header = new CSVReader(new StringReader(new String(file, StandardCharsets.UTF_8))).readNext();
+            if (header != null) {
+                for (String name : header) {
+                    columns.add(NODES.objectNode().put("name", name).put("suggestion", "text").put("processed", 0));
+                }
+            }
+
+            final ObjectNode result = NODES.objectNode();
+            result.put("fileId", fileId);
+            result.set("summary", summary);
+            sendJson(exchange, 200, result);
+            return;
+        }
+
+        final Map<String, String> form = formParams(new String(readFully(requestBody(exchange)), StandardCharsets.UTF_8));
+        final byte[] file = scannedFiles.get(form.get("fileId"));
+        if (file == null) {
+            sendError(exchange, 400, "bad_request", "No scanned file " + form.get("fileId"));
+            return;
+        }
+        final int skip = form.containsKey("skip") ? Integer.parseInt(form.get("skip")) : 1;
+
+        final Dataset dataset;
+        if (form.containsKey("viewUid")) {
+            dataset = datasets.get(form.get("viewUid"));
+            if (dataset == null) {
+                sendError(exchange, 404, "not_found", "No such view: " + form.get("viewUid"));
+                return;
+            }
+        } else {
+            final ObjectNode view = NODES.objectNode();
+            view.put("viewType", "tabular");
+            view.put("name", form.get("name"));
+            final ArrayNode columns = view.putArray("columns");
+            if (form.containsKey("blueprint")) {
+                final JsonNode blueprint = MAPPER.readTree(form.get("blueprint"));
+                view.put("name", blueprint.path("name").asText(form.get("name")));
+                view.put("description", blueprint.path("description").asText(null));
+                for (JsonNode column : blueprint.path("columns")) {
+                    columns.add(NODES.objectNode().put("name", column.path("name").asText())
+                                                 .put("dataTypeName", column.path("datatype").asText("text")));
+                }
+            }
+            dataset = createView(view);
+        }
+
+        final CSVReader reader = new CSVReader(new InputStreamReader(new ByteArrayInputStream(file), StandardCharsets.UTF_8), ',', '"', skip);
+        final List<String> fields;
+        synchronized (dataset) {
+            if ("replace".equals(form.get("method"))) {
+                dataset.rows.clear();
+            }
+            fields = dataset.fieldNames();
+            final long dataVersion = ++dataset.dataVersion;
+            String[] line;
+            while ((line = reader.readNext()) != null) {
+                final ObjectNode row = NODES.objectNode();
+                for (int i = 0; i < line.length && i < fields.size(); i++) {
+                    row.put(fields.get(i), line[i]);
+                }
+                dataset.apply(row, dataVersion);
+            }
+        }
+        reader.close();
+
+        sendAsync(exchange, Reply.json(200, dataset.view));
+    }
+
+    private void handleTicket(HttpExchange exchange, String id) throws IOException
+    {
+        final Ticket ticket = tickets.get(id);
+        if (ticket == null) {
+            sendError(exchange, 404, "not_found", "No such ticket: " + id);
+        } else if (ticket.pollsLeft.getAndDecrement() > 0) {
+            sendAccepted(exchange, id);
+        } else {
+            tickets.remove(id);
+            send(exchange, ticket.reply);
+        }
+    }
+
+    //
+    //  Datasets
+    //
+
+    private Dataset createView(ObjectNode view)
+    {
+        final Dataset dataset = new Dataset(newId(), view);
+        view.put("id", dataset.id);
+        if (!view.has("viewType")) {
+            view.put("viewType", "tabular");
+        }
+        if (!view.has("publicationStage")) {
+            view.put("publicationStage", "unpublished");
+        }
+        final List<JsonNode> columns = new ArrayList<JsonNode>();
+        for (JsonNode column : view.path("columns")) {
+            columns.add(column);
+        }
+        view.putArray("columns");
+        for (JsonNode column : columns) {
+            dataset.addColumn((ObjectNode) column);
+        }
+        datasets.put(dataset.id, dataset);
+        return dataset;
+    }
+
+    private Dataset workingCopy(Dataset original)
+    {
+        synchronized (original) {
+            final ObjectNode view = original.view.deepCopy();
+            view.remove("id");
+            view.put("publicationStage", "unpublished");
+            view.remove("columns");
+            final ArrayNode columns = view.putArray("columns");
+            for (JsonNode column : original.view.path("columns")) {
+                final ObjectNode copy = (ObjectNode) column.deepCopy();
+                copy.remove("id");
+                columns.add(copy);
+            }
+            final Dataset copy = createView(view);
+            for (Map.Entry<String, ObjectNode> row : original.rows.entrySet()) {
+                copy.rows.put(row.getKey(), row.getValue().deepCopy());
+            }
+            copy.nextRowId = original.nextRowId;
+            return copy;
+        }
+    }
+
+    private String newId()
+    {
+        return String.format("stub-%04d", nextId.getAndIncrement());
+    }
+
+    /**
+     * A dataset and its rows.  Synchronize on the dataset to read or change it.
+     */
+    private static final class Dataset
+    {
+        final String                          id;
+        final ObjectNode                      view;
+        final LinkedHashMap<String, ObjectNode> rows = new LinkedHashMap<String, ObjectNode>();
+        long dataVersion = 0;
+        long shapeVersion = 1;
+        int  nextRowId = 1;
+        int  nextColumnId = 1;
+
+        Dataset(String id, ObjectNode view)
+        {
+            this.id = id;
+            this.view = view;
+        }
+
+        void addColumn(ObjectNode column)
+        {
+            final ArrayNode columns = view.withArray("columns");
+            column.put("id", nextColumnId++);
+            column.put("position", columns.size() + 1);
+            if (!column.hasNonNull("fieldName")) {
+                column.put("fieldName", column.path("name").asText().toLowerCase().replaceAll("[^a-z0-9]+", "_"));
+            }
+            if (!column.hasNonNull("dataTypeName")) {
+                column.put("dataTypeName", "text");
+            }
+            columns.add(column);
+        }
+
+        String rowIdentifier()
+        {
+            return view.path("metadata").path("rowIdentifier").asText(null);
+        }
+
+        List<String> fieldNames()
+        {
+            final Set<String> fields = new LinkedHashSet<String>();
+            for (JsonNode column : view.path("columns")) {
+                fields.add(column.path("fieldName").asText());
+            }
+            if (fields.isEmpty()) {
+                for (ObjectNode row : rows.values()) {
+                    final Iterator<String> names = row.fieldNames();
+                    while (names.hasNext()) {
+                        final String name = names.next();
+                        if (!name.startsWith(":")) {
+                            fields.add(name);
+                        }
+                    }
+                }
+            }
+            return new ArrayList<String>(fields);
+        }
+
+        List<String> fieldTypes(List<String> fields)
+        {
+            final Map<String, String> types = new HashMap<String, String>();
+            for (JsonNode column : view.path("columns")) {
+                types.put(column.path("fieldName").asText(), column.path("dataTypeName").asText("text"));
+            }
+            final List<String> result = new ArrayList<String>();
+            for (String field : fields) {
+                result.add(types.containsKey(field) ? types.get(field) : "text");
+            }
+            return result;
+        }
+
+        /**
+         * Applies a single upserted row.
+         * @return the result row, in the streaming upsert result format
+         */
+        ObjectNode apply(ObjectNode row, long dataVersion)
+        {
+            final String identifier = rowIdentifier();
+            final JsonNode idNode = row.get(identifier != null ? identifier : ":id");
+            final String key = idNode == null || idNode.isNull() ? null : idNode.asText();
+            final ObjectNode result = NODES.objectNode();
+
+            if (row.path(":deleted").asBoolean(false)) {
+                if (key != null && delete(key)) {
+                    result.put("typ", "delete");
+                    result.put("id", key);
+                } else {
+                    result.put("typ", "error");
+                    result.put("id", key);
+                    result.put("err", "no such row");
+                }
+                return result;
+            }
+
+            if (key == null && identifier != null) {
+                result.put("typ", "error");
+                result.putNull("id");
+                result.put("err", "no value for the row identifier " + identifier);
+                return result;
+            }
+
+            final ObjectNode existing = key == null ? null : rows.get(key);
+            if (existing != null) {
+                existing.setAll(row);
+                existing.put(":version", "rv-" + dataVersion);
+                result.put("typ", "update");
+                result.put("id", key);
+            } else {
+                final ObjectNode stored = row.deepCopy();
+                final String systemId = "row-" + nextRowId++;
+                final String rowKey = key != null ? key : systemId;
+                stored.put(":id", systemId);
+                stored.put(":version", "rv-" + dataVersion);
+                rows.put(rowKey, stored);
+                result.put("typ", "insert");
+                result.put("id", rowKey);
+            }
+            result.put("ver", "rv-" + dataVersion);
+            return result;
+        }
+
+        boolean delete(String key)
+        {
+            if (rows.remove(key) != null) {
+                return true;
+            }
+            //Rows may also be deleted by their system id.
+            final Iterator<ObjectNode> values = rows.values().iterator();
+            while (values.hasNext()) {
+                if (key.equals(values.next().path(":id").asText(null))) {
+                    values.remove();
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The result of a long running operation, handed out once the ticket has been polled enough.
+     */
+    private static final class Ticket
+    {
+        final AtomicInteger pollsLeft;
+        final Reply         reply;
+
+        Ticket(int polls, Reply reply)
+        {
+            this.pollsLeft = new AtomicInteger(polls);
+            this.reply = reply;
+        }
+    }
+
+    private static final class Reply
+    {
+        final int                 status;
+        final String              contentType;
+        final byte[]              body;
+        final Map<String, String> headers = new LinkedHashMap<String, String>();
+
+        Reply(int status, String contentType, byte[] body)
+        {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        static Reply json(int status, JsonNode node) throws IOException
+        {
+            return new Reply(status, "application/json; charset=utf-8", MAPPER.writeValueAsBytes(node));
+        }
+    }
+
+    //
+    //  Helpers
+    //
+
+    private void sendAsync(HttpExchange exchange, Reply reply) throws IOException
+    {
+        if (asyncPolls <= 0) {
+            send(exchange, reply);
+            return;
+        }
+
+        final String id = "ticket-" + nextId.getAndIncrement();
+        tickets.put(id, new Ticket(asyncPolls - 1, reply));
+        sendAccepted(exchange, id);
+    }
+
+    private void sendAccepted(HttpExchange exchange, String ticket) throws IOException
+    {
+        exchange.getResponseHeaders().set("Location", getUrl() + "/api/tickets/" + ticket);
+        if (retryAfter >= 0) {
+            exchange.getResponseHeaders().set("Retry-After", Integer.toString(retryAfter));
+        }
+        send(exchange, Reply.json(202, NODES.objectNode().put("ticket", ticket)));
+    }
+
+    private void sendJson(HttpExchange exchange, int status, JsonNode node) throws IOException
+    {
+        send(exchange, Reply.json(status, node));
+    }
+
+    private void sendError(HttpExchange exchange, int status, String code, String message) throws IOException
+    {
+        final ObjectNode error = NODES.objectNode();
+        error.put("errorCode", code);
+        error.put("message", message);
+        error.put("error", true);
+        sendJson(exchange, status, error);
+    }
+
+    private void send(HttpExchange exchange, Reply reply) throws IOException
+    {
+        exchange.getResponseHeaders().set("Content-Type", reply.contentType);
+        for (Map.Entry<String, String> header : reply.headers.entrySet()) {
+            exchange.getResponseHeaders().set(header.getKey(), header.getValue());
+        }
+        exchange.sendResponseHeaders(reply.status, reply.body.length == 0 ? -1 : reply.body.length);
+        if (reply.body.length > 0) {
+            final OutputStream os = responseBody(exchange);
+            os.write(reply.body);
+            os.close();
+        }
+    }
+
+    private List<ObjectNode> readRows(HttpExchange exchange) throws IOException
+    {
+        final String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        final InputStream body = requestBody(exchange);
+        final List<ObjectNode> rows = new ArrayList<ObjectNode>();
+
+        if (contentType != null && contentType.startsWith("text/csv")) {
+            final CSVReader reader = new CSVReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+            final String[] header = reader.readNext();
+            String[] line;
+            while (header != null && (line = reader.readNext()) != null) {
+                if (line.length == 1 && line[0].isEmpty()) {
+                    continue;
+                }
+                final ObjectNode row = NODES.objectNode();
+                for (int i = 0; i < header.length && i < line.length; i++) {
+                    row.put(header[i], line[i]);
+                }
+                rows.add(row);
+            }
+            reader.close();
+        } else {
+            final JsonNode array = MAPPER.readTree(body);
+            if (array != null) {
+                for (JsonNode row : array) {
+                    rows.add((ObjectNode) row);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private InputStream requestBody(HttpExchange exchange) throws IOException
+    {
+        InputStream body = new ThrottledInputStream(exchange.getRequestBody(), throttle);
+        if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            body = new GZIPInputStream(body);
+        }
+        return body;
+    }
+
+    private OutputStream responseBody(HttpExchange exchange)
+    {
+        return new ThrottledOutputStream(exchange.getResponseBody(), throttle);
+    }
+
+    private static boolean accepts(HttpExchange exchange, String mediaType)
+    {
+        final String accept = exchange.getRequestHeaders().getFirst("Accept");
+        return accept != null && accept.contains(mediaType);
+    }
+
+    private static List<String> segments(String path)
+    {
+        final List<String> segments = new ArrayList<String>();
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(segment);
+            }
+        }
+        return segments;
+    }
+
+    private static String stripExtension(String segment)
+    {
+        final int dot = segment.lastIndexOf('.');
+        return dot > 0 ? segment.substring(0, dot) : segment;
+    }
+
+    private static Map<String, String> queryParams(HttpExchange exchange) throws IOException
+    {
+        return formParams(exchange.getRequestURI().getRawQuery());
+    }
+
+    private static Map<String, String> formParams(String encoded) throws IOException
+    {
+        final Map<String, String> params = new HashMap<String, String>();
+        if (encoded == null) {
+            return params;
+        }
+        for (String pair : encoded.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            final int eq = pair.indexOf('=');
+            final String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8");
+            final String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+            params.put(name, value);
+        }
+        return params;
+    }
+
+    private static byte[] readFully(InputStream is) throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buf = new byte[8192];
+        int read;
+        while ((read = is.read(buf)) != -1) {
+            out.write(buf, 0, read);
+        }
+        is.close();
+        return out.toByteArray();
+    }
+
+    private static void drain(InputStream is) throws IOException
+    {
+        readFully(is);
+    }
+
+    /**
+     * A token bucket shared by every connection, so the limit applies to the server as a whole.
+     */
+    private static final class Throttle
+    {
+        private long bytesPerSecond = 0;
+        private long nextFree = System.nanoTime();
+
+        synchronized void setBytesPerSecond(long bytesPerSecond)
+        {
+            this.bytesPerSecond = bytesPerSecond;
+            this.nextFree = System.nanoTime();
+        }
+
+        void acquire(int bytes) throws InterruptedIOException
+        {
+            final long waitUntil;
+            synchronized (this) {
+                if (bytesPerSecond <= 0) {
+                    return;
+                }
+                final long now = System.nanoTime();
+                nextFree = Math.max(nextFree, now) + bytes * 1000000000L / bytesPerSecond;
+                waitUntil = nextFree;
+            }
+
+            long remaining;
+            while ((remaining = waitUntil - System.nanoTime()) > 0) {
+                try {
+                    Thread.sleep(remaining / 1000000, (int) (remaining % 1000000));
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+    }
+
+    private static final class ThrottledInputStream extends FilterInputStream
+    {
+        private final Throttle throttle;
+
+        ThrottledInputStream(InputStream in, Throttle throttle)
+        {
+            super(in);
+            this.throttle = throttle;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            final int b = super.read();
+            if (b != -1) {
+                throttle.acquire(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            final int read = super.read(b, off, Math.min(len, 8192));
+            if (read > 0) {
+                throttle.acquire(read);
+            }
+            return read;
+        }
+    }
+
+    private static final class ThrottledOutputStream extends FilterOutputStream
+    {
+        private final Throttle throttle;
+
+        ThrottledOutputStream(OutputStream out, Throttle throttle)
+        {
+            super(out);
+            this.throttle = throttle;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            throttle.acquire(1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            while (len > 0) {
+                final int chunk = Math.min(len, 8192);
+                throttle.acquire(chunk);
+                out.write(b, off, chunk);
+                off += chunk;
+                len -= chunk;
+            }
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.socrata;
+
+import com.socrata.api.ExponentialBackoffPollingPolicy;
+import com.socrata.api.HttpLowLevel;
+import com.socrata.api.ParallelScanConfig;
+import com.socrata.api.ParallelUpserter;
+import com.socrata.api.PartitionedScan;
+import com.socrata.api.Soda2Consumer;
+import com.socrata.api.Soda2Producer;
+import com.socrata.api.SodaDdl;
+import com.socrata.api.SodaImporter;
+import com.socrata.exceptions.DoesNotExistException;
+import com.socrata.exceptions.SodaError;
+import com.socrata.model.UpsertResult;
+import com.socrata.model.importer.DatasetInfo;
+import com.socrata.model.soql.SoqlQuery;
+import com.socrata.utils.streams.ConcurrentPipe;
+import junit.framework.TestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests the client against the StubSodaServer, so they run without a live domain.
+ */
+public class StubSodaServerTest
+{
+    private static final File CRIMES_HEADER2_CSV = Resources.file("/testCrimesHeader2.csv");
+
+    private StubSodaServer server;
+    private HttpLowLevel   connection;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        server = new StubSodaServer();
+        connection = server.connect();
+        connection.setRetryTime(10);
+        connection.setPollingPolicy(new ExponentialBackoffPollingPolicy(10, 50, 2.0, 0, 0));
+    }
+
+    @After
+    public void tearDown()
+    {
+        server.close();
+    }
+
+    @Test
+    public void testUpsertAndQuery() throws SodaError, InterruptedException
+    {
+        final String id = server.createDataset("people", "id", "id", "name");
+        final Soda2Producer producer = new Soda2Producer(connection);
+
+        UpsertResult result = producer.upsert(id, rows("1", "alice", "2", "bob"));
+        TestCase.assertEquals(2, result.getRowsCreated());
+        TestCase.assertEquals(0, result.errorCount());
+
+        result = producer.upsert(id, rows("2", "robert", "3", "carol"));
+        TestCase.assertEquals(1, result.getRowsCreated());
+        TestCase.assertEquals(1, result.getRowsUpdated());
+
+        final Soda2Consumer consumer = new Soda2Consumer(connection);
+        final List<Object> all = consumer.query(id, SoqlQuery.SELECT_ALL, Soda2Consumer.HASH_RETURN_TYPE);
+        TestCase.assertEquals(3, all.size());
+        TestCase.assertEquals("robert", ((Map) all.get(1)).get("name"));
+
+        producer.delete(id, "1");
+        TestCase.assertEquals(2, server.getRows(id).size());
+    }
+
+    @Test
+    public void testUpsertAndReplaceCsvFiles() throws SodaError, InterruptedException, IOException
+    {
+        final String id = server.createDataset("people", "id", "id", "name");
+        final Soda2Producer producer = new Soda2Producer(connection);
+        final File csv = File.createTempFile("people", ".csv");
+        try {
+            Files.write(csv.toPath(), "id,name\n1,alice\n2,\"bob\nsmith\"\n".getBytes(StandardCharsets.UTF_8));
+            TestCase.assertEquals(2, producer.upsertCsv(id, csv).getRowsCreated());
+            TestCase.assertEquals("bob\nsmith", server.getRows(id).get(1).get("name").asText());
+
+            Files.write(csv.toPath(), "id,name\n3,carol\n".getBytes(StandardCharsets.UTF_8));
+            TestCase.assertEquals(1, producer.replaceCsv(id, csv).getRowsCreated());
+            TestCase.assertEquals(1, server.getRows(id).size());
+        } finally {
+            csv.delete();
+        }
+    }
+
+    @Test
+    public void testMissingDataset() throws InterruptedException
+    {
+        try {
+            new Soda2Consumer(connection).query("nope-nope", SoqlQuery.SELECT_ALL, Soda2Consumer.HASH_RETURN_TYPE);
+            TestCase.fail("Expected the query to fail");
+        } catch (DoesNotExistException e) {
+            //Expected
+        } catch (SodaError e) {
+            TestCase.fail("Expected a DoesNotExistException, got " + e);
+        }
+    }
+
+    @Test
+    public void testImportAndPublishWithTickets() throws SodaError, InterruptedException, IOException
+    {
+        server.setAsyncPolls(3);
+
+        final SodaImporter importer = new SodaImporter(connection);
+        final DatasetInfo created = importer.createViewFromCsv("crimes", "crimes", CRIMES_HEADER2_CSV, "ID");
+        TestCase.assertEquals("unpublished", created.getPublicationStage());
+        TestCase.assertEquals(3, server.getRows(created.getId()).size());
+
+        final DatasetInfo published = importer.publish(created.getId());
+        TestCase.assertEquals("published", published.getPublicationStage());
+        TestCase.assertTrue(server.getRequestCount("GET", "/api/tickets/") >= 6);
+    }
+
+    @Test
+    public void testParallelUpsertRetriesInjectedFailures() throws SodaError, InterruptedException
+    {
+        final String id = server.createDataset("numbers", "n", "n");
+        server.failNext(2, 503);
+
+        final StringBuilder csv = new StringBuilder("n\n");
+        for (int i = 0; i < 100; i++) {
+            csv.append(i).append('\n');
+        }
+
+        final UpsertResult result = new ParallelUpserter(new Soda2Producer(connection))
+                .setChunkRows(10)
+                .setRetryDelay(1)
+                .upsertCsv(id, new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)));
+
+        TestCase.assertEquals(100, result.getRowsCreated());
+        TestCase.assertEquals(100, server.getRows(id).size());
+        TestCase.assertEquals(12, server.getRequestCount("POST", "/resource/"));
+    }
+
+    @Test
+    public void testUpsertStreamFromWriterThread() throws Exception
+    {
+        final String id = server.createDataset("piped", "n", "n");
+        final ConcurrentPipe pipe = new ConcurrentPipe(1024);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final Thread writer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try (OutputStream out = pipe.getOutputStream()) {
+                    out.write("n\n".getBytes(StandardCharsets.UTF_8));
+                    for (int i = 0; i < 5000; i++) {
+                        out.write((i + "\n").getBytes(StandardCharsets.UTF_8));
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                    pipe.abort(t);
+                }
+            }
+        });
+        writer.start();
+
+        final UpsertResult result = new Soda2Producer(connection).upsertStream(id, HttpLowLevel.CSV_TYPE, pipe.getInputStream());
+        writer.join();
+        TestCase.assertNull(failure.get());
+        TestCase.assertEquals(5000, result.getRowsCreated());
+        TestCase.assertEquals(5000, server.getRows(id).size());
+    }
+
+    @Test
+    public void testIdenticalConcurrentQueriesAreCoalesced() throws Exception
+    {
+        final String id = server.createDataset("people", "id", "id", "name");
+        final Soda2Producer producer = new Soda2Producer(connection);
+        producer.upsert(id, rows("1", "alice", "2", "bob"));
+        server.setLatency(300, 0);
+
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<List<Object>>> queries = new ArrayList<Future<List<Object>>>();
+            final List<Future<DatasetInfo>> loads = new ArrayList<Future<DatasetInfo>>();
+            for (int i = 0; i < threads / 2; i++) {
+                queries.add(executor.submit(new Callable<List<Object>>()
+                {
+                    @Override
+                    public List<Object> call() throws Exception
+                    {
+                        start.await();
+                        return producer.query(id, SoqlQuery.SELECT_ALL, Soda2Consumer.HASH_RETURN_TYPE);
+                    }
+                }));
+                loads.add(executor.submit(new Callable<DatasetInfo>()
+                {
+                    @Override
+                    public DatasetInfo call() throws Exception
+                    {
+                        start.await();
+                        return new SodaDdl(connection).loadDatasetInfo(id);
+                    }
+                }));
+            }
+            start.countDown();
+
+            final List<Object> first = queries.get(0).get();
+            for (Future<List<Object>> query : queries) {
+                TestCase.assertEquals(first, query.get());
+            }
+            //Each caller decodes its own copy, so one caller changing its result can't affect another's.
+            TestCase.assertNotSame(first, queries.get(1).get());
+            for (Future<DatasetInfo> load : loads) {
+                TestCase.assertEquals(id, load.get().getId());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final long queryRequests = server.getRequestCount("GET", "/resource/");
+        final long loadRequests = server.getRequestCount("GET", "/api/views/");
+        TestCase.assertTrue(queryRequests >= 1 && queryRequests < threads / 2);
+        TestCase.assertTrue(loadRequests >= 1 && loadRequests < threads / 2);
+        TestCase.assertTrue(connection.getCoalescedQueryCount() > 0);
+    }
+
+    @Test
+    public void testParallelScanWithAllNullPartitionColumn() throws SodaError, InterruptedException
+    {
+        final String id = server.createDataset("people", "id", "id", "name", "age");
+        new Soda2Producer(connection).upsert(id, rows("1", "alice", "2", "bob", "3", "carol"));
+
+        //With no ages to split on, the rows are still scanned, rather than being dropped.
+        final PartitionedScan<Object> scan = new Soda2Consumer(connection).parallelScan(id, SoqlQuery.SELECT_ALL, Soda2Consumer.HASH_RETURN_TYPE,
+                                                                                        new ParallelScanConfig().setPartitionColumn("age"));
+        int count = 0;
+        try {
+            while (scan.hasNext()) {
+                scan.next();
+                count++;
+            }
+        } finally {
+            scan.close();
+        }
+        TestCase.assertEquals(3, count);
+        //One probe for the range of ages, then one page of rows.
+        TestCase.assertEquals(2, server.getRequestCount("GET", "/resource/"));
+    }
+
+    @Test
+    public void testErrorResponses() throws InterruptedException
+    {
+        final String id = server.createDataset("errors", null, "a");
+        server.failNext(1, 400);
+        try {
+            new Soda2Producer(connection).upsert(id, rows("1", "x"));
+            TestCase.fail("Expected the upsert to fail");
+        } catch (SodaError e) {
+            TestCase.assertEquals(400, e.status);
+        }
+    }
+
+    @Test
+    public void testThroughputLimit() throws SodaError, InterruptedException
+    {
+        final String id = server.createDataset("slow", "id", "id", "name");
+        server.setThroughputLimit(20000);
+
+        final long start = System.currentTimeMillis();
+        final List<Map<String, String>> rows = new ArrayList<Map<String, String>>();
+        for (int i = 0; i < 200; i++) {
+            rows.addAll(rows(Integer.toString(i), "name-" + i));
+        }
+        new Soda2Producer(connection).upsert(id, rows);
+
+        //The request body alone is over 5KB, so it takes at least a quarter second at 20KB/s.
+        TestCase.assertTrue(System.currentTimeMillis() - start >= 250);
+    }
+
+    private static List<Map<String, String>> rows(String... idsAndNames)
+    {
+        final List<Map<String, String>> rows = new ArrayList<Map<String, String>>();
+        for (int i = 0; i < idsAndNames.length; i += 2) {
+            final Map<String, String> row = new HashMap<String, String>();
+            row.put("id", idsAndNames[i]);
+            row.put("name", idsAndNames[i + 1]);
+            rows.add(row);
+        }
+        return rows;
+    }
+}
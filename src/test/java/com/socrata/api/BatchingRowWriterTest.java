@@ -0,0 +1,238 @@
+package com.socrata.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.socrata.exceptions.SodaError;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests for the BatchingRowWriter
+ */
+public class BatchingRowWriterTest
+{
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void testBatchesByRowCount() throws Exception
+    {
+        final FakeWriter writer = new FakeWriter(new BatchingRowWriterConfig().setMaxBatchRows(3).setMaxInFlightBatches(1).setLingerTime(0));
+        final List<CompletableFuture<Soda2Producer.NewUpsertRow>> results = new ArrayList<CompletableFuture<Soda2Producer.NewUpsertRow>>();
+        for (int i = 0; i < 7; i++) {
+            results.add(writer.add(row(i)));
+        }
+        writer.close();
+
+        TestCase.assertEquals(sizes(3, 3, 1), writer.batchSizes);
+        for (int i = 0; i < 7; i++) {
+            final Soda2Producer.NewUpsertRow result = results.get(i).get();
+            TestCase.assertEquals("insert", result.typ);
+            TestCase.assertEquals(i, result.id.asInt());
+        }
+    }
+
+    @Test
+    public void testBatchesByBytes() throws Exception
+    {
+        final FakeWriter writer = new FakeWriter(new BatchingRowWriterConfig().setMaxBatchBytes(15).setMaxInFlightBatches(1).setLingerTime(0));
+        for (int i = 0; i < 4; i++) {
+            writer.add(row(i));
+        }
+        writer.flush();
+        TestCase.assertEquals(sizes(2, 2), writer.batchSizes);
+        writer.close();
+    }
+
+    @Test
+    public void testLingerSendsPartialBatch() throws Exception
+    {
+        final FakeWriter writer = new FakeWriter(new BatchingRowWriterConfig().setLingerTime(10));
+        try {
+            final CompletableFuture<Soda2Producer.NewUpsertRow> result = writer.add(row(1));
+            TestCase.assertEquals(1, result.get(5, TimeUnit.SECONDS).id.asInt());
+            TestCase.assertEquals(sizes(1), writer.batchSizes);
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void testBackpressure() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final FakeWriter writer = new FakeWriter(new BatchingRowWriterConfig().setMaxBatchRows(1).setMaxInFlightBatches(2).setLingerTime(0))
+        {
+            @Override
+            ParallelUpserter.ChunkResult sendBatch(byte[] body) throws SodaError, InterruptedException
+            {
+                release.await();
+                return super.sendBatch(body);
+            }
+        };
+
+        writer.add(row(1));
+        writer.add(row(2));
+
+        final AtomicInteger added = new AtomicInteger();
+        final Thread adder = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try {
+                    writer.add(row(3));
+                    added.incrementAndGet();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        adder.start();
+        adder.join(200);
+        TestCase.assertEquals(0, added.get());
+
+        release.countDown();
+        adder.join(5000);
+        TestCase.assertEquals(1, added.get());
+        writer.close();
+        TestCase.assertEquals(3, writer.batchSizes.size());
+    }
+
+    @Test
+    public void testInterruptedSendFailsItsRows() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final FakeWriter writer = new FakeWriter(new BatchingRowWriterConfig().setMaxBatchRows(2).setMaxInFlightBatches(1).setLingerTime(0))
+        {
+            @Override
+            ParallelUpserter.ChunkResult sendBatch(byte[] body) throws SodaError, InterruptedException
+            {
+                release.await();
+                return super.sendBatch(body);
+            }
+        };
+
+        writer.add(row(1));
+        writer.add(row(2));
+
+        final AtomicReference<CompletableFuture<Soda2Producer.NewUpsertRow>> waiting = new AtomicReference<CompletableFuture<Soda2Producer.NewUpsertRow>>();
+        final AtomicReference<Throwable> thrown = new AtomicReference<Throwable>();
+        final Thread adder = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try {
+                    waiting.set(writer.add(row(3)));
+                    writer.add(row(4));
+                } catch (Throwable t) {
+                    thrown.set(t);
+                }
+            }
+        };
+        adder.start();
+        adder.join(200);
+        adder.interrupt();
+        adder.join(5000);
+        TestCase.assertTrue(thrown.get() instanceof InterruptedException);
+
+        //The interrupted batch was never sent, but its rows still hear about it.
+        try {
+            waiting.get().get(5, TimeUnit.SECONDS);
+            TestCase.fail("Expected the row to fail");
+        } catch (ExecutionException e) {
+            TestCase.assertTrue(e.getCause() instanceof InterruptedException);
+        }
+
+        release.countDown();
+        writer.close();
+        TestCase.assertEquals(sizes(2), writer.batchSizes);
+    }
+
+    @Test
+    public void testFailedBatchFailsItsRows() throws Exception
+    {
+        final FakeWriter writer = new FakeWriter(new BatchingRowWriterConfig().setLingerTime(0))
+        {
+            @Override
+            ParallelUpserter.ChunkResult sendBatch(byte[] body) throws SodaError, InterruptedException
+            {
+                throw new SodaError("nope");
+            }
+        };
+
+        final CompletableFuture<Soda2Producer.NewUpsertRow> result = writer.add(row(1));
+        writer.close();
+        try {
+            result.get();
+            TestCase.fail("Expected the row to fail");
+        } catch (ExecutionException e) {
+            TestCase.assertTrue(e.getCause() instanceof SodaError);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAddAfterClose() throws Exception
+    {
+        final FakeWriter writer = new FakeWriter(new BatchingRowWriterConfig());
+        writer.close();
+        writer.add(row(1));
+    }
+
+    private static Map<String, Object> row(int id)
+    {
+        final Map<String, Object> row = new HashMap<String, Object>();
+        row.put("id", id);
+        return row;
+    }
+
+    private static List<Integer> sizes(Integer... sizes)
+    {
+        final List<Integer> list = new ArrayList<Integer>();
+        Collections.addAll(list, sizes);
+        return list;
+    }
+
+    /**
+     * Answers each batch locally, inserting every row.
+     */
+    private static class FakeWriter extends BatchingRowWriter<Map<String, Object>>
+    {
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+
+        FakeWriter(BatchingRowWriterConfig config)
+        {
+            super(null, "test", MAPPER.writer(), config);
+        }
+
+        @Override
+        ParallelUpserter.ChunkResult sendBatch(byte[] body) throws SodaError, InterruptedException
+        {
+            try {
+                final JsonNode rows = MAPPER.readTree(body);
+                batchSizes.add(rows.size());
+
+                final ParallelUpserter.ChunkResult result = new ParallelUpserter.ChunkResult(null, 0);
+                for (JsonNode row : rows) {
+                    result.insert(new Soda2Producer.NewUpsertRow("insert", row.get("id"), null, null));
+                }
+                return result;
+            } catch (IOException e) {
+                throw new SodaError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.socrata.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.socrata.StubSodaServer;
+import com.socrata.model.soql.SoqlQuery;
+import com.socrata.utils.ObjectMapperFactory;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the ColumnarFile, and the columnar export on Soda2Consumer.
+ */
+public class ColumnarFileTest
+{
+    private static final ObjectMapper MAPPER = ObjectMapperFactory.create();
+
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        final StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 20000; i++) {
+            json.append(i == 0 ? "" : ",")
+                .append("{\"id\":\"").append(i).append("\"")
+                .append(i % 3 == 0 ? "" : ", \"ratio\":\"" + (i / 4.0) + "\"")
+                .append(", \"flag\":").append(i % 5 == 0)
+                .append(", \"name\":").append(i % 7 == 0 ? "null" : "\"n\u00e9" + (i % 10) + "\"")
+                .append("}");
+        }
+        json.append("]");
+
+        final ColumnarResult original = ColumnarResult.decode(new ByteArrayInputStream(json.toString().getBytes(StandardCharsets.UTF_8)), MAPPER.getFactory(),
+                                                              Arrays.asList("id", "ratio", "flag", "name"), Arrays.asList("number", "double", "checkbox", "text"), null);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ColumnarFile.Writer writer = new ColumnarFile.Writer(out)) {
+            writer.writeBatch(original);
+            writer.writeBatch(original);
+            TestCase.assertEquals(40000, writer.getRowCount());
+        }
+
+        try (ColumnarFile.Reader reader = new ColumnarFile.Reader(new ByteArrayInputStream(out.toByteArray()))) {
+            for (int b = 0; b < 2; b++) {
+                final ColumnarResult batch = reader.readBatch();
+                TestCase.assertEquals(original.getRowCount(), batch.getRowCount());
+                TestCase.assertEquals(original.getColumnNames(), batch.getColumnNames());
+                for (ColumnarResult.Column column : original.getColumns()) {
+                    final ColumnarResult.Column read = batch.getColumn(column.getName());
+                    TestCase.assertEquals(column.getKind(), read.getKind());
+                    TestCase.assertEquals(column.getDataTypeName(), read.getDataTypeName());
+                    for (int row = 0; row < batch.getRowCount(); row++) {
+                        TestCase.assertEquals(column.getObject(row), read.getObject(row));
+                    }
+                }
+            }
+            TestCase.assertNull(reader.readBatch());
+        }
+    }
+
+    @Test
+    public void testNotAColumnarFile() throws IOException
+    {
+        try {
+            new ColumnarFile.Reader(new ByteArrayInputStream("id,name\n".getBytes(StandardCharsets.UTF_8)));
+            TestCase.fail("Expected the file to be rejected");
+        } catch (IOException e) {
+            //Expected
+        }
+    }
+
+    @Test
+    public void testConsumerExport() throws Exception
+    {
+        try (StubSodaServer server = new StubSodaServer()) {
+            final HttpLowLevel connection = server.connect();
+            final String id = server.createDataset("people", "id", "id", "name", "age:number");
+            final Soda2Producer producer = new Soda2Producer(connection);
+            final List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+            for (int i = 0; i < 5; i++) {
+                final Map<String, Object> row = new HashMap<String, Object>();
+                row.put("id", Integer.toString(i));
+                row.put("name", "person" + i);
+                row.put("age", Integer.toString(20 + i));
+                rows.add(row);
+            }
+            producer.upsert(id, rows);
+
+            final File file = File.createTempFile("export", ".sodacol");
+            try {
+                TestCase.assertEquals(5, producer.exportColumnar(id, SoqlQuery.SELECT_ALL, file, 2));
+
+                final List<Long> ages = new ArrayList<Long>();
+                int batches = 0;
+                try (ColumnarFile.Reader reader = new ColumnarFile.Reader(new BufferedInputStream(new FileInputStream(file)))) {
+                    ColumnarResult batch;
+                    while ((batch = reader.readBatch()) != null) {
+                        batches++;
+                        final ColumnarResult.LongColumn age = (ColumnarResult.LongColumn) batch.getColumn("age");
+                        for (int row = 0; row < batch.getRowCount(); row++) {
+                            ages.add(age.get(row));
+                        }
+                    }
+                }
+                TestCase.assertEquals(3, batches);
+                TestCase.assertEquals(Arrays.asList(20L, 21L, 22L, 23L, 24L), ages);
+
+                //Without the column headers, the dataset's columns are loaded once for the whole export.
+                server.setFieldHeaders(false);
+                final long loads = server.getRequestCount("GET", "/api/views/");
+                TestCase.assertEquals(5, producer.exportColumnar(id, SoqlQuery.SELECT_ALL, file, 2));
+                TestCase.assertEquals(1, server.getRequestCount("GET", "/api/views/") - loads);
+            } finally {
+                file.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.socrata.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.socrata.StubSodaServer;
+import com.socrata.model.importer.Dataset;
+import com.socrata.model.soql.SoqlQuery;
+import com.socrata.utils.ObjectMapperFactory;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the ColumnarResult, and the columnar query methods on Soda2Consumer.
+ */
+public class ColumnarResultTest
+{
+    private static final ObjectMapper MAPPER = ObjectMapperFactory.create();
+
+    @Test
+    public void testDecodeColumns() throws IOException
+    {
+        final String json = "[" +
+                "{\"name\":\"alice\", \"count\":\"12\", \"ratio\":\"0.5\", \"done\":true, \"where\":{\"latitude\":\"1\"}}," +
+                "{\"name\":\"bob\", \"count\":\"7\", \"extra\":\"x\"}," +
+                "{\"name\":\"alice\", \"count\":null, \"ratio\":2, \"done\":\"false\"}" +
+                "]";
+        final ColumnarResult result = decode(json, Arrays.asList("name", "count", "ratio", "done", "where"),
+                                             Arrays.asList("text", "number", "double", "checkbox", "location"));
+
+        TestCase.assertEquals(3, result.getRowCount());
+        TestCase.assertEquals(Arrays.asList("name", "count", "ratio", "done", "where", "extra"), result.getColumnNames());
+
+        final ColumnarResult.StringColumn names = (ColumnarResult.StringColumn) result.getColumn("name");
+        TestCase.assertEquals(2, names.getDictionary().length);
+        TestCase.assertEquals(names.getCode(0), names.getCode(2));
+        TestCase.assertEquals("bob", names.get(1));
+
+        final ColumnarResult.LongColumn counts = (ColumnarResult.LongColumn) result.getColumn("count");
+        TestCase.assertEquals(12, counts.get(0));
+        TestCase.assertEquals(7, counts.get(1));
+        TestCase.assertTrue(counts.isNull(2));
+        TestCase.assertEquals(1, counts.getNullCount());
+
+        final ColumnarResult.DoubleColumn ratios = (ColumnarResult.DoubleColumn) result.getColumn("ratio");
+        TestCase.assertEquals(0.5, ratios.get(0));
+        TestCase.assertTrue(ratios.isNull(1));
+        TestCase.assertEquals(2.0, ratios.get(2));
+
+        final ColumnarResult.BooleanColumn done = (ColumnarResult.BooleanColumn) result.getColumn("done");
+        TestCase.assertEquals(Boolean.TRUE, done.getObject(0));
+        TestCase.assertNull(done.getObject(1));
+        TestCase.assertEquals(Boolean.FALSE, done.getObject(2));
+
+        TestCase.assertEquals("{\"latitude\":\"1\"}", result.getColumn("where").getObject(0));
+
+        final ColumnarResult.Column extra = result.getColumn("extra");
+        TestCase.assertEquals(ColumnarResult.Kind.STRING, extra.getKind());
+        TestCase.assertNull(extra.getDataTypeName());
+        TestCase.assertTrue(extra.isNull(0));
+        TestCase.assertEquals("x", extra.getObject(1));
+        TestCase.assertTrue(extra.isNull(2));
+    }
+
+    @Test
+    public void testNumbersMoveToDoubles() throws IOException
+    {
+        final StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 3000; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"n\":\"").append(i == 2500 ? "2500.25" : Integer.toString(i)).append("\"}");
+        }
+        json.append("]");
+
+        final ColumnarResult result = decode(json.toString(), Arrays.asList("n"), Arrays.asList("number"));
+        final ColumnarResult.DoubleColumn numbers = (ColumnarResult.DoubleColumn) result.getColumn("n");
+        TestCase.assertEquals(3000, numbers.getValues().length);
+        TestCase.assertEquals(1234.0, numbers.get(1234));
+        TestCase.assertEquals(2500.25, numbers.get(2500));
+        TestCase.assertEquals(0, numbers.getNullCount());
+    }
+
+    @Test
+    public void testConsumerColumnarQueries() throws Exception
+    {
+        try (StubSodaServer server = new StubSodaServer()) {
+            final HttpLowLevel connection = server.connect();
+            final String id = server.createDataset("people", "id", "id", "name", "age:number", "member:checkbox");
+            final Soda2Producer producer = new Soda2Producer(connection);
+            producer.upsert(id, Arrays.asList(person("1", "alice", "31", true), person("2", "bob", null, false)));
+
+            final ColumnarResult fromHeaders = producer.queryColumnar(id, SoqlQuery.SELECT_ALL);
+            TestCase.assertEquals(2, fromHeaders.getRowCount());
+            TestCase.assertEquals(ColumnarResult.Kind.LONG, fromHeaders.getColumn("age").getKind());
+            TestCase.assertEquals(31, ((ColumnarResult.LongColumn) fromHeaders.getColumn("age")).get(0));
+            TestCase.assertTrue(fromHeaders.getColumn("age").isNull(1));
+            TestCase.assertEquals(Boolean.TRUE, fromHeaders.getColumn("member").getObject(0));
+
+            final Dataset dataset = (Dataset) new SodaDdl(connection).loadDatasetInfo(id);
+            final ColumnarResult fromSchema = producer.queryColumnar(id, SoqlQuery.SELECT_ALL, dataset.getColumns());
+            TestCase.assertEquals("number", fromSchema.getColumn("age").getDataTypeName());
+            TestCase.assertEquals("bob", fromSchema.getColumn("name").getObject(1));
+        }
+    }
+
+    private static ColumnarResult decode(String json, List<String> fields, List<String> types) throws IOException
+    {
+        return ColumnarResult.decode(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), MAPPER.getFactory(), fields, types, null);
+    }
+
+    private static Map<String, Object> person(String id, String name, String age, boolean member)
+    {
+        final Map<String, Object> row = new HashMap<String, Object>();
+        row.put("id", id);
+        row.put("name", name);
+        if (age != null) {
+            row.put("age", age);
+        }
+        row.put("member", member);
+        return row;
+    }
+}
@@ -0,0 +1,56 @@
+package com.socrata.api;
+
+import junit.framework.TestCase;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.Test;
+
+/**
+ * Tests for the ConnectionPoolConfig
+ */
+public class ConnectionPoolConfigTest
+{
+    @Test
+    public void testCreateConnectionManager()
+    {
+        final ConnectionPoolConfig config = new ConnectionPoolConfig()
+                .setMaxTotal(100)
+                .setMaxPerRoute(40)
+                .setValidateAfterInactivity(500);
+
+        final PoolingHttpClientConnectionManager manager = config.createConnectionManager();
+        try {
+            TestCase.assertEquals(100, manager.getMaxTotal());
+            TestCase.assertEquals(40, manager.getDefaultMaxPerRoute());
+            TestCase.assertEquals(500, manager.getValidateAfterInactivity());
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    public void testPoolStats()
+    {
+        final HttpLowLevel httpLowLevel = HttpLowLevel.instantiate("http://localhost", new ConnectionPoolConfig().setMaxTotal(12));
+        try {
+            final ConnectionPoolStats stats = httpLowLevel.getConnectionPoolStats();
+            TestCase.assertNotNull(stats);
+            TestCase.assertEquals(12, stats.getMax());
+            TestCase.assertEquals(0, stats.getLeased());
+            TestCase.assertEquals(0, stats.getPending());
+        } finally {
+            httpLowLevel.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxPerRoute()
+    {
+        new ConnectionPoolConfig().setMaxPerRoute(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxAsyncThreads()
+    {
+        new ConnectionPoolConfig().setMaxAsyncThreads(0);
+    }
+}
@@ -0,0 +1,133 @@
+package com.socrata.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.socrata.StubSodaServer;
+import com.socrata.model.soql.SoqlQuery;
+import com.socrata.utils.ObjectMapperFactory;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Tests for the CsvRowIterator, and the CSV query methods on Soda2Consumer.
+ */
+public class CsvRowIteratorTest
+{
+    private static final ObjectMapper MAPPER = ObjectMapperFactory.create();
+
+    @Test
+    public void testRawRows() throws IOException
+    {
+        final CountingCloseable resource = new CountingCloseable();
+        final CsvRowIterator<String[]> rows = new CsvRowIterator<String[]>(
+                toStream("name,note\nalice,\"says \"\"hi\"\", then\nleaves\"\nbob,C:\\temp\n"), resource, null, CsvRowIterator.rawDecoder());
+
+        TestCase.assertEquals(Arrays.asList("name", "note"), rows.getColumnNames());
+        TestCase.assertNull(rows.getColumnTypes());
+        TestCase.assertTrue(Arrays.equals(new String[] { "alice", "says \"hi\", then\nleaves" }, rows.next()));
+        TestCase.assertTrue(Arrays.equals(new String[] { "bob", "C:\\temp" }, rows.next()));
+        TestCase.assertFalse(rows.hasNext());
+        TestCase.assertEquals(1, resource.closes);
+    }
+
+    @Test
+    public void testTypedRows() throws IOException
+    {
+        final CountingCloseable resource = new CountingCloseable();
+        final CsvRowIterator<Map> rows = new CsvRowIterator<Map>(
+                toStream("name,count,done\nalice,12.5,true\nbob,,false\n"), resource,
+                Arrays.asList("text", "number", "checkbox"), CsvRowIterator.<Map>objectDecoder(MAPPER.readerFor(Map.class)));
+
+        final List<Map> all = rows.asStream().collect(Collectors.toList());
+        TestCase.assertEquals(2, all.size());
+        TestCase.assertEquals(new BigDecimal("12.5"), new BigDecimal(all.get(0).get("count").toString()));
+        TestCase.assertEquals(Boolean.TRUE, all.get(0).get("done"));
+        TestCase.assertFalse(all.get(1).containsKey("count"));
+        TestCase.assertEquals(Boolean.FALSE, all.get(1).get("done"));
+        TestCase.assertEquals(1, resource.closes);
+    }
+
+    @Test
+    public void testConsumerCsvQueries() throws Exception
+    {
+        try (StubSodaServer server = new StubSodaServer()) {
+            final HttpLowLevel connection = server.connect();
+            final String id = server.createDataset("people", "id", "id", "name", "age:number");
+            final Soda2Producer producer = new Soda2Producer(connection);
+            producer.upsert(id, Arrays.asList(person("1", "alice", "31"), person("2", "bob", "42")));
+
+            try (CsvRowIterator<Person> people = producer.streamCsv(id, SoqlQuery.SELECT_ALL, Person.class)) {
+                TestCase.assertEquals(Arrays.asList("text", "text", "number"), people.getColumnTypes());
+                final Person alice = people.next();
+                TestCase.assertEquals("alice", alice.name);
+                TestCase.assertEquals(31, alice.age);
+                TestCase.assertEquals(42, people.next().age);
+                TestCase.assertFalse(people.hasNext());
+            }
+
+            try (CsvRowIterator<String[]> raw = producer.streamCsv(id, SoqlQuery.SELECT_ALL)) {
+                TestCase.assertEquals(Arrays.asList("id", "name", "age"), raw.getColumnNames());
+                TestCase.assertEquals("bob", raw.asStream().skip(1).findFirst().get()[1]);
+            }
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final long written = producer.exportCsv(id, SoqlQuery.SELECT_ALL, out);
+            TestCase.assertEquals(out.size(), written);
+            TestCase.assertTrue(out.toString("UTF-8").startsWith("\"id\",\"name\",\"age\"\n"));
+
+            final File file = File.createTempFile("export", ".csv");
+            try {
+                TestCase.assertEquals(written, producer.exportCsv(id, SoqlQuery.SELECT_ALL, file));
+                TestCase.assertTrue(Arrays.equals(out.toByteArray(), Files.readAllBytes(file.toPath())));
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    private static Map<String, String> person(String id, String name, String age)
+    {
+        final Map<String, String> row = new HashMap<String, String>();
+        row.put("id", id);
+        row.put("name", name);
+        row.put("age", age);
+        return row;
+    }
+
+    private static InputStream toStream(String csv)
+    {
+        return new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static class Person
+    {
+        public String id;
+        public String name;
+        public int    age;
+    }
+
+    private static final class CountingCloseable implements Closeable
+    {
+        int closes = 0;
+
+        @Override
+        public void close()
+        {
+            closes++;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.socrata.api;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * Tests for the ExponentialBackoffPollingPolicy
+ */
+public class ExponentialBackoffPollingPolicyTest
+{
+    @Test
+    public void testBackoffWithoutJitter()
+    {
+        final PollingPolicy policy = new ExponentialBackoffPollingPolicy(100, 1000, 2.0, 0.0, 0);
+
+        TestCase.assertEquals(100, policy.nextPollDelay(1, 0, 0));
+        TestCase.assertEquals(200, policy.nextPollDelay(2, 0, 0));
+        TestCase.assertEquals(400, policy.nextPollDelay(3, 0, 0));
+        TestCase.assertEquals(800, policy.nextPollDelay(4, 0, 0));
+        TestCase.assertEquals(1000, policy.nextPollDelay(5, 0, 0));
+        TestCase.assertEquals(1000, policy.nextPollDelay(50, 0, 0));
+    }
+
+    @Test
+    public void testJitterStaysInRange()
+    {
+        final PollingPolicy policy = new ExponentialBackoffPollingPolicy(1000, 1000, 2.0, 0.5, 0);
+
+        for (int i=0; i<100; i++) {
+            final long delay = policy.nextPollDelay(1, 0, 0);
+            TestCase.assertTrue(delay >= 500 && delay <= 1000);
+        }
+    }
+
+    @Test
+    public void testHonorsRetryAfter()
+    {
+        final PollingPolicy policy = new ExponentialBackoffPollingPolicy(100, 10000, 2.0, 0.0, 0);
+
+        final long delay = policy.nextPollDelay(1, System.currentTimeMillis() + 5000, 0);
+        TestCase.assertTrue(delay > 4000 && delay <= 5000);
+
+        //Retry-After times in the past mean poll right away, and ones past the maximum delay are still honored.
+        TestCase.assertEquals(0, policy.nextPollDelay(1, System.currentTimeMillis() - 5000, 0));
+        final long farOff = policy.nextPollDelay(1, System.currentTimeMillis() + 60000, 0);
+        TestCase.assertTrue(farOff > 59000 && farOff <= 60000);
+
+        //Only the deadline cuts a Retry-After short.
+        final PollingPolicy withDeadline = new ExponentialBackoffPollingPolicy(100, 10000, 2.0, 0.0, 30000);
+        TestCase.assertEquals(20000, withDeadline.nextPollDelay(1, System.currentTimeMillis() + 60000, 10000));
+    }
+
+    @Test
+    public void testDeadline()
+    {
+        final PollingPolicy policy = new ExponentialBackoffPollingPolicy(100, 1000, 2.0, 0.0, 5000);
+
+        TestCase.assertEquals(100, policy.nextPollDelay(1, 0, 0));
+        TestCase.assertEquals(50, policy.nextPollDelay(1, 0, 4950));
+        TestCase.assertTrue(policy.nextPollDelay(1, 0, 5000) < 0);
+    }
+}
@@ -0,0 +1,122 @@
+package com.socrata.api;
+
+import com.socrata.StubSodaServer;
+import com.socrata.exceptions.DoesNotExistException;
+import com.socrata.exceptions.LongRunningQueryException;
+import com.socrata.exceptions.SodaError;
+import junit.framework.TestCase;
+import org.glassfish.jersey.client.ClientProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the async request API of HttpLowLevel, run against the StubSodaServer.
+ */
+public class HttpLowLevelAsyncTest
+{
+    private StubSodaServer server;
+    private HttpLowLevel   connection;
+    private String         id;
+
+    @Before
+    public void setUp() throws IOException, SodaError, InterruptedException
+    {
+        server = new StubSodaServer();
+        connection = HttpLowLevel.instantiate(server.getUrl(), new ConnectionPoolConfig().setMaxAsyncThreads(2));
+        connection.setPollingPolicy(new ExponentialBackoffPollingPolicy(10, 50, 2.0, 0, 0));
+        id = server.createDataset("people", "id", "id", "name");
+
+        final Map<String, String> row = new HashMap<String, String>();
+        row.put("id", "1");
+        row.put("name", "alice");
+        new Soda2Producer(connection).upsert(id, Collections.singletonList(row));
+    }
+
+    @After
+    public void tearDown()
+    {
+        connection.close();
+        server.close();
+    }
+
+    @Test
+    public void testQueryRawAsync() throws Exception
+    {
+        final Response response = connection.queryRawAsync(resourceUri(id), HttpLowLevel.JSON_TYPE).get(10, TimeUnit.SECONDS);
+        try {
+            TestCase.assertEquals(200, response.getStatus());
+            TestCase.assertEquals(1, response.readEntity(HttpLowLevel.MAP_OBJECT_TYPE).size());
+        } finally {
+            response.close();
+        }
+    }
+
+    @Test
+    public void testErrorsFailTheFuture() throws Exception
+    {
+        try {
+            connection.queryRawAsync(resourceUri("nope-nope"), HttpLowLevel.JSON_TYPE).get(10, TimeUnit.SECONDS);
+            TestCase.fail("Expected the query to fail");
+        } catch (ExecutionException e) {
+            TestCase.assertTrue(e.getCause() instanceof DoesNotExistException);
+        }
+    }
+
+    @Test
+    public void testLongRunningQueryIsPolled() throws Exception
+    {
+        server.setAsyncQueries(true).setAsyncPolls(3);
+
+        final LongRunningQueryException longRunning;
+        try {
+            connection.queryRawAsync(resourceUri(id), HttpLowLevel.JSON_TYPE).get(10, TimeUnit.SECONDS);
+            TestCase.fail("Expected the query to be long running");
+            return;
+        } catch (ExecutionException e) {
+            TestCase.assertTrue(e.getCause() instanceof LongRunningQueryException);
+            longRunning = (LongRunningQueryException) e.getCause();
+        }
+
+        final List<Object> rows = connection.getAsyncResultsAsync(longRunning.location, HttpLowLevel.JSON_TYPE, 10, 10,
+                                                                  HttpLowLevel.MAP_OBJECT_TYPE, null).get(10, TimeUnit.SECONDS);
+        TestCase.assertEquals(1, rows.size());
+        TestCase.assertTrue(server.getRequestCount("GET", "/api/tickets/") >= 2);
+    }
+
+    @Test
+    public void testRequestsShareABoundedPool() throws Exception
+    {
+        TestCase.assertEquals(2, connection.getClient().getConfiguration().getProperty(ClientProperties.ASYNC_THREADPOOL_SIZE));
+
+        //With two threads, six slow requests go out two at a time.
+        server.setLatency(200, 0);
+        final long start = System.currentTimeMillis();
+        final List<CompletableFuture<Response>> responses = new ArrayList<CompletableFuture<Response>>();
+        for (int i = 0; i < 6; i++) {
+            responses.add(connection.queryRawAsync(resourceUri(id), HttpLowLevel.JSON_TYPE));
+        }
+        for (CompletableFuture<Response> response : responses) {
+            TestCase.assertEquals(200, response.get(10, TimeUnit.SECONDS).getStatus());
+            response.get().close();
+        }
+        TestCase.assertTrue(System.currentTimeMillis() - start >= 550);
+    }
+
+    private URI resourceUri(String resourceId)
+    {
+        return connection.uriBuilder().path(Soda2Base.SODA_BASE_PATH).path(resourceId).build();
+    }
+}
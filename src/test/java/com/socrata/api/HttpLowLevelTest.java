@@ -0,0 +1,126 @@
+package com.socrata.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.socrata.model.requests.SodaRequest;
+import com.socrata.utils.ObjectMapperFactory;
+import junit.framework.TestCase;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Tests for the parts of HttpLowLevel that don't need a server.
+ */
+public class HttpLowLevelTest
+{
+    @Test
+    public void testGzipJson() throws Exception
+    {
+        final ObjectMapper mapper = ObjectMapperFactory.create();
+        final List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < 1000; i++) {
+            final Map<String, Object> row = new HashMap<String, Object>();
+            row.put("id", i);
+            row.put("name", "row " + i);
+            rows.add(row);
+        }
+
+        final AtomicBoolean closed = new AtomicBoolean();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream()
+        {
+            @Override
+            public void close()
+            {
+                closed.set(true);
+            }
+        };
+        HttpLowLevel.gzipJson(mapper, rows).write(out);
+        TestCase.assertFalse("The entity stream belongs to Jersey, so it must be left open", closed.get());
+
+        final JsonNode result = mapper.readTree(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())));
+        TestCase.assertEquals(1000, result.size());
+        TestCase.assertEquals(999, result.get(999).get("id").asInt());
+        TestCase.assertEquals("row 5", result.get(5).get("name").asText());
+    }
+
+    @Test
+    public void testParallelGzip() throws Exception
+    {
+        final ObjectMapper mapper = ObjectMapperFactory.create();
+        final StringBuilder csv = new StringBuilder("id,name\n");
+        for (int i = 0; i < 20000; i++) {
+            csv.append(i).append(",row ").append(i).append('\n');
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HttpLowLevel.parallelGzip(mapper, new ByteArrayInputStream(csv.toString().getBytes("UTF-8"))).write(out);
+        TestCase.assertEquals(csv.toString(), IOUtils.toString(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())), "UTF-8"));
+
+        out = new ByteArrayOutputStream();
+        HttpLowLevel.parallelGzip(mapper, Collections.singletonList(Collections.singletonMap("id", 1))).write(out);
+        TestCase.assertEquals(1, mapper.readTree(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))).get(0).get("id").asInt());
+    }
+
+    @Test
+    public void testRerunRequestsRunOffTheScheduler() throws Exception
+    {
+        final HttpLowLevel connection = HttpLowLevel.instantiate("http://localhost");
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("test-scheduler-%d").build());
+        try {
+            connection.setAsyncScheduler(scheduler);
+            final AtomicReference<String> thread = new AtomicReference<String>();
+            final SodaRequest<String> request = new SodaRequest<String>("test", null)
+            {
+                @Override
+                public Response issueRequest()
+                {
+                    thread.set(Thread.currentThread().getName());
+                    return Response.ok().build();
+                }
+            };
+
+            final Response response = connection.getAsyncResultsAsync(null, HttpLowLevel.JSON_TYPE, 0, 1, request).get(10, TimeUnit.SECONDS);
+            TestCase.assertEquals(200, response.getStatus());
+            TestCase.assertTrue(thread.get().startsWith("soda-async-request-"));
+        } finally {
+            scheduler.shutdownNow();
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testRetryTimeSetsTheDefaultInitialDelay()
+    {
+        final HttpLowLevel connection = HttpLowLevel.instantiate("http://localhost");
+        try {
+            connection.setRetryTime(30000);
+            final ExponentialBackoffPollingPolicy derived = (ExponentialBackoffPollingPolicy) connection.getPollingPolicy();
+            TestCase.assertEquals(30000, derived.getInitialDelay());
+            TestCase.assertEquals(30000, derived.getMaxDelay());
+
+            final PollingPolicy custom = new ExponentialBackoffPollingPolicy(10, 50, 2.0, 0, 0);
+            connection.setPollingPolicy(custom);
+            connection.setRetryTime(100);
+            TestCase.assertSame(custom, connection.getPollingPolicy());
+        } finally {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.socrata.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.socrata.exceptions.SodaError;
+import com.socrata.model.UpsertError;
+import com.socrata.model.UpsertResult;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the ParallelUpserter and the RowChunker it uses.
+ */
+public class ParallelUpserterTest
+{
+    @Test
+    public void testCsvChunksRepeatHeader() throws IOException
+    {
+        final String csv = "id,name\n1,a\n2,\"multi\nline\"\n3,c\n4,d\n5,e";
+        final RowChunker chunker = new RowChunker.Csv(stream(csv), 2, Integer.MAX_VALUE);
+
+        RowChunker.Chunk chunk = chunker.next();
+        TestCase.assertEquals("id,name\n1,a\n2,\"multi\nline\"\n", string(chunk));
+        TestCase.assertEquals(0, chunk.firstRow);
+        TestCase.assertEquals(2, chunk.rowCount);
+
+        chunk = chunker.next();
+        TestCase.assertEquals("id,name\n3,c\n4,d\n", string(chunk));
+        TestCase.assertEquals(2, chunk.firstRow);
+
+        chunk = chunker.next();
+        TestCase.assertEquals("id,name\n5,e", string(chunk));
+        TestCase.assertEquals(4, chunk.firstRow);
+        TestCase.assertEquals(1, chunk.rowCount);
+
+        TestCase.assertNull(chunker.next());
+    }
+
+    @Test
+    public void testCsvChunksByBytes() throws IOException
+    {
+        final RowChunker chunker = new RowChunker.Csv(stream("id\n11\n22\n33\n"), 100, 4);
+        TestCase.assertEquals("id\n11\n22\n", string(chunker.next()));
+        TestCase.assertEquals("id\n33\n", string(chunker.next()));
+        TestCase.assertNull(chunker.next());
+    }
+
+    @Test
+    public void testCsvRowCrossingReadBuffer() throws IOException
+    {
+        final StringBuilder csv = new StringBuilder("id\n");
+        for (int i = 0; i < 2000; i++) {
+            csv.append(String.format("%099d", i)).append('\n');
+        }
+
+        //The limit is hit part way through a row that crosses the end of the 64KB read buffer.
+        final RowChunker chunker = new RowChunker.Csv(stream(csv.toString()), Integer.MAX_VALUE, 65508);
+        long rows = 0;
+        RowChunker.Chunk chunk;
+        while ((chunk = chunker.next()) != null) {
+            final String[] lines = string(chunk).split("\n", -1);
+            TestCase.assertEquals("id", lines[0]);
+            TestCase.assertEquals("", lines[lines.length - 1]);
+            for (int i = 1; i < lines.length - 1; i++) {
+                TestCase.assertEquals(String.format("%099d", rows++), lines[i]);
+            }
+            TestCase.assertEquals(rows, chunk.firstRow + chunk.rowCount);
+        }
+        TestCase.assertEquals(2000, rows);
+    }
+
+    @Test
+    public void testJsonChunks() throws IOException
+    {
+        final RowChunker chunker = new RowChunker.Json(new ObjectMapper().getFactory(), stream("[{\"a\":1},{\"a\":[2,3]},{\"a\":\"x\"}]"), 2, Integer.MAX_VALUE);
+        TestCase.assertEquals("[{\"a\":1},{\"a\":[2,3]}]", string(chunker.next()));
+        final RowChunker.Chunk last = chunker.next();
+        TestCase.assertEquals("[{\"a\":\"x\"}]", string(last));
+        TestCase.assertEquals(2, last.firstRow);
+        TestCase.assertNull(chunker.next());
+    }
+
+    @Test
+    public void testErrorIndexesAreGlobal() throws Exception
+    {
+        final StringBuilder csv = new StringBuilder("id,value\n");
+        for (int i = 0; i < 100; i++) {
+            csv.append(i).append(',').append(i % 7 == 0 ? "bad" : "good").append('\n');
+        }
+
+        final FakeUpserter upserter = new FakeUpserter(0);
+        upserter.setChunkRows(9).setParallelism(3);
+        final UpsertResult result = upserter.upsertCsv("test", stream(csv.toString()));
+
+        final List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < 100; i += 7) {
+            expected.add(i);
+        }
+        final List<Integer> actual = new ArrayList<Integer>();
+        for (UpsertError error : result.getErrors()) {
+            actual.add(error.getIndex());
+            TestCase.assertEquals(new TextNode(Integer.toString(error.getIndex())), error.getPrimaryKey());
+        }
+
+        TestCase.assertEquals(expected, actual);
+        TestCase.assertEquals(100 - expected.size(), result.getRowsCreated());
+    }
+
+    @Test
+    public void testRetriesServerErrors() throws Exception
+    {
+        final FakeUpserter upserter = new FakeUpserter(2);
+        upserter.setChunkRows(1).setRetryDelay(0);
+        final UpsertResult result = upserter.upsertCsv("test", stream("id,value\n1,good\n2,good\n"));
+        TestCase.assertEquals(2, result.getRowsCreated());
+        TestCase.assertEquals(6, upserter.attempts.get());
+    }
+
+    @Test
+    public void testGivesUpAfterMaxRetries() throws Exception
+    {
+        final FakeUpserter upserter = new FakeUpserter(5);
+        upserter.setMaxRetries(2).setRetryDelay(0);
+        try {
+            upserter.upsertCsv("test", stream("id,value\n1,good\n"));
+            TestCase.fail("Expected the upsert to fail");
+        } catch (SodaError e) {
+            TestCase.assertEquals(503, e.status);
+            TestCase.assertEquals(3, upserter.attempts.get());
+        }
+    }
+
+    @Test
+    public void testOldStyleResultsAreRebuilt() throws Exception
+    {
+        final ParallelUpserter.ChunkResult chunk = new ParallelUpserter.ChunkResult(null, 0);
+        chunk.deserializeSimple(new ObjectMapper().getFactory().createParser(
+                "{\"rows_created\":2,\"rows_updated\":1,\"rows_deleted\":0,\"errors\":[{\"error\":\"oops\",\"input_index\":1}]}"));
+
+        final List<Soda2Producer.NewUpsertRow> rows = chunk.rows();
+        TestCase.assertEquals(4, rows.size());
+        TestCase.assertEquals("insert", rows.get(0).typ);
+        TestCase.assertEquals("error", rows.get(1).typ);
+        TestCase.assertEquals("oops", rows.get(1).err);
+        TestCase.assertEquals("insert", rows.get(2).typ);
+        TestCase.assertEquals("update", rows.get(3).typ);
+    }
+
+    private static ByteArrayInputStream stream(String s)
+    {
+        return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String string(RowChunker.Chunk chunk)
+    {
+        return new String(chunk.bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Answers each chunk locally: rows with a value of "bad" are errors, everything else is an insert.  Each
+     * chunk fails with a 503 the first {@code failures} times it is sent.
+     */
+    private static class FakeUpserter extends ParallelUpserter
+    {
+        final AtomicInteger attempts = new AtomicInteger();
+        final int failures;
+        final List<Long> failed = Collections.synchronizedList(new ArrayList<Long>());
+
+        FakeUpserter(int failures)
+        {
+            super(null);
+            this.failures = failures;
+        }
+
+        @Override
+        ChunkResult sendChunk(String resourceId, MediaType mediaType, RowChunker.Chunk chunk) throws SodaError, InterruptedException
+        {
+            attempts.incrementAndGet();
+            if (Collections.frequency(failed, chunk.firstRow) < failures) {
+                failed.add(chunk.firstRow);
+                final SodaError error = new SodaError("unavailable");
+                error.setStatus(503);
+                throw error;
+            }
+
+            //Finish chunks out of order, to make sure they are merged back in input order.
+            Thread.sleep((chunk.firstRow * 7) % 5);
+
+            final ChunkResult result = new ChunkResult(1L, 1);
+            final String[] lines = string(chunk).split("\n");
+            for (int i = 1; i < lines.length; i++) {
+                final String[] fields = lines[i].split(",");
+                if ("bad".equals(fields[1])) {
+                    result.error(new Soda2Producer.NewUpsertRow("error", new TextNode(fields[0]), null, "bad row"));
+                } else {
+                    result.insert(new Soda2Producer.NewUpsertRow("insert", new TextNode(fields[0]), null, null));
+                }
+            }
+            return result;
+        }
+    }
+}
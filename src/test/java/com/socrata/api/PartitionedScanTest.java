@@ -0,0 +1,168 @@
+package com.socrata.api;
+
+import com.socrata.builders.SoqlQueryBuilder;
+import com.socrata.exceptions.SodaError;
+import com.socrata.model.soql.SoqlQuery;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the PartitionedScan
+ */
+public class PartitionedScanTest
+{
+    @Test
+    public void testPartitionByRows()
+    {
+        final List<SoqlQuery> partitions = PartitionedScan.partitionByRows(SoqlQuery.SELECT_ALL, 10, 3);
+        TestCase.assertEquals(3, partitions.size());
+        TestCase.assertEquals(0, partitions.get(0).offset.intValue());
+        TestCase.assertEquals(4, partitions.get(0).limit.intValue());
+        TestCase.assertEquals(4, partitions.get(1).offset.intValue());
+        TestCase.assertEquals(8, partitions.get(2).offset.intValue());
+        TestCase.assertNull(partitions.get(2).limit);
+
+        final SoqlQuery bounded = new SoqlQueryBuilder().setOffset(5).setLimit(3).build();
+        final List<SoqlQuery> boundedPartitions = PartitionedScan.partitionByRows(bounded, 100, 2);
+        TestCase.assertEquals(2, boundedPartitions.size());
+        TestCase.assertEquals(5, boundedPartitions.get(0).offset.intValue());
+        TestCase.assertEquals(2, boundedPartitions.get(0).limit.intValue());
+        TestCase.assertEquals(7, boundedPartitions.get(1).offset.intValue());
+        TestCase.assertEquals(1, boundedPartitions.get(1).limit.intValue());
+
+        final List<SoqlQuery> empty = PartitionedScan.partitionByRows(SoqlQuery.SELECT_ALL, 0, 4);
+        TestCase.assertEquals(1, empty.size());
+        TestCase.assertEquals(0, empty.get(0).offset.intValue());
+        TestCase.assertNull(empty.get(0).limit);
+    }
+
+    @Test
+    public void testPartitionByColumn()
+    {
+        final SoqlQuery query = new SoqlQueryBuilder().setWhereClause("a = 1 OR b = 2").build();
+        final List<SoqlQuery> partitions = PartitionedScan.partitionByColumn(query, "num", BigDecimal.ZERO, BigDecimal.valueOf(100), 4);
+
+        TestCase.assertEquals(5, partitions.size());
+        TestCase.assertEquals("(a = 1 OR b = 2) AND (num >= 0 AND num < 25.0000000000)", partitions.get(0).whereClause.toString());
+        TestCase.assertEquals("(a = 1 OR b = 2) AND (num >= 75.0000000000 AND num <= 100)", partitions.get(3).whereClause.toString());
+        TestCase.assertEquals("(a = 1 OR b = 2) AND (num IS NULL)", partitions.get(4).whereClause.toString());
+
+        final List<SoqlQuery> single = PartitionedScan.partitionByColumn(SoqlQuery.SELECT_ALL, "num", BigDecimal.ONE, BigDecimal.ONE, 4);
+        TestCase.assertEquals(2, single.size());
+        TestCase.assertEquals("num = 1", single.get(0).whereClause.toString());
+    }
+
+    @Test
+    public void testUnorderedScan()
+    {
+        final PartitionedScan<Integer> scan = new PartitionedScan<Integer>(new RangeFetcher(1000), PartitionedScan.partitionByRows(SoqlQuery.SELECT_ALL, 1000, 7),
+                                                                           new ParallelScanConfig().setParallelism(3).setPageSize(17).setMaxRowsInFlight(50));
+        final List<Integer> results = new ArrayList<Integer>();
+        while (scan.hasNext()) {
+            results.add(scan.next());
+        }
+
+        Collections.sort(results);
+        TestCase.assertEquals(1000, results.size());
+        for (int i=0; i<1000; i++) {
+            TestCase.assertEquals(i, results.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void testOrderedScan()
+    {
+        final PartitionedScan<Integer> scan = new PartitionedScan<Integer>(new RangeFetcher(1000), PartitionedScan.partitionByRows(SoqlQuery.SELECT_ALL, 1000, 7),
+                                                                           new ParallelScanConfig().setParallelism(3).setPageSize(17).setMaxRowsInFlight(50).setOrdered(true));
+        int expected = 0;
+        while (scan.hasNext()) {
+            TestCase.assertEquals(expected++, scan.next().intValue());
+        }
+        TestCase.assertEquals(1000, expected);
+    }
+
+    @Test
+    public void testRowsAddedAfterTheCountAreReturned()
+    {
+        final PartitionedScan<Integer> scan = new PartitionedScan<Integer>(new RangeFetcher(1010), PartitionedScan.partitionByRows(SoqlQuery.SELECT_ALL, 1000, 7),
+                                                                           new ParallelScanConfig().setParallelism(3).setPageSize(17).setOrdered(true));
+        int expected = 0;
+        while (scan.hasNext()) {
+            TestCase.assertEquals(expected++, scan.next().intValue());
+        }
+        TestCase.assertEquals(1010, expected);
+    }
+
+    @Test
+    public void testOrderedScanBoundsRowsAcrossPartitions() throws InterruptedException
+    {
+        //Each partition fits in a queue sized for only the partitions being fetched, so without a bound
+        //across all of them, every partition is fetched before the caller reads a row.
+        final RangeFetcher fetcher = new RangeFetcher(36);
+        final PartitionedScan<Integer> scan = new PartitionedScan<Integer>(fetcher, PartitionedScan.partitionByRows(new SoqlQueryBuilder().setLimit(36).build(), 36, 4),
+                                                                           new ParallelScanConfig().setParallelism(2).setPageSize(1).setMaxRowsInFlight(20).setOrdered(true));
+        try {
+            Thread.sleep(500);
+
+            //Each pager also holds the page it is queueing and the one it is fetching.
+            TestCase.assertTrue(fetcher.rowsFetched.get() <= 20 + 2 * 2);
+
+            int expected = 0;
+            while (scan.hasNext()) {
+                TestCase.assertEquals(expected++, scan.next().intValue());
+            }
+            TestCase.assertEquals(36, expected);
+        } finally {
+            scan.close();
+        }
+    }
+
+    @Test
+    public void testFailure()
+    {
+        final PartitionedScan<Integer> scan = new PartitionedScan<Integer>(new QueryPager.PageFetcher<Integer>()
+        {
+            public List<Integer> fetch(SoqlQuery pageQuery) throws SodaError
+            { throw new SodaError("boom"); }
+        }, PartitionedScan.partitionByRows(SoqlQuery.SELECT_ALL, 100, 2), new ParallelScanConfig());
+
+        try {
+            scan.hasNext();
+            TestCase.fail("The error from the fetcher should be thrown");
+        } catch (RuntimeException e) {
+            TestCase.assertTrue(e.getCause() instanceof SodaError);
+        } finally {
+            scan.close();
+        }
+    }
+
+    /**
+     * Serves pages out of the row numbers of a dataset with {@code size} rows.
+     */
+    private static class RangeFetcher implements QueryPager.PageFetcher<Integer>
+    {
+        final AtomicInteger rowsFetched = new AtomicInteger();
+        final int size;
+
+        RangeFetcher(int size)
+        {
+            this.size = size;
+        }
+
+        public List<Integer> fetch(SoqlQuery pageQuery)
+        {
+            final List<Integer> page = new ArrayList<Integer>();
+            for (int i=pageQuery.offset; i<Math.min(pageQuery.offset + pageQuery.limit, size); i++) {
+                page.add(i);
+            }
+            rowsFetched.addAndGet(page.size());
+            return page;
+        }
+    }
+}
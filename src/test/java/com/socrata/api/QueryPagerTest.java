@@ -0,0 +1,130 @@
+package com.socrata.api;
+
+import com.google.common.collect.Lists;
+import com.socrata.builders.SoqlQueryBuilder;
+import com.socrata.exceptions.SodaError;
+import com.socrata.model.soql.OrderByClause;
+import com.socrata.model.soql.SoqlQuery;
+import com.socrata.model.soql.SortOrder;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the QueryPager
+ */
+public class QueryPagerTest
+{
+    @Test
+    public void testStableOrder()
+    {
+        SoqlQuery query = QueryPager.withStableOrder(SoqlQuery.SELECT_ALL);
+        TestCase.assertEquals(Lists.newArrayList(new OrderByClause(SortOrder.Ascending, ":id")), query.orderByClause);
+
+        query = QueryPager.withStableOrder(new SoqlQueryBuilder().addOrderByPhrase(new OrderByClause(SortOrder.Descending, "name")).build());
+        TestCase.assertEquals(Lists.newArrayList(new OrderByClause(SortOrder.Descending, "name"), new OrderByClause(SortOrder.Ascending, ":id")), query.orderByClause);
+
+        final SoqlQuery grouped = new SoqlQueryBuilder().addSelectPhrase("count(*)").addGroupByPhrase("name").build();
+        TestCase.assertSame(grouped, QueryPager.withStableOrder(grouped));
+    }
+
+    @Test
+    public void testAllPages() throws Exception
+    {
+        final RangeFetcher fetcher = new RangeFetcher(25);
+        final QueryPager<Integer> pager = new QueryPager<Integer>(fetcher, SoqlQuery.SELECT_ALL, 10, 2);
+        try {
+            final List<Integer> results = new ArrayList<Integer>();
+            final Iterator<Integer> rows = pager.rows();
+            while (rows.hasNext()) {
+                results.add(rows.next());
+            }
+
+            TestCase.assertEquals(25, results.size());
+            for (int i=0; i<25; i++) {
+                TestCase.assertEquals(i, results.get(i).intValue());
+            }
+        } finally {
+            pager.close();
+        }
+    }
+
+    @Test
+    public void testOffsetAndLimit() throws Exception
+    {
+        final RangeFetcher fetcher = new RangeFetcher(100);
+        final SoqlQuery query = new SoqlQueryBuilder().setOffset(5).setLimit(23).build();
+        final QueryPager<Integer> pager = new QueryPager<Integer>(fetcher, query, 10, 3);
+        try {
+            TestCase.assertEquals(10, pager.nextPage().size());
+            TestCase.assertEquals(10, pager.nextPage().size());
+            final List<Integer> last = pager.nextPage();
+            TestCase.assertEquals(3, last.size());
+            TestCase.assertEquals(27, last.get(2).intValue());
+            TestCase.assertNull(pager.nextPage());
+            TestCase.assertEquals(3, fetcher.requests.get());
+        } finally {
+            pager.close();
+        }
+    }
+
+    @Test
+    public void testExactMultipleOfPageSize() throws Exception
+    {
+        final QueryPager<Integer> pager = new QueryPager<Integer>(new RangeFetcher(20), SoqlQuery.SELECT_ALL, 10, 0);
+        try {
+            TestCase.assertEquals(10, pager.nextPage().size());
+            TestCase.assertEquals(10, pager.nextPage().size());
+            TestCase.assertNull(pager.nextPage());
+        } finally {
+            pager.close();
+        }
+    }
+
+    @Test
+    public void testErrorsArePropagated() throws Exception
+    {
+        final QueryPager<Integer> pager = new QueryPager<Integer>(new QueryPager.PageFetcher<Integer>()
+        {
+            public List<Integer> fetch(SoqlQuery pageQuery) throws SodaError
+            { throw new SodaError("boom"); }
+        }, SoqlQuery.SELECT_ALL, 10, 1);
+
+        try {
+            pager.nextPage();
+            TestCase.fail("The error from the fetcher should be thrown");
+        } catch (SodaError e) {
+            TestCase.assertEquals("boom", e.getMessage());
+        } finally {
+            pager.close();
+        }
+    }
+
+    /**
+     * Serves pages out of the integers [0, size)
+     */
+    private static class RangeFetcher implements QueryPager.PageFetcher<Integer>
+    {
+        final int size;
+        final AtomicInteger requests = new AtomicInteger();
+
+        RangeFetcher(int size)
+        {
+            this.size = size;
+        }
+
+        public List<Integer> fetch(SoqlQuery pageQuery)
+        {
+            requests.incrementAndGet();
+            final List<Integer> page = new ArrayList<Integer>();
+            for (int i=pageQuery.offset; i<Math.min(size, pageQuery.offset + pageQuery.limit); i++) {
+                page.add(i);
+            }
+            return page;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.socrata.api;
+
+import com.socrata.StubSodaServer;
+import com.socrata.builders.SoqlQueryBuilder;
+import com.socrata.exceptions.SodaError;
+import com.socrata.model.soql.SoqlQuery;
+import junit.framework.TestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.core.Response;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the ResponseCache, run against the StubSodaServer, which answers If-None-Match with a 304.
+ */
+public class ResponseCacheTest
+{
+    private StubSodaServer server;
+    private HttpLowLevel   connection;
+    private Soda2Producer  producer;
+    private String         id;
+
+    @Before
+    public void setUp() throws IOException, SodaError, InterruptedException
+    {
+        server = new StubSodaServer();
+        connection = server.connect();
+        producer = new Soda2Producer(connection);
+        id = server.createDataset("people", "id", "id", "name");
+        producer.upsert(id, Collections.singletonList(row("1", "alice")));
+    }
+
+    @After
+    public void tearDown()
+    {
+        server.close();
+    }
+
+    @Test
+    public void testRevalidation() throws SodaError, InterruptedException
+    {
+        final ResponseCache cache = new ResponseCache();
+        connection.setResponseCache(cache);
+
+        final List<Object> first = producer.query(id, SoqlQuery.SELECT_ALL, Soda2Consumer.HASH_RETURN_TYPE);
+        final List<Object> second = producer.query(id, SoqlQuery.SELECT_ALL, Soda2Consumer.HASH_RETURN_TYPE);
+        TestCase.assertEquals(first, second);
+        TestCase.assertEquals(1, second.size());
+
+        final ResponseCache.Stats stats = cache.getStats();
+        TestCase.assertEquals(0, stats.getHits());
+        TestCase.assertEquals(1, stats.getRevalidations());
+        TestCase.assertEquals(1, stats.getMisses());
+        TestCase.assertEquals(1, stats.getEntries());
+        TestCase.assertEquals(2, server.getRequestCount("GET", "/resource/"));
+    }
+
+    @Test
+    public void testTimeToLive() throws SodaError, InterruptedException
+    {
+        final ResponseCache cache = new ResponseCache().setTimeToLive(id, 60000L);
+        connection.setResponseCache(cache);
+
+        producer.query(id, SoqlQuery.SELECT_ALL, Soda2Consumer.HASH_RETURN_TYPE);
+        final List<Object> cached = producer.query(id, SoqlQuery.SELECT_ALL, Soda2Consumer.HASH_RETURN_TYPE);
+        TestCase.assertEquals(1, cached.size());
+        TestCase.assertEquals(1, cache.getStats().getHits());
+        TestCase.assertEquals(1, server.getRequestCount("GET", "/resource/"));
+    }
+
+    @Test
+    public void testWritesInvalidate() throws SodaError, InterruptedException
+    {
+        final ResponseCache cache = new ResponseCache().setDefaultTimeToLive(60000);
+        connection.setResponseCache(cache);
+
+        producer.query(id, SoqlQuery.SELECT_ALL, Soda2Consumer.HASH_RETURN_TYPE);
+        producer.upsert(id, Collections.singletonList(row("2", "bob")));
+        TestCase.assertEquals(0, cache.getStats().getEntries());
+
+        final List<Object> updated = producer.query(id, SoqlQuery.SELECT_ALL, Soda2Consumer.HASH_RETURN_TYPE);
+        TestCase.assertEquals(2, updated.size());
+        TestCase.assertEquals(2, cache.getStats().getMisses());
+    }
+
+    @Test
+    public void testQueryDuringWriteIsNotLeftCached() throws Exception
+    {
+        final ResponseCache cache = new ResponseCache().setDefaultTimeToLive(60000);
+        connection.setResponseCache(cache);
+
+        //The query runs while the upsert body is being sent, so it caches the result from before the upsert.
+        final InputStream body = new FilterInputStream(new ByteArrayInputStream("id,name\n2,bob\n".getBytes(StandardCharsets.UTF_8)))
+        {
+            boolean queried = false;
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException
+            {
+                if (!queried) {
+                    queried = true;
+                    final Thread query = new Thread()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            try {
+                                TestCase.assertEquals(1, producer.query(id, SoqlQuery.SELECT_ALL, Soda2Consumer.HASH_RETURN_TYPE).size());
+                            } catch (Exception e) {
+                                throw new RuntimeException(e);
+                            }
+                        }
+                    };
+                    query.start();
+                    try {
+                        query.join();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+                }
+                return super.read(b, off, len);
+            }
+        };
+        producer.upsertStream(id, HttpLowLevel.CSV_TYPE, body);
+
+        TestCase.assertEquals(2, producer.query(id, SoqlQuery.SELECT_ALL, Soda2Consumer.HASH_RETURN_TYPE).size());
+    }
+
+    @Test
+    public void testResultInFlightDuringInvalidateIsNotCached() throws Exception
+    {
+        final ResponseCache cache = new ResponseCache().setDefaultTimeToLive(60000);
+        connection.setResponseCache(cache);
+
+        final URI uri = producer.queryUri(id, SoqlQuery.SELECT_ALL);
+        final Response response = connection.queryRawCached(uri, HttpLowLevel.JSON_TYPE, id);
+        cache.invalidate(id);
+        TestCase.assertEquals(1, response.readEntity(HttpLowLevel.MAP_OBJECT_TYPE).size());
+        TestCase.assertEquals(0, cache.getStats().getEntries());
+
+        //A query made after the invalidate is cached as usual.
+        producer.query(id, SoqlQuery.SELECT_ALL, Soda2Consumer.HASH_RETURN_TYPE);
+        TestCase.assertEquals(1, cache.getStats().getEntries());
+    }
+
+    @Test
+    public void testChangedResultIsDownloaded() throws SodaError, InterruptedException
+    {
+        final ResponseCache cache = new ResponseCache();
+        connection.setResponseCache(cache);
+        producer.query(id, SoqlQuery.SELECT_ALL, Soda2Consumer.HASH_RETURN_TYPE);
+
+        //A write through another connection isn't seen by the cache, but changes the ETag.
+        new Soda2Producer(server.connect()).upsert(id, Collections.singletonList(row("2", "bob")));
+        final List<Object> updated = producer.query(id, SoqlQuery.SELECT_ALL, Soda2Consumer.HASH_RETURN_TYPE);
+        TestCase.assertEquals(2, updated.size());
+        TestCase.assertEquals(0, cache.getStats().getRevalidations());
+        TestCase.assertEquals(2, cache.getStats().getMisses());
+    }
+
+    @Test
+    public void testSharedCacheKeepsUsersApart() throws SodaError, InterruptedException
+    {
+        final ResponseCache cache = new ResponseCache().setDefaultTimeToLive(60000);
+        final HttpLowLevel alice = HttpLowLevel.instantiateBasic(server.getUrl(), "alice", "secret", null, null);
+        final HttpLowLevel bob = HttpLowLevel.instantiateBasic(server.getUrl(), "bob", "secret", "token", null);
+        final HttpLowLevel aliceAgain = HttpLowLevel.instantiateBasic(server.getUrl(), "alice", "secret", null, null);
+        alice.setResponseCache(cache);
+        bob.setResponseCache(cache);
+        aliceAgain.setResponseCache(cache);
+
+        new Soda2Consumer(alice).query(id, SoqlQuery.SELECT_ALL, Soda2Consumer.HASH_RETURN_TYPE);
+        new Soda2Consumer(bob).query(id, SoqlQuery.SELECT_ALL, Soda2Consumer.HASH_RETURN_TYPE);
+        TestCase.assertEquals(0, cache.getStats().getHits());
+        TestCase.assertEquals(2, cache.getStats().getEntries());
+
+        //The same credentials on another connection do share the result.
+        new Soda2Consumer(aliceAgain).query(id, SoqlQuery.SELECT_ALL, Soda2Consumer.HASH_RETURN_TYPE);
+        TestCase.assertEquals(1, cache.getStats().getHits());
+        TestCase.assertEquals(2, server.getRequestCount("GET", "/resource/"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws SodaError, InterruptedException
+    {
+        final ResponseCache cache = new ResponseCache(2, ResponseCache.DEFAULT_MAX_BYTES);
+        connection.setResponseCache(cache);
+
+        for (int limit = 1; limit <= 3; limit++) {
+            producer.query(id, new SoqlQueryBuilder().setLimit(limit).build(), Soda2Consumer.HASH_RETURN_TYPE);
+        }
+        TestCase.assertEquals(2, cache.getStats().getEntries());
+        TestCase.assertEquals(1, cache.getStats().getEvictions());
+
+        //The first query was evicted, so it is downloaded again rather than revalidated.
+        producer.query(id, new SoqlQueryBuilder().setLimit(1).build(), Soda2Consumer.HASH_RETURN_TYPE);
+        TestCase.assertEquals(4, cache.getStats().getMisses());
+        TestCase.assertEquals(0, cache.getStats().getRevalidations());
+    }
+
+    private static Map<String, String> row(String id, String name)
+    {
+        final Map<String, String> row = new HashMap<String, String>();
+        row.put("id", id);
+        row.put("name", name);
+        return row;
+    }
+}
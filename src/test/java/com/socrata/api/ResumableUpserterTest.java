@@ -0,0 +1,219 @@
+package com.socrata.api;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.socrata.StubSodaServer;
+import com.socrata.exceptions.SodaError;
+import com.socrata.model.UpsertResult;
+import com.socrata.utils.RowUpdateOption;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests for the ResumableUpserter and its journal.
+ */
+public class ResumableUpserterTest
+{
+    @Test
+    public void testResumeAfterFailure() throws Exception
+    {
+        try (StubSodaServer server = new StubSodaServer()) {
+            final Soda2Producer producer = new Soda2Producer(server.connect());
+            final String id = server.createDataset("people", "id", "id", "name");
+            final File journal = File.createTempFile("upsert", ".journal");
+            journal.delete();
+            try {
+                final String csv = csv(10);
+                try {
+                    failingOnChunk(server, producer, journal, 3).upsertCsv(id, stream(csv));
+                    TestCase.fail("Expected the third chunk to fail");
+                } catch (SodaError e) {
+                    TestCase.assertEquals(503, e.status);
+                }
+                TestCase.assertEquals(6, server.getRows(id).size());
+
+                final long before = server.getRequestCount("POST", "/resource/");
+                final UpsertResult result = upserter(producer, journal).upsertCsv(id, stream(csv));
+                TestCase.assertEquals(2, server.getRequestCount("POST", "/resource/") - before);
+                TestCase.assertEquals(10, result.getRowsCreated());
+                TestCase.assertEquals(0, result.errorCount());
+                TestCase.assertEquals(10, server.getRows(id).size());
+
+                //A finished upsert sends nothing more.
+                final UpsertResult again = upserter(producer, journal).upsertCsv(id, stream(csv));
+                TestCase.assertEquals(2, server.getRequestCount("POST", "/resource/") - before);
+                TestCase.assertEquals(10, again.getRowsCreated());
+                TestCase.assertEquals(result.getTruthDataVersion(), again.getTruthDataVersion());
+            } finally {
+                journal.delete();
+            }
+        }
+    }
+
+    @Test
+    public void testResumeAtRowCrossingReadBuffer() throws Exception
+    {
+        try (StubSodaServer server = new StubSodaServer()) {
+            final Soda2Producer producer = new Soda2Producer(server.connect());
+            final String id = server.createDataset("people", "id", "id", "name");
+            final File journal = File.createTempFile("upsert", ".journal");
+            journal.delete();
+            try {
+                final StringBuilder csv = new StringBuilder("id,name\n");
+                for (int i = 0; i < 2000; i++) {
+                    csv.append(i).append(',').append(String.format("%095d", i)).append('\n');
+                }
+
+                //The first chunk ends on a row that crosses the end of the 64KB read buffer.
+                try {
+                    failingOnChunk(server, producer, journal, 2).setChunkRows(Integer.MAX_VALUE).setChunkBytes(65508)
+                                                                .upsertCsv(id, stream(csv.toString()));
+                    TestCase.fail("Expected the second chunk to fail");
+                } catch (SodaError e) {
+                    TestCase.assertEquals(503, e.status);
+                }
+
+                final UpsertResult result = upserter(producer, journal).setChunkRows(Integer.MAX_VALUE).setChunkBytes(65508)
+                                                                       .upsertCsv(id, stream(csv.toString()));
+                TestCase.assertEquals(2000, result.getRowsCreated());
+                TestCase.assertEquals(0, result.errorCount());
+                for (ObjectNode row : server.getRows(id)) {
+                    TestCase.assertEquals(String.format("%095d", Integer.parseInt(row.get("id").asText())), row.get("name").asText());
+                }
+                TestCase.assertEquals(2000, server.getRows(id).size());
+            } finally {
+                journal.delete();
+            }
+        }
+    }
+
+    @Test
+    public void testDatasetChangedBetweenRuns() throws Exception
+    {
+        try (StubSodaServer server = new StubSodaServer()) {
+            final Soda2Producer producer = new Soda2Producer(server.connect());
+            final String id = server.createDataset("people", "id", "id", "name");
+            final File journal = File.createTempFile("upsert", ".journal");
+            journal.delete();
+            try {
+                final String json = json(7);
+                try {
+                    failingOnChunk(server, producer, journal, 2).upsertJson(id, stream(json));
+                    TestCase.fail("Expected the second chunk to fail");
+                } catch (SodaError e) {
+                    TestCase.assertEquals(503, e.status);
+                }
+
+                final Map<String, Object> other = new HashMap<String, Object>();
+                other.put("id", "other");
+                other.put("name", "someone else");
+                producer.upsert(id, Collections.singletonList(other));
+
+                final long before = server.getRequestCount("POST", "/resource/");
+                try {
+                    upserter(producer, journal).upsertJson(id, stream(json));
+                    TestCase.fail("Expected the dataset version check to fail");
+                } catch (SodaError e) {
+                    TestCase.assertEquals(412, e.status);
+                }
+                TestCase.assertEquals(1, server.getRequestCount("POST", "/resource/") - before);
+                TestCase.assertEquals(4, server.getRows(id).size());
+
+                final UpsertResult result = upserter(producer, journal).setCheckDataVersion(false).upsertJson(id, stream(json));
+                TestCase.assertEquals(7, result.getRowsCreated());
+                TestCase.assertEquals(8, server.getRows(id).size());
+            } finally {
+                journal.delete();
+            }
+        }
+    }
+
+    @Test
+    public void testJournalFromAnotherUpsert() throws Exception
+    {
+        try (StubSodaServer server = new StubSodaServer()) {
+            final Soda2Producer producer = new Soda2Producer(server.connect());
+            final String id = server.createDataset("people", "id", "id", "name");
+            final File journal = File.createTempFile("upsert", ".journal");
+            journal.delete();
+            try {
+                upserter(producer, journal).upsertCsv(id, stream(csv(4)));
+
+                //A torn last line, as left by a crash while writing it, is dropped.
+                try (FileOutputStream out = new FileOutputStream(journal, true)) {
+                    out.write("{\"first_row\":4,\"row_co".getBytes(StandardCharsets.UTF_8));
+                }
+                TestCase.assertEquals(4, upserter(producer, journal).upsertCsv(id, stream(csv(4))).getRowsCreated());
+
+                try {
+                    upserter(producer, journal).setChunkRows(5).upsertCsv(id, stream(csv(4)));
+                    TestCase.fail("Expected the journal to be rejected");
+                } catch (SodaError e) {
+                    TestCase.assertTrue(e.getMessage().contains(journal.toString()));
+                }
+            } finally {
+                journal.delete();
+            }
+        }
+    }
+
+    private static ResumableUpserter upserter(Soda2Producer producer, File journal)
+    {
+        return new ResumableUpserter(producer, journal)
+                .setChunkRows(3)
+                .setMaxRetries(0)
+                .setRetryDelay(0);
+    }
+
+    /**
+     * @return an upserter that makes the server fail the given chunk
+     */
+    private static ResumableUpserter failingOnChunk(final StubSodaServer server, Soda2Producer producer, File journal, final int failingChunk)
+    {
+        return new ResumableUpserter(producer, journal)
+        {
+            int sent = 0;
+
+            @Override
+            UpsertResult sendChunk(String resourceId, MediaType mediaType, RowChunker.Chunk chunk, RowUpdateOption option) throws SodaError, InterruptedException
+            {
+                if (++sent == failingChunk) {
+                    server.failNext(1, 503);
+                }
+                return super.sendChunk(resourceId, mediaType, chunk, option);
+            }
+        }.setChunkRows(3).setMaxRetries(0).setRetryDelay(0);
+    }
+
+    private static String csv(int rows)
+    {
+        final StringBuilder csv = new StringBuilder("id,name\n");
+        for (int i = 0; i < rows; i++) {
+            csv.append(i).append(",\"person ").append(i).append("\"\n");
+        }
+        return csv.toString();
+    }
+
+    private static String json(int rows)
+    {
+        final StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < rows; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\":\"").append(i).append("\",\"name\":\"person ").append(i).append("\"}");
+        }
+        return json.append("]").toString();
+    }
+
+    private static InputStream stream(String contents)
+    {
+        return new ByteArrayInputStream(contents.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,98 @@
+package com.socrata.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.socrata.utils.ObjectMapperFactory;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+
+/**
+ * Tests for the RowIterator
+ */
+public class RowIteratorTest
+{
+    private static final ObjectMapper MAPPER = ObjectMapperFactory.create();
+
+    @Test
+    public void testIterateRows() throws IOException
+    {
+        final CountingCloseable resource = new CountingCloseable();
+        final RowIterator<Map> rows = new RowIterator<Map>(toStream("[{\"a\":\"1\"},{\"a\":\"2\"},{\"a\":\"3\"}]"), resource, MAPPER.readerFor(Map.class));
+
+        TestCase.assertTrue(rows.hasNext());
+        TestCase.assertEquals("1", rows.next().get("a"));
+        TestCase.assertEquals("2", rows.next().get("a"));
+        TestCase.assertEquals(0, resource.closes);
+        TestCase.assertEquals("3", rows.next().get("a"));
+        TestCase.assertFalse(rows.hasNext());
+        TestCase.assertEquals(1, resource.closes);
+
+        try {
+            rows.next();
+            TestCase.fail("Should have no more rows");
+        } catch (NoSuchElementException e) {
+            //Success
+        }
+
+        rows.close();
+        TestCase.assertEquals(1, resource.closes);
+    }
+
+    @Test
+    public void testEmptyResult() throws IOException
+    {
+        final CountingCloseable resource = new CountingCloseable();
+        final RowIterator<Map> rows = new RowIterator<Map>(toStream("[]"), resource, MAPPER.readerFor(Map.class));
+        TestCase.assertFalse(rows.hasNext());
+        TestCase.assertEquals(1, resource.closes);
+    }
+
+    @Test
+    public void testStreamAndEarlyClose() throws IOException
+    {
+        final CountingCloseable resource = new CountingCloseable();
+        final RowIterator<Map> rows = new RowIterator<Map>(toStream("[{\"a\":\"1\"},{\"a\":\"2\"},{\"a\":\"3\"}]"), resource, MAPPER.readerFor(Map.class));
+
+        try (java.util.stream.Stream<Map> stream = rows.asStream()) {
+            TestCase.assertEquals("1,2", stream.limit(2).map(m -> (String) m.get("a")).collect(Collectors.joining(",")));
+        }
+        TestCase.assertEquals(1, resource.closes);
+    }
+
+    @Test
+    public void testNotAnArray() throws IOException
+    {
+        final CountingCloseable resource = new CountingCloseable();
+        try {
+            new RowIterator<Map>(toStream("{\"a\":\"1\"}"), resource, MAPPER.readerFor(Map.class));
+            TestCase.fail("Should only accept arrays");
+        } catch (IOException e) {
+            //Success
+        }
+        TestCase.assertEquals(1, resource.closes);
+    }
+
+    private static InputStream toStream(String json)
+    {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static class CountingCloseable implements Closeable
+    {
+        int closes = 0;
+
+        @Override
+        public void close()
+        {
+            closes++;
+        }
+    }
+}
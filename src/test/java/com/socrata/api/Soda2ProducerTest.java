@@ -1,5 +1,6 @@
 package com.socrata.api;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.google.common.collect.Lists;
 import com.socrata.Resources;
 import com.socrata.TestBase;
@@ -17,7 +18,9 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 /** Tests for Soda2Producer */
@@ -299,4 +302,43 @@ public class Soda2ProducerTest extends TestBase
         TestCase.assertEquals(0, errors2.getRowsUpdated());
         TestCase.assertEquals(1, errors2.getRowsDeleted());
     }
+
+
+    public static final String SODA_SERVER_UPSERT_RESULT_REORDERED = "[{\"id\":\"key1\", \"extra\":{\"a\":[1,2]}, \"typ\":\"insert\", \"ver\":\"1\"}, {\"ver\":\"2\", \"id\":{\"k\":\"key2\"}, \"typ\":\"update\"}, {\"err\":\"error3\", \"id\":\"key3\", \"typ\":\"error\"}, {\"typ\":\"upgrade\", \"id\":\"key4\"}]";
+
+    @Test
+    public void testParsingOnlyRequestedUpsertFields() throws IOException
+    {
+        final Soda2Producer producer = new Soda2Producer(connect());
+
+        UpsertResult standard = producer.deserializeUpsertResult(new ByteArrayInputStream(SODA_SERVER_UPSERT_RESULT_REORDERED.getBytes("utf-8")), StandardResultAccumulator.FACTORY.createAccumulator(4L, 3L));
+        TestCase.assertEquals(1, standard.getRowsCreated());
+        TestCase.assertEquals(1, standard.getRowsUpdated());
+        TestCase.assertEquals(1, standard.errorCount());
+        TestCase.assertEquals("error3", standard.getErrors().get(0).getError());
+        TestCase.assertEquals("key3", standard.getErrors().get(0).getPrimaryKey().textValue());
+
+        final List<Soda2Producer.NewUpsertRow> rows = Lists.newArrayList();
+        final UpsertResultAccumulator<List<Soda2Producer.NewUpsertRow>> versionsOnly = new UpsertResultAccumulator<List<Soda2Producer.NewUpsertRow>>()
+        {
+            public void insert(Soda2Producer.NewUpsertRow row) { rows.add(row); }
+            public void update(Soda2Producer.NewUpsertRow row) { rows.add(row); }
+            public void delete(Soda2Producer.NewUpsertRow row) { rows.add(row); }
+            public void error(Soda2Producer.NewUpsertRow row) { rows.add(row); }
+            public List<Soda2Producer.NewUpsertRow> deserializeSimple(JsonParser parser) { throw new AssertionError(); }
+            public List<Soda2Producer.NewUpsertRow> result() { return rows; }
+            public Set<UpsertRowField> fields() { return EnumSet.of(UpsertRowField.VERSION); }
+        };
+
+        producer.deserializeUpsertResult(new ByteArrayInputStream(SODA_SERVER_UPSERT_RESULT_REORDERED.getBytes("utf-8")), versionsOnly);
+        TestCase.assertEquals(3, rows.size());
+        TestCase.assertEquals("insert", rows.get(0).typ);
+        TestCase.assertNull(rows.get(0).id);
+        TestCase.assertEquals("1", rows.get(0).ver);
+        TestCase.assertEquals("update", rows.get(1).typ);
+        TestCase.assertEquals("2", rows.get(1).ver);
+        TestCase.assertEquals("error", rows.get(2).typ);
+        TestCase.assertEquals("key3", rows.get(2).id.textValue());
+        TestCase.assertEquals("error3", rows.get(2).err);
+    }
 }
@@ -0,0 +1,168 @@
+package com.socrata.api;
+
+import com.socrata.StubSodaServer;
+import com.socrata.exceptions.DoesNotExistException;
+import com.socrata.exceptions.SodaError;
+import com.socrata.model.importer.DatasetInfo;
+import com.socrata.model.soql.SoqlQuery;
+import com.socrata.utils.JacksonObjectMapperProvider;
+import junit.framework.TestCase;
+import org.glassfish.jersey.client.JerseyClient;
+import org.glassfish.jersey.client.JerseyClientBuilder;
+import org.glassfish.jersey.jackson.JacksonFeature;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the SodaMetricsFilter, and the metrics reported to a SodaMetricsListener.
+ */
+public class SodaMetricsFilterTest
+{
+    @Test
+    public void testPathTemplate()
+    {
+        TestCase.assertEquals("/resource/{id}.json", SodaMetricsFilter.pathTemplate("/resource/abcd-1234.json"));
+        TestCase.assertEquals("/resource/{id}/{row}", SodaMetricsFilter.pathTemplate("/resource/abcd-1234/row-xyz"));
+        TestCase.assertEquals("/api/views/{id}/columns/{n}.json", SodaMetricsFilter.pathTemplate("/api/views/abcd-1234/columns/12.json"));
+        TestCase.assertEquals("/api/imports2", SodaMetricsFilter.pathTemplate("/api/imports2"));
+    }
+
+    @Test
+    public void testRequestsAreReported() throws IOException, SodaError, InterruptedException
+    {
+        final RecordingListener listener = new RecordingListener();
+        try (StubSodaServer server = new StubSodaServer()) {
+            final HttpLowLevel connection = server.connect();
+            connection.setMetricsListener(listener);
+
+            final String id = server.createDataset("people", "id", "id", "name");
+            final Soda2Producer producer = new Soda2Producer(connection);
+            final Map<String, String> row = new HashMap<String, String>();
+            row.put("id", "1");
+            row.put("name", "alice");
+            producer.upsert(id, Collections.singletonList(row));
+            producer.query(id, SoqlQuery.SELECT_ALL, Soda2Consumer.HASH_RETURN_TYPE);
+
+            try {
+                producer.query("nope-nope", SoqlQuery.SELECT_ALL, Soda2Consumer.HASH_RETURN_TYPE);
+                TestCase.fail("Expected the query to fail");
+            } catch (DoesNotExistException e) {
+                //Expected
+            }
+        }
+
+        TestCase.assertEquals(3, listener.started.size());
+        TestCase.assertEquals(3, listener.completed.size());
+        TestCase.assertEquals("POST /resource/{id} 200", listener.completed.get(0));
+        TestCase.assertEquals("GET /resource/{id} 200", listener.completed.get(1));
+        TestCase.assertEquals("GET /resource/{id} 404", listener.completed.get(2));
+        TestCase.assertTrue(listener.bytesOut > 0);
+        TestCase.assertTrue(listener.bytesIn > 0);
+        TestCase.assertEquals(1, listener.inserted);
+        TestCase.assertEquals(Collections.<Class<?>>singletonList(DoesNotExistException.class), listener.failures);
+    }
+
+    @Test
+    public void testSharedClientIsLeftAlone() throws IOException, SodaError, InterruptedException
+    {
+        final JerseyClient client = new JerseyClientBuilder()
+                .register(JacksonObjectMapperProvider.class)
+                .register(JacksonFeature.class)
+                .build();
+        final RecordingListener first = new RecordingListener();
+        final RecordingListener second = new RecordingListener();
+        try (StubSodaServer server = new StubSodaServer()) {
+            final String id = server.createDataset("people", "id", "id", "name");
+            final HttpLowLevel firstConnection = new HttpLowLevel(client, server.getUrl());
+            final HttpLowLevel secondConnection = new HttpLowLevel(client, server.getUrl());
+            firstConnection.setMetricsListener(first);
+            secondConnection.setMetricsListener(second);
+
+            new Soda2Consumer(firstConnection).query(id, SoqlQuery.SELECT_ALL, Soda2Consumer.HASH_RETURN_TYPE);
+            new Soda2Consumer(secondConnection).query(id, SoqlQuery.SELECT_ALL, Soda2Consumer.HASH_RETURN_TYPE);
+        }
+
+        //Each connection only reports its own requests, and the client doesn't pick up their filters.
+        TestCase.assertEquals(1, first.completed.size());
+        TestCase.assertEquals(1, second.completed.size());
+        for (Object instance : client.getConfiguration().getInstances()) {
+            TestCase.assertFalse(instance instanceof SodaMetricsFilter || instance instanceof ResponseCacheFilter);
+        }
+    }
+
+    @Test
+    public void testPollingIsReported() throws IOException, SodaError, InterruptedException
+    {
+        final RecordingListener listener = new RecordingListener();
+        try (StubSodaServer server = new StubSodaServer()) {
+            server.setAsyncPolls(3);
+            final HttpLowLevel connection = server.connect();
+            connection.setRetryTime(10);
+            connection.setPollingPolicy(new ExponentialBackoffPollingPolicy(10, 50, 2.0, 0, 0));
+            connection.setMetricsListener(listener);
+
+            final String id = server.createDataset("people", null, "name");
+            final DatasetInfo published = new SodaWorkflow(connection).publish(id);
+            TestCase.assertEquals("published", published.getPublicationStage());
+        }
+
+        TestCase.assertEquals(3, listener.polls);
+        TestCase.assertEquals(Collections.singletonList("3 true"), listener.pollingResults);
+    }
+
+    private static final class RecordingListener implements SodaMetricsListener
+    {
+        final List<String>   started = Collections.synchronizedList(new ArrayList<String>());
+        final List<String>   completed = Collections.synchronizedList(new ArrayList<String>());
+        final List<Class<?>> failures = Collections.synchronizedList(new ArrayList<Class<?>>());
+        final List<String>   pollingResults = Collections.synchronizedList(new ArrayList<String>());
+        volatile long bytesOut;
+        volatile long bytesIn;
+        volatile long inserted;
+        volatile long polls;
+
+        @Override
+        public void requestStarted(String method, String pathTemplate)
+        {
+            started.add(method + " " + pathTemplate);
+        }
+
+        @Override
+        public synchronized void requestCompleted(String method, String pathTemplate, int status, long bytesOut, long bytesIn, long latencyNanos)
+        {
+            completed.add(method + " " + pathTemplate + " " + status);
+            this.bytesOut += bytesOut;
+            this.bytesIn += bytesIn;
+        }
+
+        @Override
+        public synchronized void longRunningRequestPolled(long attempt, long waitMillis)
+        {
+            polls++;
+        }
+
+        @Override
+        public void longRunningRequestCompleted(long polls, long elapsedMillis, boolean completed)
+        {
+            pollingResults.add(polls + " " + completed);
+        }
+
+        @Override
+        public void requestFailed(int status, SodaError error)
+        {
+            failures.add(error.getClass());
+        }
+
+        @Override
+        public synchronized void upsertCompleted(long inserted, long updated, long deleted, long errors)
+        {
+            this.inserted += inserted;
+        }
+    }
+}
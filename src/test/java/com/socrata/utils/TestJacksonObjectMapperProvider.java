@@ -10,8 +10,14 @@ import org.junit.Test;
 import java.io.IOException;
 import java.text.ParseException;
 import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.Ignore;
 
 import static org.hamcrest.CoreMatchers.*;
@@ -99,6 +105,46 @@ public class TestJacksonObjectMapperProvider {
                 );
     }
 
+    @Test
+    public void testParseISOFixedOffsets() throws ParseException {
+        assertThat(new Date(112, 5, 20, 7, 0, 0), equalTo(parse("2012-06-20T07:00:00Z")));
+        assertThat(new Date(new Date(112, 5, 20, 10, 0).getTime() + 123), equalTo(parse("2012-06-20T07:00:00.123-0300")));
+        assertThat(new Date(112, 5, 20, 1, 30), equalTo(parse("2012-06-20T07:00:00+05:30")));
+    }
+
+    @Test
+    public void testFormat() throws ParseException {
+        final Date date = new Date(new Date(112, 5, 20, 7, 5, 9).getTime() + 42);
+        assertThat(format.format(date), equalTo("2012-06-20T07:05:09.042+0000"));
+        assertThat(format.parse(format.format(date)), equalTo(date));
+    }
+
+    @Test
+    public void testConcurrentFormatting() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int t = 0; t < 4; t++) {
+                final long base = new Date(100 + t * 5, t, 1).getTime();
+                results.add(executor.submit(() -> {
+                    final SimpleDateFormat expected = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+                    for (int i = 0; i < 10000; i++) {
+                        final Date date = new Date(base + i * 7919L * 1000);
+                        if (!expected.format(date).equals(format.format(date)) || !date.equals(format.parse(expected.format(date)))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertThat(result.get(), equalTo(true));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Test
     public void testViewMapping() throws IOException {
         final Dataset v = mapper.readValue(TestJacksonObjectMapperProvider.class.getResource("/view.json"), Dataset.class);
@@ -0,0 +1,174 @@
+package com.socrata.utils;
+
+import com.socrata.exceptions.SodaError;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test the SingleFlight
+ */
+public class TestSingleFlight
+{
+    @Test
+    public void testConcurrentCallsAreShared() throws Exception
+    {
+        final SingleFlight<String, String> flight = new SingleFlight<String, String>();
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(() -> flight.execute("key", () -> {
+                    calls.incrementAndGet();
+                    release.await();
+                    return "result";
+                })));
+            }
+
+            //Let the other callers join the one in flight before it finishes.
+            while (flight.getCallCount() == 0 || calls.get() == 0) {
+                Thread.sleep(1);
+            }
+            Thread.sleep(100);
+            release.countDown();
+
+            for (Future<String> result : results) {
+                TestCase.assertEquals("result", result.get(10, TimeUnit.SECONDS));
+            }
+            TestCase.assertEquals(1, calls.get());
+            TestCase.assertEquals(3, flight.getSharedCount());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        //Once the call is done, the next one is made again.
+        TestCase.assertEquals("again", flight.execute("key", () -> "again"));
+        TestCase.assertEquals(2, flight.getCallCount());
+    }
+
+    @Test
+    public void testDetachWhenAlone() throws Exception
+    {
+        final SingleFlight<String, String> flight = new SingleFlight<String, String>();
+        final CountDownLatch detached = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<String> leader = executor.submit(() -> flight.execute("key", (SingleFlight.DetachableCall<String>) f -> {
+                TestCase.assertTrue(f.detach());
+                detached.countDown();
+                release.await();
+                return "leader";
+            }));
+            detached.await();
+
+            //A caller that comes along after the call detached makes its own.
+            TestCase.assertEquals("follower", flight.execute("key", () -> "follower"));
+            release.countDown();
+            TestCase.assertEquals("leader", leader.get(10, TimeUnit.SECONDS));
+            TestCase.assertEquals(2, flight.getCallCount());
+            TestCase.assertEquals(0, flight.getSharedCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testNoDetachOnceJoined() throws Exception
+    {
+        final SingleFlight<String, String> flight = new SingleFlight<String, String>();
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<String> leader = executor.submit(() -> flight.execute("key", (SingleFlight.DetachableCall<String>) f -> {
+                release.await();
+                return f.detach() ? "detached" : "shared";
+            }));
+            while (flight.getCallCount() == 0) {
+                Thread.sleep(1);
+            }
+            final Future<String> follower = executor.submit(() -> flight.execute("key", () -> "not called"));
+            Thread.sleep(100);
+            release.countDown();
+
+            TestCase.assertEquals("shared", leader.get(10, TimeUnit.SECONDS));
+            TestCase.assertEquals("shared", follower.get(10, TimeUnit.SECONDS));
+            TestCase.assertEquals(1, flight.getCallCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testErrorsAreShared() throws Exception
+    {
+        final SingleFlight<String, String> flight = new SingleFlight<String, String>();
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<String> leader = executor.submit(() -> flight.execute("key", () -> {
+                release.await();
+                throw new SodaError("failed");
+            }));
+            while (flight.getCallCount() == 0) {
+                Thread.sleep(1);
+            }
+            final Future<String> follower = executor.submit(() -> flight.execute("key", () -> "not called"));
+            Thread.sleep(100);
+            release.countDown();
+
+            for (Future<String> result : new Future[] { leader, follower }) {
+                try {
+                    result.get(10, TimeUnit.SECONDS);
+                    TestCase.fail("Expected the error to be shared");
+                } catch (java.util.concurrent.ExecutionException e) {
+                    TestCase.assertTrue(e.getCause() instanceof SodaError);
+                }
+            }
+            TestCase.assertEquals(1, flight.getCallCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testInterruptedLeaderIsReplaced() throws Exception
+    {
+        final SingleFlight<String, String> flight = new SingleFlight<String, String>();
+        final Thread leader = new Thread(() -> {
+            try {
+                flight.execute("key", () -> {
+                    Thread.sleep(60000);
+                    return "leader";
+                });
+            } catch (Exception e) {
+                //Expected
+            }
+        });
+        leader.start();
+        while (flight.getCallCount() == 0) {
+            Thread.sleep(1);
+        }
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<String> follower = executor.submit(() -> flight.execute("key", () -> "follower"));
+            Thread.sleep(100);
+            leader.interrupt();
+            TestCase.assertEquals("follower", follower.get(10, TimeUnit.SECONDS));
+            TestCase.assertEquals(2, flight.getCallCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
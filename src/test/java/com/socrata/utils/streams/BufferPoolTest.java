@@ -0,0 +1,79 @@
+package com.socrata.utils.streams;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ */
+public class BufferPoolTest
+{
+    @Test
+    public void testSizesRoundUp()
+    {
+        final BufferPool pool = new BufferPool(1024 * 1024, 2);
+        TestCase.assertEquals(1024, pool.acquire(1).length);
+        TestCase.assertEquals(1024, pool.acquire(1024).length);
+        TestCase.assertEquals(2048, pool.acquire(1025).length);
+        TestCase.assertEquals(65536, pool.acquire(40000).length);
+
+        //Too large to pool
+        TestCase.assertEquals(32 * 1024 * 1024 + 1, pool.acquire(32 * 1024 * 1024 + 1).length);
+    }
+
+    @Test
+    public void testThreadLocalReuse()
+    {
+        final BufferPool pool = new BufferPool(1024 * 1024, 2);
+        final byte[] first = pool.acquire(4096);
+        pool.release(first);
+        TestCase.assertSame(first, pool.acquire(4096));
+
+        final BufferPool.Stats stats = pool.getStats();
+        TestCase.assertEquals(2, stats.getAcquires());
+        TestCase.assertEquals(1, stats.getAllocations());
+        TestCase.assertEquals(4096, stats.getAllocatedBytes());
+        TestCase.assertEquals(1, stats.getThreadLocalHits());
+    }
+
+    @Test
+    public void testSharedReuseAcrossThreads() throws InterruptedException
+    {
+        final BufferPool pool = new BufferPool(1024 * 1024, 0);
+        final byte[] buffer = pool.acquire(8192);
+        pool.release(buffer);
+        TestCase.assertEquals(8192, pool.getStats().getPooledBytes());
+
+        final AtomicReference<byte[]> other = new AtomicReference<byte[]>();
+        final Thread thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                other.set(pool.acquire(8192));
+            }
+        });
+        thread.start();
+        thread.join();
+
+        TestCase.assertSame(buffer, other.get());
+        TestCase.assertEquals(1, pool.getStats().getSharedHits());
+        TestCase.assertEquals(0, pool.getStats().getPooledBytes());
+    }
+
+    @Test
+    public void testPoolIsBounded()
+    {
+        final BufferPool pool = new BufferPool(8192, 0);
+        pool.release(new byte[4096]);
+        pool.release(new byte[4096]);
+        pool.release(new byte[4096]);
+        pool.release(new byte[1000]);
+
+        final BufferPool.Stats stats = pool.getStats();
+        TestCase.assertEquals(8192, stats.getPooledBytes());
+        TestCase.assertEquals(4, stats.getReleases());
+        TestCase.assertEquals(2, stats.getDiscards());
+    }
+}
@@ -7,6 +7,8 @@ import org.junit.Test;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -25,5 +27,17 @@ public class CompressingGzipInputStreamTest
         TestCase.assertEquals(TEST_STIRNG, retVal);
     }
 
+    @Test
+    public void testLargeCompressionWithSmallBuffer() throws IOException
+    {
+        final byte[] data = new byte[300000];
+        final Random random = new Random(1);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(4));
+        }
 
+        CompressingGzipInputStream compressing = new CompressingGzipInputStream(16, new ByteArrayInputStream(data));
+        byte[] result = IOUtils.toByteArray(new GZIPInputStream(compressing));
+        TestCase.assertTrue(Arrays.equals(data, result));
+    }
 }
@@ -0,0 +1,139 @@
+package com.socrata.utils.streams;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ */
+public class ConcurrentPipeTest
+{
+    @Test
+    public void testCrossThreadCopy() throws Exception
+    {
+        final byte[] data = new byte[1000000];
+        new Random(1).nextBytes(data);
+
+        //A small pipe, with writes both smaller and larger than it, makes both sides wait and wrap around.
+        final ConcurrentPipe pipe = new ConcurrentPipe(1000);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final Thread writer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try (OutputStream out = pipe.getOutputStream()) {
+                    final Random sizes = new Random(2);
+                    int off = 0;
+                    while (off < data.length) {
+                        final int len = Math.min(sizes.nextInt(3000), data.length - off);
+                        if (len == 1) {
+                            out.write(data[off]);
+                        } else {
+                            out.write(data, off, len);
+                        }
+                        off += len;
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        });
+        writer.start();
+
+        final byte[] result = IOUtils.toByteArray(pipe.getInputStream());
+        writer.join();
+        TestCase.assertNull(failure.get());
+        TestCase.assertTrue(Arrays.equals(data, result));
+        TestCase.assertEquals(-1, pipe.getInputStream().read());
+    }
+
+    @Test
+    public void testAbortFailsReader() throws IOException
+    {
+        final ConcurrentPipe pipe = new ConcurrentPipe(16);
+        pipe.getOutputStream().write("abc".getBytes("UTF-8"));
+        pipe.abort(new IllegalStateException("row generator failed"));
+
+        final InputStream in = pipe.getInputStream();
+        final byte[] buf = new byte[16];
+        TestCase.assertEquals(3, in.read(buf));
+        try {
+            in.read(buf);
+            TestCase.fail("Expected the abort to reach the reader");
+        } catch (IOException e) {
+            TestCase.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testClosedReaderFailsWaitingWriter() throws Exception
+    {
+        final ConcurrentPipe pipe = new ConcurrentPipe(8);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final Thread writer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try {
+                    pipe.getOutputStream().write(new byte[64]);
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        });
+        writer.start();
+
+        final InputStream in = pipe.getInputStream();
+        TestCase.assertEquals(8, in.read(new byte[8]));
+        in.close();
+        writer.join(10000);
+        TestCase.assertFalse(writer.isAlive());
+        TestCase.assertTrue(failure.get() instanceof IOException);
+    }
+
+    @Test
+    public void testClosedReaderFailsWriter() throws IOException
+    {
+        final ConcurrentPipe pipe = new ConcurrentPipe(16);
+        pipe.getInputStream().close();
+        try {
+            pipe.getOutputStream().write("abc".getBytes("UTF-8"));
+            TestCase.fail("Expected the write to fail once the reader is closed");
+        } catch (IOException e) {
+            TestCase.assertEquals("The pipe has been closed by the reader", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testInterruptedReader() throws Exception
+    {
+        final ConcurrentPipe pipe = new ConcurrentPipe(8);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final Thread reader = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try {
+                    pipe.getInputStream().read();
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        });
+        reader.start();
+        reader.interrupt();
+        reader.join(10000);
+        TestCase.assertFalse(reader.isAlive());
+        TestCase.assertTrue(failure.get() instanceof java.io.InterruptedIOException);
+    }
+}
@@ -0,0 +1,103 @@
+package com.socrata.utils.streams;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ */
+public class MappedFileInputStreamTest
+{
+    @Test
+    public void testEmptyFile() throws IOException
+    {
+        final File file = File.createTempFile("mapped", ".bin");
+        try (MappedFileInputStream is = new MappedFileInputStream(file)) {
+            TestCase.assertEquals(0, is.length());
+            TestCase.assertEquals(0, is.available());
+            TestCase.assertEquals(-1, is.read());
+            TestCase.assertEquals(-1, is.read(new byte[3], 0, 3));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testReadAcrossWindows() throws IOException
+    {
+        final byte[] contents = contents(10000);
+        final File file = write(contents);
+        try (MappedFileInputStream is = new MappedFileInputStream(file, 1000)) {
+            TestCase.assertEquals(10000, is.available());
+            TestCase.assertEquals(contents[0] & 0xff, is.read());
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write(contents[0]);
+            final byte[] buf = new byte[700];
+            int count;
+            while ((count = is.read(buf)) != -1) {
+                TestCase.assertTrue(count > 0);
+                out.write(buf, 0, count);
+            }
+            TestCase.assertTrue(Arrays.equals(contents, out.toByteArray()));
+            TestCase.assertEquals(0, is.available());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testSkip() throws IOException
+    {
+        final byte[] contents = contents(5000);
+        final File file = write(contents);
+        try (MappedFileInputStream is = new MappedFileInputStream(file, 1000)) {
+            TestCase.assertEquals(10, is.skip(10));
+            TestCase.assertEquals(contents[10] & 0xff, is.read());
+            TestCase.assertEquals(2500, is.skip(2500));
+            TestCase.assertEquals(contents[2511] & 0xff, is.read());
+            TestCase.assertEquals(2488, is.available());
+            TestCase.assertEquals(2488, is.skip(10000));
+            TestCase.assertEquals(-1, is.read());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testClosed() throws IOException
+    {
+        final File file = write(contents(10));
+        try {
+            final MappedFileInputStream is = new MappedFileInputStream(file);
+            is.close();
+            is.read();
+            TestCase.fail("Expected reading a closed stream to fail");
+        } catch (IOException e) {
+            //Expected
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static byte[] contents(int size)
+    {
+        final byte[] contents = new byte[size];
+        for (int i = 0; i < size; i++) {
+            contents[i] = (byte) (i * 31 + (i >> 8));
+        }
+        return contents;
+    }
+
+    private static File write(byte[] contents) throws IOException
+    {
+        final File file = File.createTempFile("mapped", ".bin");
+        Files.write(file.toPath(), contents);
+        return file;
+    }
+}
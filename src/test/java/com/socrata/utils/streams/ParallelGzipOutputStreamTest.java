@@ -0,0 +1,97 @@
+package com.socrata.utils.streams;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ */
+public class ParallelGzipOutputStreamTest
+{
+    @Test
+    public void testEmpty() throws IOException
+    {
+        TestCase.assertEquals(0, roundTrip(new byte[0]).length);
+    }
+
+    @Test
+    public void testSmall() throws IOException
+    {
+        final byte[] data = CompressingGzipInputStreamTest.TEST_STIRNG.getBytes("UTF-8");
+        TestCase.assertTrue(Arrays.equals(data, roundTrip(data)));
+    }
+
+    @Test
+    public void testManyBlocks() throws IOException
+    {
+        //Repetitive text, so blocks reference data in the previous block's dictionary.
+        final StringBuilder text = new StringBuilder();
+        final Random random = new Random(1);
+        while (text.length() < 1000000) {
+            text.append("row,").append(random.nextInt(1000)).append(",some repeated text\n");
+        }
+        final byte[] data = text.toString().getBytes("UTF-8");
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            final ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(compressed, 40000, Deflater.DEFAULT_COMPRESSION, executor, 3);
+            //Odd sized writes, so blocks fill part way through a write, plus a flush in the middle.
+            int off = 0;
+            while (off < data.length) {
+                final int len = Math.min(7777, data.length - off);
+                gzip.write(data, off, len);
+                off += len;
+                if (off > data.length / 2 && off - len <= data.length / 2) {
+                    gzip.flush();
+                }
+            }
+            gzip.close();
+
+            TestCase.assertTrue(compressed.size() < data.length / 4);
+            TestCase.assertTrue(Arrays.equals(data, IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray())))));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRandomData() throws IOException
+    {
+        final byte[] data = new byte[500000];
+        new Random(2).nextBytes(data);
+        TestCase.assertTrue(Arrays.equals(data, roundTrip(data)));
+    }
+
+    @Test
+    public void testWriteAfterFinish() throws IOException
+    {
+        final ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(new ByteArrayOutputStream());
+        gzip.finish();
+        try {
+            gzip.write(1);
+            TestCase.fail("Writing after finish should fail");
+        } catch (IOException e) {
+            //Success
+        }
+    }
+
+    private static byte[] roundTrip(byte[] data) throws IOException
+    {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        final ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(compressed);
+        gzip.write(data);
+        gzip.close();
+        return IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray())));
+    }
+}
@@ -0,0 +1,47 @@
+package com.socrata.utils.streams;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ */
+public class RingBufferTest
+{
+    public static final byte[] testBytes = new byte[] {
+            0, 1, 2, 3, 4, 5, 6, 7, 8, 9
+    };
+
+    @Test
+    public void testPartialWritesAndReads()
+    {
+        RingBuffer buffer = new RingBuffer(6);
+        TestCase.assertEquals(6, buffer.write(testBytes, 0, testBytes.length));
+        TestCase.assertTrue(buffer.isFull());
+        TestCase.assertFalse(buffer.write((byte) 1));
+
+        byte[] readBuff = new byte[10];
+        TestCase.assertEquals(4, buffer.read(readBuff, 0, 4));
+        TestCase.assertEquals(4, buffer.write(testBytes, 6, 4));
+        TestCase.assertEquals(6, buffer.read(readBuff, 4, 10 - 4));
+        TestCase.assertTrue(Arrays.equals(testBytes, readBuff));
+        TestCase.assertTrue(buffer.isEmpty());
+        TestCase.assertEquals(0, buffer.read(readBuff, 0, 10));
+        TestCase.assertEquals(6, buffer.getTotalCapacity());
+    }
+
+    @Test
+    public void testWriteFromStream() throws IOException
+    {
+        RingBuffer buffer = new RingBuffer(4);
+        ByteArrayInputStream source = new ByteArrayInputStream(testBytes);
+        TestCase.assertEquals(4, buffer.writeFrom(source));
+        TestCase.assertEquals(0, buffer.writeFrom(source));
+        TestCase.assertEquals(0, buffer.read());
+        TestCase.assertEquals(1, buffer.writeFrom(source));
+        TestCase.assertEquals(1, buffer.read());
+    }
+}
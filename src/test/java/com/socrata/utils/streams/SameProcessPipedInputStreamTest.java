@@ -3,6 +3,7 @@ package com.socrata.utils.streams;
 import junit.framework.TestCase;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.Arrays;
 
@@ -61,31 +62,34 @@ public class SameProcessPipedInputStreamTest {
         TestCase.assertEquals(10, bytesRead);
         TestCase.assertTrue(Arrays.equals(testBytes, readBuff10));
 
-        //Test Expansion
+        //Test the buffer does not grow
         piper.recieveBytes(testBytes, 0, testBytes.length);
-        piper.recieveByte(10);
+        try {
+            piper.recieveByte(10);
+            TestCase.fail("The buffer should be full");
+        } catch (IOException e) {
+            //Success
+        }
 
         bytesRead = piper.read(readBuff10);
         TestCase.assertEquals(10, bytesRead);
         TestCase.assertTrue(Arrays.equals(testBytes, readBuff10));
 
+        piper.recieveByte(10);
         bytesRead = piper.read(readBuff10);
         TestCase.assertEquals(1, bytesRead);
         TestCase.assertEquals((byte)10, readBuff10[0]);
 
-        //Test Expansion with Arrays
+        //Test wrapping around the end of the buffer with arrays
         for (int i=0; i<4; i++) {
             piper.recieveBytes(testBytes, 0, testBytes.length);
-        }
-
-        piper.closeForWrite();
-
-        for (int i=0; i<4; i++) {
             bytesRead = piper.read(readBuff10);
             TestCase.assertEquals(10, bytesRead);
             TestCase.assertTrue(Arrays.equals(testBytes, readBuff10));
         }
 
+        piper.closeForWrite();
+
         TestCase.assertEquals(-1, piper.read());
         TestCase.assertEquals(-1, piper.read(readBuff10));
 
@@ -103,4 +107,26 @@ public class SameProcessPipedInputStreamTest {
             //Success
         }
     }
+
+    @Test
+    public void testRecieveFromStream() throws IOException {
+
+        SameProcessPipedInputStream piper = new SameProcessPipedInputStream(8);
+        ByteArrayInputStream source = new ByteArrayInputStream(testBytes);
+
+        piper.recieveByte(99);
+        TestCase.assertEquals(7, piper.recieveFrom(source));
+        TestCase.assertEquals(0, piper.freeSpace());
+        TestCase.assertEquals(99, piper.read());
+
+        //The write position wraps, so only the one byte at the end is filled.
+        TestCase.assertEquals(1, piper.recieveFrom(source));
+
+        byte[] readBuff10 = new byte[10];
+        TestCase.assertEquals(8, piper.read(readBuff10));
+        TestCase.assertTrue(Arrays.equals(Arrays.copyOf(testBytes, 8), Arrays.copyOf(readBuff10, 8)));
+
+        TestCase.assertEquals(2, piper.recieveFrom(source));
+        TestCase.assertEquals(-1, piper.recieveFrom(source));
+    }
 }
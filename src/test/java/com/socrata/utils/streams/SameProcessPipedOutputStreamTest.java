@@ -24,11 +24,23 @@ public class SameProcessPipedOutputStreamTest {
         int val = inputStream.read();
         TestCase.assertEquals(0, val);
 
-        outputStream.write(testBytes, 0, testBytes.length);
+        outputStream.write(testBytes, 0, 5);
+
+        try {
+            outputStream.write(testBytes, 5, 1);
+            TestCase.fail("The pipe should be full");
+        } catch (IOException e) {
+            //Success
+        }
 
         byte[] inputBuffer = new byte[10];
         int bytesRead = inputStream.read(inputBuffer);
-        TestCase.assertEquals(10, bytesRead);
+        TestCase.assertEquals(5, bytesRead);
+
+        outputStream.write(testBytes, 5, 5);
+        bytesRead = inputStream.read(inputBuffer);
+        TestCase.assertEquals(5, bytesRead);
+        TestCase.assertEquals(5, inputBuffer[0]);
 
         bytesRead = inputStream.read(inputBuffer);
         TestCase.assertEquals(0, bytesRead);
@@ -37,7 +37,7 @@ public class TransformativeStreamTest {
     @Test
     public void testMultipleLoads() throws IOException
     {
-        StringArrayTransformativeStream idStream = new StringArrayTransformativeStream(10, new String[] { "Hello Kitty", "Foo", "Bar", "", "", "END" });
+        StringArrayTransformativeStream idStream = new StringArrayTransformativeStream(11, new String[] { "Hello Kitty", "Foo", "Bar", "", "", "END" });
         String results = IOUtils.toString(idStream, "utf-8");
         TestCase.assertEquals("Hello KittyFooBarEND", results);
     }
@@ -45,11 +45,32 @@ public class TransformativeStreamTest {
     @Test
     public void testEmptyEnd() throws IOException
     {
-        StringArrayTransformativeStream idStream = new StringArrayTransformativeStream(10, new String[] { "Hello Kitty", "Foo", "Bar", "", "", "END", "" });
+        StringArrayTransformativeStream idStream = new StringArrayTransformativeStream(11, new String[] { "Hello Kitty", "Foo", "Bar", "", "", "END", "" });
         String results = IOUtils.toString(idStream, "utf-8");
         TestCase.assertEquals("Hello KittyFooBarEND", results);
     }
 
+    @Test
+    public void testReadReturnsWhatIsLoaded() throws IOException
+    {
+        StringArrayTransformativeStream idStream = new StringArrayTransformativeStream(10, new String[] { "Foo", "Bar" });
+        byte[] buffer = new byte[100];
+        TestCase.assertEquals(3, idStream.read(buffer, 0, buffer.length));
+        TestCase.assertEquals(3, idStream.read(buffer, 0, buffer.length));
+        TestCase.assertEquals(-1, idStream.read(buffer, 0, buffer.length));
+    }
+
+    @Test
+    public void testLoadLargerThanBuffer() throws IOException
+    {
+        StringArrayTransformativeStream idStream = new StringArrayTransformativeStream(10, new String[] { "Hello Kitty" });
+        try {
+            IOUtils.toString(idStream, "utf-8");
+            TestCase.fail("A load larger than the buffer should fail");
+        } catch (IOException e) {
+            //Success
+        }
+    }
 
     static public class StringArrayTransformativeStream extends TransformativeStream {
 